@@ -0,0 +1,194 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.*;
+import com.ghgande.j2mod.modbus.util.BitVector;
+
+/**
+ * Shared data used by the benchmarks - a process image that is large enough
+ * for every range benchmark and a representative request for each of the
+ * function codes that j2mod supports
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+final class BenchmarkFixtures {
+
+    static final int UNIT_ID = 1;
+    static final int IMAGE_SIZE = 2000;
+    static final int TCP_PORT = 15020;
+    static final int UDP_PORT = 15021;
+
+    /**
+     * Function codes covered by the codec benchmarks
+     */
+    static final int[] FUNCTION_CODES = {
+            Modbus.READ_COILS,
+            Modbus.READ_INPUT_DISCRETES,
+            Modbus.READ_MULTIPLE_REGISTERS,
+            Modbus.READ_INPUT_REGISTERS,
+            Modbus.WRITE_COIL,
+            Modbus.WRITE_SINGLE_REGISTER,
+            Modbus.READ_EXCEPTION_STATUS,
+            Modbus.READ_SERIAL_DIAGNOSTICS,
+            Modbus.READ_COMM_EVENT_COUNTER,
+            Modbus.READ_COMM_EVENT_LOG,
+            Modbus.WRITE_MULTIPLE_COILS,
+            Modbus.WRITE_MULTIPLE_REGISTERS,
+            Modbus.REPORT_SLAVE_ID,
+            Modbus.READ_FILE_RECORD,
+            Modbus.WRITE_FILE_RECORD,
+            Modbus.MASK_WRITE_REGISTER,
+            Modbus.READ_WRITE_MULTIPLE,
+            Modbus.READ_FIFO_QUEUE,
+            Modbus.READ_MEI
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates a process image with {@link #IMAGE_SIZE} of every type of
+     * point, a file and a FIFO, and registers it with the coupler so that
+     * requests can create their responses from it
+     *
+     * @return Process image
+     */
+    static SimpleProcessImage createProcessImage() {
+        SimpleProcessImage spi = new SimpleProcessImage(UNIT_ID);
+        for (int i = 0; i < IMAGE_SIZE; i++) {
+            spi.addDigitalOut(new SimpleDigitalOut(i % 3 == 0));
+            spi.addDigitalIn(new SimpleDigitalIn(i % 2 == 0));
+            spi.addRegister(new SimpleRegister(i));
+            spi.addInputRegister(new SimpleInputRegister(IMAGE_SIZE - i));
+        }
+        File file = new File(0, 10);
+        for (int i = 0; i < 10; i++) {
+            file.setRecord(i, new Record(i, 10));
+        }
+        spi.addFile(file);
+        FIFO fifo = new FIFO(0);
+        for (int i = 0; i < 31; i++) {
+            fifo.pushRegister(new SimpleRegister(i));
+        }
+        spi.addFIFO(fifo);
+        ModbusCoupler.getReference().setProcessImage(spi);
+        ModbusCoupler.getReference().setMaster(false);
+        return spi;
+    }
+
+    /**
+     * Creates a typical request for the function code
+     *
+     * @param functionCode Function code
+     *
+     * @return Request addressed to {@link #UNIT_ID}
+     */
+    static ModbusRequest createRequest(int functionCode) {
+        ModbusRequest request;
+        switch (functionCode) {
+            case Modbus.READ_COILS:
+                request = new ReadCoilsRequest(0, 800);
+                break;
+            case Modbus.READ_INPUT_DISCRETES:
+                request = new ReadInputDiscretesRequest(0, 800);
+                break;
+            case Modbus.READ_MULTIPLE_REGISTERS:
+                request = new ReadMultipleRegistersRequest(0, 100);
+                break;
+            case Modbus.READ_INPUT_REGISTERS:
+                request = new ReadInputRegistersRequest(0, 100);
+                break;
+            case Modbus.WRITE_COIL:
+                request = new WriteCoilRequest(10, true);
+                break;
+            case Modbus.WRITE_SINGLE_REGISTER:
+                request = new WriteSingleRegisterRequest(10, new SimpleRegister(1234));
+                break;
+            case Modbus.WRITE_MULTIPLE_COILS:
+                BitVector coils = new BitVector(800);
+                for (int i = 0; i < coils.size(); i += 3) {
+                    coils.setBit(i, true);
+                }
+                request = new WriteMultipleCoilsRequest(0, coils);
+                break;
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+                Register[] registers = new Register[100];
+                for (int i = 0; i < registers.length; i++) {
+                    registers[i] = new SimpleRegister(i);
+                }
+                request = new WriteMultipleRegistersRequest(0, registers);
+                break;
+            case Modbus.READ_FILE_RECORD:
+                ReadFileRecordRequest readFile = new ReadFileRecordRequest();
+                readFile.addRequest(new ReadFileRecordRequest.RecordRequest(0, 0, 10));
+                readFile.addRequest(new ReadFileRecordRequest.RecordRequest(0, 1, 10));
+                request = readFile;
+                break;
+            case Modbus.WRITE_FILE_RECORD:
+                WriteFileRecordRequest writeFile = new WriteFileRecordRequest();
+                writeFile.addRequest(new WriteFileRecordRequest.RecordRequest(0, 0, new short[10]));
+                writeFile.addRequest(new WriteFileRecordRequest.RecordRequest(0, 1, new short[10]));
+                request = writeFile;
+                break;
+            case Modbus.MASK_WRITE_REGISTER:
+                request = new MaskWriteRegisterRequest(10, 0xF0F0, 0x0F0F);
+                break;
+            case Modbus.READ_WRITE_MULTIPLE:
+                ReadWriteMultipleRequest readWrite = new ReadWriteMultipleRequest(UNIT_ID, 0, 50, 100, 50);
+                Register[] values = new Register[50];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = new SimpleRegister(i);
+                }
+                readWrite.setRegisters(values);
+                request = readWrite;
+                break;
+            case Modbus.READ_MEI:
+                request = new ReadMEIRequest(1, 0);
+                break;
+            default:
+                request = ModbusRequest.createModbusRequest(functionCode);
+        }
+        request.setUnitID(UNIT_ID);
+        return request;
+    }
+
+    /**
+     * Creates the response for the request from the process image
+     * registered with the coupler.  Function codes that a j2mod slave
+     * doesn't implement get an empty response of the right type instead of an
+     * exception so that every response class is exercised.
+     * Responses that cannot be encoded when empty are given some content.
+     *
+     * @param request Request to respond to
+     *
+     * @return Response
+     */
+    static ModbusResponse createResponse(ModbusRequest request) {
+        ModbusResponse response = request.createResponse();
+        if (response instanceof ExceptionResponse) {
+            response = request.getResponse();
+        }
+        if (response instanceof ReadCommEventLogResponse) {
+            ((ReadCommEventLogResponse)response).setEvents(16);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the <tt>BitVector</tt> operations used when encoding and decoding
+ * coil and discrete messages
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitVectorBenchmark {
+
+    @Param({"16", "2000"})
+    private int size;
+
+    private BitVector vector;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        vector = new BitVector(size);
+        for (int i = 0; i < size; i += 3) {
+            vector.setBit(i, true);
+        }
+        bytes = vector.getBytes();
+    }
+
+    @Benchmark
+    public BitVector setAllBits() {
+        for (int i = 0; i < size; i++) {
+            vector.setBit(i, (i & 1) == 0);
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public int getAllBits() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (vector.getBit(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public BitVector createFromBytes() {
+        return BitVector.createBitVector(bytes, size);
+    }
+
+    @Benchmark
+    public byte[] getBytes() {
+        return vector.getBytes();
+    }
+}
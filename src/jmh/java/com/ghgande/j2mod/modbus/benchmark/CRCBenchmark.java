@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.util.ModbusChecksum;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the RTU CRC and ASCII LRC calculations for typical frame sizes,
+ * comparing the slice-by-8 CRC with the same table used a byte at a time
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CRCBenchmark {
+
+    @Param({"8", "64", "256"})
+    private int length;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = new byte[length];
+        new Random(length).nextBytes(data);
+    }
+
+    @Benchmark
+    public int[] calculateCRC() {
+        return ModbusUtil.calculateCRC(data, 0, length);
+    }
+
+    @Benchmark
+    public int crc16() {
+        return ModbusChecksum.crc16(data, 0, length);
+    }
+
+    @Benchmark
+    public int crc16ByteAtATime() {
+        int crc = ModbusChecksum.CRC_INITIAL;
+        for (int i = 0; i < length; i++) {
+            crc = ModbusChecksum.updateCRC16(crc, data[i]);
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public int lrc() {
+        return ModbusChecksum.lrc(data, 0, length);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.BytesInputStream;
+import com.ghgande.j2mod.modbus.io.BytesOutputStream;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoding (<tt>writeTo</tt>) and decoding (<tt>readFrom</tt>)
+ * of the request and response for each supported function code, and the
+ * same through the <tt>ByteBuffer</tt> codec (<tt>encode</tt> and <tt>decode</tt>)
+ * using a direct buffer as a socket channel would
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "11", "12", "15", "16", "17", "20", "21", "22", "23", "24", "43"})
+    private int functionCode;
+
+    private ModbusRequest request;
+    private ModbusResponse response;
+    private byte[] requestBytes;
+    private byte[] responseBytes;
+    private final BytesOutputStream output = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
+    private final BytesInputStream input = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH + 6);
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.createProcessImage();
+        request = BenchmarkFixtures.createRequest(functionCode);
+        response = BenchmarkFixtures.createResponse(request);
+        requestBytes = encode(request);
+        responseBytes = encode(response);
+    }
+
+    @Benchmark
+    public int encodeRequest() throws IOException {
+        output.reset();
+        request.writeTo(output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int encodeResponse() throws IOException {
+        output.reset();
+        response.writeTo(output);
+        return output.size();
+    }
+
+    @Benchmark
+    public ModbusRequest decodeRequest() throws IOException {
+        input.reset(requestBytes);
+        ModbusRequest decoded = ModbusRequest.createModbusRequest(functionCode);
+        decoded.readFrom(input);
+        return decoded;
+    }
+
+    @Benchmark
+    public ModbusResponse decodeResponse() throws IOException {
+        input.reset(responseBytes);
+        ModbusResponse decoded = ModbusResponse.createModbusResponse(functionCode);
+        decoded.readFrom(input);
+        return decoded;
+    }
+
+    @Benchmark
+    public int encodeRequestBuffer() {
+        buffer.clear();
+        request.encode(buffer);
+        return buffer.position();
+    }
+
+    @Benchmark
+    public int encodeResponseBuffer() {
+        buffer.clear();
+        response.encode(buffer);
+        return buffer.position();
+    }
+
+    @Benchmark
+    public ModbusRequest decodeRequestBuffer() throws IOException {
+        buffer.clear();
+        buffer.put(requestBytes).flip();
+        ModbusRequest decoded = ModbusRequest.createModbusRequest(functionCode);
+        decoded.decode(buffer);
+        return decoded;
+    }
+
+    @Benchmark
+    public ModbusResponse decodeResponseBuffer() throws IOException {
+        buffer.clear();
+        buffer.put(responseBytes).flip();
+        ModbusResponse decoded = ModbusResponse.createModbusResponse(functionCode);
+        decoded.decode(buffer);
+        return decoded;
+    }
+
+    /**
+     * Encodes the message into a new array
+     *
+     * @param message Message to encode
+     *
+     * @return Encoded bytes including the TCP header
+     *
+     * @throws IOException if the message cannot be encoded
+     */
+    private byte[] encode(ModbusMessage message) throws IOException {
+        output.reset();
+        message.writeTo(output);
+        return Arrays.copyOf(output.getBuffer(), output.size());
+    }
+}
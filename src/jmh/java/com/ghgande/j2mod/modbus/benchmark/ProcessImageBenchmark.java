@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.procimg.*;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures range access to a <tt>SimpleProcessImage</tt> for each type of point,
+ * both as arrays of points and as bulk exports into a frame buffer
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessImageBenchmark {
+
+    @Param({"1", "16", "125"})
+    private int count;
+
+    private SimpleProcessImage image;
+    private ByteBuffer buffer;
+    private BitVector bits;
+
+    @Setup
+    public void setUp() {
+        image = BenchmarkFixtures.createProcessImage();
+        buffer = ByteBuffer.allocate(count * 2);
+        bits = new BitVector(count);
+    }
+
+    @Benchmark
+    public DigitalOut[] digitalOutRange() {
+        return image.getDigitalOutRange(100, count);
+    }
+
+    @Benchmark
+    public DigitalIn[] digitalInRange() {
+        return image.getDigitalInRange(100, count);
+    }
+
+    @Benchmark
+    public Register[] registerRange() {
+        return image.getRegisterRange(100, count);
+    }
+
+    @Benchmark
+    public InputRegister[] inputRegisterRange() {
+        return image.getInputRegisterRange(100, count);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Register[] registerRangeContended() {
+        return image.getRegisterRange(100, count);
+    }
+
+    @Benchmark
+    public ByteBuffer registerExport() {
+        buffer.clear();
+        image.exportRegisterRange(100, count, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public BitVector digitalOutExport() {
+        image.exportDigitalOutRange(100, bits);
+        return bits;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.benchmark;
+
+import com.ghgande.j2mod.modbus.facade.AbstractModbusMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
+import com.ghgande.j2mod.modbus.net.ModbusTCPListener;
+import com.ghgande.j2mod.modbus.net.ModbusUDPListener;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures complete request/response round trips between a master and a
+ * slave over the loopback interface, through <tt>ModbusTCPTransport</tt> and
+ * <tt>ModbusUDPTransport</tt> on both ends
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+    @Param({"tcp", "udp"})
+    private String protocol;
+
+    @Param({"1", "125"})
+    private int count;
+
+    private AbstractModbusListener listener;
+    private AbstractModbusMaster master;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFixtures.createProcessImage();
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+        if ("tcp".equals(protocol)) {
+            listener = new ModbusTCPListener(2, address);
+            listener.setPort(BenchmarkFixtures.TCP_PORT);
+            master = new ModbusTCPMaster(address.getHostAddress(), BenchmarkFixtures.TCP_PORT);
+        }
+        else {
+            listener = new ModbusUDPListener(address);
+            listener.setPort(BenchmarkFixtures.UDP_PORT);
+            master = new ModbusUDPMaster(address.getHostAddress(), BenchmarkFixtures.UDP_PORT);
+        }
+        listener.setListening(true);
+        new Thread(listener).start();
+
+        // Give the listener a moment to bind before the master connects
+
+        Thread.sleep(200);
+        if (!listener.isListening()) {
+            throw new IllegalStateException(listener.getError());
+        }
+        master.connect();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (master != null) {
+            master.disconnect();
+        }
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Benchmark
+    public Register[] readMultipleRegisters() throws Exception {
+        return master.readMultipleRegisters(BenchmarkFixtures.UNIT_ID, 0, count);
+    }
+}
@@ -19,10 +19,13 @@ import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.io.TraceSink;
+import com.ghgande.j2mod.modbus.io.TransportStatistics;
 import com.ghgande.j2mod.modbus.msg.*;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.Register;
 import com.ghgande.j2mod.modbus.util.BitVector;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
 
 /**
  * Modbus/TCP Master facade - common methods for all the facade implementations
@@ -46,7 +49,13 @@ abstract public class AbstractModbusMaster {
     private ReadMultipleRegistersRequest readMultipleRegistersRequest;
     private WriteSingleRegisterRequest writeSingleRegisterRequest;
     private WriteMultipleRegistersRequest writeMultipleRegistersRequest;
+    private ReadFIFOQueueRequest readFIFOQueueRequest;
+    private ReadWriteMultipleRequest readWriteMultipleRequest;
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
+    private ModbusMetrics metrics;
+    private TraceSink traceSink;
+    private long traceThreshold;
+    private final TransportStatistics statistics = new TransportStatistics();
 
     /**
      * Sets the transaction to use
@@ -55,6 +64,74 @@ abstract public class AbstractModbusMaster {
      */
     protected synchronized void setTransaction(ModbusTransaction transaction) {
         this.transaction = transaction;
+        if (transaction != null) {
+            transaction.setMetrics(metrics);
+            transaction.setTraceSink(traceSink);
+            transaction.setTraceThreshold(traceThreshold);
+            AbstractModbusTransport transport = getTransport();
+            if (transport != null) {
+                transport.removeTransportListener(statistics);
+                transport.addTransportListener(statistics);
+            }
+        }
+    }
+
+    /**
+     * Returns the totals of the messages and bytes passing through the
+     * transport of this master.  The totals are kept across reconnections.
+     *
+     * @return Transport statistics
+     */
+    public TransportStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the metrics that transactions are recorded in
+     *
+     * @return Metrics or null if not recording
+     */
+    public synchronized ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to record each transaction in.  The metrics are kept
+     * across reconnections.
+     *
+     * @param metrics Metrics or null to stop recording
+     */
+    public synchronized void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+        if (transaction != null) {
+            transaction.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Returns the sink that transaction traces are reported to
+     *
+     * @return Sink or null if not tracing
+     */
+    public synchronized TraceSink getTraceSink() {
+        return traceSink;
+    }
+
+    /**
+     * Reports the trace of every transaction that takes at least the
+     * threshold, is retried or fails to the sink.  The setting is kept
+     * across reconnections.
+     *
+     * @param traceSink Sink or null to stop tracing
+     * @param threshold Threshold in milliseconds, 0 to report every transaction
+     */
+    public synchronized void setTraceSink(TraceSink traceSink, long threshold) {
+        this.traceSink = traceSink;
+        this.traceThreshold = threshold;
+        if (transaction != null) {
+            transaction.setTraceSink(traceSink);
+            transaction.setTraceThreshold(threshold);
+        }
     }
 
     /**
@@ -69,6 +146,16 @@ abstract public class AbstractModbusMaster {
      */
     abstract public void disconnect();
 
+    /**
+     * Tests if this master has been connected to the slave and not
+     * disconnected since.
+     *
+     * @return true if connected
+     */
+    public synchronized boolean isConnected() {
+        return transaction != null;
+    }
+
     /**
      * Reads a given number of coil states from the slave.
      * <p/>
@@ -283,6 +370,38 @@ abstract public class AbstractModbusMaster {
         transaction.execute();
     }
 
+    /**
+     * Writes a number of registers to the slave and then reads a number of
+     * registers, in a single transaction.
+     *
+     * @param unitId    the slave unit id.
+     * @param readRef   the offset of the register to start reading from.
+     * @param readCount the number of registers to be read.
+     * @param writeRef  the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *                  the registers to be written.
+     *
+     * @return a <tt>InputRegister[]</tt> holding the registers read after
+     * the write.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public synchronized InputRegister[] readWriteMultipleRegisters(int unitId, int readRef, int readCount, int writeRef, Register[] registers) throws ModbusException {
+        checkTransaction();
+        if (readWriteMultipleRequest == null) {
+            readWriteMultipleRequest = new ReadWriteMultipleRequest();
+        }
+        readWriteMultipleRequest.setUnitID(unitId);
+        readWriteMultipleRequest.setReadReference(readRef);
+        readWriteMultipleRequest.setReadWordCount(readCount);
+        readWriteMultipleRequest.setWriteReference(writeRef);
+        readWriteMultipleRequest.setRegisters(registers);
+        transaction.setRequest(readWriteMultipleRequest);
+        transaction.execute();
+        return ((ReadWriteMultipleResponse)getAndCheckResponse()).getRegisters();
+    }
+
     /**
      * Reads a given number of coil states from the slave.
      * <p/>
@@ -416,6 +535,66 @@ abstract public class AbstractModbusMaster {
         writeMultipleRegisters(DEFAULT_UNIT_ID, ref, registers);
     }
 
+    /**
+     * Reads the queue of a FIFO from the slave.
+     * <p/>
+     * Whether the values read are removed from the queue depends on the
+     * slave.
+     *
+     * @param unitId the slave unit id.
+     * @param ref    the address of the FIFO.
+     *
+     * @return the values in the queue, oldest first.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public synchronized int[] readFIFOQueue(int unitId, int ref) throws ModbusException {
+        checkTransaction();
+        if (readFIFOQueueRequest == null) {
+            readFIFOQueueRequest = new ReadFIFOQueueRequest();
+        }
+        readFIFOQueueRequest.setUnitID(unitId);
+        readFIFOQueueRequest.setReference(ref);
+        transaction.setRequest(readFIFOQueueRequest);
+        transaction.execute();
+        return ((ReadFIFOQueueResponse)getAndCheckResponse()).getRegisters();
+    }
+
+    /**
+     * Writes a number of registers to the slave and then reads a number of
+     * registers, in a single transaction.
+     *
+     * @param readRef   the offset of the register to start reading from.
+     * @param readCount the number of registers to be read.
+     * @param writeRef  the offset of the register to start writing to.
+     * @param registers a <tt>Register[]</tt> holding the values of
+     *                  the registers to be written.
+     *
+     * @return a <tt>InputRegister[]</tt> holding the registers read after
+     * the write.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public synchronized InputRegister[] readWriteMultipleRegisters(int readRef, int readCount, int writeRef, Register[] registers) throws ModbusException {
+        return readWriteMultipleRegisters(DEFAULT_UNIT_ID, readRef, readCount, writeRef, registers);
+    }
+
+    /**
+     * Reads the queue of a FIFO from the slave.
+     *
+     * @param ref the address of the FIFO.
+     *
+     * @return the values in the queue, oldest first.
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public synchronized int[] readFIFOQueue(int ref) throws ModbusException {
+        return readFIFOQueue(DEFAULT_UNIT_ID, ref);
+    }
+
     /**
      * Reads the response from the transaction
      * If there is no response, then it throws an error
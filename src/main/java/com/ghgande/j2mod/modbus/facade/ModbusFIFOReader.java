@@ -0,0 +1,403 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.procimg.FIFO;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Drains the FIFO of a slave with READ FIFO QUEUE.
+ * <p>
+ * By default the queue is only read, as the function is defined, and
+ * nothing is written to the slave.  Which values each read returns is up
+ * to the slave.  Values that do not fit in the destination are kept for
+ * the next read.
+ * <p>
+ * When acknowledging is turned on with {@link #setAcknowledging(boolean)},
+ * each value is taken exactly once from a slave that works as a
+ * {@link com.ghgande.j2mod.modbus.procimg.RingBufferFIFO} does: reading the
+ * queue leaves it alone, the holding register at the address of the FIFO
+ * holds the sequence number of the oldest value, and writing a sequence
+ * number to it removes the values before that one.  This is particular to
+ * j2mod slaves and must not be turned on for other devices, whose register
+ * at that address would be overwritten.  The reader reads the queue, writes
+ * back the sequence number of the value after the last one read, and only
+ * hands the values on once the slave has confirmed the write.  If the confirmation is lost, the next read asks the
+ * slave where its queue starts to find out how many values went.  This
+ * holds as long as the slave refuses new values when its FIFO is full
+ * rather than dropping old ones.
+ * <p>
+ * {@link #read(int[], int, int)} takes one batch at a time.  Alternatively
+ * {@link #start()} drains the FIFO on a thread of its own into a buffer
+ * that {@link #take(int[], int, int, long)} empties.  The thread stops
+ * reading while the buffer has no room for a full queue, so a slow
+ * consumer holds values back in the slave rather than losing them.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusFIFOReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusFIFOReader.class);
+
+    private final AbstractModbusMaster master;
+    private final int unitId;
+    private final int address;
+    private int sequence;
+    private boolean synchronised;
+    private int[] pending;
+    private int[] released;
+
+    private final Object lock = new Object();
+    private final int[] samples;
+    private int first;
+    private int count;
+    private int pollInterval = 10;
+    private int retries = Modbus.DEFAULT_RETRIES;
+    private boolean acknowledging;
+    private Thread thread;
+    private volatile boolean running;
+    private ModbusException error;
+
+    /**
+     * Creates a reader with a buffer of 1024 values
+     *
+     * @param master  Master to read with
+     * @param unitId  Unit ID of the slave
+     * @param address Address of the FIFO
+     */
+    public ModbusFIFOReader(AbstractModbusMaster master, int unitId, int address) {
+        this(master, unitId, address, 1024);
+    }
+
+    /**
+     * Creates a reader
+     *
+     * @param master     Master to read with
+     * @param unitId     Unit ID of the slave
+     * @param address    Address of the FIFO
+     * @param bufferSize Values buffered by {@link #start()}, at least a full queue
+     */
+    public ModbusFIFOReader(AbstractModbusMaster master, int unitId, int address, int bufferSize) {
+        if (bufferSize < FIFO.MAX_QUEUE_LENGTH) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        this.master = master;
+        this.unitId = unitId;
+        this.address = address;
+        samples = new int[bufferSize];
+    }
+
+    /**
+     * Returns the time the reading thread waits after finding the FIFO empty
+     *
+     * @return Poll interval in milliseconds
+     */
+    public int getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Sets the time the reading thread waits after finding the FIFO empty
+     * or failing to read it
+     *
+     * @param pollInterval Poll interval in milliseconds
+     */
+    public void setPollInterval(int pollInterval) {
+        this.pollInterval = Math.max(0, pollInterval);
+    }
+
+    /**
+     * Returns the number of I/O failures in a row after which the reading
+     * thread stops
+     *
+     * @return Retries
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of I/O failures in a row after which the reading
+     * thread stops
+     *
+     * @param retries Retries
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Returns true if values are acknowledged to the slave once read
+     *
+     * @return True if acknowledging
+     */
+    public synchronized boolean isAcknowledging() {
+        return acknowledging;
+    }
+
+    /**
+     * Sets whether values are acknowledged to the slave by writing the
+     * sequence number of the next value to the register at the address of
+     * the FIFO.  Only turn this on for slaves that use a
+     * {@link com.ghgande.j2mod.modbus.procimg.RingBufferFIFO}, and before
+     * the first read.
+     *
+     * @param acknowledging True to acknowledge values
+     */
+    public synchronized void setAcknowledging(boolean acknowledging) {
+        this.acknowledging = acknowledging;
+    }
+
+    /**
+     * Takes the next values from the FIFO of the slave
+     *
+     * @param dest   Buffer to copy the values to
+     * @param offset Position in the buffer
+     * @param max    Most values to take, a full queue is 31
+     *
+     * @return Number of values taken, which may be zero even when the FIFO
+     * is not empty, after a failure
+     *
+     * @throws ModbusException if the slave cannot be read, in which case
+     *                         no values are taken and none are lost
+     */
+    public synchronized int read(int[] dest, int offset, int max) throws ModbusException {
+        if (released != null) {
+            return takeReleased(dest, offset, max);
+        }
+        if (!acknowledging) {
+            released = master.readFIFOQueue(unitId, address);
+            return takeReleased(dest, offset, max);
+        }
+        if (pending != null) {
+            // An acknowledgement went unconfirmed, so see how far the queue
+            // has moved to find out if it was applied
+            int head = readPointer();
+            int moved = (head - sequence) & 0xFFFF;
+            released = Arrays.copyOf(pending, moved < 0x8000 ? Math.min(moved, pending.length) : 0);
+            sequence = head;
+            pending = null;
+            return takeReleased(dest, offset, max);
+        }
+        if (!synchronised) {
+            sequence = readPointer();
+            synchronised = true;
+        }
+        int[] values = master.readFIFOQueue(unitId, address);
+        int taken = Math.min(values.length, max);
+        if (taken == 0) {
+            return 0;
+        }
+        pending = Arrays.copyOf(values, taken);
+        master.writeSingleRegister(unitId, address, new SimpleRegister((sequence + taken) & 0xFFFF));
+        System.arraycopy(pending, 0, dest, offset, taken);
+        sequence = (sequence + taken) & 0xFFFF;
+        pending = null;
+        return taken;
+    }
+
+    /**
+     * Takes values that have been read and need no acknowledgement, keeping
+     * any that do not fit for the next read
+     *
+     * @param dest   Buffer to copy the values to
+     * @param offset Position in the buffer
+     * @param max    Most values to take
+     *
+     * @return Number of values taken
+     */
+    private int takeReleased(int[] dest, int offset, int max) {
+        int taken = Math.min(released.length, Math.max(0, max));
+        System.arraycopy(released, 0, dest, offset, taken);
+        released = taken < released.length ? Arrays.copyOfRange(released, taken, released.length) : null;
+        return taken;
+    }
+
+    /**
+     * Starts draining the FIFO into the buffer on a thread of its own
+     */
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            error = null;
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "Modbus FIFO reader " + address);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the reading thread and waits for it to finish.  Values already
+     * buffered can still be taken.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        Thread stopping;
+        synchronized (lock) {
+            running = false;
+            stopping = thread;
+            thread = null;
+            lock.notifyAll();
+        }
+        if (stopping != null) {
+            stopping.interrupt();
+            stopping.join();
+        }
+    }
+
+    /**
+     * Returns true if the reading thread is draining the FIFO
+     *
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of values buffered
+     *
+     * @return Values buffered
+     */
+    public int available() {
+        synchronized (lock) {
+            return count;
+        }
+    }
+
+    /**
+     * Takes values from the buffer, waiting for some if it is empty
+     *
+     * @param dest    Buffer to copy the values to
+     * @param offset  Position in the buffer
+     * @param max     Most values to take
+     * @param timeout Longest time to wait in milliseconds
+     *
+     * @return Number of values taken, zero if none arrived in time
+     *
+     * @throws ModbusException      if the buffer is empty and the reading
+     *                              thread stopped because of a failure
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int take(int[] dest, int offset, int max, long timeout) throws ModbusException, InterruptedException {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (count == 0) {
+                if (error != null) {
+                    throw new ModbusException("FIFO reader stopped - " + error.getMessage(), error);
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (!running || remaining <= 0) {
+                    return 0;
+                }
+                lock.wait(remaining);
+            }
+            int taken = Math.min(max, count);
+            for (int i = 0; i < taken; i++) {
+                dest[offset + i] = samples[(first + i) % samples.length];
+            }
+            first = (first + taken) % samples.length;
+            count -= taken;
+            lock.notifyAll();
+            return taken;
+        }
+    }
+
+    /**
+     * Reads the FIFO into the buffer until stopped, waiting while there is
+     * no room for a full queue
+     */
+    private void drain() {
+        int[] batch = new int[FIFO.MAX_QUEUE_LENGTH];
+        int failures = 0;
+        try {
+            while (running) {
+                synchronized (lock) {
+                    while (running && samples.length - count < batch.length) {
+                        lock.wait();
+                    }
+                }
+                if (!running) {
+                    break;
+                }
+                int taken;
+                try {
+                    taken = read(batch, 0, batch.length);
+                    failures = 0;
+                }
+                catch (ModbusIOException e) {
+                    if (++failures > retries) {
+                        throw e;
+                    }
+                    logger.debug("Cannot read FIFO {}, retrying - {}", address, e.getMessage());
+                    Thread.sleep(pollInterval);
+                    continue;
+                }
+                if (taken > 0) {
+                    synchronized (lock) {
+                        for (int i = 0; i < taken; i++) {
+                            samples[(first + count + i) % samples.length] = batch[i];
+                        }
+                        count += taken;
+                        lock.notifyAll();
+                    }
+                }
+                else if (pollInterval > 0) {
+                    Thread.sleep(pollInterval);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // Stopped
+        }
+        catch (ModbusException e) {
+            logger.debug("FIFO reader {} stopped - {}", address, e.getMessage());
+            synchronized (lock) {
+                error = e;
+                running = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads the sequence number of the oldest value in the FIFO
+     *
+     * @return Sequence number
+     *
+     * @throws ModbusException if the slave cannot be read
+     */
+    private int readPointer() throws ModbusException {
+        return master.readMultipleRegisters(unitId, address, 1)[0].getValue();
+    }
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.procimg.ByteArrayFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+
+/**
+ * Moves a blob to or from the files of a slave with the WRITE FILE RECORD
+ * and READ FILE RECORD functions.
+ * <p>
+ * The blob is cut into chunks of whole registers that each fit in a single
+ * request, and a window of requests with their own transaction IDs is kept
+ * in flight on the connection so that the transfer is not held up by the
+ * round trip of every chunk.  A slave answers the requests of a connection
+ * in turn, so the responses are matched to the requests in order.
+ * <p>
+ * As in {@link ByteArrayFile}, register <tt>n</tt> of the blob is record
+ * <tt>n % 10000</tt> of file <tt>fileNumber + n / 10000</tt>, and a blob
+ * with an odd length is padded with a zero byte.
+ * <p>
+ * If the connection fails or times out, it is opened again and the transfer
+ * carries on from the first chunk that was not acknowledged, up to the
+ * number of retries.  {@link #getPosition()} gives the point reached, so a
+ * transfer that gives up can be resumed later from there.  Exceptions from
+ * the slave are not retried.
+ * <p>
+ * Modbus has no function for a slave to checksum a file, so writes are
+ * verified by comparing the echo of each chunk with what was sent and, when
+ * verification is on, by reading the files back and comparing the CRC32 of
+ * the result with that of the blob.
+ * <p>
+ * The transfer uses the transport of the connection directly, so the
+ * connection must not be used for anything else while it runs.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusFileTransfer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusFileTransfer.class);
+
+    /**
+     * The most registers sent in a chunk, which fits both a READ FILE RECORD
+     * response and a WRITE FILE RECORD request
+     */
+    public static final int MAX_CHUNK_WORDS = 120;
+
+    private final TCPMasterConnection connection;
+    private final Object lock;
+    private int unitId = Modbus.DEFAULT_UNIT_ID;
+    private int window = 4;
+    private int chunkWords = MAX_CHUNK_WORDS;
+    private int retries = Modbus.DEFAULT_RETRIES;
+    private boolean verify = true;
+    private int transactionID = 0;
+    private volatile int position;
+
+    /**
+     * Creates a transfer over the connection of a master.  The transfer
+     * locks the master while it runs so that its other methods wait for it.
+     *
+     * @param master Master to use
+     */
+    public ModbusFileTransfer(ModbusTCPMaster master) {
+        connection = master.getConnection();
+        lock = master;
+    }
+
+    /**
+     * Creates a transfer over a connection
+     *
+     * @param connection Connection to use
+     */
+    public ModbusFileTransfer(TCPMasterConnection connection) {
+        this.connection = connection;
+        lock = connection;
+    }
+
+    /**
+     * Returns the unit ID of the slave
+     *
+     * @return Unit ID
+     */
+    public int getUnitId() {
+        return unitId;
+    }
+
+    /**
+     * Sets the unit ID of the slave
+     *
+     * @param unitId Unit ID
+     */
+    public void setUnitId(int unitId) {
+        this.unitId = unitId;
+    }
+
+    /**
+     * Returns the number of requests kept in flight
+     *
+     * @return Window size
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Sets the number of requests kept in flight.  A window of one sends
+     * each chunk after the last one is acknowledged.
+     *
+     * @param window Window size, at least one
+     */
+    public void setWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * Returns the number of registers sent in each chunk
+     *
+     * @return Registers per chunk
+     */
+    public int getChunkWords() {
+        return chunkWords;
+    }
+
+    /**
+     * Sets the number of registers sent in each chunk
+     *
+     * @param chunkWords Registers per chunk, from 1 to {@link #MAX_CHUNK_WORDS}
+     */
+    public void setChunkWords(int chunkWords) {
+        if (chunkWords < 1 || chunkWords > MAX_CHUNK_WORDS) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkWords);
+        }
+        this.chunkWords = chunkWords;
+    }
+
+    /**
+     * Returns the number of times a failed connection is reopened in a row
+     *
+     * @return Retries
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of times a failed connection is reopened in a row
+     * before the transfer gives up
+     *
+     * @param retries Retries
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Returns true if writes are read back and checksummed
+     *
+     * @return True if verifying
+     */
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * Sets whether writes are read back and checksummed
+     *
+     * @param verify True to verify
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Returns the number of bytes of the blob transferred and acknowledged,
+     * which can be passed to a later call to resume the transfer
+     *
+     * @return Bytes transferred
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the CRC32 of a blob, as compared by verification
+     *
+     * @param data Blob
+     *
+     * @return CRC32 value
+     */
+    public static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    /**
+     * Writes a blob to the files of the slave
+     *
+     * @param fileNumber Number of the first file
+     * @param data       Blob to write
+     *
+     * @throws ModbusException if the transfer fails or does not verify
+     */
+    public void write(int fileNumber, byte[] data) throws ModbusException {
+        write(fileNumber, data, 0);
+    }
+
+    /**
+     * Writes a blob to the files of the slave, starting part of the way
+     * through to resume an earlier transfer.  The read back for verification
+     * always covers the whole blob.
+     *
+     * @param fileNumber Number of the first file
+     * @param data       Blob to write
+     * @param fromOffset Position in the blob to start from
+     *
+     * @throws ModbusException if the transfer fails or does not verify
+     */
+    public void write(int fileNumber, byte[] data, int fromOffset) throws ModbusException {
+        checkOffset(data.length, fromOffset);
+        byte[] buffer = data.length % 2 == 0 ? data : Arrays.copyOf(data, data.length + 1);
+        synchronized (lock) {
+            transfer(fileNumber, buffer, fromOffset, true);
+            if (verify) {
+                byte[] copy = new byte[buffer.length];
+                try {
+                    transfer(fileNumber, copy, 0, false);
+                }
+                finally {
+                    position = data.length;
+                }
+                if (checksum(copy) != checksum(buffer)) {
+                    position = 0;
+                    throw new ModbusException("Checksum of file %d does not match the data written", fileNumber);
+                }
+            }
+            position = data.length;
+        }
+    }
+
+    /**
+     * Reads a blob from the files of the slave
+     *
+     * @param fileNumber Number of the first file
+     * @param length     Number of bytes to read
+     *
+     * @return Blob
+     *
+     * @throws ModbusException if the transfer fails
+     */
+    public byte[] read(int fileNumber, int length) throws ModbusException {
+        byte[] data = new byte[length];
+        read(fileNumber, data, 0);
+        return data;
+    }
+
+    /**
+     * Reads a blob from the files of the slave, starting part of the way
+     * through to resume an earlier transfer into the same buffer
+     *
+     * @param fileNumber Number of the first file
+     * @param dest       Buffer to fill
+     * @param fromOffset Position in the blob to start from
+     *
+     * @throws ModbusException if the transfer fails
+     */
+    public void read(int fileNumber, byte[] dest, int fromOffset) throws ModbusException {
+        checkOffset(dest.length, fromOffset);
+        synchronized (lock) {
+            if (dest.length % 2 == 0) {
+                transfer(fileNumber, dest, fromOffset, false);
+            }
+            else {
+                byte[] buffer = Arrays.copyOf(dest, dest.length + 1);
+                try {
+                    transfer(fileNumber, buffer, fromOffset, false);
+                }
+                finally {
+                    System.arraycopy(buffer, 0, dest, 0, dest.length);
+                }
+            }
+            position = dest.length;
+        }
+    }
+
+    /**
+     * Checks that a resume position lies within the blob
+     *
+     * @param length     Length of the blob
+     * @param fromOffset Position to start from
+     */
+    private static void checkOffset(int length, int fromOffset) {
+        if (fromOffset < 0 || fromOffset > length) {
+            throw new IllegalArgumentException("Invalid offset: " + fromOffset);
+        }
+    }
+
+    /**
+     * Moves the registers of a buffer from a position to its end, keeping
+     * a window of chunks in flight and starting again from the first chunk
+     * not acknowledged when the connection fails
+     *
+     * @param fileNumber Number of the first file
+     * @param buffer     Buffer of whole registers
+     * @param fromOffset Position to start from, rounded down to a register
+     * @param write      True to write the buffer, false to read into it
+     *
+     * @throws ModbusException if the transfer fails
+     */
+    private void transfer(int fileNumber, byte[] buffer, int fromOffset, boolean write) throws ModbusException {
+        int words = buffer.length / 2;
+        int acknowledged = fromOffset / 2;
+        int failures = 0;
+        LinkedList<Chunk> pending = new LinkedList<Chunk>();
+        position = acknowledged * 2;
+        while (acknowledged < words) {
+            pending.clear();
+            try {
+                ModbusTCPTransport transport = connect();
+                int next = acknowledged;
+                while (acknowledged < words) {
+                    while (pending.size() < window && next < words) {
+                        Chunk chunk = new Chunk(nextTransactionID(), next, getChunkLength(next, words));
+                        transport.writeMessage(createRequest(fileNumber, buffer, chunk, write));
+                        pending.add(chunk);
+                        next += chunk.count;
+                    }
+                    ModbusResponse response = transport.readResponse();
+                    Chunk chunk = pending.removeFirst();
+                    if (response.getTransactionID() != chunk.transactionID) {
+                        throw new ModbusIOException("Expected transaction %d, got %d", chunk.transactionID, response.getTransactionID());
+                    }
+                    if (response instanceof ExceptionResponse) {
+                        drain(transport, pending);
+                        throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
+                    }
+                    checkResponse(fileNumber, buffer, chunk, write, response);
+                    acknowledged += chunk.count;
+                    position = acknowledged * 2;
+                    failures = 0;
+                }
+            }
+            catch (ModbusIOException e) {
+                if (++failures > retries) {
+                    throw e;
+                }
+                logger.debug("File transfer failed at byte {}, retrying - {}", acknowledged * 2, e.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the transport of the connection, opening it if need be
+     *
+     * @return Transport
+     *
+     * @throws ModbusIOException if the connection cannot be opened
+     */
+    private ModbusTCPTransport connect() throws ModbusIOException {
+        if (!connection.isConnected()) {
+            try {
+                connection.connect();
+            }
+            catch (Exception e) {
+                throw new ModbusIOException("Cannot connect - " + e.getMessage(), e);
+            }
+        }
+        return (ModbusTCPTransport)connection.getModbusTransport();
+    }
+
+    /**
+     * Reads the responses still in flight after a slave exception, so that
+     * the connection can be used again
+     *
+     * @param transport Transport to read from
+     * @param pending   Chunks in flight
+     */
+    private void drain(ModbusTCPTransport transport, LinkedList<Chunk> pending) {
+        try {
+            while (!pending.isEmpty()) {
+                transport.readResponse();
+                pending.removeFirst();
+            }
+        }
+        catch (ModbusIOException e) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Returns the number of registers in the chunk starting at a register,
+     * which never runs on into the next file
+     *
+     * @param first First register of the chunk
+     * @param words Registers in the buffer
+     *
+     * @return Registers in the chunk
+     */
+    private int getChunkLength(int first, int words) {
+        int count = Math.min(chunkWords, words - first);
+        return Math.min(count, ByteArrayFile.MAX_RECORDS - first % ByteArrayFile.MAX_RECORDS);
+    }
+
+    /**
+     * Returns the next transaction ID, skipping zero which a slave may
+     * treat as unchecked
+     *
+     * @return Transaction ID
+     */
+    private int nextTransactionID() {
+        if (transactionID >= Modbus.MAX_TRANSACTION_ID) {
+            transactionID = 0;
+        }
+        return ++transactionID;
+    }
+
+    /**
+     * Creates the request for a chunk
+     *
+     * @param fileNumber Number of the first file
+     * @param buffer     Buffer of the blob
+     * @param chunk      Chunk to request
+     * @param write      True to write, false to read
+     *
+     * @return Request
+     */
+    private ModbusRequest createRequest(int fileNumber, byte[] buffer, Chunk chunk, boolean write) {
+        int file = fileNumber + chunk.first / ByteArrayFile.MAX_RECORDS;
+        int record = chunk.first % ByteArrayFile.MAX_RECORDS;
+        ModbusRequest request;
+        if (write) {
+            WriteFileRecordRequest writeRequest = new WriteFileRecordRequest();
+            writeRequest.addRequest(new WriteFileRecordRequest.RecordRequest(file, record, buffer, chunk.first * 2, chunk.count));
+            request = writeRequest;
+        }
+        else {
+            ReadFileRecordRequest readRequest = new ReadFileRecordRequest();
+            readRequest.addRequest(new ReadFileRecordRequest.RecordRequest(file, record, chunk.count));
+            request = readRequest;
+        }
+        request.setUnitID(unitId);
+        request.setTransactionID(chunk.transactionID);
+        return request;
+    }
+
+    /**
+     * Checks the response to a chunk and copies in the registers read
+     *
+     * @param fileNumber Number of the first file
+     * @param buffer     Buffer of the blob
+     * @param chunk      Chunk requested
+     * @param write      True if written, false if read
+     * @param response   Response from the slave
+     *
+     * @throws ModbusIOException if the response does not match the request
+     */
+    private void checkResponse(int fileNumber, byte[] buffer, Chunk chunk, boolean write, ModbusResponse response) throws ModbusIOException {
+        if (write) {
+            if (!(response instanceof WriteFileRecordResponse) || ((WriteFileRecordResponse)response).getRequestCount() != 1) {
+                throw new ModbusIOException("Unexpected response to write of records");
+            }
+            WriteFileRecordResponse.RecordResponse record = ((WriteFileRecordResponse)response).getRecord(0);
+            byte[] echo = new byte[chunk.count * 2];
+            if (record.getFileNumber() != fileNumber + chunk.first / ByteArrayFile.MAX_RECORDS
+                    || record.getRecordNumber() != chunk.first % ByteArrayFile.MAX_RECORDS
+                    || record.getWordCount() != chunk.count) {
+                throw new ModbusIOException("Echo of records does not match the request");
+            }
+            record.getData(echo, 0);
+            for (int i = 0; i < echo.length; i++) {
+                if (echo[i] != buffer[chunk.first * 2 + i]) {
+                    throw new ModbusIOException("Echo of records does not match the data written");
+                }
+            }
+        }
+        else {
+            if (!(response instanceof ReadFileRecordResponse) || ((ReadFileRecordResponse)response).getRecordCount() != 1) {
+                throw new ModbusIOException("Unexpected response to read of records");
+            }
+            ReadFileRecordResponse.RecordResponse record = ((ReadFileRecordResponse)response).getRecord(0);
+            if (record.getWordCount() != chunk.count) {
+                throw new ModbusIOException("Read %d registers, expected %d", record.getWordCount(), chunk.count);
+            }
+            record.getData(buffer, chunk.first * 2);
+        }
+    }
+
+    /**
+     * A run of registers in flight
+     */
+    private static class Chunk {
+        final int transactionID;
+        final int first;
+        final int count;
+
+        Chunk(int transactionID, int first, int count) {
+            this.transactionID = transactionID;
+            this.first = first;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves round trips in control loops that write some registers and then
+ * read some back, by holding each register write until the next read from
+ * the same unit and sending the two as one READ/WRITE MULTIPLE REGISTERS
+ * transaction, which writes before it reads.
+ * <p>
+ * Writes to a unit are held one at a time.  A write that overlaps or runs
+ * on from the held one is merged into it, and any other write sends the
+ * held one on its own first.  Writes are also sent on their own by
+ * {@link #flush()}, when they are too long to be combined, and to units
+ * that do not support the combined function.  Whether a unit supports it
+ * is found out the first time a combined transaction is tried, an illegal
+ * function exception marking the unit as not supporting it, after which
+ * the write and the read are sent separately.  A unit can also be marked
+ * beforehand with {@link #setSupported(int, boolean)}.
+ * <p>
+ * Writes to one unit stay in order with the reads from it, but may be sent
+ * after reads from other units, so {@link #flush()} should be called where
+ * a write must have reached its unit.  If a combined transaction fails for
+ * any other reason, the held write is dropped as it may or may not have
+ * been made.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusReadWritePlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusReadWritePlanner.class);
+
+    /**
+     * The most registers that can be written in a combined transaction
+     */
+    public static final int MAX_COMBINED_WRITE = 121;
+
+    /**
+     * The most registers that can be read in a combined transaction
+     */
+    public static final int MAX_COMBINED_READ = 125;
+
+    private final AbstractModbusMaster master;
+    private final Map<Integer, Boolean> support = new HashMap<Integer, Boolean>();
+    private final Map<Integer, PendingWrite> pending = new LinkedHashMap<Integer, PendingWrite>();
+    private long combinedCount;
+
+    /**
+     * Creates a planner sending through a master
+     *
+     * @param master Master to use
+     */
+    public ModbusReadWritePlanner(AbstractModbusMaster master) {
+        this.master = master;
+    }
+
+    /**
+     * Returns true unless the unit is known not to support the combined
+     * function
+     *
+     * @param unitId Unit ID
+     *
+     * @return True if writes and reads are combined
+     */
+    public synchronized boolean isSupported(int unitId) {
+        Boolean supported = support.get(unitId);
+        return supported == null || supported;
+    }
+
+    /**
+     * Sets whether a unit supports the combined function
+     *
+     * @param unitId    Unit ID
+     * @param supported True if supported
+     */
+    public synchronized void setSupported(int unitId, boolean supported) {
+        support.put(unitId, supported);
+    }
+
+    /**
+     * Returns the number of combined transactions sent, each of which saved
+     * a round trip
+     *
+     * @return Combined transactions
+     */
+    public synchronized long getCombinedCount() {
+        return combinedCount;
+    }
+
+    /**
+     * Holds a write of registers until the next read from the unit
+     *
+     * @param unitId    Unit ID
+     * @param ref       Register to start writing to
+     * @param registers Values to write, which are copied
+     *
+     * @throws ModbusException if a write already held has to be sent first
+     *                         and fails
+     */
+    public synchronized void writeMultipleRegisters(int unitId, int ref, Register[] registers) throws ModbusException {
+        int[] values = new int[registers.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = registers[i].getValue();
+        }
+        PendingWrite write = pending.get(unitId);
+        if (write != null && write.merge(ref, values)) {
+            return;
+        }
+        if (write != null) {
+            pending.remove(unitId);
+            send(unitId, write);
+        }
+        pending.put(unitId, new PendingWrite(ref, values));
+    }
+
+    /**
+     * Reads registers from a unit, combined with any write held for it
+     *
+     * @param unitId Unit ID
+     * @param ref    Register to start reading from
+     * @param count  Number of registers
+     *
+     * @return Registers read after the held write
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public synchronized InputRegister[] readMultipleRegisters(int unitId, int ref, int count) throws ModbusException {
+        PendingWrite write = pending.remove(unitId);
+        if (write != null) {
+            if (isSupported(unitId) && write.values.length <= MAX_COMBINED_WRITE && count <= MAX_COMBINED_READ) {
+                try {
+                    InputRegister[] registers = master.readWriteMultipleRegisters(unitId, ref, count, write.ref, write.getRegisters());
+                    support.put(unitId, Boolean.TRUE);
+                    combinedCount++;
+                    return registers;
+                }
+                catch (ModbusSlaveException e) {
+                    if (!e.isType(Modbus.ILLEGAL_FUNCTION_EXCEPTION)) {
+                        throw e;
+                    }
+                    logger.debug("Unit {} does not support read/write multiple registers", unitId);
+                    support.put(unitId, Boolean.FALSE);
+                }
+            }
+            send(unitId, write);
+        }
+        return master.readMultipleRegisters(unitId, ref, count);
+    }
+
+    /**
+     * Sends every held write
+     *
+     * @throws ModbusException if a write fails, in which case it is dropped
+     *                         and the writes after it are still held
+     */
+    public synchronized void flush() throws ModbusException {
+        List<Integer> units = new ArrayList<Integer>(pending.keySet());
+        for (Integer unitId : units) {
+            flush(unitId);
+        }
+    }
+
+    /**
+     * Sends the write held for a unit
+     *
+     * @param unitId Unit ID
+     *
+     * @throws ModbusException if the write fails
+     */
+    public synchronized void flush(int unitId) throws ModbusException {
+        PendingWrite write = pending.remove(unitId);
+        if (write != null) {
+            send(unitId, write);
+        }
+    }
+
+    /**
+     * Sends a write on its own
+     *
+     * @param unitId Unit ID
+     * @param write  Write to send
+     *
+     * @throws ModbusException if the write fails
+     */
+    private void send(int unitId, PendingWrite write) throws ModbusException {
+        master.writeMultipleRegisters(unitId, write.ref, write.getRegisters());
+    }
+
+    /**
+     * A write of a run of registers
+     */
+    private static class PendingWrite {
+        int ref;
+        int[] values;
+
+        PendingWrite(int ref, int[] values) {
+            this.ref = ref;
+            this.values = values;
+        }
+
+        /**
+         * Merges a write that overlaps or runs on from this one, with its
+         * values taking the place of the ones already held
+         *
+         * @param ref    Register to start writing to
+         * @param values Values to write
+         *
+         * @return False if the write cannot be merged
+         */
+        boolean merge(int ref, int[] values) {
+            int start = Math.min(this.ref, ref);
+            int end = Math.max(this.ref + this.values.length, ref + values.length);
+            if (ref > this.ref + this.values.length || this.ref > ref + values.length
+                    || end - start > MAX_COMBINED_WRITE) {
+                return false;
+            }
+            int[] merged = new int[end - start];
+            System.arraycopy(this.values, 0, merged, this.ref - start, this.values.length);
+            System.arraycopy(values, 0, merged, ref - start, values.length);
+            this.ref = start;
+            this.values = merged;
+            return true;
+        }
+
+        Register[] getRegisters() {
+            Register[] registers = new Register[values.length];
+            for (int i = 0; i < registers.length; i++) {
+                registers[i] = new SimpleRegister(values[i]);
+            }
+            return registers;
+        }
+    }
+}
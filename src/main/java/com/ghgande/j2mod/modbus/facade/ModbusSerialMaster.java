@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.facade;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.io.SerialTimeoutCalculator;
 import com.ghgande.j2mod.modbus.net.SerialConnection;
 import com.ghgande.j2mod.modbus.util.SerialParameters;
 import org.slf4j.Logger;
@@ -97,6 +98,19 @@ public class ModbusSerialMaster extends AbstractModbusMaster {
         }
     }
 
+    /**
+     * Sets the calculator used to work out the response timeout of each
+     * request from the line settings and the expected response size.
+     * The timeout of this master remains the upper limit.
+     *
+     * @param timeoutCalculator Calculator or null to use the fixed timeout
+     */
+    public void setTimeoutCalculator(SerialTimeoutCalculator timeoutCalculator) {
+        if (connection != null) {
+            connection.setTimeoutCalculator(timeoutCalculator);
+        }
+    }
+
     @Override
     public AbstractModbusTransport getTransport() {
         return connection == null ? null : connection.getModbusTransport();
@@ -0,0 +1,683 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.facade;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.io.TraceSink;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.net.SerialConnection;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages a number of serial ports (buses), each with its own connection and
+ * a single worker thread so that every bus is strictly sequential while the
+ * buses themselves run in parallel.
+ * Requests are routed to a bus using the ports each unit ID is mapped to.
+ * The same unit ID can be mapped to more than one port, as is usual when
+ * every port has its own set of slaves, in which case the port name must
+ * be given with each request.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusSerialMasterManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusSerialMasterManager.class);
+
+    /**
+     * Time allowed on top of the timeouts of a request for it to finish when
+     * its port is closed
+     */
+    private static final long CLOSE_MARGIN = 1000L;
+
+    private final Map<String, SerialBus> buses = new LinkedHashMap<String, SerialBus>();
+    private final ConcurrentMap<Integer, List<SerialBus>> routes = new ConcurrentHashMap<Integer, List<SerialBus>>();
+    private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private volatile int retries = Modbus.DEFAULT_RETRIES;
+    private volatile long connectedTime;
+    private volatile ModbusMetrics metrics;
+    private volatile TraceSink traceSink;
+    private volatile long traceThreshold;
+
+    /**
+     * Adds a serial port to be managed.  The port is identified by the port
+     * name in the parameters and is opened when {@link #connect()} is called
+     *
+     * @param params Serial parameters of the port
+     */
+    public synchronized void addPort(SerialParameters params) {
+        if (params == null || params.getPortName() == null) {
+            throw new IllegalArgumentException("Serial parameters must specify a port name");
+        }
+        if (buses.containsKey(params.getPortName())) {
+            throw new IllegalArgumentException(String.format("Port %s is already managed", params.getPortName()));
+        }
+        buses.put(params.getPortName(), new SerialBus(params));
+    }
+
+    /**
+     * Maps the unit ID to the named port.  A unit ID can be mapped to more
+     * than one port, each being a different slave.
+     *
+     * @param unitId   Unit ID of the slave
+     * @param portName Port the slave is attached to
+     */
+    public synchronized void mapUnit(int unitId, String portName) {
+        SerialBus bus = getBus(portName);
+        List<SerialBus> ports = routes.get(unitId);
+        if (ports == null) {
+            ports = new CopyOnWriteArrayList<SerialBus>();
+            routes.put(unitId, ports);
+        }
+        if (!ports.contains(bus)) {
+            ports.add(bus);
+        }
+    }
+
+    /**
+     * Removes the routes for the unit ID on all ports
+     *
+     * @param unitId Unit ID of the slave
+     */
+    public synchronized void unmapUnit(int unitId) {
+        routes.remove(unitId);
+    }
+
+    /**
+     * Removes the route for the unit ID on the named port
+     *
+     * @param unitId   Unit ID of the slave
+     * @param portName Port the slave is attached to
+     */
+    public synchronized void unmapUnit(int unitId, String portName) {
+        List<SerialBus> ports = routes.get(unitId);
+        if (ports != null) {
+            ports.remove(getBus(portName));
+            if (ports.isEmpty()) {
+                routes.remove(unitId);
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the port that the unit ID is routed to
+     *
+     * @param unitId Unit ID of the slave
+     *
+     * @return Port name or null if the unit isn't mapped or is mapped to
+     * more than one port
+     */
+    public String getPortName(int unitId) {
+        List<SerialBus> ports = routes.get(unitId);
+        return ports == null || ports.size() != 1 ? null : ports.get(0).params.getPortName();
+    }
+
+    /**
+     * Returns the names of all the ports that the unit ID is mapped to
+     *
+     * @param unitId Unit ID of the slave
+     *
+     * @return Set of port names, empty if the unit isn't mapped
+     */
+    public Set<String> getPortNames(int unitId) {
+        Set<String> names = new LinkedHashSet<String>();
+        List<SerialBus> ports = routes.get(unitId);
+        if (ports != null) {
+            for (SerialBus bus : ports) {
+                names.add(bus.params.getPortName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns the names of all the managed ports
+     *
+     * @return Set of port names
+     */
+    public synchronized Set<String> getPortNames() {
+        return new LinkedHashSet<String>(buses.keySet());
+    }
+
+    /**
+     * Opens all the managed ports and starts their workers.
+     * If any port fails to open, all the ports are closed again.
+     *
+     * @throws Exception if a port cannot be opened
+     */
+    public synchronized void connect() throws Exception {
+        try {
+            for (SerialBus bus : buses.values()) {
+                bus.open();
+            }
+            connectedTime = System.nanoTime();
+        }
+        catch (Exception e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops all the workers, cancelling any queued requests, and closes the
+     * ports once the requests being sent have finished.
+     * All the workers are stopped before waiting for any of them, and the
+     * manager lock is not held while waiting, so the time taken does not
+     * grow with the number of ports.
+     */
+    public void disconnect() {
+        List<SerialBus> closing;
+        synchronized (this) {
+            closing = new ArrayList<SerialBus>(buses.values());
+        }
+        List<ThreadPoolExecutor> stopping = new ArrayList<ThreadPoolExecutor>(closing.size());
+        for (SerialBus bus : closing) {
+            stopping.add(bus.stop());
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos((long)timeout * (retries + 1) + CLOSE_MARGIN);
+        for (int i = 0; i < closing.size(); i++) {
+            closing.get(i).close(stopping.get(i), deadline);
+        }
+    }
+
+    /**
+     * Queues the request on the bus that its unit ID is mapped to
+     *
+     * @param request Request to send
+     *
+     * @return Future that completes with the response
+     *
+     * @throws ModbusException if the unit isn't mapped to exactly one port
+     *                         or the port isn't open
+     */
+    public Future<ModbusResponse> submit(ModbusRequest request) throws ModbusException {
+        return submit(null, request);
+    }
+
+    /**
+     * Queues the request on the named port, which its unit ID must be
+     * mapped to
+     *
+     * @param portName Port the slave is attached to, or null to use the
+     *                 only port the unit ID is mapped to
+     * @param request  Request to send
+     *
+     * @return Future that completes with the response
+     *
+     * @throws ModbusException if the unit isn't mapped to the port or the
+     *                         port isn't open
+     */
+    public Future<ModbusResponse> submit(String portName, ModbusRequest request) throws ModbusException {
+        if (request == null) {
+            throw new ModbusException("Invalid request");
+        }
+        return getRoute(portName, request.getUnitID()).submit(request);
+    }
+
+    /**
+     * Sends the request on the bus that its unit ID is mapped to and waits
+     * for the response
+     *
+     * @param request Request to send
+     *
+     * @return Response from the slave
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public ModbusResponse execute(ModbusRequest request) throws ModbusException {
+        return execute(null, request);
+    }
+
+    /**
+     * Sends the request on the named port and waits for the response
+     *
+     * @param portName Port the slave is attached to, or null to use the
+     *                 only port the unit ID is mapped to
+     * @param request  Request to send
+     *
+     * @return Response from the slave
+     *
+     * @throws ModbusException if an I/O error, a slave exception or
+     *                         a transaction error occurs.
+     */
+    public ModbusResponse execute(String portName, ModbusRequest request) throws ModbusException {
+        Future<ModbusResponse> future = submit(portName, request);
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new ModbusException("Interrupted waiting for response", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ModbusException) {
+                throw (ModbusException)e.getCause();
+            }
+            throw new ModbusException("Transaction failed", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the receive timeout in milliseconds
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the receive timeout of all the ports
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public synchronized void setTimeout(int timeout) {
+        this.timeout = timeout;
+        for (SerialBus bus : buses.values()) {
+            bus.connection.setTimeout(timeout);
+        }
+    }
+
+    /**
+     * Returns the number of retries used for each transaction
+     *
+     * @return Number of retries
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of retries used for each transaction
+     *
+     * @param retries Number of retries
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Returns the metrics that transactions are recorded in
+     *
+     * @return Metrics or null if not recording
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to record the transactions of all the ports in.
+     * The time each request waits in the queue of its port is recorded as
+     * the queue wait.
+     *
+     * @param metrics Metrics or null to stop recording
+     */
+    public synchronized void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+        for (SerialBus bus : buses.values()) {
+            bus.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Returns the sink that transaction traces are reported to
+     *
+     * @return Sink or null if not tracing
+     */
+    public TraceSink getTraceSink() {
+        return traceSink;
+    }
+
+    /**
+     * Reports the trace of every transaction on any of the ports that takes
+     * at least the threshold, is retried or fails to the sink
+     *
+     * @param traceSink Sink or null to stop tracing
+     * @param threshold Threshold in milliseconds, 0 to report every transaction
+     */
+    public synchronized void setTraceSink(TraceSink traceSink, long threshold) {
+        this.traceSink = traceSink;
+        this.traceThreshold = threshold;
+        for (SerialBus bus : buses.values()) {
+            bus.setTraceSink(traceSink, threshold);
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent on the port
+     *
+     * @param portName Name of the port
+     *
+     * @return Queue depth
+     */
+    public synchronized int getQueueDepth(String portName) {
+        return getBus(portName).getQueueDepth();
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent across all ports
+     *
+     * @return Queue depth
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (SerialBus bus : buses.values()) {
+            depth += bus.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of transactions completed successfully on the port
+     *
+     * @param portName Name of the port
+     *
+     * @return Number of transactions
+     */
+    public synchronized long getCompletedCount(String portName) {
+        return getBus(portName).completed.get();
+    }
+
+    /**
+     * Returns the number of transactions completed successfully across all ports
+     *
+     * @return Number of transactions
+     */
+    public synchronized long getCompletedCount() {
+        long count = 0;
+        for (SerialBus bus : buses.values()) {
+            count += bus.completed.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of transactions that failed on the port
+     *
+     * @param portName Name of the port
+     *
+     * @return Number of transactions
+     */
+    public synchronized long getFailedCount(String portName) {
+        return getBus(portName).failed.get();
+    }
+
+    /**
+     * Returns the number of transactions that failed across all ports
+     *
+     * @return Number of transactions
+     */
+    public synchronized long getFailedCount() {
+        long count = 0;
+        for (SerialBus bus : buses.values()) {
+            count += bus.failed.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the aggregate throughput of all the ports since they were connected
+     *
+     * @return Completed transactions per second
+     */
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - connectedTime;
+        if (connectedTime == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return getCompletedCount() * 1000000000.0 / elapsed;
+    }
+
+    /**
+     * Opens the connection of a managed port and creates the transaction
+     * used to send requests on it
+     *
+     * @param connection Connection of the port
+     *
+     * @return Transaction for the port
+     *
+     * @throws Exception if the port cannot be opened
+     */
+    protected ModbusTransaction openTransaction(SerialConnection connection) throws Exception {
+        connection.open();
+        return connection.getModbusTransport().createTransaction();
+    }
+
+    /**
+     * Closes the connection of a managed port once its worker has stopped
+     *
+     * @param connection Connection of the port
+     */
+    protected void closeConnection(SerialConnection connection) {
+        connection.close();
+    }
+
+    /**
+     * Returns the bus for the port and unit ID
+     *
+     * @param portName Name of the port or null for the only port the unit is mapped to
+     * @param unitId   Unit ID of the slave
+     *
+     * @return Bus
+     *
+     * @throws ModbusException if there is no route
+     */
+    private SerialBus getRoute(String portName, int unitId) throws ModbusException {
+        List<SerialBus> ports = routes.get(unitId);
+        if (ports != null) {
+            if (portName == null) {
+                if (ports.size() == 1) {
+                    return ports.get(0);
+                }
+                if (ports.size() > 1) {
+                    throw new ModbusException("Unit ID %d is mapped to more than one port", unitId);
+                }
+            }
+            else {
+                for (SerialBus bus : ports) {
+                    if (portName.equals(bus.params.getPortName())) {
+                        return bus;
+                    }
+                }
+            }
+        }
+        if (portName == null) {
+            throw new ModbusException("No port mapped for unit ID %d", unitId);
+        }
+        throw new ModbusException("Unit ID %d is not mapped to port %s", unitId, portName);
+    }
+
+    /**
+     * Returns the managed bus for the port name
+     *
+     * @param portName Name of the port
+     *
+     * @return Bus
+     */
+    private SerialBus getBus(String portName) {
+        SerialBus bus = buses.get(portName);
+        if (bus == null) {
+            throw new IllegalArgumentException(String.format("Port %s is not managed", portName));
+        }
+        return bus;
+    }
+
+    /**
+     * A single serial port with its own worker thread
+     */
+    private class SerialBus {
+
+        private final SerialParameters params;
+        private final SerialConnection connection;
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private ThreadPoolExecutor executor;
+        private ModbusTransaction transaction;
+
+        SerialBus(SerialParameters params) {
+            this.params = params;
+            connection = new SerialConnection(params);
+            connection.setTimeout(timeout);
+        }
+
+        synchronized void open() throws Exception {
+            if (transaction == null) {
+                transaction = openTransaction(connection);
+                transaction.setMetrics(metrics);
+                transaction.setTraceSink(traceSink);
+                transaction.setTraceThreshold(traceThreshold);
+            }
+            if (executor == null) {
+                executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "j2mod-serial-" + params.getPortName());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            logger.debug("Opened managed port {}", params.getPortName());
+        }
+
+        /**
+         * Stops the worker, cancelling any queued requests.  A request
+         * being sent is left to finish.
+         *
+         * @return Worker being stopped or null if it wasn't running
+         */
+        ThreadPoolExecutor stop() {
+            ThreadPoolExecutor stopping;
+            synchronized (this) {
+                stopping = executor;
+                executor = null;
+            }
+            if (stopping != null) {
+                for (Runnable queued : stopping.shutdownNow()) {
+                    if (queued instanceof Future) {
+                        ((Future<?>)queued).cancel(false);
+                    }
+                }
+            }
+            return stopping;
+        }
+
+        /**
+         * Closes the port once a request being sent has finished with it.
+         * The bus lock is not held while waiting so that the worker can
+         * still take its copy of the transaction.
+         *
+         * @param stopping Worker returned by {@link #stop()} or null
+         * @param deadline Latest time to wait until, from {@link System#nanoTime()}
+         */
+        void close(ThreadPoolExecutor stopping, long deadline) {
+            if (stopping != null) {
+                try {
+                    if (!stopping.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                        logger.warn("Request on port {} did not finish before the port was closed", params.getPortName());
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                // Leave the port alone if it was opened again while waiting
+                if (transaction != null && executor == null) {
+                    closeConnection(connection);
+                    transaction = null;
+                }
+            }
+        }
+
+        synchronized Future<ModbusResponse> submit(final ModbusRequest request) throws ModbusException {
+            if (executor == null) {
+                throw new ModbusException("Port %s is not open", params.getPortName());
+            }
+            final long queued = System.nanoTime();
+            return executor.submit(new Callable<ModbusResponse>() {
+                @Override
+                public ModbusResponse call() throws Exception {
+                    ModbusMetrics current = metrics;
+                    if (current != null) {
+                        current.recordQueueWait(System.nanoTime() - queued);
+                    }
+                    return execute(request);
+                }
+            });
+        }
+
+        /**
+         * Executes the request - only ever called from the single worker thread
+         *
+         * @param request Request to send
+         *
+         * @return Response
+         *
+         * @throws ModbusException if the transaction fails
+         */
+        private ModbusResponse execute(ModbusRequest request) throws ModbusException {
+            ModbusTransaction current = getTransaction();
+            if (current == null) {
+                throw new ModbusException("Port %s is not open", params.getPortName());
+            }
+            try {
+                current.setRetries(retries);
+                current.setRequest(request);
+                current.execute();
+                completed.incrementAndGet();
+                return current.getResponse();
+            }
+            catch (ModbusException e) {
+                failed.incrementAndGet();
+                throw e;
+            }
+        }
+
+        synchronized ModbusTransaction getTransaction() {
+            return transaction;
+        }
+
+        synchronized void setMetrics(ModbusMetrics metrics) {
+            if (transaction != null) {
+                transaction.setMetrics(metrics);
+            }
+        }
+
+        synchronized void setTraceSink(TraceSink traceSink, long threshold) {
+            if (transaction != null) {
+                transaction.setTraceSink(traceSink);
+                transaction.setTraceThreshold(threshold);
+            }
+        }
+
+        synchronized int getQueueDepth() {
+            return executor == null ? 0 : executor.getQueue().size();
+        }
+    }
+}
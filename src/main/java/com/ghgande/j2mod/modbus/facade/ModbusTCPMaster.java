@@ -108,6 +108,11 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
         }
     }
 
+    @Override
+    public synchronized boolean isConnected() {
+        return connection != null && connection.isConnected();
+    }
+
     /**
      * Tests if a constant connection is maintained or if a new
      * connection is established for every transaction.
@@ -141,6 +146,15 @@ public class ModbusTCPMaster extends AbstractModbusMaster {
         }
     }
 
+    /**
+     * Returns the connection to the slave
+     *
+     * @return Connection
+     */
+    public TCPMasterConnection getConnection() {
+        return connection;
+    }
+
     @Override
     public AbstractModbusTransport getTransport() {
         return connection == null ? null : connection.getModbusTransport();
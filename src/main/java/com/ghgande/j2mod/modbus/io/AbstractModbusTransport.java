@@ -17,11 +17,16 @@ package com.ghgande.j2mod.modbus.io;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusFunctionRegistry;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusRequestPool;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Interface defining the I/O mechanisms for
@@ -34,6 +39,11 @@ import java.io.IOException;
 public abstract class AbstractModbusTransport {
 
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
+    private final List<AbstractTransportListener> transportListeners = new CopyOnWriteArrayList<AbstractTransportListener>();
+    private final List<AbstractTransportListener> frameListeners = new CopyOnWriteArrayList<AbstractTransportListener>();
+    private volatile long responseStartTime;
+    private volatile long responseEndTime;
+    private ModbusRequestPool requestPool;
 
     /**
      * Set the socket timeout
@@ -44,6 +54,128 @@ public abstract class AbstractModbusTransport {
         timeout = time;
     }
 
+    /**
+     * Returns the address of the local end of a network transport
+     *
+     * @return Socket address or null if not known or not a network transport
+     */
+    public InetSocketAddress getLocalSocketAddress() {
+        return null;
+    }
+
+    /**
+     * Returns the address of the remote end of a network transport that the
+     * message was received from or is being sent to
+     *
+     * @param msg Message being sent or received
+     *
+     * @return Socket address or null if not known or not a network transport
+     */
+    public InetSocketAddress getRemoteSocketAddress(ModbusMessage msg) {
+        return null;
+    }
+
+    /**
+     * Returns when the first byte of the last response arrived
+     *
+     * @return Time from <tt>System.nanoTime()</tt> or 0 if no response has been read
+     */
+    public long getResponseStartTime() {
+        return responseStartTime;
+    }
+
+    /**
+     * Returns when the last response had been completely received, before
+     * it was decoded
+     *
+     * @return Time from <tt>System.nanoTime()</tt> or 0 if no response has been read
+     */
+    public long getResponseEndTime() {
+        return responseEndTime;
+    }
+
+    /**
+     * Records that the first byte of a response has arrived
+     */
+    protected final void markResponseStart() {
+        responseStartTime = System.nanoTime();
+    }
+
+    /**
+     * Records that a response has been completely received and is about to be decoded
+     */
+    protected final void markResponseEnd() {
+        responseEndTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the pool that incoming requests are decoded into
+     *
+     * @return Request pool or null if a new request is created for every frame
+     */
+    public ModbusRequestPool getRequestPool() {
+        return requestPool;
+    }
+
+    /**
+     * Sets the pool that incoming requests are decoded into. The requests
+     * and their responses are then reused, so the transport must only be
+     * read by a single thread and nothing may keep hold of a request once
+     * its response has been written.
+     *
+     * @param requestPool Request pool or null to create a new request for every frame
+     */
+    public void setRequestPool(ModbusRequestPool requestPool) {
+        this.requestPool = requestPool;
+    }
+
+    /**
+     * Returns the request to decode an incoming frame into, taken from the
+     * request pool if there is one
+     *
+     * @param functionCode Function code of the frame
+     *
+     * @return Request for the function code
+     */
+    protected ModbusRequest createRequest(int functionCode) {
+        return createRequest(functionCode, ModbusFunctionRegistry.NO_MEI_TYPE);
+    }
+
+    /**
+     * Returns the request to decode an incoming frame into, taken from the
+     * request pool if there is one
+     *
+     * @param functionCode Function code of the frame
+     * @param meiType      MEI type of the frame or <tt>NO_MEI_TYPE</tt>
+     *
+     * @return Request for the function code
+     */
+    protected ModbusRequest createRequest(int functionCode, int meiType) {
+        ModbusRequestPool pool = requestPool;
+        if (pool == null) {
+            return ModbusRequest.createModbusRequest(functionCode, meiType);
+        }
+        return pool.getRequest(functionCode, meiType);
+    }
+
+    /**
+     * Returns the MEI type of a received frame, the first byte after the
+     * function code, if it has the MEI function code
+     *
+     * @param functionCode Function code of the frame
+     * @param frame        Buffer holding the frame
+     * @param offset       Position of the byte after the function code
+     * @param end          Position after the end of the frame
+     *
+     * @return MEI type or <tt>NO_MEI_TYPE</tt>
+     */
+    protected static int getMEIType(int functionCode, byte[] frame, int offset, int end) {
+        if (functionCode == Modbus.READ_MEI && offset < end) {
+            return frame[offset] & 0xFF;
+        }
+        return ModbusFunctionRegistry.NO_MEI_TYPE;
+    }
+
     /**
      * Closes the raw input and output streams of
      * this <tt>ModbusTransport</tt>.
@@ -100,4 +232,179 @@ public abstract class AbstractModbusTransport {
      */
     public abstract ModbusResponse readResponse() throws ModbusIOException;
 
-}
\ No newline at end of file
+    /**
+     * Adds a listener to the transport to be called when an event occurs.
+     * The listener list is copy-on-write so listeners can be added and removed
+     * at any time without blocking the I/O path.
+     *
+     * @param listener Listener callback
+     */
+    public void addTransportListener(AbstractTransportListener listener) {
+        if (listener != null) {
+            transportListeners.add(listener);
+            if (listener.isFrameListener()) {
+                frameListeners.add(listener);
+            }
+        }
+    }
+
+    /**
+     * Removes a listener from the event callback chain
+     *
+     * @param listener Listener to remove
+     */
+    public void removeTransportListener(AbstractTransportListener listener) {
+        if (listener != null) {
+            transportListeners.remove(listener);
+            frameListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Clears the list of transport listeners
+     */
+    public void clearTransportListeners() {
+        transportListeners.clear();
+        frameListeners.clear();
+    }
+
+    /**
+     * Calls any listeners before a message is written
+     *
+     * @param msg Message to be sent
+     */
+    protected final void fireBeforeMessageWrite(ModbusMessage msg) {
+        if (!transportListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : transportListeners) {
+                listener.beforeMessageWrite(this, msg, now);
+            }
+        }
+    }
+
+    /**
+     * Calls any listeners after a message has been written
+     *
+     * @param msg Message sent
+     */
+    protected final void fireAfterMessageWrite(ModbusMessage msg) {
+        if (!transportListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : transportListeners) {
+                listener.afterMessageWrite(this, msg, now);
+            }
+        }
+    }
+
+    /**
+     * Returns true if any listeners want the bytes of each frame, so that
+     * they are only gathered when needed
+     *
+     * @return True if there are frame listeners
+     */
+    protected final boolean hasFrameListeners() {
+        return !frameListeners.isEmpty();
+    }
+
+    /**
+     * Calls any listeners with the bytes of a frame that has been written
+     *
+     * @param frame  Buffer holding the frame
+     * @param offset Offset of the frame in the buffer
+     * @param length Length of the frame
+     * @param remote Address the frame was sent to or null for a serial port
+     */
+    protected final void fireAfterFrameWrite(byte[] frame, int offset, int length, InetSocketAddress remote) {
+        if (!frameListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : frameListeners) {
+                listener.afterFrameWrite(this, frame, offset, length, remote, now);
+            }
+        }
+    }
+
+    /**
+     * Calls any listeners with the bytes of a frame that has been read,
+     * whether or not it could be decoded
+     *
+     * @param frame  Buffer holding the frame
+     * @param offset Offset of the frame in the buffer
+     * @param length Length of the frame
+     * @param remote Address the frame was received from or null for a serial port
+     */
+    protected final void fireAfterFrameRead(byte[] frame, int offset, int length, InetSocketAddress remote) {
+        if (!frameListeners.isEmpty() && length > 0) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : frameListeners) {
+                listener.afterFrameRead(this, frame, offset, length, remote, now);
+            }
+        }
+    }
+
+    /**
+     * Calls any listeners before a request is read
+     */
+    protected final void fireBeforeRequestRead() {
+        if (!transportListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : transportListeners) {
+                listener.beforeRequestRead(this, now);
+            }
+        }
+    }
+
+    /**
+     * Calls any listeners after a request has been read
+     *
+     * @param req Request received
+     */
+    protected final void fireAfterRequestRead(ModbusRequest req) {
+        if (!transportListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : transportListeners) {
+                listener.afterRequestRead(this, req, now);
+            }
+        }
+    }
+
+    /**
+     * Calls any listeners before a response is read
+     */
+    protected final void fireBeforeResponseRead() {
+        if (!transportListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : transportListeners) {
+                listener.beforeResponseRead(this, now);
+            }
+        }
+    }
+
+    /**
+     * Calls any listeners after a response has been read
+     *
+     * @param res Response received
+     */
+    protected final void fireAfterResponseRead(ModbusResponse res) {
+        if (!transportListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : transportListeners) {
+                listener.afterResponseRead(this, res, now);
+            }
+        }
+    }
+
+    /**
+     * Calls any listeners when a read or write fails
+     *
+     * @param ex Exception that is about to be thrown
+     */
+    protected final void fireTransportError(ModbusIOException ex) {
+        if (!transportListeners.isEmpty()) {
+            long now = System.nanoTime();
+            for (AbstractTransportListener listener : transportListeners) {
+                listener.transportError(this, ex, now);
+            }
+        }
+    }
+
+}
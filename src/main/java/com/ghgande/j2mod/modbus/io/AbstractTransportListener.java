@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Any class that wants to listen for the beginning and ending of read/writes
+ * on any transport (TCP, UDP or serial) should extend this class and override
+ * the events it is interested in.
+ * <p>
+ * Every event carries a timestamp taken from <tt>System.nanoTime()</tt> at the
+ * moment the event occurred, so the difference between two events of the same
+ * transport is an accurate elapsed time.
+ * Listeners are called on the I/O thread of the transport so they should
+ * return quickly.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+abstract public class AbstractTransportListener {
+
+    /**
+     * Will be called whenever a message is about to be written
+     *
+     * @param transport Transport being used
+     * @param msg       Message to be written
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void beforeMessageWrite(AbstractModbusTransport transport, ModbusMessage msg, long timestamp) {
+    }
+
+    /**
+     * Will be called whenever a message has been written
+     *
+     * @param transport Transport being used
+     * @param msg       Message written
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void afterMessageWrite(AbstractModbusTransport transport, ModbusMessage msg, long timestamp) {
+    }
+
+    /**
+     * Returns true if the listener wants the bytes of each frame.  The
+     * frame events are only called for listeners that do, so that the
+     * transports do no extra work for the others.
+     *
+     * @return True to receive {@link #afterFrameWrite} and {@link #afterFrameRead}
+     */
+    public boolean isFrameListener() {
+        return false;
+    }
+
+    /**
+     * Called with the bytes of a frame once they have been written, exactly
+     * as they were sent including any header and checksum
+     *
+     * @param transport Transport being used
+     * @param frame     Buffer holding the frame - only valid during the call
+     * @param offset    Offset of the frame in the buffer
+     * @param length    Length of the frame
+     * @param remote    Address the frame was sent to or null for a serial port
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void afterFrameWrite(AbstractModbusTransport transport, byte[] frame, int offset, int length, InetSocketAddress remote, long timestamp) {
+    }
+
+    /**
+     * Called with the bytes of every frame read, exactly as they were
+     * received.  This includes frames that are truncated, fail their
+     * checksum or cannot be decoded, which are not passed to the other events.
+     *
+     * @param transport Transport being used
+     * @param frame     Buffer holding the frame - only valid during the call
+     * @param offset    Offset of the frame in the buffer
+     * @param length    Length of the frame
+     * @param remote    Address the frame was received from or null for a serial port
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void afterFrameRead(AbstractModbusTransport transport, byte[] frame, int offset, int length, InetSocketAddress remote, long timestamp) {
+    }
+
+    /**
+     * Called before a request is read
+     *
+     * @param transport Transport being used
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void beforeRequestRead(AbstractModbusTransport transport, long timestamp) {
+    }
+
+    /**
+     * Called whenever a request has been received
+     *
+     * @param transport Transport being used
+     * @param req       Request received
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void afterRequestRead(AbstractModbusTransport transport, ModbusRequest req, long timestamp) {
+    }
+
+    /**
+     * Called before a response is read
+     *
+     * @param transport Transport being used
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void beforeResponseRead(AbstractModbusTransport transport, long timestamp) {
+    }
+
+    /**
+     * Called whenever a response has been received
+     *
+     * @param transport Transport being used
+     * @param res       Response received
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void afterResponseRead(AbstractModbusTransport transport, ModbusResponse res, long timestamp) {
+    }
+
+    /**
+     * Called whenever a read or write fails, including timeouts
+     *
+     * @param transport Transport being used
+     * @param ex        Exception that will be thrown to the caller
+     * @param timestamp Time of the event in nanoseconds
+     */
+    public void transportError(AbstractModbusTransport transport, ModbusIOException ex, long timestamp) {
+    }
+}
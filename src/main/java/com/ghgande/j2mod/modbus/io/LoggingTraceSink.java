@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes transaction traces to the log as a single line of
+ * <tt>key=value</tt> pairs, as a warning if the transaction failed and
+ * otherwise at info level.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class LoggingTraceSink implements TraceSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingTraceSink.class);
+
+    @Override
+    public void traceEvent(TransactionTrace trace) {
+        if (trace.getError() != null) {
+            logger.warn("Failed transaction {}", trace);
+        }
+        else {
+            logger.info("Slow transaction {}", trace);
+        }
+    }
+}
@@ -16,12 +16,11 @@
 package com.ghgande.j2mod.modbus.io;
 
 import com.ghgande.j2mod.modbus.Modbus;
-import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
-import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.util.ModbusChecksum;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +43,8 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
     private final BytesInputStream byteInputStream = new BytesInputStream(inBuffer);         //to read message from
     private final BytesOutputStream byteInputOutputStream = new BytesOutputStream(inBuffer);     //to buffer message to
     private final BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);      //write frames
+    private final byte[] frameBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH * 2 + 5];     //encoded frame (: PDU LRC CR LF)
+    private final byte[] lrcBuffer = new byte[1];
 
     /**
      * Constructs a new <tt>MobusASCIITransport</tt> instance.
@@ -60,19 +61,26 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                 msg.writeTo(byteOutputStream);
                 byte[] buf = byteOutputStream.getBuffer();
                 int len = byteOutputStream.size();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Writing: {}", ModbusUtil.toHex(buf, 0, len));
+                }
 
-                //write message
-                writeAsciiByte(FRAME_START);               //FRAMESTART
-                writeAsciiBytes(buf, len);                 //PDU
-                logger.debug("Writing: {}", ModbusUtil.toHex(buf, 0, len));
-                writeAsciiByte(calculateLRC(buf, 0, len)); //LRC
-                writeAsciiByte(FRAME_END);                 //FRAMEEND
+                //build the whole frame and write it in one go
+                int pos = 0;
+                frameBuffer[pos++] = ':';                                   //FRAMESTART
+                pos += encodeAscii(buf, 0, len, frameBuffer, pos);          //PDU
+                lrcBuffer[0] = (byte)calculateLRC(buf, 0, len);
+                pos += encodeAscii(lrcBuffer, 0, 1, frameBuffer, pos);      //LRC
+                frameBuffer[pos++] = '\r';                                  //FRAMEEND
+                frameBuffer[pos++] = '\n';
+                writeBytes(frameBuffer, pos);
+                fireAfterFrameWrite(frameBuffer, 0, pos, null);
                 byteOutputStream.reset();
                 // clears out the echoed message
                 // for RS485
                 if (echo) {
                     // read back the echoed message
-                    readEcho(len + 3);
+                    readEcho(pos);
                 }
             }
         }
@@ -95,37 +103,47 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                     // Nothing to do
                 }
 
-                //2. Read to FRAME_END
+                //2. Check the unit ID and skip frames for other units
+                in = readAsciiByte();
+                if (in == -1) {
+                    throw new IOException("I/O exception - Serial port timeout");
+                }
+                if (in == FRAME_END || in == FRAME_START) {
+                    continue;
+                }
+                if (!isUnitServed(in)) {
+                    skipAsciiFrame();
+                    continue;
+                }
+
+                //3. Read to FRAME_END
                 synchronized (inBuffer) {
-                    byteInputOutputStream.reset();
-                    while ((in = readAsciiByte()) != FRAME_END) {
-                        if (in == -1) {
-                            throw new IOException("I/O exception - Serial port timeout");
-                        }
+                    try {
+                        byteInputOutputStream.reset();
                         byteInputOutputStream.writeByte(in);
+                        while ((in = readAsciiByte()) != FRAME_END) {
+                            if (in == -1) {
+                                throw new IOException("I/O exception - Serial port timeout");
+                            }
+                            byteInputOutputStream.writeByte(in);
+                        }
+                        //check LRC
+                        if (inBuffer[byteInputOutputStream.size() - 1] != calculateLRC(inBuffer, 0, byteInputOutputStream.size(), 1)) {
+                            continue;
+                        }
+                        byteInputStream.reset(inBuffer, byteInputOutputStream.size());
+                        byteInputStream.readUnsignedByte();
+                        int functionCode = byteInputStream.readUnsignedByte();
+                        //create request
+                        request = createRequest(functionCode, getMEIType(functionCode, inBuffer, 2, byteInputOutputStream.size() - 1));
+                        request.setHeadless();
+                        //read message
+                        byteInputStream.reset(inBuffer, byteInputOutputStream.size());
+                        request.readFrom(byteInputStream);
                     }
-                    //check LRC
-                    if (inBuffer[byteInputOutputStream.size() - 1] != calculateLRC(inBuffer, 0, byteInputOutputStream.size(), 1)) {
-                        continue;
-                    }
-                    byteInputStream.reset(inBuffer, byteInputOutputStream.size());
-                    int unitID = byteInputStream.readUnsignedByte();
-
-                    //check message with this slave unit identifier
-                    ProcessImage spi = ModbusCoupler.getReference().getProcessImage(unitID);
-                    if (spi == null) {
-                        continue;
-                    }
-                    if (unitID != spi.getUnitID()) {
-                        continue;
+                    finally {
+                        fireAsciiFrameRead();
                     }
-                    int functionCode = byteInputStream.readUnsignedByte();
-                    //create request
-                    request = ModbusRequest.createModbusRequest(functionCode);
-                    request.setHeadless();
-                    //read message
-                    byteInputStream.reset(inBuffer, byteInputOutputStream.size());
-                    request.readFrom(byteInputStream);
                 }
                 done = true;
             } while (!done);
@@ -152,36 +170,45 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
                         throw new IOException("I/O exception - Serial port timeout");
                     }
                 }
+                markResponseStart();
                 //2. Read to FRAME_END
                 synchronized (inBuffer) {
-                    byteInputOutputStream.reset();
-                    while ((in = readAsciiByte()) != FRAME_END) {
-                        if (in == -1) {
-                            throw new IOException("I/O exception - Serial port timeout");
+                    try {
+                        byteInputOutputStream.reset();
+                        while ((in = readAsciiByte()) != FRAME_END) {
+                            if (in == -1) {
+                                throw new IOException("I/O exception - Serial port timeout");
+                            }
+                            byteInputOutputStream.writeByte(in);
                         }
-                        byteInputOutputStream.writeByte(in);
+                        markResponseEnd();
+                        int len = byteInputOutputStream.size();
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Received: {}", ModbusUtil.toHex(inBuffer, 0, len));
+                        }
+                        //check LRC
+                        if (inBuffer[len - 1] != calculateLRC(inBuffer, 0, len, 1)) {
+                            continue;
+                        }
+
+                        byteInputStream.reset(inBuffer, byteInputOutputStream.size());
+                        byteInputStream.readUnsignedByte();
+                        // JDC: To check slave unit identifier in a response we need to know
+                        // the slave id in the request.  This is not tracked since slaves
+                        // only respond when a master request is made and there is only one
+                        // master.  We are the only master, so we can assume that this
+                        // response message is from the slave responding to the last request.
+                        in = byteInputStream.readUnsignedByte();
+                        //create request
+                        response = ModbusResponse.createModbusResponse(in, getMEIType(in, inBuffer, 2, len - 1));
+                        response.setHeadless();
+                        //read message
+                        byteInputStream.reset(inBuffer, byteInputOutputStream.size());
+                        response.readFrom(byteInputStream);
                     }
-                    int len = byteInputOutputStream.size();
-                    logger.debug("Received: {}", ModbusUtil.toHex(inBuffer, 0, len));
-                    //check LRC
-                    if (inBuffer[len - 1] != calculateLRC(inBuffer, 0, len, 1)) {
-                        continue;
+                    finally {
+                        fireAsciiFrameRead();
                     }
-
-                    byteInputStream.reset(inBuffer, byteInputOutputStream.size());
-                    byteInputStream.readUnsignedByte();
-                    // JDC: To check slave unit identifier in a response we need to know
-                    // the slave id in the request.  This is not tracked since slaves
-                    // only respond when a master request is made and there is only one
-                    // master.  We are the only master, so we can assume that this
-                    // response message is from the slave responding to the last request.
-                    in = byteInputStream.readUnsignedByte();
-                    //create request
-                    response = ModbusResponse.createModbusResponse(in);
-                    response.setHeadless();
-                    //read message
-                    byteInputStream.reset(inBuffer, byteInputOutputStream.size());
-                    response.readFrom(byteInputStream);
                 }
                 done = true;
             } while (!done);
@@ -198,11 +225,7 @@ public class ModbusASCIITransport extends ModbusSerialTransport {
     }
 
     private static byte calculateLRC(byte[] data, int off, int length, int tailskip) {
-        int lrc = 0;
-        for (int i = off; i < length - tailskip; i++) {
-            lrc += ((int)data[i]) & 0xFF;
-        }
-        return (byte)((-lrc) & 0xff);
+        return (byte)ModbusChecksum.lrc(data, off, Math.max(0, length - tailskip - off));
     }
 
 }
@@ -16,11 +16,13 @@
 package com.ghgande.j2mod.modbus.io;
 
 import com.ghgande.j2mod.modbus.Modbus;
-import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusFunction;
+import com.ghgande.j2mod.modbus.msg.ModbusFunctionRegistry;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusChecksum;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +46,7 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
     private final BytesInputStream byteInputStream = new BytesInputStream(inBuffer); // to read message from
     private final BytesOutputStream byteInputOutputStream = new BytesOutputStream(inBuffer); // to buffer message to
     private final BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH); // write frames
-    private byte[] lastRequest = null;
+    private byte[] lastRequest = new byte[0];
 
     /**
      * Read the data for a request of a given fixed size
@@ -61,6 +63,82 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
         out.write(inpBuf, 0, byteCount);
     }
 
+    /**
+     * Reads the MEI type, the byte after the function code, of a frame with
+     * the MEI function code so that the frame can be matched to a registered
+     * function
+     *
+     * @param function Function code of the frame
+     * @param out      Output buffer to populate
+     *
+     * @return MEI type or <tt>NO_MEI_TYPE</tt>
+     *
+     * @throws IOException
+     */
+    private int readMEIType(int function, BytesOutputStream out) throws IOException {
+        if (function != Modbus.READ_MEI) {
+            return ModbusFunctionRegistry.NO_MEI_TYPE;
+        }
+        int meiType = readByte();
+        out.write(meiType);
+        return meiType;
+    }
+
+    /**
+     * Reads the rest of a frame for a function registered with the
+     * <tt>ModbusFunctionRegistry</tt>, asking the function for the length of
+     * its data until all of it has been read
+     *
+     * @param function Function code of the frame
+     * @param meiType  MEI type of the frame or <tt>NO_MEI_TYPE</tt>
+     * @param request  True if the frame is a request
+     * @param out      Output buffer to populate
+     *
+     * @return False if the function is not registered and nothing was read
+     *
+     * @throws IOException
+     */
+    private boolean readRegisteredData(int function, int meiType, boolean request, BytesOutputStream out) throws IOException {
+        ModbusFunction registered = ModbusFunctionRegistry.getReference().getFunction(function, meiType);
+        if (registered == null) {
+            return false;
+        }
+        int available = out.size() - 2;
+        int needed = getRegisteredLength(registered, request, available);
+        while (needed > available) {
+            // Leave room for the unit ID, function code and CRC
+            if (needed + 4 > inBuffer.length) {
+                throw new IOException(String.format("Frame too long for function code [%s]", function));
+            }
+            byte[] data = new byte[needed - available];
+            readBytes(data, data.length);
+            out.write(data, 0, data.length);
+            available = needed;
+            needed = getRegisteredLength(registered, request, available);
+        }
+        if (needed < available) {
+            throw new IOException(String.format("Invalid frame length for function code [%s]", function));
+        }
+        readRequestData(0, out);
+        return true;
+    }
+
+    /**
+     * Asks a registered function for the length of the data read so far
+     *
+     * @param function  Registered function
+     * @param request   True if the frame is a request
+     * @param available Number of data bytes read so far
+     *
+     * @return Length of the data, or the number of bytes needed to work it out
+     */
+    private int getRegisteredLength(ModbusFunction function, boolean request, int available) {
+        if (request) {
+            return function.getRequestLength(inBuffer, 2, available);
+        }
+        return function.getResponseLength(inBuffer, 2, available);
+    }
+
     /**
      * getRequest - Read a request, after the unit and function code
      *
@@ -72,6 +150,9 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
         byte inpBuf[] = new byte[256];
         try {
             if ((function & 0x80) == 0) {
+                if (readRegisteredData(function, readMEIType(function, out), true, out)) {
+                    return;
+                }
                 switch (function) {
                     case Modbus.READ_EXCEPTION_STATUS:
                     case Modbus.READ_COMM_EVENT_COUNTER:
@@ -85,7 +166,8 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         break;
 
                     case Modbus.READ_MEI:
-                        readRequestData(3, out);
+                        // The MEI type has already been read
+                        readRequestData(2, out);
                         break;
 
                     case Modbus.READ_COILS:
@@ -145,6 +227,10 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
         byte inpBuf[] = new byte[256];
         try {
             if ((function & 0x80) == 0) {
+                int meiType = readMEIType(function, out);
+                if (readRegisteredData(function, meiType, false, out)) {
+                    return;
+                }
                 switch (function) {
                     case Modbus.READ_COILS:
                     case Modbus.READ_INPUT_DISCRETES:
@@ -195,12 +281,11 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                         break;
 
                     case Modbus.READ_MEI:
-                        // read the subcode. We only support 0x0e.
-                        int sc = readByte();
-                        if (sc != 0x0e) {
+                        // The subcode has already been read. We only support
+                        // 0x0e unless others are registered.
+                        if (meiType != 0x0e) {
                             throw new IOException("Invalid subfunction code");
                         }
-                        out.write(sc);
                         // next few bytes are just copied.
                         int id, fieldCount;
                         readBytes(inpBuf, 5);
@@ -257,12 +342,15 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                 msg.setHeadless();
                 msg.writeTo(byteOutputStream);
                 len = byteOutputStream.size();
-                int[] crc = ModbusUtil.calculateCRC(byteOutputStream.getBuffer(), 0, len);
-                byteOutputStream.writeByte(crc[0]);
-                byteOutputStream.writeByte(crc[1]);
+                int crc = ModbusChecksum.crc16(byteOutputStream.getBuffer(), 0, len);
+                byteOutputStream.writeByte(crc & 0xFF);
+                byteOutputStream.writeByte(crc >>> 8);
                 // write message
                 writeBytes(byteOutputStream.getBuffer(), byteOutputStream.size());
-                logger.debug("Sent: {}", ModbusUtil.toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size()));
+                fireAfterFrameWrite(byteOutputStream.getBuffer(), 0, byteOutputStream.size(), null);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Sent: {}", ModbusUtil.toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size()));
+                }
                 // clears out the echoed message
                 // for RS485
                 if (echo) {
@@ -283,14 +371,8 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
      * @return a <tt>ModbusRequest</tt> to be processed by the slave simulator
      */
     protected ModbusRequest readRequestIn() throws ModbusIOException {
-        ModbusCoupler coupler = ModbusCoupler.getReference();
-
-        if (coupler == null || coupler.isMaster()) {
-            throw new RuntimeException("Operation not supported");
-        }
-
-        boolean done;
-        ModbusRequest request;
+        boolean done = false;
+        ModbusRequest request = null;
         int dlength;
 
         try {
@@ -300,48 +382,58 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                 synchronized (byteInputStream) {
                     int uid = readByte();
                     if (uid != -1) {
-                        int fc = readByte();
+                        // Skip frames for other units without decoding them
+                        if (!isUnitServed(uid)) {
+                            skipFrame();
+                            continue;
+                        }
                         byteInputOutputStream.reset();
-                        byteInputOutputStream.writeByte(uid);
-                        byteInputOutputStream.writeByte(fc);
-
-                        // create response to acquire length of message
-                        request = ModbusRequest.createModbusRequest(fc);
-                        request.setHeadless();
-
-                        /*
-                         * With Modbus RTU, there is no end frame. Either we
-                         * assume the message is complete as is or we must do
-                         * function specific processing to know the correct
-                         * length. To avoid moving frame timing to the serial
-                         * input functions, we set the timeout and to message
-                         * specific parsing to read a response.
-                         */
-                        getRequest(fc, byteInputOutputStream);
-                        dlength = byteInputOutputStream.size() - 2; // less the crc
-                        logger.debug("Response: {}", ModbusUtil.toHex(byteInputOutputStream.getBuffer(), 0, dlength + 2));
-
-                        byteInputStream.reset(inBuffer, dlength);
-
-                        // check CRC
-                        int[] crc = ModbusUtil.calculateCRC(inBuffer, 0, dlength); // does not include CRC
-                        if (ModbusUtil.unsignedByteToInt(inBuffer[dlength]) != crc[0] &&
-                                ModbusUtil.unsignedByteToInt(inBuffer[dlength + 1]) != crc[1]) {
-                            logger.debug("CRC should be {}, {}", crc[0], crc[1]);
-
-                            // Drain the input in case the frame was misread and more
-                            // was to follow.
-                            clearInput();
-                            throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(byteInputStream.getBuffer(), 0, dlength));
+                        try {
+                            byteInputOutputStream.writeByte(uid);
+                            int fc = readByte();
+                            byteInputOutputStream.writeByte(fc);
+
+                            /*
+                             * With Modbus RTU, there is no end frame. Either we
+                             * assume the message is complete as is or we must do
+                             * function specific processing to know the correct
+                             * length. To avoid moving frame timing to the serial
+                             * input functions, we set the timeout and to message
+                             * specific parsing to read a response.
+                             */
+                            getRequest(fc, byteInputOutputStream);
+                            dlength = byteInputOutputStream.size() - 2; // less the crc
+                            request = createRequest(fc, getMEIType(fc, inBuffer, 2, dlength));
+                            request.setHeadless();
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("Response: {}", ModbusUtil.toHex(byteInputOutputStream.getBuffer(), 0, dlength + 2));
+                            }
+
+                            byteInputStream.reset(inBuffer, dlength);
+
+                            // check CRC
+                            int crc = ModbusChecksum.crc16(inBuffer, 0, dlength); // does not include CRC
+                            if (crc != ((inBuffer[dlength] & 0xFF) | (inBuffer[dlength + 1] & 0xFF) << 8)) {
+                                logger.debug("CRC should be {}, {}", crc & 0xFF, crc >>> 8);
+
+                                // Drain the input in case the frame was misread and more
+                                // was to follow.
+                                clearInput();
+                                throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(byteInputStream.getBuffer(), 0, dlength));
+                            }
+
+                            // read response
+                            byteInputStream.reset(inBuffer, dlength);
+                            request.readFrom(byteInputStream);
+                        }
+                        finally {
+                            // Every frame is passed on, even if it is bad
+                            fireAfterFrameRead(inBuffer, 0, byteInputOutputStream.size(), null);
                         }
                     }
                     else {
                         throw new IOException("Error reading response");
                     }
-
-                    // read response
-                    byteInputStream.reset(inBuffer, dlength);
-                    request.readFrom(byteInputStream);
                     done = true;
                 }
             } while (!done);
@@ -371,42 +463,50 @@ public class ModbusRTUTransport extends ModbusSerialTransport {
                 synchronized (byteInputStream) {
                     int uid = readByte();
                     if (uid != -1) {
-                        int fc = readByte();
+                        markResponseStart();
                         byteInputOutputStream.reset();
-                        byteInputOutputStream.writeByte(uid);
-                        byteInputOutputStream.writeByte(fc);
-
-                        // create response to acquire length of message
-                        response = ModbusResponse.createModbusResponse(fc);
-                        response.setHeadless();
-
-                        /*
-                         * With Modbus RTU, there is no end frame. Either we
-                         * assume the message is complete as is or we must do
-                         * function specific processing to know the correct
-                         * length. To avoid moving frame timing to the serial
-                         * input functions, we set the timeout and to message
-                         * specific parsing to read a response.
-                         */
-                        getResponse(fc, byteInputOutputStream);
-                        dlength = byteInputOutputStream.size() - 2; // less the crc
-                        logger.debug("Response: {}", ModbusUtil.toHex(byteInputOutputStream.getBuffer(), 0, dlength + 2));
-                        byteInputStream.reset(inBuffer, dlength);
-
-                        // check CRC
-                        int[] crc = ModbusUtil.calculateCRC(inBuffer, 0, dlength); // does not include CRC
-                        if (ModbusUtil.unsignedByteToInt(inBuffer[dlength]) != crc[0] && ModbusUtil.unsignedByteToInt(inBuffer[dlength + 1]) != crc[1]) {
-                            logger.debug("CRC should be {}, {}", crc[0], crc[1]);
-                            throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(byteInputStream.getBuffer(), 0, dlength));
+                        try {
+                            byteInputOutputStream.writeByte(uid);
+                            int fc = readByte();
+                            byteInputOutputStream.writeByte(fc);
+
+                            /*
+                             * With Modbus RTU, there is no end frame. Either we
+                             * assume the message is complete as is or we must do
+                             * function specific processing to know the correct
+                             * length. To avoid moving frame timing to the serial
+                             * input functions, we set the timeout and to message
+                             * specific parsing to read a response.
+                             */
+                            getResponse(fc, byteInputOutputStream);
+                            markResponseEnd();
+                            dlength = byteInputOutputStream.size() - 2; // less the crc
+                            response = ModbusResponse.createModbusResponse(fc, getMEIType(fc, inBuffer, 2, dlength));
+                            response.setHeadless();
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("Response: {}", ModbusUtil.toHex(byteInputOutputStream.getBuffer(), 0, dlength + 2));
+                            }
+                            byteInputStream.reset(inBuffer, dlength);
+
+                            // check CRC
+                            int crc = ModbusChecksum.crc16(inBuffer, 0, dlength); // does not include CRC
+                            if (crc != ((inBuffer[dlength] & 0xFF) | (inBuffer[dlength + 1] & 0xFF) << 8)) {
+                                logger.debug("CRC should be {}, {}", crc & 0xFF, crc >>> 8);
+                                throw new IOException("CRC Error in received frame: " + dlength + " bytes: " + ModbusUtil.toHex(byteInputStream.getBuffer(), 0, dlength));
+                            }
+
+                            // read response
+                            byteInputStream.reset(inBuffer, dlength);
+                            response.readFrom(byteInputStream);
+                        }
+                        finally {
+                            // Every frame is passed on, even if it is bad
+                            fireAfterFrameRead(inBuffer, 0, byteInputOutputStream.size(), null);
                         }
                     }
                     else {
                         throw new IOException("Error reading response");
                     }
-
-                    // read response
-                    byteInputStream.reset(inBuffer, dlength);
-                    response.readFrom(byteInputStream);
                     done = true;
                 }
             } while (!done);
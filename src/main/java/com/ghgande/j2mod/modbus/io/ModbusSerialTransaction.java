@@ -125,6 +125,8 @@ public class ModbusSerialTransaction extends ModbusTransaction {
     public void execute() throws ModbusException {
         //1. assert executeability
         assertExecutable();
+        long start = startMetrics();
+        startTrace();
 
         //3. write request, and read response,
         //   while holding the lock on the IO object
@@ -142,20 +144,30 @@ public class ModbusSerialTransaction extends ModbusTransaction {
                 }
                 synchronized (MUTEX) {
                     //write request message
+                    traceBeforeWrite();
                     transport.writeMessage(request);
+                    traceAfterWrite();
                     //read response message
                     response = transport.readResponse();
+                    traceAfterRead();
                     finished = true;
                 }
             }
             catch (ModbusIOException e) {
                 if (++tries >= retries) {
+                    recordTimeout();
+                    finishTrace(e);
                     throw e;
                 }
+                recordRetry();
+                traceRetry(e);
                 logger.debug("Execute try {} error: {}", tries, e.getMessage());
             }
         } while (!finished);
 
+        recordResponse(start);
+        finishTrace(null);
+
         //4. deal with exceptions
         if (response instanceof ExceptionResponse) {
             throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode()
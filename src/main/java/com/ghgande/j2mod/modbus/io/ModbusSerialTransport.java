@@ -16,6 +16,8 @@
 package com.ghgande.j2mod.modbus.io;
 
 import com.fazecast.jSerialComm.SerialPort;
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
@@ -25,9 +27,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Abstract base class for serial <tt>ModbusTransport</tt>
@@ -53,7 +56,46 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
 
     protected SerialPort commPort;
     protected boolean echo = false;     // require RS-485 echo processing
-    private final Set<AbstractSerialTransportListener> listeners = Collections.synchronizedSet(new HashSet<AbstractSerialTransportListener>());
+    private final Set<AbstractSerialTransportListener> listeners = new CopyOnWriteArraySet<AbstractSerialTransportListener>();
+
+    /**
+     * Lookup tables for converting between binary values and ASCII hex characters
+     */
+    private static final byte[] NIBBLE_TO_ASCII = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+    private static final byte[] ASCII_TO_NIBBLE = new byte[128];
+
+    static {
+        Arrays.fill(ASCII_TO_NIBBLE, (byte)-1);
+        for (int i = 0; i < 10; i++) {
+            ASCII_TO_NIBBLE['0' + i] = (byte)i;
+        }
+        for (int i = 0; i < 6; i++) {
+            ASCII_TO_NIBBLE['A' + i] = (byte)(10 + i);
+            ASCII_TO_NIBBLE['a' + i] = (byte)(10 + i);
+        }
+    }
+
+    // Characters read in bulk from the port that haven't been consumed yet
+    private final byte[] asciiInBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH * 2 + 5];
+    private int asciiInPos = 0;
+    private int asciiInCount = 0;
+
+    // Characters read since the last frame start, passed to the listeners as the raw frame
+    private final byte[] asciiFrame = new byte[Modbus.MAX_MESSAGE_LENGTH * 2 + 5];
+    private int asciiFrameLength = 0;
+
+    // Adaptive response timeouts
+    private static final long DEADLINE_POLL_INTERVAL = 500000L;
+    private SerialTimeoutCalculator timeoutCalculator;
+    private ModbusRequest pendingRequest;
+    private long responseDeadline = 0;
+    private boolean deadlineExpired = false;
+
+    // Slave side unit ID filtering
+    private static final long MINIMUM_FRAME_SILENCE = 1750000L;
+    private static final long SILENCE_POLL_INTERVAL = 250000L;
+    private boolean[] unitIDs;
+    private final byte[] discardBuffer = new byte[Modbus.MAX_MESSAGE_LENGTH];
 
     /**
      * Creates a new transaction suitable for the serial port
@@ -77,7 +119,13 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
         open();
         notifyListenersBeforeWrite(msg);
-        writeMessageOut(msg);
+        try {
+            writeMessageOut(msg);
+        }
+        catch (ModbusIOException e) {
+            fireTransportError(e);
+            throw e;
+        }
 
         // Wait here for the message to have been sent
 
@@ -91,6 +139,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
         catch (Exception e) {
             logger.debug("nothing to do");
         }
+        if (msg instanceof ModbusRequest) {
+            pendingRequest = (ModbusRequest)msg;
+        }
         notifyListenersAfterWrite(msg);
     }
 
@@ -106,7 +157,14 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
     public ModbusRequest readRequest() throws ModbusIOException {
         open();
         notifyListenersBeforeRequest();
-        ModbusRequest req = readRequestIn();
+        ModbusRequest req;
+        try {
+            req = readRequestIn();
+        }
+        catch (ModbusIOException e) {
+            fireTransportError(e);
+            throw e;
+        }
         notifyListenersAfterRequest(req);
         return req;
     }
@@ -121,11 +179,169 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     public ModbusResponse readResponse() throws ModbusIOException {
         notifyListenersBeforeResponse();
-        ModbusResponse res = readResponseIn();
+        ModbusRequest request = pendingRequest;
+        pendingRequest = null;
+        boolean adaptive = timeoutCalculator != null && request != null;
+        long start = System.nanoTime();
+        if (adaptive) {
+            responseDeadline = start + timeoutCalculator.getResponseTimeout(request, timeout) * 1000000L;
+            deadlineExpired = false;
+        }
+        ModbusResponse res;
+        try {
+            res = readResponseIn();
+        }
+        catch (ModbusIOException e) {
+            if (adaptive && deadlineExpired) {
+                timeoutCalculator.recordTimeout(request);
+            }
+            fireTransportError(e);
+            throw e;
+        }
+        finally {
+            responseDeadline = 0;
+        }
+        if (adaptive) {
+            timeoutCalculator.recordResponse(request, System.nanoTime() - start);
+        }
         notifyListenersAfterResponse(res);
         return res;
     }
 
+    /**
+     * Returns the calculator used to work out the response timeout of each request
+     *
+     * @return Calculator or null if the fixed timeout is used
+     */
+    public SerialTimeoutCalculator getTimeoutCalculator() {
+        return timeoutCalculator;
+    }
+
+    /**
+     * Sets the calculator used to work out the response timeout of each request.
+     * The fixed timeout remains the upper limit of any calculated timeout.
+     *
+     * @param timeoutCalculator Calculator or null to use the fixed timeout
+     */
+    public void setTimeoutCalculator(SerialTimeoutCalculator timeoutCalculator) {
+        this.timeoutCalculator = timeoutCalculator;
+    }
+
+    /**
+     * Sets the unit IDs that this transport answers to when acting as a slave.
+     * Frames for any other unit are skipped as soon as the address has been
+     * read, without being decoded.
+     * If no unit IDs are set, the units that have a process image in the
+     * <tt>ModbusCoupler</tt> are served.
+     *
+     * @param ids Unit IDs to serve or null to use the <tt>ModbusCoupler</tt>
+     */
+    public void setUnitIDs(int... ids) {
+        if (ids == null || ids.length == 0) {
+            unitIDs = null;
+        }
+        else {
+            boolean[] served = new boolean[256];
+            for (int id : ids) {
+                served[id & 0xFF] = true;
+            }
+            unitIDs = served;
+        }
+    }
+
+    /**
+     * Returns true if requests for the unit ID should be handled by this transport
+     *
+     * @param unitID Unit ID read from the frame
+     *
+     * @return True if the unit is served
+     */
+    protected boolean isUnitServed(int unitID) {
+        boolean[] served = unitIDs;
+        if (served != null) {
+            return served[unitID & 0xFF];
+        }
+        return ModbusCoupler.getReference().getProcessImage(unitID) != null;
+    }
+
+    /**
+     * Discards everything received until the line has been silent for the
+     * 3.5 character inter-frame interval (1.75ms above 19200 baud).
+     * The length of a frame for another unit cannot be relied upon because
+     * the responses from other slaves share the function codes of the requests.
+     *
+     * @throws IOException If the port is not valid
+     */
+    protected void skipFrame() throws IOException {
+        long silence = getFrameSilence();
+        long lastReceived = System.nanoTime();
+        while (System.nanoTime() - lastReceived < silence) {
+            int available = bytesAvailable();
+            if (available > 0) {
+                readBytes(discardBuffer, Math.min(available, discardBuffer.length));
+                lastReceived = System.nanoTime();
+            }
+            else {
+                LockSupport.parkNanos(SILENCE_POLL_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Returns the 3.5 character inter-frame interval for the port settings
+     *
+     * @return Interval in nanoseconds, at least 1.75ms
+     *
+     * @throws IOException If the port is not valid or not open
+     */
+    protected long getFrameSilence() throws IOException {
+        if (commPort == null || !commPort.isOpen()) {
+            throw new IOException("Comm port is not valid or not open");
+        }
+        double bitsPerChar = 1 + commPort.getNumDataBits() + (commPort.getNumStopBits() == SerialPort.TWO_STOP_BITS ? 2 : 1) + (commPort.getParity() == SerialPort.NO_PARITY ? 0 : 1);
+        return Math.max(MINIMUM_FRAME_SILENCE, (long)(3.5 * bitsPerChar * 1000000000.0 / commPort.getBaudRate()));
+    }
+
+    /**
+     * Discards ASCII characters up to the end of the current frame.
+     * If the start of a new frame is found, it is left to be read.
+     *
+     * @throws IOException If the port is not valid or the read times out
+     */
+    protected void skipAsciiFrame() throws IOException {
+        int in;
+        do {
+            in = readAsciiChar();
+            if (in == ':') {
+                asciiInPos--;
+                asciiFrameLength--;
+                return;
+            }
+        } while (in != '\r' && in != '\n');
+    }
+
+    /**
+     * Waits for the number of bytes to be available if a response deadline
+     * is in force.  The port timeouts are left alone because changing them on
+     * an open port is slow and they only have a resolution of 100ms on some platforms
+     *
+     * @param count Number of bytes required
+     *
+     * @throws IOException If the deadline passes before the bytes arrive
+     */
+    private void waitForInput(int count) throws IOException {
+        if (responseDeadline != 0) {
+            while (bytesAvailable() < count) {
+                long remaining = responseDeadline - System.nanoTime();
+                if (remaining <= 0) {
+                    deadlineExpired = true;
+                    throw new IOException("Response timeout");
+                }
+                LockSupport.parkNanos(Math.min(remaining, DEADLINE_POLL_INTERVAL));
+            }
+        }
+    }
+
     /**
      * Opens the port if it isn't alredy open
      * @throws ModbusIOException
@@ -211,10 +427,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * Calls any listeners with the given event and current port
      */
     private void notifyListenersBeforeRequest() {
-        synchronized (listeners) {
-            for (AbstractSerialTransportListener listener : listeners) {
-                listener.beforeRequestRead(commPort);
-            }
+        fireBeforeRequestRead();
+        for (AbstractSerialTransportListener listener : listeners) {
+            listener.beforeRequestRead(commPort);
         }
     }
 
@@ -224,10 +439,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @param req Request received
      */
     private void notifyListenersAfterRequest(ModbusRequest req) {
-        synchronized (listeners) {
-            for (AbstractSerialTransportListener listener : listeners) {
-                listener.afterRequestRead(commPort, req);
-            }
+        fireAfterRequestRead(req);
+        for (AbstractSerialTransportListener listener : listeners) {
+            listener.afterRequestRead(commPort, req);
         }
     }
 
@@ -235,10 +449,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * Calls any listeners with the given event and current port
      */
     private void notifyListenersBeforeResponse() {
-        synchronized (listeners) {
-            for (AbstractSerialTransportListener listener : listeners) {
-                listener.beforeResponseRead(commPort);
-            }
+        fireBeforeResponseRead();
+        for (AbstractSerialTransportListener listener : listeners) {
+            listener.beforeResponseRead(commPort);
         }
     }
 
@@ -248,10 +461,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @param res Response received
      */
     private void notifyListenersAfterResponse(ModbusResponse res) {
-        synchronized (listeners) {
-            for (AbstractSerialTransportListener listener : listeners) {
-                listener.afterResponseRead(commPort, res);
-            }
+        fireAfterResponseRead(res);
+        for (AbstractSerialTransportListener listener : listeners) {
+            listener.afterResponseRead(commPort, res);
         }
     }
 
@@ -261,10 +473,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @param msg Message to be sent
      */
     private void notifyListenersBeforeWrite(ModbusMessage msg) {
-        synchronized (listeners) {
-            for (AbstractSerialTransportListener listener : listeners) {
-                listener.beforeMessageWrite(commPort, msg);
-            }
+        fireBeforeMessageWrite(msg);
+        for (AbstractSerialTransportListener listener : listeners) {
+            listener.beforeMessageWrite(commPort, msg);
         }
     }
 
@@ -274,10 +485,9 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      * @param msg Message sent
      */
     private void notifyListenersAfterWrite(ModbusMessage msg) {
-        synchronized (listeners) {
-            for (AbstractSerialTransportListener listener : listeners) {
-                listener.afterMessageWrite(commPort, msg);
-            }
+        fireAfterMessageWrite(msg);
+        for (AbstractSerialTransportListener listener : listeners) {
+            listener.afterMessageWrite(commPort, msg);
         }
     }
 
@@ -334,7 +544,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
     protected void readEcho(int len) throws IOException {
         byte echoBuf[] = new byte[len];
         int echoLen = commPort.readBytes(echoBuf, len);
-        logger.debug("Echo: {}", ModbusUtil.toHex(echoBuf, 0, echoLen));
+        logger.debug("Echo: {}", ModbusUtil.lazyHex(echoBuf, 0, echoLen));
         if (echoLen != len) {
             logger.debug("Error: Transmit echo not received");
             throw new IOException("Echo not received");
@@ -350,6 +560,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     protected int readByte() throws IOException {
         if (commPort != null && commPort.isOpen()) {
+            waitForInput(1);
             byte[] buffer = new byte[1];
             int cnt = commPort.readBytes(buffer, 1);
             if (cnt != 1) {
@@ -364,6 +575,23 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
         }
     }
 
+    /**
+     * Returns the number of bytes that can be read from the comms port
+     * without blocking
+     *
+     * @return Number of bytes available
+     *
+     * @throws IOException If the port is not valid or not open
+     */
+    protected int bytesAvailable() throws IOException {
+        if (commPort != null && commPort.isOpen()) {
+            return commPort.bytesAvailable();
+        }
+        else {
+            throw new IOException("Comm port is not valid or not open");
+        }
+    }
+
     /**
      * Reads the specified number of bytes from the input stream
      *
@@ -374,6 +602,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     protected void readBytes(byte[] buffer, long bytesToRead) throws IOException {
         if (commPort != null && commPort.isOpen()) {
+            waitForInput((int)bytesToRead);
             int cnt = commPort.readBytes(buffer, bytesToRead);
             if (cnt != bytesToRead) {
                 throw new IOException("Cannot read from serial port - truncated");
@@ -404,42 +633,70 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
     /**
      * Reads an ascii byte from the input stream
      * It handles the special start and end frame markers
+     * The characters are taken from a local buffer which is refilled
+     * in bulk from the port, rather than one native read per character
      *
      * @return Byte value of the next ASCII couplet
      *
      * @throws IOException
      */
     protected int readAsciiByte() throws IOException {
-        if (commPort != null && commPort.isOpen()) {
-            byte[] buffer = new byte[1];
-            int cnt = commPort.readBytes(buffer, 1);
-            if (cnt != 1) {
-                throw new IOException("Cannot read from serial port");
-            }
-            else if (buffer[0] == ':') {
-                return ModbusASCIITransport.FRAME_START;
-            }
-            else if (buffer[0] == '\r' || buffer[0] == '\n') {
-                return ModbusASCIITransport.FRAME_END;
-            }
-            else {
-                logger.debug("Read From buffer: " + buffer[0] + " (" + String.format("%02X", buffer[0]) + ")");
-                byte firstValue = buffer[0];
-                cnt = commPort.readBytes(buffer, 1);
-                if (cnt != 1) {
-                    throw new IOException("Cannot read from serial port");
-                }
-                else {
-                    logger.debug("Read From buffer: " + buffer[0] + " (" + String.format("%02X", buffer[0]) + ")");
-                    int combinedValue = (Character.digit(firstValue, 16) << 4) + Character.digit(buffer[0], 16);
-                    logger.debug("Returning combined value of: " + String.format("%02X", combinedValue));
-                    return combinedValue;
-                }
-            }
+        int first = readAsciiChar();
+        if (first == ':') {
+            asciiFrame[0] = ':';
+            asciiFrameLength = 1;
+            return ModbusASCIITransport.FRAME_START;
         }
-        else {
-            throw new IOException("Comm port is not valid or not open");
+        else if (first == '\r' || first == '\n') {
+            return ModbusASCIITransport.FRAME_END;
+        }
+        int second = readAsciiChar();
+        int hi = ASCII_TO_NIBBLE[first & 0x7F];
+        int low = ASCII_TO_NIBBLE[second & 0x7F];
+        if (first > 0x7F || second > 0x7F || hi < 0 || low < 0) {
+            throw new IOException(String.format("Invalid ASCII hex characters [%02X %02X]", first, second));
+        }
+        return (hi << 4) | low;
+    }
+
+    /**
+     * Returns the next raw character from the ASCII receive buffer, refilling
+     * it from the port with whatever is available when it is empty
+     *
+     * @return Character value 0-255
+     *
+     * @throws IOException If the port is not open or the read times out
+     */
+    private int readAsciiChar() throws IOException {
+        if (asciiInPos >= asciiInCount) {
+            int available = bytesAvailable();
+            int toRead = available > 0 ? Math.min(available, asciiInBuffer.length) : 1;
+            readBytes(asciiInBuffer, toRead);
+            asciiInPos = 0;
+            asciiInCount = toRead;
+        }
+        byte in = asciiInBuffer[asciiInPos++];
+        if (asciiFrameLength < asciiFrame.length) {
+            asciiFrame[asciiFrameLength++] = in;
         }
+        return in & 0xFF;
+    }
+
+    /**
+     * Calls any listeners with the characters read since the start of the
+     * current ASCII frame, whether or not the frame is complete or valid.
+     * A line feed already buffered after the carriage return is included
+     * so that the frame is passed on as it was sent.
+     */
+    protected void fireAsciiFrameRead() {
+        if (asciiFrameLength > 0 && asciiFrame[0] == ':') {
+            if (asciiFrame[asciiFrameLength - 1] == '\r' && asciiInPos < asciiInCount
+                    && asciiInBuffer[asciiInPos] == '\n' && asciiFrameLength < asciiFrame.length) {
+                asciiFrame[asciiFrameLength++] = '\n';
+            }
+            fireAfterFrameRead(asciiFrame, 0, asciiFrameLength, null);
+        }
+        asciiFrameLength = 0;
     }
 
     /**
@@ -459,15 +716,12 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
 
             if (value == ModbusASCIITransport.FRAME_START) {
                 buffer = new byte[]{58};
-                logger.debug("Wrote FRAME_START");
             }
             else if (value == ModbusASCIITransport.FRAME_END) {
                 buffer = new byte[]{13, 10};
-                logger.debug("Wrote FRAME_END");
             }
             else {
-                buffer = ModbusUtil.toHex(value);
-                logger.debug("Wrote byte {}={}", value, ModbusUtil.toHex(value));
+                buffer = new byte[]{NIBBLE_TO_ASCII[(value >> 4) & 0x0F], NIBBLE_TO_ASCII[value & 0x0F]};
             }
             return commPort.writeBytes(buffer, buffer.length);
         }
@@ -478,6 +732,7 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
 
     /**
      * Writes an array of bytes out as a stream of ascii characters
+     * The characters are encoded into a single buffer and written with one call
      *
      * @param buffer       Buffer of bytes to write
      * @param bytesToWrite Number of characters to write
@@ -488,31 +743,48 @@ public abstract class ModbusSerialTransport extends AbstractModbusTransport {
      */
     protected int writeAsciiBytes(byte[] buffer, long bytesToWrite) throws IOException {
         if (commPort != null && commPort.isOpen()) {
-            int cnt = 0;
-            for (int i = 0; i < bytesToWrite; i++) {
-                if (writeAsciiByte(buffer[i]) != 2) {
-                    return cnt;
-                }
-                cnt++;
-            }
-            return cnt;
+            byte[] ascii = new byte[(int)bytesToWrite * 2];
+            int len = encodeAscii(buffer, 0, (int)bytesToWrite, ascii, 0);
+            return commPort.writeBytes(ascii, len) / 2;
         }
         else {
             throw new IOException("Comm port is not valid or not open");
         }
     }
 
+    /**
+     * Encodes the bytes as pairs of upper case hex characters using a lookup table
+     *
+     * @param src     Bytes to encode
+     * @param off     Offset of the first byte to encode
+     * @param len     Number of bytes to encode
+     * @param dest    Buffer to receive the characters (must hold len * 2 bytes from destOff)
+     * @param destOff Offset in the destination to start writing
+     *
+     * @return Number of characters written
+     */
+    protected static int encodeAscii(byte[] src, int off, int len, byte[] dest, int destOff) {
+        int pos = destOff;
+        for (int i = off; i < off + len; i++) {
+            dest[pos++] = NIBBLE_TO_ASCII[(src[i] >> 4) & 0x0F];
+            dest[pos++] = NIBBLE_TO_ASCII[src[i] & 0x0F];
+        }
+        return pos - destOff;
+    }
+
     /**
      * clearInput - Clear the input if characters are found in the input stream.
      *
      * @throws IOException
      */
     public void clearInput() throws IOException {
-        if (commPort.bytesAvailable() > 0) {
-            int len = commPort.bytesAvailable();
+        asciiInPos = 0;
+        asciiInCount = 0;
+        if (bytesAvailable() > 0) {
+            int len = bytesAvailable();
             byte buf[] = new byte[len];
             readBytes(buf, len);
-            logger.debug("Clear input: {}", ModbusUtil.toHex(buf, 0, len));
+            logger.debug("Clear input: {}", ModbusUtil.lazyHex(buf, 0, len));
         }
     }
 
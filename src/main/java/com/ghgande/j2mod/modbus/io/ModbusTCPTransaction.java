@@ -21,6 +21,7 @@ import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.ModbusSlaveException;
 import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -112,17 +113,24 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         if (request == null || connection == null) {
             throw new ModbusException("Invalid request or connection");
         }
+        long start = startMetrics();
+        startTrace();
 
         // Automatically re-connect if disconnected.
         if (!connection.isConnected()) {
+            long connecting = traceConnecting();
             try {
                 logger.debug("connecting to: {}", connection.getAddress().toString());
                 connection.connect();
                 transport = connection.getModbusTransport();
             }
             catch (Exception ex) {
-                throw new ModbusIOException("Connection failed", ex);
+                recordTimeout();
+                ModbusIOException failure = new ModbusIOException("Connection failed", ex);
+                finishTrace(failure);
+                throw failure;
             }
+            traceConnected(connecting);
         }
 
         // Try sending the message up to retries time. Note that the message
@@ -133,22 +141,20 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         while (retryCounter < retryLimit) {
             try {
                 logger.debug("request transaction ID = {}", request.getTransactionID());
+                traceBeforeWrite();
                 transport.writeMessage(request);
-                response = null;
-                do {
-                    response = transport.readResponse();
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("response transaction ID = {}, RESPONSE: {}", response.getTransactionID(), response.getHexMessage());
-                        if (response.getTransactionID() != request.getTransactionID()) {
-                            logger.debug("expected {}, got {}", request.getTransactionID(), response.getTransactionID());
-                        }
-                    }
-                } while (response != null &&
-                        (!isCheckingValidity() || (request.getTransactionID() != 0 && request.getTransactionID() != response.getTransactionID())) &&
-                        ++retryCounter < retryLimit);
+                traceAfterWrite();
+                response = readResponse();
 
-                if (retryCounter >= retryLimit) {
-                    throw new ModbusIOException("Executing transaction failed (tried " + retries + " times)");
+                // A response to an earlier request uses up a retry while
+                // the next one is read
+                while (isUnexpected(response)) {
+                    if (++retryCounter >= retryLimit) {
+                        throw new ModbusIOException("Executing transaction failed (tried " + retries + " times)");
+                    }
+                    recordRetry();
+                    traceRetry(new ModbusIOException(String.format("Transaction ID mismatch - expected %d, got %d", request.getTransactionID(), response.getTransactionID())));
+                    response = readResponse();
                 }
 
                 // Both methods were successful, so the transaction must
@@ -157,21 +163,34 @@ public class ModbusTCPTransaction extends ModbusTransaction {
             }
             catch (ModbusIOException ex) {
                 if (!connection.isConnected()) {
+                    long connecting = traceConnecting();
                     try {
                         connection.connect();
                     }
                     catch (Exception e) {
                         // Nope, fail this transaction.
-                        throw new ModbusIOException("Connection lost", e);
+                        recordTimeout();
+                        ModbusIOException failure = new ModbusIOException("Connection lost", e);
+                        finishTrace(failure);
+                        throw failure;
                     }
+                    traceConnected(connecting);
                 }
                 retryCounter++;
                 if (retryCounter >= retryLimit) {
-                    throw new ModbusIOException("Executing transaction failed (tried " + retries + " times)", ex);
+                    recordTimeout();
+                    ModbusIOException failure = new ModbusIOException("Executing transaction failed (tried " + retries + " times)", ex);
+                    finishTrace(failure);
+                    throw failure;
                 }
+                recordRetry();
+                traceRetry(ex);
             }
         }
 
+        recordResponse(start);
+        finishTrace(null);
+
         // The slave may have returned an exception -- check for that.
         if (response instanceof ExceptionResponse) {
             throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
@@ -189,6 +208,38 @@ public class ModbusTCPTransaction extends ModbusTransaction {
         incrementTransactionID();
     }
 
+    /**
+     * Reads the next response from the transport
+     *
+     * @return Response read
+     *
+     * @throws ModbusIOException if the response cannot be read
+     */
+    private ModbusResponse readResponse() throws ModbusIOException {
+        ModbusResponse res = transport.readResponse();
+        traceAfterRead();
+        if (logger.isDebugEnabled()) {
+            logger.debug("response transaction ID = {}, RESPONSE: {}", res.getTransactionID(), res.getHexMessage());
+            if (res.getTransactionID() != request.getTransactionID()) {
+                logger.debug("expected {}, got {}", request.getTransactionID(), res.getTransactionID());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns true if the response is not the one for the current request
+     * and another must be read
+     *
+     * @param res Response read
+     *
+     * @return True if the response is for another request
+     */
+    private boolean isUnexpected(ModbusResponse res) {
+        return res != null &&
+                (!isCheckingValidity() || (request.getTransactionID() != 0 && request.getTransactionID() != res.getTransactionID()));
+    }
+
     /**
      * checkValidity -- Verify the transaction IDs match or are zero.
      *
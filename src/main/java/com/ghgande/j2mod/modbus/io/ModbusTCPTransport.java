@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.io;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusFunctionRegistry;
 import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
@@ -26,9 +27,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 
 /**
  * Class that implements the Modbus transport flavor.
@@ -43,9 +46,11 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
 
     // instance attributes
     private DataInputStream dataInputStream; // input stream
+    private RecordingInputStream recordingStream; // copies headless frames for the listeners
     private DataOutputStream dataOutputStream; // output stream
-    private final BytesInputStream byteInputStream = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
-    private final BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6); // write frames
+    private final Object inputLock = new Object();
+    private ByteBuffer inputBuffer = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH + 6); // read frames, grown for registered functions
+    private ByteBuffer outputBuffer = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH + 6); // write frames
     private Socket socket = null;
     private TCPMasterConnection master = null;
     private boolean headless = false; // Some TCP implementations are.
@@ -87,6 +92,18 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
         prepareStreams(socket);
     }
 
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        Socket current = socket;
+        return current == null ? null : (InetSocketAddress)current.getLocalSocketAddress();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(ModbusMessage msg) {
+        Socket current = socket;
+        return current == null ? null : (InetSocketAddress)current.getRemoteSocketAddress();
+    }
+
     /**
      * Set the transport to be headless
      */
@@ -126,24 +143,80 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
 
     @Override
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
+        fireBeforeMessageWrite(msg);
+        try {
+            writeMessageOut(msg);
+        }
+        catch (ModbusIOException ex) {
+            fireTransportError(ex);
+            throw ex;
+        }
+        fireAfterMessageWrite(msg);
+    }
+
+    @Override
+    public ModbusRequest readRequest() throws ModbusIOException {
+        fireBeforeRequestRead();
+        ModbusRequest req;
+        try {
+            req = readRequestIn();
+        }
+        catch (ModbusIOException ex) {
+            fireTransportError(ex);
+            throw ex;
+        }
+        fireAfterRequestRead(req);
+        return req;
+    }
+
+    @Override
+    public ModbusResponse readResponse() throws ModbusIOException {
+        fireBeforeResponseRead();
+        ModbusResponse res;
         try {
-            byte message[] = msg.getMessage();
+            res = readResponseIn();
+        }
+        catch (ModbusIOException ex) {
+            fireTransportError(ex);
+            throw ex;
+        }
+        fireAfterResponseRead(res);
+        return res;
+    }
 
-            byteOutputStream.reset();
+    /**
+     * Writes the message to the underlying stream
+     *
+     * @param msg Message to write
+     *
+     * @throws ModbusIOException if the message cannot be written
+     */
+    private void writeMessageOut(ModbusMessage msg) throws ModbusIOException {
+        try {
+            // Encode straight into the frame buffer and fill in the length
+            // from what was actually written
+            if (msg.getDataLength() + 8 > outputBuffer.capacity()) {
+                outputBuffer = ByteBuffer.allocate(msg.getDataLength() + 8);
+            }
+            outputBuffer.clear();
             if (!headless) {
-                byteOutputStream.writeShort(msg.getTransactionID());
-                byteOutputStream.writeShort(msg.getProtocolID());
-                byteOutputStream.writeShort((message != null ? message.length : 0) + 2);
+                outputBuffer.putShort((short)msg.getTransactionID());
+                outputBuffer.putShort((short)msg.getProtocolID());
+                outputBuffer.putShort((short)0);
             }
-            byteOutputStream.writeByte(msg.getUnitID());
-            byteOutputStream.writeByte(msg.getFunctionCode());
-            if (message != null && message.length > 0) {
-                byteOutputStream.write(message);
+            outputBuffer.put((byte)msg.getUnitID());
+            outputBuffer.put((byte)msg.getFunctionCode());
+            msg.encodeData(outputBuffer);
+            if (!headless) {
+                outputBuffer.putShort(4, (short)(outputBuffer.position() - 6));
             }
 
-            dataOutputStream.write(byteOutputStream.toByteArray());
+            dataOutputStream.write(outputBuffer.array(), 0, outputBuffer.position());
             dataOutputStream.flush();
-            logger.debug("Sent: {}", ModbusUtil.toHex(byteOutputStream.toByteArray()));
+            fireAfterFrameWrite(outputBuffer.array(), 0, outputBuffer.position(), hasFrameListeners() ? getRemoteSocketAddress(msg) : null);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Sent: {}", ModbusUtil.toHex(outputBuffer.array(), 0, outputBuffer.position()));
+            }
             // write more sophisticated exception handling
         }
         catch (SocketException ex1) {
@@ -163,75 +236,87 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
     }
 
     /**
-     * readRequest -- Read a Modbus TCP encoded request. The packet has a 6 byte
+     * readRequestIn -- Read a Modbus TCP encoded request. The packet has a 6 byte
      * header containing the protocol, transaction ID and length.
      *
      * @return response for message
      *
      * @throws ModbusIOException
      */
-    @Override
-    public ModbusRequest readRequest() throws ModbusIOException {
+    private ModbusRequest readRequestIn() throws ModbusIOException {
 
         ModbusRequest req;
         try {
-            byteInputStream.reset();
-
-            synchronized (byteInputStream) {
-                byte[] buffer = byteInputStream.getBuffer();
+            synchronized (inputLock) {
+                byte[] buffer = inputBuffer.array();
 
                 if (!headless) {
-                    if (dataInputStream.read(buffer, 0, 6) == -1) {
-                        throw new EOFException("Premature end of stream (Header truncated)");
+                    int received = 0;
+                    try {
+                        received = dataInputStream.read(buffer, 0, 6);
+                        if (received == -1) {
+                            throw new EOFException("Premature end of stream (Header truncated)");
+                        }
+
+                        // The transaction ID must be treated as an unsigned short in
+                        // order for validation to work correctly.
+
+                        int transaction = ModbusUtil.registerToShort(buffer, 0) & 0x0000FFFF;
+                        int protocol = ModbusUtil.registerToShort(buffer, 2);
+                        int count = ModbusUtil.registerToShort(buffer, 4);
+
+                        buffer = ensureInputCapacity(count);
+                        dataInputStream.readFully(buffer, 6, count);
+                        received += count;
+
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, count + 6));
+                        }
+
+                        int unit = buffer[6];
+                        int functionCode = buffer[7] & 0xFF;
+
+                        req = createRequest(functionCode, getMEIType(functionCode, buffer, 8, 6 + count));
+                        req.setUnitID(unit);
+                        req.setHeadless(false);
+
+                        req.setTransactionID(transaction);
+                        req.setProtocolID(protocol);
+                        req.setDataLength(count);
+
+                        inputBuffer.clear();
+                        inputBuffer.limit(6 + count);
+                        req.decode(inputBuffer);
                     }
-
-                    // The transaction ID must be treated as an unsigned short in
-                    // order for validation to work correctly.
-
-                    int transaction = ModbusUtil.registerToShort(buffer, 0) & 0x0000FFFF;
-                    int protocol = ModbusUtil.registerToShort(buffer, 2);
-                    int count = ModbusUtil.registerToShort(buffer, 4);
-
-                    if (dataInputStream.read(buffer, 6, count) == -1) {
-                        throw new ModbusIOException("Premature end of stream (Message truncated)");
+                    finally {
+                        fireAfterFrameRead(inputBuffer.array(), 0, received, hasFrameListeners() ? getRemoteSocketAddress(null) : null);
                     }
-
-                    logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, count + 6));
-
-                    byteInputStream.reset(buffer, (6 + count));
-                    byteInputStream.skip(6);
-
-                    int unit = byteInputStream.readByte();
-                    int functionCode = byteInputStream.readUnsignedByte();
-
-                    byteInputStream.reset();
-                    req = ModbusRequest.createModbusRequest(functionCode);
-                    req.setUnitID(unit);
-                    req.setHeadless(false);
-
-                    req.setTransactionID(transaction);
-                    req.setProtocolID(protocol);
-                    req.setDataLength(count);
-
-                    req.readFrom(byteInputStream);
                 }
                 else {
 
                     // This is a headless request.
 
-                    int unit = dataInputStream.readByte();
-                    int function = dataInputStream.readByte();
+                    boolean record = startHeadlessFrame();
+                    try {
+                        int unit = dataInputStream.readByte();
+                        int function = dataInputStream.readByte();
 
-                    req = ModbusRequest.createModbusRequest(function);
-                    req.setUnitID(unit);
-                    req.setHeadless(true);
-                    req.readData(dataInputStream);
+                        req = createRequest(function);
+                        req.setUnitID(unit);
+                        req.setHeadless(true);
+                        req.readData(dataInputStream);
 
-                    // Discard the CRC. This is a TCP/IP connection, which has
-                    // proper error correction and recovery.
+                        // Discard the CRC. This is a TCP/IP connection, which has
+                        // proper error correction and recovery.
 
-                    dataInputStream.readShort();
-                    logger.debug("Read: {}", req.getHexMessage());
+                        dataInputStream.readShort();
+                    }
+                    finally {
+                        endHeadlessFrame(record);
+                    }
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Read: {}", req.getHexMessage());
+                    }
                 }
             }
             return req;
@@ -250,70 +335,91 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
         }
     }
 
-    @Override
-    public ModbusResponse readResponse() throws ModbusIOException {
-
+    /**
+     * Reads a response from the underlying stream
+     *
+     * @return Response received
+     *
+     * @throws ModbusIOException if the response cannot be read
+     */
+    private ModbusResponse readResponseIn() throws ModbusIOException {
         try {
 
             ModbusResponse response;
 
-            synchronized (byteInputStream) {
+            synchronized (inputLock) {
                 // use same buffer
-                byte[] buffer = byteInputStream.getBuffer();
-                logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, byteInputStream.count));
+                byte[] buffer = inputBuffer.array();
                 if (!headless) {
-                    // All Modbus TCP transactions start with 6 bytes. Get them.
-                    if (dataInputStream.read(buffer, 0, 6) == -1) {
-                        throw new ModbusIOException("Premature end of stream (Header truncated)");
+                    int received = 0;
+                    try {
+                        // All Modbus TCP transactions start with 6 bytes. Get them.
+                        received = dataInputStream.read(buffer, 0, 6);
+                        if (received == -1) {
+                            throw new ModbusIOException("Premature end of stream (Header truncated)");
+                        }
+                        markResponseStart();
+
+                        /*
+                         * The transaction ID is the first word (offset 0) in the
+                         * data that was just read. It will be echoed back to the
+                         * requester.
+                         *
+                         * The protocol ID is the second word (offset 2) in the
+                         * data. It should always be 0, but I don't check.
+                         *
+                         * The length of the payload is the third word (offset 4) in
+                         * the data that was just read. That's what I need in order
+                         * to read the rest of the response.
+                         */
+                        int transaction = ModbusUtil.registerToShort(buffer, 0) & 0x0000FFFF;
+                        int protocol = ModbusUtil.registerToShort(buffer, 2);
+                        int count = ModbusUtil.registerToShort(buffer, 4);
+
+                        buffer = ensureInputCapacity(count);
+                        dataInputStream.readFully(buffer, 6, count);
+                        received += count;
+                        markResponseEnd();
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Read: {}", ModbusUtil.toHex(buffer, 0, count + 6));
+                        }
+                        int function = buffer[7] & 0xFF;
+                        response = ModbusResponse.createModbusResponse(function, getMEIType(function, buffer, 8, 6 + count));
+
+                        // Decode the whole frame straight from the input buffer
+                        inputBuffer.clear();
+                        inputBuffer.limit(6 + count);
+                        response.decode(inputBuffer);
+
+                        response.setTransactionID(transaction);
+                        response.setProtocolID(protocol);
                     }
-
-                    /*
-                     * The transaction ID is the first word (offset 0) in the
-                     * data that was just read. It will be echoed back to the
-                     * requester.
-                     *
-                     * The protocol ID is the second word (offset 2) in the
-                     * data. It should always be 0, but I don't check.
-                     *
-                     * The length of the payload is the third word (offset 4) in
-                     * the data that was just read. That's what I need in order
-                     * to read the rest of the response.
-                     */
-                    int transaction = ModbusUtil.registerToShort(buffer, 0) & 0x0000FFFF;
-                    int protocol = ModbusUtil.registerToShort(buffer, 2);
-                    int count = ModbusUtil.registerToShort(buffer, 4);
-
-                    if (dataInputStream.read(buffer, 6, count) == -1) {
-                        throw new ModbusIOException("Premature end of stream (Message truncated)");
+                    finally {
+                        fireAfterFrameRead(inputBuffer.array(), 0, received, hasFrameListeners() ? getRemoteSocketAddress(null) : null);
                     }
-                    byteInputStream.reset(buffer, (6 + count));
-                    byteInputStream.reset();
-                    byteInputStream.skip(7);
-                    int function = byteInputStream.readUnsignedByte();
-                    response = ModbusResponse.createModbusResponse(function);
-
-                    // Rewind the input buffer, then read the data into the
-                    // response.
-                    byteInputStream.reset();
-                    response.readFrom(byteInputStream);
-
-                    response.setTransactionID(transaction);
-                    response.setProtocolID(protocol);
                 }
                 else {
                     // This is a headless response. It has the same format as a
                     // RTU over Serial response.
-                    int unit = dataInputStream.readByte();
-                    int function = dataInputStream.readByte();
-
-                    response = ModbusResponse.createModbusResponse(function);
-                    response.setUnitID(unit);
-                    response.setHeadless();
-                    response.readData(dataInputStream);
-
-                    // Now discard the CRC. Which hopefully wasn't needed
-                    // because this is a TCP transport.
-                    dataInputStream.readShort();
+                    boolean record = startHeadlessFrame();
+                    try {
+                        int unit = dataInputStream.readByte();
+                        markResponseStart();
+                        int function = dataInputStream.readByte();
+
+                        response = ModbusResponse.createModbusResponse(function);
+                        response.setUnitID(unit);
+                        response.setHeadless();
+                        response.readData(dataInputStream);
+
+                        // Now discard the CRC. Which hopefully wasn't needed
+                        // because this is a TCP transport.
+                        dataInputStream.readShort();
+                        markResponseEnd();
+                    }
+                    finally {
+                        endHeadlessFrame(record);
+                    }
                 }
             }
             return response;
@@ -326,6 +432,33 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
         }
     }
 
+    /**
+     * Starts copying the bytes of a headless frame, which is read straight
+     * from the stream by the message, if there are any listeners for it
+     *
+     * @return True if the frame is being copied
+     */
+    private boolean startHeadlessFrame() {
+        boolean record = hasFrameListeners();
+        if (record) {
+            recordingStream.start();
+        }
+        return record;
+    }
+
+    /**
+     * Stops copying a headless frame and calls any listeners with the bytes
+     * that were read, whether or not the whole frame was read
+     *
+     * @param record True if the frame was being copied
+     */
+    private void endHeadlessFrame(boolean record) {
+        if (record) {
+            byte[] frame = recordingStream.stop();
+            fireAfterFrameRead(frame, 0, frame.length, getRemoteSocketAddress(null));
+        }
+    }
+
     /**
      * Prepares the input and output streams of this <tt>ModbusTCPTransport</tt>
      * instance based on the given socket.
@@ -350,7 +483,70 @@ public class ModbusTCPTransport extends AbstractModbusTransport {
             // Do nothing.
         }
 
-        dataInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        recordingStream = new RecordingInputStream(new BufferedInputStream(socket.getInputStream()));
+        dataInputStream = new DataInputStream(recordingStream);
         dataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
     }
-}
\ No newline at end of file
+
+    /**
+     * Makes sure the input buffer can hold a frame with the length from its
+     * header, growing it for functions registered with longer messages
+     *
+     * @param count Length from the header, the unit ID onwards
+     *
+     * @return Array of the input buffer, with the header in place
+     *
+     * @throws IOException if the length is not valid for any function
+     */
+    private byte[] ensureInputCapacity(int count) throws IOException {
+        if (count < 0 || count > ModbusFunctionRegistry.getReference().getMaximumLength() + 1) {
+            throw new IOException("Invalid frame length: " + count);
+        }
+        if (count + 6 > inputBuffer.capacity()) {
+            ByteBuffer buffer = ByteBuffer.allocate(count + 6);
+            buffer.put(inputBuffer.array(), 0, 6);
+            inputBuffer = buffer;
+        }
+        return inputBuffer.array();
+    }
+
+    /**
+     * Stream that can keep a copy of the bytes read through it
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream recorded = new ByteArrayOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+        private boolean recording;
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        void start() {
+            recorded.reset();
+            recording = true;
+        }
+
+        byte[] stop() {
+            recording = false;
+            return recorded.toByteArray();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (recording && b != -1) {
+                recorded.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (recording && count > 0) {
+                recorded.write(b, off, count);
+            }
+            return count;
+        }
+    }
+}
@@ -18,7 +18,11 @@ package com.ghgande.j2mod.modbus.io;
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusException;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Interface defining a ModbusTransaction.
@@ -33,12 +37,18 @@ import com.ghgande.j2mod.modbus.msg.ModbusResponse;
  */
 public abstract class ModbusTransaction {
 
+    private static final Logger logger = LoggerFactory.getLogger(ModbusTransaction.class);
+
     protected AbstractModbusTransport transport;
     protected ModbusRequest request;
     protected ModbusResponse response;
     protected boolean validityCheck = Modbus.DEFAULT_VALIDITYCHECK;
     protected int retries = Modbus.DEFAULT_RETRIES;
     protected static int transactionID = Modbus.DEFAULT_TRANSACTION_ID;
+    protected volatile ModbusMetrics metrics;
+    protected volatile TraceSink traceSink;
+    protected volatile long traceThreshold;
+    protected TransactionTrace trace;
 
     /**
      * Returns the <tt>ModbusRequest</tt> instance
@@ -137,6 +147,197 @@ public abstract class ModbusTransaction {
         return transactionID;
     }
 
+    /**
+     * Returns the metrics that transactions are recorded in
+     *
+     * @return Metrics or null if not recording
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to record each transaction in
+     *
+     * @param metrics Metrics or null to stop recording
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the start time of a transaction for the metrics
+     *
+     * @return Time in nanoseconds or 0 if not recording
+     */
+    protected long startMetrics() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the response to the current request in the metrics
+     *
+     * @param start Time returned by {@link #startMetrics()}
+     */
+    protected void recordResponse(long start) {
+        ModbusMetrics current = metrics;
+        if (current != null && request != null && response != null) {
+            long elapsed = System.nanoTime() - start;
+            if (response instanceof ExceptionResponse) {
+                current.recordExceptionResponse(request.getUnitID(), request.getFunctionCode(), ((ExceptionResponse)response).getExceptionCode(), elapsed);
+            }
+            else {
+                current.recordRequest(request.getUnitID(), request.getFunctionCode(), elapsed);
+            }
+        }
+    }
+
+    /**
+     * Records a retry of the current request in the metrics
+     */
+    protected void recordRetry() {
+        ModbusMetrics current = metrics;
+        if (current != null && request != null) {
+            current.recordRetry(request.getUnitID(), request.getFunctionCode());
+        }
+    }
+
+    /**
+     * Records that the current request failed to get a response in the metrics
+     */
+    protected void recordTimeout() {
+        ModbusMetrics current = metrics;
+        if (current != null && request != null) {
+            current.recordTimeout(request.getUnitID(), request.getFunctionCode());
+        }
+    }
+
+    /**
+     * Returns the sink that transaction traces are reported to
+     *
+     * @return Sink or null if not tracing
+     */
+    public TraceSink getTraceSink() {
+        return traceSink;
+    }
+
+    /**
+     * Sets the sink to report the traces of transactions that take at least
+     * the trace threshold, are retried or fail
+     *
+     * @param traceSink Sink or null to stop tracing
+     */
+    public void setTraceSink(TraceSink traceSink) {
+        this.traceSink = traceSink;
+    }
+
+    /**
+     * Returns the time a transaction must take to be reported
+     *
+     * @return Threshold in milliseconds
+     */
+    public long getTraceThreshold() {
+        return traceThreshold;
+    }
+
+    /**
+     * Sets the time a transaction must take to be reported, 0 to report every transaction
+     *
+     * @param traceThreshold Threshold in milliseconds
+     */
+    public void setTraceThreshold(long traceThreshold) {
+        this.traceThreshold = traceThreshold;
+    }
+
+    /**
+     * Starts tracing the current request if there is a trace sink
+     */
+    protected void startTrace() {
+        trace = traceSink == null || request == null ? null : new TransactionTrace(request);
+    }
+
+    /**
+     * Returns the time to pass to {@link #traceConnected(long)} when a
+     * connection is opened
+     *
+     * @return Time in nanoseconds or 0 if not tracing
+     */
+    protected long traceConnecting() {
+        return trace == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time taken to open a connection to the trace
+     *
+     * @param start Time returned by {@link #traceConnecting()}
+     */
+    protected void traceConnected(long start) {
+        if (trace != null) {
+            trace.connected(start);
+        }
+    }
+
+    /**
+     * Records in the trace that the request is about to be written
+     */
+    protected void traceBeforeWrite() {
+        if (trace != null) {
+            trace.beforeWrite();
+        }
+    }
+
+    /**
+     * Records in the trace that the request has been written
+     */
+    protected void traceAfterWrite() {
+        if (trace != null) {
+            trace.afterWrite();
+        }
+    }
+
+    /**
+     * Records in the trace that the response has been read from the transport
+     */
+    protected void traceAfterRead() {
+        if (trace != null) {
+            trace.afterRead(transport);
+        }
+    }
+
+    /**
+     * Records a retry and its reason in the trace
+     *
+     * @param reason Exception that caused the retry
+     */
+    protected void traceRetry(Exception reason) {
+        if (trace != null) {
+            trace.retry(reason);
+        }
+    }
+
+    /**
+     * Completes the trace and reports it to the sink if it is over the
+     * threshold, was retried or failed
+     *
+     * @param failure Exception that failed the transaction or null if a response was received
+     */
+    protected void finishTrace(Exception failure) {
+        TransactionTrace current = trace;
+        trace = null;
+        TraceSink sink = traceSink;
+        if (current != null && sink != null) {
+            current.finish(failure == null ? response : null, failure);
+            if (current.isReportable(traceThreshold)) {
+                try {
+                    sink.traceEvent(current);
+                }
+                catch (RuntimeException e) {
+                    logger.debug("Trace sink failed - {}", e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * Executes this <tt>ModbusTransaction</tt>.
      * Locks the <tt>ModbusTransport</tt> for sending
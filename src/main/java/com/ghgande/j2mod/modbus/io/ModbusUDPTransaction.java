@@ -103,16 +103,23 @@ public class ModbusUDPTransaction extends ModbusTransaction {
 
         //1. assert executeability
         assertExecutable();
+        long start = startMetrics();
+        startTrace();
         //2. open the connection if not connected
         if (!terminal.isActive()) {
+            long connecting = traceConnecting();
             try {
                 terminal.activate();
                 transport = terminal.getTransport();
             }
             catch (Exception ex) {
                 logger.debug("Terminal activation failed.", ex);
-                throw new ModbusIOException("Activation failed");
+                recordTimeout();
+                ModbusIOException failure = new ModbusIOException("Activation failed");
+                finishTrace(failure);
+                throw failure;
             }
+            traceConnected(connecting);
         }
 
         //3. Retry transaction retries times, in case of
@@ -124,20 +131,34 @@ public class ModbusUDPTransaction extends ModbusTransaction {
                 //   while holding the lock on the IO object
                 synchronized (MUTEX) {
                     //write request message
+                    traceBeforeWrite();
                     transport.writeMessage(request);
+                    traceAfterWrite();
                     //read response message
                     response = transport.readResponse();
+                    traceAfterRead();
                     break;
                 }
             }
             catch (ModbusIOException ex) {
                 retryCount++;
                 if (retryCount > retries) {
+                    recordTimeout();
+                    finishTrace(ex);
                     logger.error("Cannot send UDP message", ex);
                 }
+                else {
+                    recordRetry();
+                    traceRetry(ex);
+                }
             }
         }
 
+        if (retryCount <= retries) {
+            recordResponse(start);
+            finishTrace(null);
+        }
+
         //4. deal with "application level" exceptions
         if (response instanceof ExceptionResponse) {
             throw new ModbusSlaveException(((ExceptionResponse)response).getExceptionCode());
@@ -26,6 +26,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -42,8 +44,8 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
 
     //instance attributes
     private AbstractUDPTerminal terminal;
-    private final BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
-    private final BytesInputStream byteInputStream = new BytesInputStream(Modbus.MAX_MESSAGE_LENGTH);
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH);
+    private final Object inputLock = new Object();
 
     /**
      * Constructs a new <tt>ModbusTransport</tt> instance,
@@ -69,6 +71,16 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
         //?
     }
 
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        return terminal == null ? null : terminal.getLocalSocketAddress();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(ModbusMessage msg) {
+        return terminal == null ? null : terminal.getRemoteSocketAddress(msg);
+    }
+
     @Override
     public ModbusTransaction createTransaction() {
         ModbusUDPTransaction trans = new ModbusUDPTransaction();
@@ -78,14 +90,65 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
 
     @Override
     public void writeMessage(ModbusMessage msg) throws ModbusIOException {
+        fireBeforeMessageWrite(msg);
+        try {
+            writeMessageOut(msg);
+        }
+        catch (ModbusIOException ex) {
+            fireTransportError(ex);
+            throw ex;
+        }
+        fireAfterMessageWrite(msg);
+    }
+
+    @Override
+    public ModbusRequest readRequest() throws ModbusIOException {
+        fireBeforeRequestRead();
+        ModbusRequest req;
         try {
-            synchronized (byteOutputStream) {
-                int len = msg.getOutputLength();
-                byteOutputStream.reset();
-                msg.writeTo(byteOutputStream);
-                byte data[] = byteOutputStream.getBuffer();
-                data = Arrays.copyOf(data, len);
-                terminal.sendMessage(data);
+            req = readRequestIn();
+        }
+        catch (ModbusIOException ex) {
+            fireTransportError(ex);
+            throw ex;
+        }
+        fireAfterRequestRead(req);
+        return req;
+    }
+
+    @Override
+    public ModbusResponse readResponse() throws ModbusIOException {
+        fireBeforeResponseRead();
+        ModbusResponse res;
+        try {
+            res = readResponseIn();
+        }
+        catch (ModbusIOException ex) {
+            fireTransportError(ex);
+            throw ex;
+        }
+        fireAfterResponseRead(res);
+        return res;
+    }
+
+    /**
+     * Writes the message to the underlying stream
+     *
+     * @param msg Message to write
+     *
+     * @throws ModbusIOException if the message cannot be written
+     */
+    private void writeMessageOut(ModbusMessage msg) throws ModbusIOException {
+        try {
+            synchronized (outputBuffer) {
+                outputBuffer.clear();
+                msg.encode(outputBuffer);
+                byte[] frame = Arrays.copyOf(outputBuffer.array(), outputBuffer.position());
+
+                // The slave forgets the address of the master once the response is sent
+                InetSocketAddress remote = hasFrameListeners() ? terminal.getRemoteSocketAddress(frame) : null;
+                terminal.sendMessage(frame);
+                fireAfterFrameWrite(frame, 0, frame.length, remote);
             }
         }
         catch (Exception ex) {
@@ -93,17 +156,35 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
         }
     }
 
-    @Override
-    public ModbusRequest readRequest() throws ModbusIOException {
+    /**
+     * Calls any listeners with a datagram that has been received, before it
+     * is decoded
+     *
+     * @param frame Datagram received
+     */
+    private void fireFrameRead(byte[] frame) {
+        if (hasFrameListeners()) {
+            fireAfterFrameRead(frame, 0, terminal.getFrameLength(frame), terminal.getRemoteSocketAddress(frame));
+        }
+    }
+
+    /**
+     * Reads a request from the terminal
+     *
+     * @return Request received
+     *
+     * @throws ModbusIOException if the request cannot be read
+     */
+    private ModbusRequest readRequestIn() throws ModbusIOException {
         try {
             ModbusRequest req;
-            synchronized (byteInputStream) {
-                byteInputStream.reset(terminal.receiveMessage());
-                byteInputStream.skip(7);
-                int functionCode = byteInputStream.readUnsignedByte();
-                byteInputStream.reset();
-                req = ModbusRequest.createModbusRequest(functionCode);
-                req.readFrom(byteInputStream);
+            synchronized (inputLock) {
+                byte[] frame = terminal.receiveMessage();
+                fireFrameRead(frame);
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                int functionCode = frame[7] & 0xFF;
+                req = createRequest(functionCode, getMEIType(functionCode, frame, 8, frame.length));
+                req.decode(buffer);
             }
             return req;
         }
@@ -112,18 +193,25 @@ public class ModbusUDPTransport extends AbstractModbusTransport {
         }
     }
 
-    @Override
-    public ModbusResponse readResponse() throws ModbusIOException {
-
+    /**
+     * Reads a response from the underlying stream
+     *
+     * @return Response received
+     *
+     * @throws ModbusIOException if the response cannot be read
+     */
+    private ModbusResponse readResponseIn() throws ModbusIOException {
         try {
             ModbusResponse res;
-            synchronized (byteInputStream) {
-                byteInputStream.reset(terminal.receiveMessage());
-                byteInputStream.skip(7);
-                int functionCode = byteInputStream.readUnsignedByte();
-                byteInputStream.reset();
-                res = ModbusResponse.createModbusResponse(functionCode);
-                res.readFrom(byteInputStream);
+            synchronized (inputLock) {
+                byte[] frame = terminal.receiveMessage();
+                fireFrameRead(frame);
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                markResponseStart();
+                markResponseEnd();
+                int functionCode = frame[7] & 0xFF;
+                res = ModbusResponse.createModbusResponse(functionCode, getMEIType(functionCode, frame, 8, frame.length));
+                res.decode(buffer);
             }
             return res;
         }
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the packets from a capture file written by {@link WireCapture} or
+ * by any other tool, in either the pcapng or the classic pcap format.
+ * <p>
+ * Timestamps are converted to nanoseconds since the epoch whatever the
+ * resolution of the capture.  Blocks other than interface descriptions and
+ * packets are skipped.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class PcapngReader implements Closeable {
+
+    private static final int PCAP_MAGIC = 0xA1B2C3D4;
+    private static final int PCAP_MAGIC_NANOS = 0xA1B23C4D;
+    private static final int SIMPLE_PACKET_BLOCK = 0x00000003;
+    private static final int IF_TSRESOL = 9;
+    private static final int EPB_FLAGS = 2;
+
+    private final DataInputStream in;
+    private final boolean pcapng;
+    private boolean swapped;
+    private boolean nanos;
+    private int pcapLinkType;
+    private final List<Interface> interfaces = new ArrayList<Interface>();
+
+    /**
+     * Opens a capture file
+     *
+     * @param file File to read
+     *
+     * @throws IOException if the file cannot be read or isn't a capture
+     */
+    public PcapngReader(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    /**
+     * Reads a capture from a stream
+     *
+     * @param in Stream to read - closed when the reader is closed
+     *
+     * @throws IOException if the stream cannot be read or isn't a capture
+     */
+    public PcapngReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        int magic = this.in.readInt();
+        if (magic == PcapngWriter.SECTION_HEADER_BLOCK) {
+            pcapng = true;
+            readSectionHeader();
+        }
+        else if (magic == PCAP_MAGIC || magic == PCAP_MAGIC_NANOS || Integer.reverseBytes(magic) == PCAP_MAGIC || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS) {
+            pcapng = false;
+            swapped = magic != PCAP_MAGIC && magic != PCAP_MAGIC_NANOS;
+            nanos = magic == PCAP_MAGIC_NANOS || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS;
+            this.in.skipBytes(16);
+            pcapLinkType = readInt() & 0xFFFF;
+        }
+        else {
+            throw new IOException(String.format("Not a pcap or pcapng capture (magic %08X)", magic));
+        }
+    }
+
+    /**
+     * Reads the next packet
+     *
+     * @return Packet or null at the end of the capture
+     *
+     * @throws IOException if the capture cannot be read
+     */
+    public Packet readPacket() throws IOException {
+        return pcapng ? readBlocks() : readRecord();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads pcapng blocks until a packet is found
+     *
+     * @return Packet or null at the end of the capture
+     *
+     * @throws IOException if the capture cannot be read
+     */
+    private Packet readBlocks() throws IOException {
+        while (true) {
+            int type;
+            try {
+                type = in.readInt();
+            }
+            catch (EOFException e) {
+                return null;
+            }
+            if (type == PcapngWriter.SECTION_HEADER_BLOCK) {
+                interfaces.clear();
+                readSectionHeader();
+                continue;
+            }
+            if (swapped) {
+                type = Integer.reverseBytes(type);
+            }
+            int length = readInt();
+            byte[] body = new byte[length - 12];
+            in.readFully(body);
+            in.skipBytes(4);
+            if (type == PcapngWriter.INTERFACE_DESCRIPTION_BLOCK) {
+                readInterface(body);
+            }
+            else if (type == PcapngWriter.ENHANCED_PACKET_BLOCK) {
+                return readEnhancedPacket(body);
+            }
+            else if (type == SIMPLE_PACKET_BLOCK && !interfaces.isEmpty()) {
+                int captured = Math.min(getInt(body, 0), body.length - 4);
+                byte[] data = new byte[captured];
+                System.arraycopy(body, 4, data, 0, captured);
+                return new Packet(interfaces.get(0).linkType, 0, 0, data);
+            }
+        }
+    }
+
+    /**
+     * Reads a section header after its block type, setting the byte order
+     *
+     * @throws IOException if the header cannot be read
+     */
+    private void readSectionHeader() throws IOException {
+        byte[] bytes = new byte[8];
+        in.readFully(bytes);
+        swapped = false;
+        int magic = getInt(bytes, 4);
+        if (magic != PcapngWriter.BYTE_ORDER_MAGIC) {
+            swapped = true;
+            if (getInt(bytes, 4) != PcapngWriter.BYTE_ORDER_MAGIC) {
+                throw new IOException("Invalid pcapng byte order magic");
+            }
+        }
+        int length = getInt(bytes, 0);
+        in.skipBytes(length - 12);
+    }
+
+    /**
+     * Reads an interface description block
+     *
+     * @param body Block body
+     */
+    private void readInterface(byte[] body) {
+        Interface description = new Interface();
+        description.linkType = getShort(body, 0);
+        int pos = 8;
+        while (pos + 4 <= body.length) {
+            int code = getShort(body, pos);
+            int length = getShort(body, pos + 2);
+            if (code == 0) {
+                break;
+            }
+            if (code == IF_TSRESOL && length >= 1) {
+                int resolution = body[pos + 4] & 0xFF;
+                if ((resolution & 0x80) == 0) {
+                    long units = 1;
+                    for (int i = 0; i < resolution; i++) {
+                        units *= 10;
+                    }
+                    description.unitsPerSecond = units;
+                }
+                else {
+                    description.unitsPerSecond = 1L << (resolution & 0x7F);
+                }
+            }
+            pos += 4 + PcapngWriter.pad(length);
+        }
+        interfaces.add(description);
+    }
+
+    /**
+     * Reads an enhanced packet block
+     *
+     * @param body Block body
+     *
+     * @return Packet
+     *
+     * @throws IOException if the block refers to an unknown interface
+     */
+    private Packet readEnhancedPacket(byte[] body) throws IOException {
+        int interfaceId = getInt(body, 0);
+        if (interfaceId < 0 || interfaceId >= interfaces.size()) {
+            throw new IOException("Packet for unknown interface " + interfaceId);
+        }
+        Interface description = interfaces.get(interfaceId);
+        long units = ((getInt(body, 4) & 0xFFFFFFFFL) << 32) | (getInt(body, 8) & 0xFFFFFFFFL);
+        int captured = getInt(body, 12);
+        byte[] data = new byte[captured];
+        System.arraycopy(body, 20, data, 0, captured);
+
+        int direction = 0;
+        int pos = 20 + PcapngWriter.pad(captured);
+        while (pos + 4 <= body.length) {
+            int code = getShort(body, pos);
+            int length = getShort(body, pos + 2);
+            if (code == 0) {
+                break;
+            }
+            if (code == EPB_FLAGS && length == 4) {
+                direction = getInt(body, pos + 4) & 0x03;
+            }
+            pos += 4 + PcapngWriter.pad(length);
+        }
+        return new Packet(description.linkType, toNanos(units, description.unitsPerSecond), direction, data);
+    }
+
+    /**
+     * Reads a classic pcap record
+     *
+     * @return Packet or null at the end of the capture
+     *
+     * @throws IOException if the capture cannot be read
+     */
+    private Packet readRecord() throws IOException {
+        int seconds;
+        try {
+            seconds = readInt();
+        }
+        catch (EOFException e) {
+            return null;
+        }
+        long fraction = readInt() & 0xFFFFFFFFL;
+        int captured = readInt();
+        readInt();
+        byte[] data = new byte[captured];
+        in.readFully(data);
+        long timestamp = (seconds & 0xFFFFFFFFL) * 1000000000L + (nanos ? fraction : fraction * 1000);
+        return new Packet(pcapLinkType, timestamp, 0, data);
+    }
+
+    /**
+     * Converts a timestamp to nanoseconds
+     *
+     * @param units          Timestamp in the units of the interface
+     * @param unitsPerSecond Units per second
+     *
+     * @return Nanoseconds since the epoch
+     */
+    private static long toNanos(long units, long unitsPerSecond) {
+        if (unitsPerSecond == 1000000000L) {
+            return units;
+        }
+        long seconds = units / unitsPerSecond;
+        long remainder = units % unitsPerSecond;
+        return seconds * 1000000000L + (remainder * 1000000000L) / unitsPerSecond;
+    }
+
+    private int readInt() throws IOException {
+        int value = in.readInt();
+        return swapped ? Integer.reverseBytes(value) : value;
+    }
+
+    private int getInt(byte[] bytes, int pos) {
+        int value = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16) | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+        return swapped ? Integer.reverseBytes(value) : value;
+    }
+
+    private int getShort(byte[] bytes, int pos) {
+        int value = ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+        return swapped ? ((value & 0xFF) << 8) | (value >> 8) : value;
+    }
+
+    /**
+     * Description of a capture interface
+     */
+    private static class Interface {
+        int linkType;
+        long unitsPerSecond = 1000000;
+    }
+
+    /**
+     * A packet read from a capture
+     */
+    public static class Packet {
+        private final int linkType;
+        private final long timestamp;
+        private final int direction;
+        private final byte[] data;
+
+        Packet(int linkType, long timestamp, int direction, byte[] data) {
+            this.linkType = linkType;
+            this.timestamp = timestamp;
+            this.direction = direction;
+            this.data = data;
+        }
+
+        /**
+         * Returns the link type of the interface the packet was captured on
+         *
+         * @return Link type e.g. <tt>PcapngWriter.LINKTYPE_RAW</tt>
+         */
+        public int getLinkType() {
+            return linkType;
+        }
+
+        /**
+         * Returns when the packet was captured
+         *
+         * @return Nanoseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the direction of the packet if it was recorded
+         *
+         * @return <tt>PcapngWriter.DIRECTION_INBOUND</tt>, <tt>DIRECTION_OUTBOUND</tt> or 0
+         */
+        public int getDirection() {
+            return direction;
+        }
+
+        /**
+         * Returns the captured bytes of the packet
+         *
+         * @return Packet data
+         */
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import java.io.*;
+
+/**
+ * Writes packets to a stream in the pcapng format so that they can be
+ * examined with Wireshark or any other tool that reads captures.
+ * <p>
+ * A section header is written when the writer is created and an interface
+ * description block is written for each interface added.  Every interface
+ * records timestamps in nanoseconds.  The writer is not thread safe.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class PcapngWriter implements Closeable, Flushable {
+
+    /**
+     * Link type for raw IPv4/IPv6 packets
+     */
+    public static final int LINKTYPE_RAW = 101;
+
+    /**
+     * First of the link types reserved for private use, used for Modbus RTU
+     * frames.  Wireshark decodes them once <tt>DLT User 0</tt> is mapped to
+     * the <tt>mbrtu</tt> protocol.
+     */
+    public static final int LINKTYPE_USER0 = 147;
+
+    /**
+     * Second private use link type, used for Modbus ASCII frames
+     */
+    public static final int LINKTYPE_USER1 = 148;
+
+    /**
+     * Packet was received
+     */
+    public static final int DIRECTION_INBOUND = 1;
+
+    /**
+     * Packet was sent
+     */
+    public static final int DIRECTION_OUTBOUND = 2;
+
+    static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+    static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+    static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+    static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    private static final int OPT_ENDOFOPT = 0;
+    private static final int IF_NAME = 2;
+    private static final int IF_TSRESOL = 9;
+    private static final int EPB_FLAGS = 2;
+    private static final int SNAP_LENGTH = 65535;
+    private static final byte[] PADDING = new byte[4];
+
+    private final DataOutputStream out;
+    private int interfaces;
+
+    /**
+     * Creates a writer and writes the section header to the stream
+     *
+     * @param out Stream to write to
+     *
+     * @throws IOException if the header cannot be written
+     */
+    public PcapngWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(SECTION_HEADER_BLOCK);
+        this.out.writeInt(28);
+        this.out.writeInt(BYTE_ORDER_MAGIC);
+        this.out.writeShort(1);
+        this.out.writeShort(0);
+        this.out.writeLong(-1);
+        this.out.writeInt(28);
+    }
+
+    /**
+     * Adds an interface to the capture
+     *
+     * @param linkType Link type of the packets on the interface
+     * @param name     Name of the interface or null
+     *
+     * @return ID of the interface to use when writing packets
+     *
+     * @throws IOException if the interface description cannot be written
+     */
+    public int addInterface(int linkType, String name) throws IOException {
+        byte[] nameBytes = name == null ? new byte[0] : name.getBytes("UTF-8");
+        int length = 20 + 8;
+        if (nameBytes.length > 0) {
+            length += 4 + pad(nameBytes.length);
+        }
+        length += 4;
+        out.writeInt(INTERFACE_DESCRIPTION_BLOCK);
+        out.writeInt(length);
+        out.writeShort(linkType);
+        out.writeShort(0);
+        out.writeInt(SNAP_LENGTH);
+        if (nameBytes.length > 0) {
+            writeOption(IF_NAME, nameBytes, nameBytes.length);
+        }
+        writeOption(IF_TSRESOL, new byte[]{9}, 1);
+        out.writeShort(OPT_ENDOFOPT);
+        out.writeShort(0);
+        out.writeInt(length);
+        return interfaces++;
+    }
+
+    /**
+     * Writes a packet
+     *
+     * @param interfaceId Interface returned by {@link #addInterface(int, String)}
+     * @param timestamp   Time of the packet in nanoseconds since the epoch
+     * @param direction   {@link #DIRECTION_INBOUND}, {@link #DIRECTION_OUTBOUND} or 0 if not known
+     * @param data        Packet data
+     * @param off         Offset of the packet in the data
+     * @param len         Length of the packet
+     *
+     * @throws IOException if the packet cannot be written
+     */
+    public void writePacket(int interfaceId, long timestamp, int direction, byte[] data, int off, int len) throws IOException {
+        if (interfaceId < 0 || interfaceId >= interfaces) {
+            throw new IllegalArgumentException("Unknown interface " + interfaceId);
+        }
+        int length = 32 + pad(len) + (direction != 0 ? 8 : 0) + 4;
+        out.writeInt(ENHANCED_PACKET_BLOCK);
+        out.writeInt(length);
+        out.writeInt(interfaceId);
+        out.writeInt((int)(timestamp >>> 32));
+        out.writeInt((int)timestamp);
+        out.writeInt(len);
+        out.writeInt(len);
+        out.write(data, off, len);
+        out.write(PADDING, 0, pad(len) - len);
+        if (direction != 0) {
+            out.writeShort(EPB_FLAGS);
+            out.writeShort(4);
+            out.writeInt(direction & 0x03);
+        }
+        out.writeShort(OPT_ENDOFOPT);
+        out.writeShort(0);
+        out.writeInt(length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Writes an option padded to a 32 bit boundary
+     *
+     * @param code   Option code
+     * @param value  Option value
+     * @param length Length of the value
+     *
+     * @throws IOException if the option cannot be written
+     */
+    private void writeOption(int code, byte[] value, int length) throws IOException {
+        out.writeShort(code);
+        out.writeShort(length);
+        out.write(value, 0, length);
+        out.write(PADDING, 0, pad(length) - length);
+    }
+
+    /**
+     * Returns the length rounded up to a 32 bit boundary
+     *
+     * @param length Length in bytes
+     *
+     * @return Padded length
+     */
+    static int pad(int length) {
+        return (length + 3) & ~3;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+
+/**
+ * Calculates how long a serial master should wait for the response to a
+ * request, based on the line settings and the size of the response expected
+ * for the function code.
+ * <p>
+ * The timeout is the time it takes to transmit the expected response, plus
+ * the slave turnaround time and some allowance for the operating system.
+ * Optionally, the turnaround time of each slave can be learnt from the
+ * measured response times, in the same way that TCP estimates its
+ * retransmission timeout (smoothed round trip time plus four times the
+ * smoothed variance).
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class SerialTimeoutCalculator {
+
+    /**
+     * Default time allowed for a slave to start replying (=<tt>50</tt> ms)
+     */
+    public static final int DEFAULT_TURNAROUND = 50;
+
+    /**
+     * Default allowance for driver and scheduling latency (=<tt>10</tt> ms)
+     */
+    public static final int DEFAULT_LATENCY = 10;
+
+    /**
+     * Default shortest timeout that will ever be returned (=<tt>20</tt> ms)
+     */
+    public static final int DEFAULT_MINIMUM_TIMEOUT = 20;
+
+    private static final int UNIT_IDS = 256;
+
+    private final double charNanos;
+    private final boolean ascii;
+    private int turnaround = DEFAULT_TURNAROUND;
+    private int latency = DEFAULT_LATENCY;
+    private int minimumTimeout = DEFAULT_MINIMUM_TIMEOUT;
+    private boolean learning = false;
+
+    // Learnt turnaround per unit ID in nanoseconds
+    private final double[] smoothedTurnaround = new double[UNIT_IDS];
+    private final double[] turnaroundVariance = new double[UNIT_IDS];
+    private final boolean[] learnt = new boolean[UNIT_IDS];
+
+    /**
+     * Creates a calculator for the given serial parameters
+     *
+     * @param params Serial parameters of the port
+     */
+    public SerialTimeoutCalculator(SerialParameters params) {
+        this(params.getBaudRate(), params.getDatabits(), params.getStopbits(), params.getParity(),
+                Modbus.SERIAL_ENCODING_ASCII.equals(params.getEncoding()));
+    }
+
+    /**
+     * Creates a calculator for the given line settings
+     *
+     * @param baudRate Baud rate
+     * @param dataBits Number of data bits
+     * @param stopBits Stop bits setting as a <tt>SerialPort</tt> constant e.g. <tt>SerialPort.ONE_STOP_BIT</tt>
+     * @param parity   Parity setting as a <tt>SerialPort</tt> constant e.g. <tt>SerialPort.NO_PARITY</tt>
+     * @param ascii    True if the encoding is ASCII, false for RTU
+     */
+    public SerialTimeoutCalculator(int baudRate, int dataBits, int stopBits, int parity, boolean ascii) {
+        if (baudRate <= 0) {
+            throw new IllegalArgumentException("Invalid baud rate: " + baudRate);
+        }
+        double stop;
+        if (stopBits == SerialPort.TWO_STOP_BITS) {
+            stop = 2;
+        }
+        else if (stopBits == SerialPort.ONE_POINT_FIVE_STOP_BITS) {
+            stop = 1.5;
+        }
+        else {
+            stop = 1;
+        }
+        double bitsPerChar = 1 + dataBits + stop + (parity == SerialPort.NO_PARITY ? 0 : 1);
+        this.charNanos = bitsPerChar * 1000000000.0 / baudRate;
+        this.ascii = ascii;
+    }
+
+    /**
+     * Returns the time it takes to transmit a single character
+     *
+     * @return Character time in nanoseconds
+     */
+    public double getCharacterTime() {
+        return charNanos;
+    }
+
+    /**
+     * Returns the time it takes to transmit a message of the given RTU size,
+     * allowing for the ASCII encoding if used and the 3.5 character silent
+     * interval that terminates an RTU frame
+     *
+     * @param rtuLength Length of the message in bytes including the unit ID and CRC
+     *
+     * @return Transmit time in nanoseconds
+     */
+    public long getTransmitTime(int rtuLength) {
+        double chars = ascii ? (2 * rtuLength) + 1 : rtuLength + 3.5;
+        return (long)(chars * charNanos);
+    }
+
+    /**
+     * Returns how long to wait for the response to the request, measured
+     * from the moment the request has been completely transmitted
+     *
+     * @param request Request that has been sent
+     * @param maximum Upper limit of the timeout in milliseconds
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getResponseTimeout(ModbusRequest request, int maximum) {
+        long nanos = getTransmitTime(getExpectedResponseLength(request));
+        nanos += getTurnaround(request.getUnitID());
+        int timeout = (int)((nanos + 999999) / 1000000) + latency;
+        return Math.min(maximum, Math.max(minimumTimeout, timeout));
+    }
+
+    /**
+     * Updates the learnt turnaround of the slave with a measured response time
+     *
+     * @param request Request that was sent
+     * @param elapsed Time from the end of the request to the end of the response in nanoseconds
+     */
+    public synchronized void recordResponse(ModbusRequest request, long elapsed) {
+        if (!learning) {
+            return;
+        }
+        int unit = request.getUnitID() & 0xFF;
+        double sample = Math.max(0, elapsed - getTransmitTime(getExpectedResponseLength(request)));
+        if (!learnt[unit]) {
+            smoothedTurnaround[unit] = sample;
+            turnaroundVariance[unit] = sample / 2;
+            learnt[unit] = true;
+        }
+        else {
+            turnaroundVariance[unit] = 0.75 * turnaroundVariance[unit] + 0.25 * Math.abs(smoothedTurnaround[unit] - sample);
+            smoothedTurnaround[unit] = 0.875 * smoothedTurnaround[unit] + 0.125 * sample;
+        }
+    }
+
+    /**
+     * Backs off the learnt turnaround of the slave after a timeout so that a
+     * slave that has slowed down isn't repeatedly given too little time
+     *
+     * @param request Request that timed out
+     */
+    public synchronized void recordTimeout(ModbusRequest request) {
+        int unit = request.getUnitID() & 0xFF;
+        if (learnt[unit]) {
+            smoothedTurnaround[unit] *= 2;
+        }
+    }
+
+    /**
+     * Forgets everything learnt about the slave response times
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < UNIT_IDS; i++) {
+            learnt[i] = false;
+            smoothedTurnaround[i] = 0;
+            turnaroundVariance[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the turnaround time to allow for the unit
+     *
+     * @param unitId Unit ID of the slave
+     *
+     * @return Turnaround in nanoseconds
+     */
+    private synchronized long getTurnaround(int unitId) {
+        int unit = unitId & 0xFF;
+        if (learning && learnt[unit]) {
+            return (long)(smoothedTurnaround[unit] + 4 * turnaroundVariance[unit]);
+        }
+        return turnaround * 1000000L;
+    }
+
+    /**
+     * Returns the expected length of the response to the request in RTU
+     * bytes, including the unit ID, function code and CRC.
+     * Responses with a length that cannot be predicted return the maximum
+     * message length.
+     *
+     * @param request Request to examine
+     *
+     * @return Length in bytes
+     */
+    public static int getExpectedResponseLength(ModbusRequest request) {
+        switch (request.getFunctionCode()) {
+            case Modbus.READ_COILS:
+                return 5 + (((ReadCoilsRequest)request).getBitCount() + 7) / 8;
+            case Modbus.READ_INPUT_DISCRETES:
+                return 5 + (((ReadInputDiscretesRequest)request).getBitCount() + 7) / 8;
+            case Modbus.READ_MULTIPLE_REGISTERS:
+                return 5 + 2 * ((ReadMultipleRegistersRequest)request).getWordCount();
+            case Modbus.READ_INPUT_REGISTERS:
+                return 5 + 2 * ((ReadInputRegistersRequest)request).getWordCount();
+            case Modbus.READ_WRITE_MULTIPLE:
+                return 5 + 2 * ((ReadWriteMultipleRequest)request).getReadWordCount();
+            case Modbus.READ_EXCEPTION_STATUS:
+                return 5;
+            case Modbus.WRITE_COIL:
+            case Modbus.WRITE_SINGLE_REGISTER:
+            case Modbus.WRITE_MULTIPLE_COILS:
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+            case Modbus.READ_SERIAL_DIAGNOSTICS:
+            case Modbus.READ_COMM_EVENT_COUNTER:
+                return 8;
+            case Modbus.MASK_WRITE_REGISTER:
+                return 10;
+            default:
+                return Modbus.MAX_MESSAGE_LENGTH;
+        }
+    }
+
+    /**
+     * Returns the turnaround time allowed when nothing has been learnt
+     *
+     * @return Turnaround in milliseconds
+     */
+    public int getTurnaround() {
+        return turnaround;
+    }
+
+    /**
+     * Sets the turnaround time allowed when nothing has been learnt
+     *
+     * @param turnaround Turnaround in milliseconds
+     */
+    public void setTurnaround(int turnaround) {
+        this.turnaround = turnaround;
+    }
+
+    /**
+     * Returns the allowance for driver and scheduling latency
+     *
+     * @return Latency in milliseconds
+     */
+    public int getLatency() {
+        return latency;
+    }
+
+    /**
+     * Sets the allowance for driver and scheduling latency
+     *
+     * @param latency Latency in milliseconds
+     */
+    public void setLatency(int latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Returns the shortest timeout that will be returned
+     *
+     * @return Timeout in milliseconds
+     */
+    public int getMinimumTimeout() {
+        return minimumTimeout;
+    }
+
+    /**
+     * Sets the shortest timeout that will be returned
+     *
+     * @param minimumTimeout Timeout in milliseconds
+     */
+    public void setMinimumTimeout(int minimumTimeout) {
+        this.minimumTimeout = minimumTimeout;
+    }
+
+    /**
+     * Returns true if the turnaround of each slave is learnt from the response times
+     *
+     * @return True if learning
+     */
+    public boolean isLearning() {
+        return learning;
+    }
+
+    /**
+     * Sets whether the turnaround of each slave is learnt from the response times
+     *
+     * @param learning True to learn
+     */
+    public synchronized void setLearning(boolean learning) {
+        this.learning = learning;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+/**
+ * Receives the traces of master transactions that were slow, were retried
+ * or failed.
+ * <p>
+ * Traces are delivered on the thread that executed the transaction, so
+ * implementations should hand them off quickly.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public interface TraceSink {
+
+    /**
+     * Called when a transaction completes and its trace is to be reported
+     *
+     * @param trace Trace of the transaction
+     */
+    void traceEvent(TransactionTrace trace);
+}
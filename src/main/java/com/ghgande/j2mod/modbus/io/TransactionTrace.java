@@ -0,0 +1,337 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The timings of a single master transaction, broken down so that a slow
+ * network can be told apart from a slow slave or a pause in the local JVM.
+ * <p>
+ * The write, first byte, receive and decode times are those of the last
+ * attempt.  The first byte time runs from the end of the write to the
+ * arrival of the first byte of the response and is mostly the network
+ * round trip plus the slave turnaround.  The receive time runs to the end of
+ * the frame and the decode time from there to the response being built.
+ * Any garbage collection in the JVM while the transaction was running is
+ * reported separately.  Times that could not be measured are <tt>-1</tt>.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class TransactionTrace {
+
+    private static final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final long timestamp = System.currentTimeMillis();
+    private final long start = System.nanoTime();
+    private final long gcStart = getCollectionTime();
+    private final int unitId;
+    private final int functionCode;
+    private final int transactionId;
+    private final List<String> retryReasons = new ArrayList<String>(2);
+    private long connectTime;
+    private long writeTime = -1;
+    private long firstByteTime = -1;
+    private long receiveTime = -1;
+    private long decodeTime = -1;
+    private long totalTime;
+    private long gcTime;
+    private int exceptionCode;
+    private String error;
+    private long writeStart;
+    private long writeEnd;
+
+    /**
+     * Starts a trace of the transaction for the request
+     *
+     * @param request Request being sent
+     */
+    TransactionTrace(ModbusRequest request) {
+        unitId = request.getUnitID();
+        functionCode = request.getFunctionCode();
+        transactionId = request.getTransactionID();
+    }
+
+    /**
+     * Adds the time taken to open a connection
+     *
+     * @param start Time the connection was started from <tt>System.nanoTime()</tt>
+     */
+    void connected(long start) {
+        connectTime += System.nanoTime() - start;
+    }
+
+    /**
+     * Records that the request is about to be written
+     */
+    void beforeWrite() {
+        writeStart = System.nanoTime();
+    }
+
+    /**
+     * Records that the request has been written
+     */
+    void afterWrite() {
+        writeEnd = System.nanoTime();
+        writeTime = writeEnd - writeStart;
+        firstByteTime = -1;
+        receiveTime = -1;
+        decodeTime = -1;
+    }
+
+    /**
+     * Records that the response has been read, using the times the
+     * transport marked for the start and end of the frame
+     *
+     * @param transport Transport the response was read from
+     */
+    void afterRead(AbstractModbusTransport transport) {
+        long now = System.nanoTime();
+        long first = transport.getResponseStartTime();
+        long end = transport.getResponseEndTime();
+        if (first - writeEnd >= 0) {
+            firstByteTime = first - writeEnd;
+            if (end - first >= 0) {
+                receiveTime = end - first;
+                decodeTime = now - end;
+            }
+        }
+        else {
+            firstByteTime = now - writeEnd;
+        }
+    }
+
+    /**
+     * Records that the request is being retried
+     *
+     * @param reason Exception that caused the retry
+     */
+    void retry(Exception reason) {
+        retryReasons.add(describe(reason));
+    }
+
+    /**
+     * Completes the trace
+     *
+     * @param response Response received or null
+     * @param failure  Exception that failed the transaction or null
+     */
+    void finish(ModbusResponse response, Exception failure) {
+        totalTime = System.nanoTime() - start;
+        gcTime = getCollectionTime() - gcStart;
+        if (response instanceof ExceptionResponse) {
+            exceptionCode = ((ExceptionResponse)response).getExceptionCode();
+        }
+        if (failure != null) {
+            error = describe(failure);
+        }
+    }
+
+    /**
+     * Returns true if the trace should be reported - the transaction took at
+     * least the threshold, was retried or failed
+     *
+     * @param threshold Threshold in milliseconds
+     *
+     * @return True to report
+     */
+    boolean isReportable(long threshold) {
+        return totalTime >= threshold * 1000000L || !retryReasons.isEmpty() || error != null;
+    }
+
+    private static String describe(Exception e) {
+        String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        Throwable cause = e.getCause();
+        if (cause != null && cause.getMessage() != null && !message.contains(cause.getMessage())) {
+            message = message + ": " + cause.getMessage();
+        }
+        return message;
+    }
+
+    private static long getCollectionTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Returns when the transaction started
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the unit ID of the request
+     *
+     * @return Unit ID
+     */
+    public int getUnitId() {
+        return unitId;
+    }
+
+    /**
+     * Returns the function code of the request
+     *
+     * @return Function code
+     */
+    public int getFunctionCode() {
+        return functionCode;
+    }
+
+    /**
+     * Returns the transaction ID of the request
+     *
+     * @return Transaction ID
+     */
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Returns the time spent opening connections
+     *
+     * @return Time in nanoseconds
+     */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * Returns the time taken to write the request
+     *
+     * @return Time in nanoseconds or -1 if nothing was written
+     */
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+    /**
+     * Returns the time from the end of the write to the first byte of the response
+     *
+     * @return Time in nanoseconds or -1 if no response arrived
+     */
+    public long getFirstByteTime() {
+        return firstByteTime;
+    }
+
+    /**
+     * Returns the time from the first to the last byte of the response
+     *
+     * @return Time in nanoseconds or -1 if not known
+     */
+    public long getReceiveTime() {
+        return receiveTime;
+    }
+
+    /**
+     * Returns the time taken to decode the response
+     *
+     * @return Time in nanoseconds or -1 if not known
+     */
+    public long getDecodeTime() {
+        return decodeTime;
+    }
+
+    /**
+     * Returns the time taken by the whole transaction including retries
+     *
+     * @return Time in nanoseconds
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Returns the time the JVM spent collecting garbage during the transaction
+     *
+     * @return Time in milliseconds
+     */
+    public long getGcTime() {
+        return gcTime;
+    }
+
+    /**
+     * Returns the number of times the request was retried
+     *
+     * @return Number of retries
+     */
+    public int getRetries() {
+        return retryReasons.size();
+    }
+
+    /**
+     * Returns why each retry was needed
+     *
+     * @return List of reasons
+     */
+    public List<String> getRetryReasons() {
+        return Collections.unmodifiableList(retryReasons);
+    }
+
+    /**
+     * Returns the exception code the slave responded with
+     *
+     * @return Exception code or 0 if the slave didn't return an exception
+     */
+    public int getExceptionCode() {
+        return exceptionCode;
+    }
+
+    /**
+     * Returns why the transaction failed
+     *
+     * @return Description of the failure or null if it succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    private static String toMillis(long nanos) {
+        return nanos < 0 ? "-" : String.format("%.3f", nanos / 1000000.0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(String.format("unit=%d fc=%d tid=%d total=%s connect=%s write=%s firstByte=%s receive=%s decode=%s gc=%d retries=%d",
+                unitId, functionCode, transactionId, toMillis(totalTime), toMillis(connectTime), toMillis(writeTime),
+                toMillis(firstByteTime), toMillis(receiveTime), toMillis(decodeTime), gcTime, retryReasons.size()));
+        if (!retryReasons.isEmpty()) {
+            buffer.append(" retryReasons=").append(retryReasons);
+        }
+        if (exceptionCode != 0) {
+            buffer.append(" exception=").append(exceptionCode);
+        }
+        if (error != null) {
+            buffer.append(" error=\"").append(error).append('"');
+        }
+        return buffer.toString();
+    }
+}
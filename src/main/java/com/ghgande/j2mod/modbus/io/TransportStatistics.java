@@ -0,0 +1,161 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport listener that keeps running totals of the messages and bytes
+ * passing through one or more transports, and the last error seen.
+ * <p>
+ * Byte counts include the MBAP header for TCP and UDP, but not the CRC/LRC
+ * or ASCII framing for serial.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class TransportStatistics extends AbstractTransportListener {
+
+    private final AtomicLong messagesIn = new AtomicLong();
+    private final AtomicLong messagesOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String lastError;
+    private volatile long lastErrorTime;
+
+    @Override
+    public void afterMessageWrite(AbstractModbusTransport transport, ModbusMessage msg, long timestamp) {
+        messagesOut.incrementAndGet();
+        bytesOut.addAndGet(getLength(msg));
+    }
+
+    @Override
+    public void afterRequestRead(AbstractModbusTransport transport, ModbusRequest req, long timestamp) {
+        if (req != null) {
+            messagesIn.incrementAndGet();
+            bytesIn.addAndGet(getLength(req));
+        }
+    }
+
+    @Override
+    public void afterResponseRead(AbstractModbusTransport transport, ModbusResponse res, long timestamp) {
+        if (res != null) {
+            messagesIn.incrementAndGet();
+            bytesIn.addAndGet(getLength(res));
+        }
+    }
+
+    @Override
+    public void transportError(AbstractModbusTransport transport, ModbusIOException ex, long timestamp) {
+        errors.incrementAndGet();
+        lastError = ex.getMessage();
+        lastErrorTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the number of messages received
+     *
+     * @return Number of messages
+     */
+    public long getMessagesIn() {
+        return messagesIn.get();
+    }
+
+    /**
+     * Returns the number of messages sent
+     *
+     * @return Number of messages
+     */
+    public long getMessagesOut() {
+        return messagesOut.get();
+    }
+
+    /**
+     * Returns the number of bytes received
+     *
+     * @return Number of bytes
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * Returns the number of bytes sent
+     *
+     * @return Number of bytes
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Returns the number of failed reads and writes, including timeouts
+     *
+     * @return Number of errors
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Returns the message of the last error
+     *
+     * @return Error message or null if there have been no errors
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Returns when the last error occurred
+     *
+     * @return Time in milliseconds since the epoch or 0 if there have been no errors
+     */
+    public long getLastErrorTime() {
+        return lastErrorTime;
+    }
+
+    /**
+     * Clears all the totals and the last error
+     */
+    public void reset() {
+        messagesIn.set(0);
+        messagesOut.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+        errors.set(0);
+        lastError = null;
+        lastErrorTime = 0;
+    }
+
+    /**
+     * Returns the length of the message on the wire, ignoring serial framing
+     *
+     * @param msg Message
+     *
+     * @return Length in bytes
+     */
+    private static int getLength(ModbusMessage msg) {
+        // Unit ID and function code, plus the rest of the MBAP header if there is one
+        return (msg.isHeadless() ? 2 : 8) + msg.getDataLength();
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.io;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport listener that records every frame sent and received on the
+ * transports it is added to, in a pcapng file that can be opened with
+ * Wireshark.
+ * <p>
+ * The bytes recorded are the ones that went over the wire, taken from the
+ * transport rather than rebuilt from the decoded message, so frames that
+ * fail their checksum, are truncated or cannot be decoded are recorded as
+ * they were received.  A frame that is written is only recorded once the
+ * write has succeeded.
+ * <p>
+ * TCP and UDP frames are wrapped in IP and TCP/UDP headers built from the
+ * socket addresses of the transport, so they are decoded as Modbus/TCP.
+ * TCP sequence numbers are tracked for each direction of each connection
+ * so the stream can be followed.  RTU frames are recorded on the first
+ * private link type (<tt>DLT User 0</tt>) and ASCII frames on the second
+ * (<tt>DLT User 1</tt>).
+ * <p>
+ * The I/O thread only copies the frame into a bounded queue.  Frames are
+ * built and written by a background thread, and if the queue is full the
+ * frame is dropped and counted rather than blocking the transport.
+ * <pre>
+ * WireCapture capture = new WireCapture(new File("modbus.pcapng"));
+ * master.getTransport().addTransportListener(capture);
+ * ...
+ * capture.close();
+ * </pre>
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class WireCapture extends AbstractTransportListener implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WireCapture.class);
+
+    /**
+     * Default number of frames that can be waiting to be written (=<tt>4096</tt>)
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int PROTOCOL_TCP = 6;
+    private static final int PROTOCOL_UDP = 17;
+
+    private final BlockingQueue<Frame> queue;
+    private final PcapngWriter writer;
+    private final int ipInterface;
+    private final int rtuInterface;
+    private final int asciiInterface;
+    private final long wallClockOffset;
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Map<String, Long> sequences = new HashMap<String, Long>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private boolean closed;
+
+    /**
+     * Creates a capture that writes to the file
+     *
+     * @param file File to write
+     *
+     * @throws IOException if the file cannot be created
+     */
+    public WireCapture(File file) throws IOException {
+        this(new FileOutputStream(file), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a capture that writes to the stream
+     *
+     * @param out      Stream to write to - closed when the capture is closed
+     * @param capacity Number of frames that can be waiting to be written
+     *
+     * @throws IOException if the capture header cannot be written
+     */
+    public WireCapture(OutputStream out, int capacity) throws IOException {
+        queue = new ArrayBlockingQueue<Frame>(capacity);
+        writer = new PcapngWriter(out);
+        ipInterface = writer.addInterface(PcapngWriter.LINKTYPE_RAW, "modbus-ip");
+        rtuInterface = writer.addInterface(PcapngWriter.LINKTYPE_USER0, "modbus-rtu");
+        asciiInterface = writer.addInterface(PcapngWriter.LINKTYPE_USER1, "modbus-ascii");
+        wallClockOffset = System.currentTimeMillis() * 1000000L - System.nanoTime();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeFrames();
+            }
+        }, "j2mod-capture");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public boolean isFrameListener() {
+        return true;
+    }
+
+    @Override
+    public void afterFrameWrite(AbstractModbusTransport transport, byte[] frame, int offset, int length, InetSocketAddress remote, long timestamp) {
+        capture(transport, frame, offset, length, remote, timestamp, PcapngWriter.DIRECTION_OUTBOUND);
+    }
+
+    @Override
+    public void afterFrameRead(AbstractModbusTransport transport, byte[] frame, int offset, int length, InetSocketAddress remote, long timestamp) {
+        capture(transport, frame, offset, length, remote, timestamp, PcapngWriter.DIRECTION_INBOUND);
+    }
+
+    /**
+     * Returns the number of frames queued for writing
+     *
+     * @return Number of frames
+     */
+    public long getCapturedCount() {
+        return captured.get();
+    }
+
+    /**
+     * Returns the number of frames dropped because the queue was full
+     *
+     * @return Number of frames
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops capturing, writes any queued frames and closes the file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            running = false;
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer.close();
+        }
+    }
+
+    /**
+     * Copies the frame into the queue without blocking
+     *
+     * @param transport Transport the frame was sent or received on
+     * @param bytes     Buffer holding the frame
+     * @param offset    Offset of the frame in the buffer
+     * @param length    Length of the frame
+     * @param remote    Address of the other end or null for a serial port
+     * @param timestamp Time of the event in nanoseconds
+     * @param direction Direction of the frame
+     */
+    private void capture(AbstractModbusTransport transport, byte[] bytes, int offset, int length, InetSocketAddress remote, long timestamp, int direction) {
+        if (bytes == null || length <= 0 || !running) {
+            return;
+        }
+        Frame frame = new Frame();
+        frame.timestamp = timestamp == 0 ? System.nanoTime() : timestamp;
+        frame.direction = direction;
+        frame.data = Arrays.copyOfRange(bytes, offset, offset + length);
+        if (transport instanceof ModbusRTUTransport) {
+            frame.type = Frame.RTU;
+        }
+        else if (transport instanceof ModbusASCIITransport) {
+            frame.type = Frame.ASCII;
+        }
+        else {
+            frame.type = transport instanceof ModbusUDPTransport ? Frame.UDP : Frame.TCP;
+            frame.local = transport.getLocalSocketAddress();
+            frame.remote = remote;
+        }
+        if (queue.offer(frame)) {
+            captured.incrementAndGet();
+        }
+        else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes frames from the queue until the capture is closed
+     */
+    private void writeFrames() {
+        try {
+            while (running || !queue.isEmpty()) {
+                Frame frame = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (frame != null) {
+                    writeFrame(frame);
+                }
+                if (frame == null || queue.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            running = false;
+            logger.error("Cannot write capture - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the frame on the interface for its transport
+     *
+     * @param frame Frame to write
+     *
+     * @throws IOException if the frame cannot be written
+     */
+    private void writeFrame(Frame frame) throws IOException {
+        long time = frame.timestamp + wallClockOffset;
+        if (frame.type == Frame.RTU) {
+            writer.writePacket(rtuInterface, time, frame.direction, frame.data, 0, frame.data.length);
+        }
+        else if (frame.type == Frame.ASCII) {
+            writer.writePacket(asciiInterface, time, frame.direction, frame.data, 0, frame.data.length);
+        }
+        else {
+            byte[] packet = toIpPacket(frame, frame.data);
+            writer.writePacket(ipInterface, time, frame.direction, packet, 0, packet.length);
+        }
+    }
+
+    /**
+     * Wraps the payload in IP and TCP or UDP headers
+     *
+     * @param frame   Frame being written
+     * @param payload Modbus payload
+     *
+     * @return IP packet
+     */
+    private byte[] toIpPacket(Frame frame, byte[] payload) {
+        boolean outbound = frame.direction == PcapngWriter.DIRECTION_OUTBOUND;
+        InetSocketAddress source = outbound ? frame.local : frame.remote;
+        InetSocketAddress destination = outbound ? frame.remote : frame.local;
+        byte[] sourceAddress = getAddress(source);
+        byte[] destinationAddress = getAddress(destination);
+
+        // Unknown and wildcard addresses take the family of the other end
+        if (sourceAddress == null) {
+            sourceAddress = new byte[destinationAddress == null ? 4 : destinationAddress.length];
+        }
+        if (destinationAddress == null) {
+            destinationAddress = new byte[sourceAddress.length];
+        }
+        if (sourceAddress.length != destinationAddress.length) {
+            sourceAddress = toIPv6(sourceAddress);
+            destinationAddress = toIPv6(destinationAddress);
+        }
+        int sourcePort = getPort(source);
+        int destinationPort = getPort(destination);
+
+        boolean tcp = frame.type == Frame.TCP;
+        int transportLength = (tcp ? 20 : 8) + payload.length;
+        boolean ipv6 = sourceAddress.length == 16;
+        int ipLength = ipv6 ? 40 : 20;
+        byte[] packet = new byte[ipLength + transportLength];
+        int protocol = tcp ? PROTOCOL_TCP : PROTOCOL_UDP;
+
+        if (ipv6) {
+            packet[0] = 0x60;
+            putShort(packet, 4, transportLength);
+            packet[6] = (byte)protocol;
+            packet[7] = 64;
+            System.arraycopy(sourceAddress, 0, packet, 8, 16);
+            System.arraycopy(destinationAddress, 0, packet, 24, 16);
+        }
+        else {
+            packet[0] = 0x45;
+            putShort(packet, 2, packet.length);
+            packet[6] = 0x40;
+            packet[8] = 64;
+            packet[9] = (byte)protocol;
+            System.arraycopy(sourceAddress, 0, packet, 12, 4);
+            System.arraycopy(destinationAddress, 0, packet, 16, 4);
+            putShort(packet, 10, getIpChecksum(packet, 20));
+        }
+
+        int pos = ipLength;
+        putShort(packet, pos, sourcePort);
+        putShort(packet, pos + 2, destinationPort);
+        if (tcp) {
+            String flow = source + ">" + destination;
+            Long sequence = sequences.get(flow);
+            long seq = sequence == null ? 1 : sequence;
+            sequences.put(flow, seq + payload.length);
+            Long reverse = sequences.get(destination + ">" + source);
+            long ack = reverse == null ? 1 : reverse;
+            putInt(packet, pos + 4, (int)seq);
+            putInt(packet, pos + 8, (int)ack);
+            packet[pos + 12] = 0x50;
+            packet[pos + 13] = 0x18;
+            putShort(packet, pos + 14, 0xFFFF);
+            pos += 20;
+        }
+        else {
+            putShort(packet, pos + 4, transportLength);
+            pos += 8;
+        }
+        System.arraycopy(payload, 0, packet, pos, payload.length);
+        return packet;
+    }
+
+    /**
+     * Returns the raw address of the socket address
+     *
+     * @param address Socket address or null
+     *
+     * @return Address bytes or null if not known or a wildcard address
+     */
+    private static byte[] getAddress(InetSocketAddress address) {
+        InetAddress inet = address == null ? null : address.getAddress();
+        if (inet == null || inet.isAnyLocalAddress()) {
+            return null;
+        }
+        return inet.getAddress();
+    }
+
+    /**
+     * Returns the port of the socket address
+     *
+     * @param address Socket address or null
+     *
+     * @return Port, or the default Modbus port if not known
+     */
+    private static int getPort(InetSocketAddress address) {
+        return address == null ? Modbus.DEFAULT_PORT : address.getPort();
+    }
+
+    /**
+     * Converts an IPv4 address to an IPv4 mapped IPv6 address
+     *
+     * @param address Address bytes
+     *
+     * @return IPv6 address bytes
+     */
+    private static byte[] toIPv6(byte[] address) {
+        if (address.length == 16) {
+            return address;
+        }
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte)0xFF;
+        mapped[11] = (byte)0xFF;
+        System.arraycopy(address, 0, mapped, 12, 4);
+        return mapped;
+    }
+
+    /**
+     * Returns the checksum of an IPv4 header
+     *
+     * @param header Header bytes with a zero checksum
+     * @param length Length of the header
+     *
+     * @return Checksum
+     */
+    private static int getIpChecksum(byte[] header, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i += 2) {
+            sum += ((header[i] & 0xFF) << 8) | (header[i + 1] & 0xFF);
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >> 16);
+        }
+        return ~sum & 0xFFFF;
+    }
+
+    private static void putShort(byte[] bytes, int pos, int value) {
+        bytes[pos] = (byte)(value >> 8);
+        bytes[pos + 1] = (byte)value;
+    }
+
+    private static void putInt(byte[] bytes, int pos, int value) {
+        putShort(bytes, pos, value >>> 16);
+        putShort(bytes, pos + 2, value);
+    }
+
+    /**
+     * A frame waiting to be written
+     */
+    private static class Frame {
+        static final int TCP = 0;
+        static final int UDP = 1;
+        static final int RTU = 2;
+        static final int ASCII = 3;
+
+        int type;
+        int direction;
+        long timestamp;
+        byte[] data;
+        InetSocketAddress local;
+        InetSocketAddress remote;
+    }
+}
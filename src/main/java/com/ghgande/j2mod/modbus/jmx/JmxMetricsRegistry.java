@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import com.ghgande.j2mod.modbus.util.SimpleMetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+
+/**
+ * Metrics registry that exposes every set of metrics it holds as an MBean
+ * for as long as the metrics are in the registry
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class JmxMetricsRegistry extends SimpleMetricsRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(JmxMetricsRegistry.class);
+
+    @Override
+    protected void registered(ModbusMetrics metrics) {
+        try {
+            ModbusMBeans.register(metrics);
+        }
+        catch (JMException e) {
+            logger.warn("Cannot register MBean for metrics {} - {}", metrics.getName(), e.getMessage());
+        }
+    }
+
+    @Override
+    protected void unregistered(ModbusMetrics metrics) {
+        try {
+            ModbusMBeans.unregister(ModbusMBeans.getObjectName("Metrics", metrics.getName()));
+        }
+        catch (JMException e) {
+            logger.warn("Cannot unregister MBean for metrics {} - {}", metrics.getName(), e.getMessage());
+        }
+    }
+}
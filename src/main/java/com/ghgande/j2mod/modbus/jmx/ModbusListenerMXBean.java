@@ -0,0 +1,178 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+/**
+ * Management interface of a slave listener (TCP, UDP or serial).
+ * Connection and thread pool figures are only meaningful for TCP listeners
+ * and are zero for the others.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public interface ModbusListenerMXBean {
+
+    /**
+     * Returns the type of the listener
+     *
+     * @return One of <tt>TCP</tt>, <tt>UDP</tt> or <tt>Serial</tt>
+     */
+    String getType();
+
+    /**
+     * Returns the address being listened on
+     *
+     * @return Address or null for serial listeners
+     */
+    String getAddress();
+
+    /**
+     * Returns the port being listened on
+     *
+     * @return Port number
+     */
+    int getPort();
+
+    /**
+     * Tests if the listener is accepting requests
+     *
+     * @return true if listening
+     */
+    boolean isListening();
+
+    /**
+     * Returns any error that stopped the listener from starting
+     *
+     * @return Error message or null
+     */
+    String getError();
+
+    /**
+     * Returns the number of TCP connections currently being handled
+     *
+     * @return Number of connections
+     */
+    int getActiveConnections();
+
+    /**
+     * Returns the remote addresses of the TCP connections currently being handled
+     *
+     * @return Array of addresses
+     */
+    String[] getConnections();
+
+    /**
+     * Returns the number of threads in the TCP handler pool
+     *
+     * @return Number of threads
+     */
+    int getPoolSize();
+
+    /**
+     * Returns the number of pool threads currently handling a connection
+     *
+     * @return Number of busy threads
+     */
+    int getBusyThreads();
+
+    /**
+     * Returns the proportion of pool threads currently busy
+     *
+     * @return Utilization between 0 and 1
+     */
+    double getPoolUtilization();
+
+    /**
+     * Returns the number of accepted connections waiting for a free thread
+     *
+     * @return Queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the number of messages received
+     *
+     * @return Number of messages
+     */
+    long getMessagesIn();
+
+    /**
+     * Returns the number of messages sent
+     *
+     * @return Number of messages
+     */
+    long getMessagesOut();
+
+    /**
+     * Returns the number of bytes received
+     *
+     * @return Number of bytes
+     */
+    long getBytesIn();
+
+    /**
+     * Returns the number of bytes sent
+     *
+     * @return Number of bytes
+     */
+    long getBytesOut();
+
+    /**
+     * Returns the number of transport errors
+     *
+     * @return Number of errors
+     */
+    long getErrors();
+
+    /**
+     * Returns the message of the last transport error
+     *
+     * @return Error message or null
+     */
+    String getLastError();
+
+    /**
+     * Returns when the last transport error occurred
+     *
+     * @return Time in milliseconds since the epoch or 0
+     */
+    long getLastErrorTime();
+
+    /**
+     * Clears the transport statistics and any metrics of the listener
+     */
+    void resetStatistics();
+
+    /**
+     * Closes the TCP connection from the given remote address, as returned by
+     * {@link #getConnections()}
+     *
+     * @param remoteAddress Remote address of the connection
+     *
+     * @return true if a connection was closed
+     */
+    boolean closeConnection(String remoteAddress);
+
+    /**
+     * Closes all the TCP connections, leaving the listener running
+     */
+    void closeConnections();
+
+    /**
+     * Stops the listener
+     */
+    void stop();
+}
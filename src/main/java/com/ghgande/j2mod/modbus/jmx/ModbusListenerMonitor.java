@@ -0,0 +1,204 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+import com.ghgande.j2mod.modbus.io.TransportStatistics;
+import com.ghgande.j2mod.modbus.net.*;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import com.ghgande.j2mod.modbus.util.ThreadPool;
+
+import java.util.List;
+
+/**
+ * Exposes a slave listener as a JMX MBean
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusListenerMonitor implements ModbusListenerMXBean {
+
+    private final AbstractModbusListener listener;
+
+    /**
+     * Creates a monitor for the listener
+     *
+     * @param listener Listener to monitor
+     */
+    public ModbusListenerMonitor(AbstractModbusListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        this.listener = listener;
+    }
+
+    @Override
+    public String getType() {
+        if (listener instanceof ModbusTCPListener) {
+            return "TCP";
+        }
+        else if (listener instanceof ModbusUDPListener) {
+            return "UDP";
+        }
+        else if (listener instanceof ModbusSerialListener) {
+            return "Serial";
+        }
+        return listener.getClass().getSimpleName();
+    }
+
+    @Override
+    public String getAddress() {
+        return listener.getAddress() == null ? null : listener.getAddress().getHostAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return listener.getPort();
+    }
+
+    @Override
+    public boolean isListening() {
+        return listener.isListening();
+    }
+
+    @Override
+    public String getError() {
+        return listener.getError();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return listener instanceof ModbusTCPListener ? ((ModbusTCPListener)listener).getActiveConnectionCount() : 0;
+    }
+
+    @Override
+    public String[] getConnections() {
+        if (!(listener instanceof ModbusTCPListener)) {
+            return new String[0];
+        }
+        List<TCPSlaveConnection> connections = ((ModbusTCPListener)listener).getActiveConnections();
+        String[] addresses = new String[connections.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = String.valueOf(connections.get(i).getRemoteSocketAddress());
+        }
+        return addresses;
+    }
+
+    @Override
+    public int getPoolSize() {
+        ThreadPool pool = getThreadPool();
+        return pool == null ? 0 : pool.getSize();
+    }
+
+    @Override
+    public int getBusyThreads() {
+        ThreadPool pool = getThreadPool();
+        return pool == null ? 0 : pool.getActiveCount();
+    }
+
+    @Override
+    public double getPoolUtilization() {
+        ThreadPool pool = getThreadPool();
+        if (pool == null || pool.getSize() == 0) {
+            return 0;
+        }
+        return (double)pool.getActiveCount() / pool.getSize();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        ThreadPool pool = getThreadPool();
+        return pool == null ? 0 : pool.getQueueDepth();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return listener.getStatistics().getMessagesIn();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return listener.getStatistics().getMessagesOut();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return listener.getStatistics().getBytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return listener.getStatistics().getBytesOut();
+    }
+
+    @Override
+    public long getErrors() {
+        return listener.getStatistics().getErrors();
+    }
+
+    @Override
+    public String getLastError() {
+        return listener.getStatistics().getLastError();
+    }
+
+    @Override
+    public long getLastErrorTime() {
+        return listener.getStatistics().getLastErrorTime();
+    }
+
+    @Override
+    public void resetStatistics() {
+        TransportStatistics statistics = listener.getStatistics();
+        statistics.reset();
+        ModbusMetrics metrics = listener.getMetrics();
+        if (metrics != null) {
+            metrics.reset();
+        }
+    }
+
+    @Override
+    public boolean closeConnection(String remoteAddress) {
+        if (listener instanceof ModbusTCPListener) {
+            for (TCPSlaveConnection connection : ((ModbusTCPListener)listener).getActiveConnections()) {
+                if (String.valueOf(connection.getRemoteSocketAddress()).equals(remoteAddress)) {
+                    connection.close();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void closeConnections() {
+        if (listener instanceof ModbusTCPListener) {
+            ((ModbusTCPListener)listener).closeConnections();
+        }
+    }
+
+    @Override
+    public void stop() {
+        listener.stop();
+    }
+
+    /**
+     * Returns the thread pool of a TCP listener
+     *
+     * @return Pool or null if the listener doesn't have one
+     */
+    private ThreadPool getThreadPool() {
+        return listener instanceof ModbusTCPListener ? ((ModbusTCPListener)listener).getThreadPool() : null;
+    }
+}
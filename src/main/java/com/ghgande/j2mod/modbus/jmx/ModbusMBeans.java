@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+import com.ghgande.j2mod.modbus.facade.AbstractModbusMaster;
+import com.ghgande.j2mod.modbus.net.AbstractModbusListener;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers listeners, masters and metrics with the platform MBean server
+ * so they can be inspected and managed with any JMX console.
+ * <p>
+ * MBeans are named <tt>com.ghgande.j2mod:type=&lt;type&gt;,name=&lt;name&gt;</tt>
+ * where the type is <tt>Listener</tt>, <tt>Master</tt> or <tt>Metrics</tt>.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusMBeans {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusMBeans.class);
+
+    /**
+     * Domain of all the j2mod MBeans
+     */
+    public static final String DOMAIN = "com.ghgande.j2mod";
+
+    private ModbusMBeans() {
+    }
+
+    /**
+     * Registers an MBean for the listener
+     *
+     * @param listener Listener to register
+     * @param name     Name to identify the listener
+     *
+     * @return Name the MBean was registered under
+     *
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static ObjectName register(AbstractModbusListener listener, String name) throws JMException {
+        return register(new ModbusListenerMonitor(listener), "Listener", name);
+    }
+
+    /**
+     * Registers an MBean for the master
+     *
+     * @param master Master to register
+     * @param name   Name to identify the master
+     *
+     * @return Name the MBean was registered under
+     *
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static ObjectName register(AbstractModbusMaster master, String name) throws JMException {
+        return register(new ModbusMasterMonitor(master), "Master", name);
+    }
+
+    /**
+     * Registers an MBean for the metrics using the name of the metrics
+     *
+     * @param metrics Metrics to register
+     *
+     * @return Name the MBean was registered under
+     *
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static ObjectName register(ModbusMetrics metrics) throws JMException {
+        return register(new ModbusMetricsMonitor(metrics), "Metrics", metrics.getName());
+    }
+
+    /**
+     * Removes an MBean registered by this class, ignoring any that
+     * are no longer registered
+     *
+     * @param objectName Name returned when the MBean was registered
+     */
+    public static void unregister(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        }
+        catch (JMException e) {
+            logger.warn("Cannot unregister MBean {} - {}", objectName, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the object name for an MBean of the given type
+     *
+     * @param type Type of MBean
+     * @param name Name to identify the MBean
+     *
+     * @return Object name
+     *
+     * @throws JMException if the name is invalid
+     */
+    public static ObjectName getObjectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Registers the monitor, replacing any MBean already registered with the same name
+     *
+     * @param monitor Monitor to register
+     * @param type    Type of MBean
+     * @param name    Name to identify the MBean
+     *
+     * @return Name the MBean was registered under
+     *
+     * @throws JMException if the MBean cannot be registered
+     */
+    private static ObjectName register(Object monitor, String type, String name) throws JMException {
+        ObjectName objectName = getObjectName(type, name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(monitor, objectName);
+        logger.debug("Registered MBean {}", objectName);
+        return objectName;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+/**
+ * Management interface of a master facade and its connection.
+ * Connect figures are only meaningful for TCP masters and are zero for the
+ * others.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public interface ModbusMasterMXBean {
+
+    /**
+     * Returns the type of the master
+     *
+     * @return One of <tt>TCP</tt>, <tt>UDP</tt> or <tt>Serial</tt>
+     */
+    String getType();
+
+    /**
+     * Tests if the master is connected to the slave
+     *
+     * @return true if connected
+     */
+    boolean isConnected();
+
+    /**
+     * Returns the slave address of a TCP master
+     *
+     * @return Address and port or null for other masters
+     */
+    String getRemoteAddress();
+
+    /**
+     * Returns the response timeout
+     *
+     * @return Timeout in milliseconds
+     */
+    int getTimeout();
+
+    /**
+     * Sets the response timeout
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    void setTimeout(int timeout);
+
+    /**
+     * Returns the number of times the TCP connection has been made, so
+     * anything more than one indicates reconnections
+     *
+     * @return Number of connects
+     */
+    long getConnectCount();
+
+    /**
+     * Returns the reason the last TCP connect attempt failed
+     *
+     * @return Error message or null
+     */
+    String getLastConnectError();
+
+    /**
+     * Returns the number of messages received
+     *
+     * @return Number of messages
+     */
+    long getMessagesIn();
+
+    /**
+     * Returns the number of messages sent
+     *
+     * @return Number of messages
+     */
+    long getMessagesOut();
+
+    /**
+     * Returns the number of bytes received
+     *
+     * @return Number of bytes
+     */
+    long getBytesIn();
+
+    /**
+     * Returns the number of bytes sent
+     *
+     * @return Number of bytes
+     */
+    long getBytesOut();
+
+    /**
+     * Returns the number of transport errors, including timeouts
+     *
+     * @return Number of errors
+     */
+    long getErrors();
+
+    /**
+     * Returns the message of the last transport error
+     *
+     * @return Error message or null
+     */
+    String getLastError();
+
+    /**
+     * Returns when the last transport error occurred
+     *
+     * @return Time in milliseconds since the epoch or 0
+     */
+    long getLastErrorTime();
+
+    /**
+     * Clears the transport statistics and any metrics of the master
+     */
+    void resetStatistics();
+
+    /**
+     * Disconnects the master from the slave
+     */
+    void disconnect();
+}
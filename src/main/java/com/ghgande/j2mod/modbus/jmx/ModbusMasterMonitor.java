@@ -0,0 +1,154 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+import com.ghgande.j2mod.modbus.facade.AbstractModbusMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusSerialMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+
+/**
+ * Exposes a master facade as a JMX MBean
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusMasterMonitor implements ModbusMasterMXBean {
+
+    private final AbstractModbusMaster master;
+
+    /**
+     * Creates a monitor for the master
+     *
+     * @param master Master to monitor
+     */
+    public ModbusMasterMonitor(AbstractModbusMaster master) {
+        if (master == null) {
+            throw new IllegalArgumentException("Master cannot be null");
+        }
+        this.master = master;
+    }
+
+    @Override
+    public String getType() {
+        if (master instanceof ModbusTCPMaster) {
+            return "TCP";
+        }
+        else if (master instanceof ModbusUDPMaster) {
+            return "UDP";
+        }
+        else if (master instanceof ModbusSerialMaster) {
+            return "Serial";
+        }
+        return master.getClass().getSimpleName();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return master.isConnected();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        TCPMasterConnection connection = getConnection();
+        if (connection == null || connection.getAddress() == null) {
+            return null;
+        }
+        return connection.getAddress().getHostAddress() + ":" + connection.getPort();
+    }
+
+    @Override
+    public int getTimeout() {
+        return master.getTimeout();
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        master.setTimeout(timeout);
+    }
+
+    @Override
+    public long getConnectCount() {
+        TCPMasterConnection connection = getConnection();
+        return connection == null ? 0 : connection.getConnectCount();
+    }
+
+    @Override
+    public String getLastConnectError() {
+        TCPMasterConnection connection = getConnection();
+        return connection == null ? null : connection.getLastConnectError();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return master.getStatistics().getMessagesIn();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return master.getStatistics().getMessagesOut();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return master.getStatistics().getBytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return master.getStatistics().getBytesOut();
+    }
+
+    @Override
+    public long getErrors() {
+        return master.getStatistics().getErrors();
+    }
+
+    @Override
+    public String getLastError() {
+        return master.getStatistics().getLastError();
+    }
+
+    @Override
+    public long getLastErrorTime() {
+        return master.getStatistics().getLastErrorTime();
+    }
+
+    @Override
+    public void resetStatistics() {
+        master.getStatistics().reset();
+        ModbusMetrics metrics = master.getMetrics();
+        if (metrics != null) {
+            metrics.reset();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        master.disconnect();
+    }
+
+    /**
+     * Returns the connection of a TCP master
+     *
+     * @return Connection or null if not a TCP master
+     */
+    private TCPMasterConnection getConnection() {
+        return master instanceof ModbusTCPMaster ? ((ModbusTCPMaster)master).getConnection() : null;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+/**
+ * Management interface of a set of transaction metrics.
+ * All latencies are in microseconds.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public interface ModbusMetricsMXBean {
+
+    /**
+     * Returns the name of the metrics
+     *
+     * @return Name
+     */
+    String getName();
+
+    /**
+     * Returns the number of requests answered, including exception responses
+     *
+     * @return Number of requests
+     */
+    long getRequestCount();
+
+    /**
+     * Returns the number of exception responses
+     *
+     * @return Number of exceptions
+     */
+    long getExceptionCount();
+
+    /**
+     * Returns the number of requests that got no response
+     *
+     * @return Number of timeouts
+     */
+    long getTimeoutCount();
+
+    /**
+     * Returns the number of retries
+     *
+     * @return Number of retries
+     */
+    long getRetryCount();
+
+    /**
+     * Returns the function codes that have been seen
+     *
+     * @return Function codes
+     */
+    int[] getFunctionCodes();
+
+    /**
+     * Returns the mean latency
+     *
+     * @return Latency in microseconds
+     */
+    double getMeanLatency();
+
+    /**
+     * Returns the median latency
+     *
+     * @return Latency in microseconds
+     */
+    double getMedianLatency();
+
+    /**
+     * Returns the 99th percentile latency
+     *
+     * @return Latency in microseconds
+     */
+    double get99thPercentileLatency();
+
+    /**
+     * Returns the maximum latency
+     *
+     * @return Latency in microseconds
+     */
+    double getMaxLatency();
+
+    /**
+     * Returns the 99th percentile queue wait
+     *
+     * @return Wait in microseconds
+     */
+    double get99thPercentileQueueWait();
+
+    /**
+     * Returns a latency percentile of a function code
+     *
+     * @param functionCode Function code
+     * @param percentile   Percentile between 0 and 100
+     *
+     * @return Latency in microseconds or 0 if the function code hasn't been seen
+     */
+    double getFunctionCodeLatency(int functionCode, double percentile);
+
+    /**
+     * Returns the number of requests for a unit ID that got no response
+     *
+     * @param unitId Unit ID
+     *
+     * @return Number of timeouts
+     */
+    long getUnitTimeoutCount(int unitId);
+
+    /**
+     * Returns the number of retries for a unit ID
+     *
+     * @param unitId Unit ID
+     *
+     * @return Number of retries
+     */
+    long getUnitRetryCount(int unitId);
+
+    /**
+     * Returns a summary of the metrics broken down by function code
+     *
+     * @return Summary text
+     */
+    String getSummary();
+
+    /**
+     * Clears all the counters and histograms
+     */
+    void reset();
+}
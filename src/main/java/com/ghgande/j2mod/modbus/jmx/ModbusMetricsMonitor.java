@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.jmx;
+
+import com.ghgande.j2mod.modbus.util.LatencyHistogram;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+
+/**
+ * Exposes a set of transaction metrics as a JMX MBean
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusMetricsMonitor implements ModbusMetricsMXBean {
+
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final ModbusMetrics metrics;
+
+    /**
+     * Creates a monitor for the metrics
+     *
+     * @param metrics Metrics to monitor
+     */
+    public ModbusMetricsMonitor(ModbusMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics cannot be null");
+        }
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getName() {
+        return metrics.getName();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return metrics.getRequestCount();
+    }
+
+    @Override
+    public long getExceptionCount() {
+        return metrics.getExceptionCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return metrics.getTimeoutCount();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return metrics.getRetryCount();
+    }
+
+    @Override
+    public int[] getFunctionCodes() {
+        return metrics.getFunctionCodes();
+    }
+
+    @Override
+    public double getMeanLatency() {
+        return metrics.getLatency().getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getMedianLatency() {
+        return metrics.getLatency().getValueAtPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double get99thPercentileLatency() {
+        return metrics.getLatency().getValueAtPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getMaxLatency() {
+        return metrics.getLatency().getMax() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double get99thPercentileQueueWait() {
+        return metrics.getQueueWait().getValueAtPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getFunctionCodeLatency(int functionCode, double percentile) {
+        LatencyHistogram latency = metrics.getLatency(functionCode);
+        return latency == null ? 0 : latency.getValueAtPercentile(percentile) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public long getUnitTimeoutCount(int unitId) {
+        return metrics.getUnitTimeoutCount(unitId);
+    }
+
+    @Override
+    public long getUnitRetryCount(int unitId) {
+        return metrics.getUnitRetryCount(unitId);
+    }
+
+    @Override
+    public String getSummary() {
+        return metrics.toString();
+    }
+
+    @Override
+    public void reset() {
+        metrics.reset();
+    }
+}
@@ -20,6 +20,7 @@ import com.ghgande.j2mod.modbus.Modbus;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a<tt>ModbusResponse</tt> that represents an exception.
@@ -83,6 +84,15 @@ public class ExceptionResponse extends ModbusResponse {
         return exceptionCode;
     }
 
+    /**
+     * Sets the Modbus exception code of this <tt>ExceptionResponse</tt>.
+     *
+     * @param exceptionCode the exception code as <tt>int</tt>.
+     */
+    public void setExceptionCode(int exceptionCode) {
+        this.exceptionCode = exceptionCode;
+    }
+
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(getExceptionCode());
     }
@@ -96,6 +106,16 @@ public class ExceptionResponse extends ModbusResponse {
         exceptionCode = din.readUnsignedByte();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.put((byte)getExceptionCode());
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        exceptionCode = buffer.get() & 0xFF;
+    }
+
     /**
      * getMessage()
      *
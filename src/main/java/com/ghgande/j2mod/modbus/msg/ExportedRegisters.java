@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.msg;
+
+import com.ghgande.j2mod.modbus.procimg.*;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Register values held in the form they are sent in, filled by a bulk
+ * export from the process image.
+ * <p>
+ * The read responses use this on the slave side so that answering a read
+ * needs neither a <tt>Register</tt> for every value nor a <tt>toBytes()</tt>
+ * array for every value when the response is written; the values are
+ * copied to the frame in a single block.  The buffer is kept for the next
+ * transaction when the response is pooled.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+final class ExportedRegisters {
+
+    private byte[] data;
+    private ByteBuffer buffer;
+    private int count;
+
+    /**
+     * Fills the values from a range of holding registers
+     *
+     * @param procimg Process image to read
+     * @param ref     First register
+     * @param count   Number of registers
+     *
+     * @throws IllegalAddressException if the range does not exist
+     */
+    void exportRegisters(ExportableProcessImage procimg, int ref, int count) throws IllegalAddressException {
+        this.count = 0;
+        procimg.exportRegisterRange(ref, count, prepare(count));
+        this.count = count;
+    }
+
+    /**
+     * Fills the values from a range of input registers
+     *
+     * @param procimg Process image to read
+     * @param ref     First register
+     * @param count   Number of registers
+     *
+     * @throws IllegalAddressException if the range does not exist
+     */
+    void exportInputRegisters(ExportableProcessImage procimg, int ref, int count) throws IllegalAddressException {
+        this.count = 0;
+        procimg.exportInputRegisterRange(ref, count, prepare(count));
+        this.count = count;
+    }
+
+    /**
+     * Returns the buffer to export the given number of registers into,
+     * growing it if necessary
+     *
+     * @param count Number of registers
+     *
+     * @return Empty buffer with room for exactly the registers
+     */
+    private ByteBuffer prepare(int count) {
+        int length = count * 2;
+        if (data == null || data.length < length) {
+            data = new byte[length];
+            buffer = ByteBuffer.wrap(data);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /**
+     * Returns the number of registers held
+     *
+     * @return Number of registers
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the unsigned value of a register
+     *
+     * @param index Index of the register
+     *
+     * @return Value between 0 and 65535
+     */
+    int getValue(int index) {
+        return ((data[index * 2] & 0xFF) << 8) | (data[index * 2 + 1] & 0xFF);
+    }
+
+    /**
+     * Puts the values into a frame buffer
+     *
+     * @param out Buffer to write to
+     */
+    void encode(ByteBuffer out) {
+        out.put(data, 0, count * 2);
+    }
+
+    /**
+     * Writes the values to an output
+     *
+     * @param out Output to write to
+     *
+     * @throws IOException if the output cannot be written
+     */
+    void write(DataOutput out) throws IOException {
+        out.write(data, 0, count * 2);
+    }
+
+    /**
+     * Copies the values into an array
+     *
+     * @param dest   Array to copy to
+     * @param offset Position in the array of the first byte
+     */
+    void copy(byte[] dest, int offset) {
+        System.arraycopy(data, 0, dest, offset, count * 2);
+    }
+
+    /**
+     * Creates holding registers from the values, for callers that need the
+     * register objects
+     *
+     * @return New registers
+     */
+    Register[] toRegisters() {
+        Register[] registers = new Register[count];
+        for (int i = 0; i < count; i++) {
+            registers[i] = new SimpleRegister(data[i * 2], data[i * 2 + 1]);
+        }
+        return registers;
+    }
+
+    /**
+     * Creates input registers from the values, for callers that need the
+     * register objects
+     *
+     * @return New registers
+     */
+    InputRegister[] toInputRegisters() {
+        InputRegister[] registers = new InputRegister[count];
+        for (int i = 0; i < count; i++) {
+            registers[i] = new SimpleInputRegister(data[i * 2], data[i * 2 + 1]);
+        }
+        return registers;
+    }
+}
@@ -24,6 +24,7 @@ import com.ghgande.j2mod.modbus.procimg.Register;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>Mask Write Register</tt> request.
@@ -117,9 +118,10 @@ public final class MaskWriteRegisterRequest extends ModbusRequest {
      * getResponse -- create an empty response for this request.
      */
     public ModbusResponse getResponse() {
-        MaskWriteRegisterResponse response;
-
-        response = new MaskWriteRegisterResponse();
+        MaskWriteRegisterResponse response = (MaskWriteRegisterResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new MaskWriteRegisterResponse());
+        }
 
         // Copy any header data from the request.
         response.setHeadless(isHeadless());
@@ -187,6 +189,20 @@ public final class MaskWriteRegisterRequest extends ModbusRequest {
         orMask = din.readUnsignedShort();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)andMask);
+        buffer.putShort((short)orMask);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        andMask = buffer.getShort() & 0xFFFF;
+        orMask = buffer.getShort() & 0xFFFF;
+    }
+
     /**
      * getMessage -- return an empty array as there is no data for
      * this request.
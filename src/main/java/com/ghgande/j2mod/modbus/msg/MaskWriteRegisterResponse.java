@@ -20,6 +20,7 @@ import com.ghgande.j2mod.modbus.Modbus;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadMEIResponse</tt>.
@@ -111,6 +112,20 @@ public final class MaskWriteRegisterResponse
         orMask = din.readUnsignedShort();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)andMask);
+        buffer.putShort((short)orMask);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        andMask = buffer.getShort() & 0xFFFF;
+        orMask = buffer.getShort() & 0xFFFF;
+    }
+
     /**
      * getMessage -- format the message into a byte array.
      */
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.msg;
+
+import com.ghgande.j2mod.modbus.Modbus;
+
+/**
+ * Definition of a function code that is not built into the library, such as
+ * one of the user defined function codes (65 to 72 and 100 to 110), a vendor
+ * specific function or a MEI type carried by function code 43.
+ * <p>
+ * A function creates the request and response messages for its code and
+ * tells the RTU transport how long its frames are, as there is nothing on a
+ * serial line to mark the end of a frame.  It is made available to all the
+ * transports by registering it with the {@link ModbusFunctionRegistry}.
+ * <p>
+ * The frame length methods are given the data of the frame, the bytes after
+ * the function code, as far as it has been read so far.  If the length
+ * cannot be worked out from what is available, they return how many bytes
+ * must be read before it can be and are called again once they have been.
+ * For example, a request with a byte count after a 4 byte header returns
+ * <tt>5</tt> until 5 bytes are available and <tt>5 + count</tt> after that.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public abstract class ModbusFunction {
+
+    private final int functionCode;
+
+    /**
+     * Creates a definition of the function code
+     *
+     * @param functionCode Function code between 1 and 127
+     */
+    protected ModbusFunction(int functionCode) {
+        if (functionCode < 1 || functionCode > 127) {
+            throw new IllegalArgumentException("Invalid function code: " + functionCode);
+        }
+        this.functionCode = functionCode;
+    }
+
+    /**
+     * Returns the function code
+     *
+     * @return Function code
+     */
+    public final int getFunctionCode() {
+        return functionCode;
+    }
+
+    /**
+     * Creates an empty request to decode a received frame into or to populate
+     * and send
+     *
+     * @return New request
+     */
+    public abstract ModbusRequest createRequest();
+
+    /**
+     * Creates an empty response to decode a received frame into
+     *
+     * @return New response
+     */
+    public abstract ModbusResponse createResponse();
+
+    /**
+     * Returns the length of the data of a request frame, not including the
+     * unit ID, function code or CRC
+     *
+     * @param data      Data read so far
+     * @param offset    Position of the first data byte in the array
+     * @param available Number of data bytes read so far
+     *
+     * @return Length of the data, or the number of bytes needed to work it out
+     */
+    public abstract int getRequestLength(byte[] data, int offset, int available);
+
+    /**
+     * Returns the length of the data of a response frame, not including the
+     * unit ID, function code or CRC
+     *
+     * @param data      Data read so far
+     * @param offset    Position of the first data byte in the array
+     * @param available Number of data bytes read so far
+     *
+     * @return Length of the data, or the number of bytes needed to work it out
+     */
+    public abstract int getResponseLength(byte[] data, int offset, int available);
+
+    /**
+     * Returns the longest message of this function, from the function code
+     * to the end of the data.  Functions that move more than the standard
+     * 253 bytes of data override this so that the TCP transport will accept
+     * their frames; the serial and UDP transports are limited to the
+     * standard length.
+     *
+     * @return Maximum message length in bytes
+     */
+    public int getMaximumLength() {
+        return Modbus.MAX_MESSAGE_LENGTH;
+    }
+
+    /**
+     * Returns the length of data that is a fixed header followed by a byte
+     * count and that many bytes
+     *
+     * @param data        Data read so far
+     * @param offset      Position of the first data byte in the array
+     * @param available   Number of data bytes read so far
+     * @param countOffset Position of the byte count within the data
+     *
+     * @return Length of the data, or the number of bytes needed to work it out
+     */
+    protected static int getByteCountLength(byte[] data, int offset, int available, int countOffset) {
+        if (available <= countOffset) {
+            return countOffset + 1;
+        }
+        return countOffset + 1 + (data[offset + countOffset] & 0xFF);
+    }
+
+    /**
+     * Returns the length of data that is a fixed header followed by a big-endian
+     * word count of bytes and that many bytes
+     *
+     * @param data        Data read so far
+     * @param offset      Position of the first data byte in the array
+     * @param available   Number of data bytes read so far
+     * @param countOffset Position of the word count within the data
+     *
+     * @return Length of the data, or the number of bytes needed to work it out
+     */
+    protected static int getWordCountLength(byte[] data, int offset, int available, int countOffset) {
+        if (available < countOffset + 2) {
+            return countOffset + 2;
+        }
+        return countOffset + 2 + (((data[offset + countOffset] & 0xFF) << 8) | (data[offset + countOffset + 1] & 0xFF));
+    }
+}
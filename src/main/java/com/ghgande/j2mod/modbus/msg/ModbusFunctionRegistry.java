@@ -0,0 +1,204 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.msg;
+
+import com.ghgande.j2mod.modbus.Modbus;
+
+/**
+ * Singleton registry of the function codes that are added to, or replace,
+ * those built into the library.
+ * <p>
+ * When a transport receives a frame it looks the function code up here
+ * first, and only falls back to the built in functions if it is not
+ * registered, so a registered function also takes precedence over a
+ * built in one with the same code.  Functions carried by the MEI function
+ * code (43) can be registered for their MEI type, the first byte of their
+ * data, leaving the built in device identification (MEI type 14) alone.
+ * <p>
+ * Lookups are not synchronized; registering a function replaces the tables,
+ * so it is safe to do while transports are running but is meant to be done
+ * once at startup.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public final class ModbusFunctionRegistry {
+
+    /**
+     * Value to pass as the MEI type when a frame doesn't have one
+     */
+    public static final int NO_MEI_TYPE = -1;
+
+    private static final ModbusFunctionRegistry registry = new ModbusFunctionRegistry();
+
+    private volatile ModbusFunction[] functions = new ModbusFunction[128];
+    private volatile ModbusFunction[] meiFunctions = new ModbusFunction[256];
+    private volatile int maximumLength = Modbus.MAX_MESSAGE_LENGTH;
+
+    /**
+     * Only the singleton is created
+     */
+    private ModbusFunctionRegistry() {
+    }
+
+    /**
+     * Returns a reference to the singleton instance.
+     *
+     * @return the <tt>ModbusFunctionRegistry</tt> instance reference.
+     */
+    public static ModbusFunctionRegistry getReference() {
+        return registry;
+    }
+
+    /**
+     * Tests if the function code is in one of the ranges the Modbus
+     * specification leaves for user defined functions (65 to 72 and 100 to 110)
+     *
+     * @param functionCode Function code to test
+     *
+     * @return True if user defined
+     */
+    public static boolean isUserDefined(int functionCode) {
+        return (functionCode >= 65 && functionCode <= 72) || (functionCode >= 100 && functionCode <= 110);
+    }
+
+    /**
+     * Registers a function, replacing any function already registered for
+     * its code
+     *
+     * @param function Function to register
+     */
+    public synchronized void register(ModbusFunction function) {
+        ModbusFunction[] table = functions.clone();
+        table[function.getFunctionCode()] = function;
+        functions = table;
+        updateMaximumLength();
+    }
+
+    /**
+     * Registers a function carried by the MEI function code for its MEI type
+     *
+     * @param meiType  MEI type between 0 and 255
+     * @param function Function to register, which must have the MEI function code
+     */
+    public synchronized void registerMEI(int meiType, ModbusFunction function) {
+        if (meiType < 0 || meiType > 255) {
+            throw new IllegalArgumentException("Invalid MEI type: " + meiType);
+        }
+        if (function.getFunctionCode() != Modbus.READ_MEI) {
+            throw new IllegalArgumentException("MEI functions must use function code " + Modbus.READ_MEI);
+        }
+        ModbusFunction[] table = meiFunctions.clone();
+        table[meiType] = function;
+        meiFunctions = table;
+        updateMaximumLength();
+    }
+
+    /**
+     * Removes the function registered for the code, if any
+     *
+     * @param functionCode Function code
+     */
+    public synchronized void unregister(int functionCode) {
+        ModbusFunction[] table = functions.clone();
+        table[functionCode & 0x7F] = null;
+        functions = table;
+        updateMaximumLength();
+    }
+
+    /**
+     * Removes the function registered for the MEI type, if any
+     *
+     * @param meiType MEI type
+     */
+    public synchronized void unregisterMEI(int meiType) {
+        ModbusFunction[] table = meiFunctions.clone();
+        table[meiType & 0xFF] = null;
+        meiFunctions = table;
+        updateMaximumLength();
+    }
+
+    /**
+     * Removes all the registered functions
+     */
+    public synchronized void clear() {
+        functions = new ModbusFunction[128];
+        meiFunctions = new ModbusFunction[256];
+        maximumLength = Modbus.MAX_MESSAGE_LENGTH;
+    }
+
+    /**
+     * Returns the function registered for the code
+     *
+     * @param functionCode Function code
+     *
+     * @return Function or null if the code is not registered or is an exception code
+     */
+    public ModbusFunction getFunction(int functionCode) {
+        if (functionCode < 0 || functionCode > 127) {
+            return null;
+        }
+        return functions[functionCode];
+    }
+
+    /**
+     * Returns the function registered for the code, using the MEI type to
+     * choose between the functions carried by the MEI function code
+     *
+     * @param functionCode Function code
+     * @param meiType      MEI type from the frame or <tt>NO_MEI_TYPE</tt>
+     *
+     * @return Function or null if not registered
+     */
+    public ModbusFunction getFunction(int functionCode, int meiType) {
+        if (functionCode == Modbus.READ_MEI && meiType >= 0 && meiType <= 255) {
+            ModbusFunction function = meiFunctions[meiType];
+            if (function != null) {
+                return function;
+            }
+        }
+        return getFunction(functionCode);
+    }
+
+    /**
+     * Returns the longest message of any registered function, from the
+     * function code to the end of the data, and never less than the
+     * standard maximum
+     *
+     * @return Maximum message length in bytes
+     */
+    public int getMaximumLength() {
+        return maximumLength;
+    }
+
+    /**
+     * Recalculates the longest message after a change to the tables
+     */
+    private void updateMaximumLength() {
+        int max = Modbus.MAX_MESSAGE_LENGTH;
+        for (ModbusFunction function : functions) {
+            if (function != null) {
+                max = Math.max(max, function.getMaximumLength());
+            }
+        }
+        for (ModbusFunction function : meiFunctions) {
+            if (function != null) {
+                max = Math.max(max, function.getMaximumLength());
+            }
+        }
+        maximumLength = max;
+    }
+}
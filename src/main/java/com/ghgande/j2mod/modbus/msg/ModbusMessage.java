@@ -17,6 +17,9 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.io.Transportable;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /**
  * Interface defining a ModbusMessage.
  *
@@ -117,4 +120,52 @@ public interface ModbusMessage extends Transportable {
      * hexadecimal series of bytes.
      */
     String getHexMessage();
+
+    /**
+     * Writes this message, including the header unless it is headless, to
+     * the buffer at its current position.
+     * <p>
+     * The buffer may be a heap or direct buffer but must be in the default
+     * big-endian byte order.
+     *
+     * @param buffer Buffer to write to
+     *
+     * @throws java.nio.BufferOverflowException if there isn't enough room in the buffer
+     */
+    void encode(ByteBuffer buffer);
+
+    /**
+     * Writes the data of this message (the bytes following the function
+     * code) to the buffer at its current position.
+     *
+     * @param buffer Buffer to write to
+     *
+     * @throws java.nio.BufferOverflowException if there isn't enough room in the buffer
+     */
+    void encodeData(ByteBuffer buffer);
+
+    /**
+     * Reads this message, including the header unless it is headless, from
+     * the buffer at its current position.
+     * <p>
+     * The buffer may be a heap or direct buffer but must be in the default
+     * big-endian byte order.
+     *
+     * @param buffer Buffer to read from
+     *
+     * @throws IOException if the data is invalid
+     * @throws java.nio.BufferUnderflowException if the message is truncated
+     */
+    void decode(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Reads the data of this message (the bytes following the function code)
+     * from the buffer at its current position.
+     *
+     * @param buffer Buffer to read from
+     *
+     * @throws IOException if the data is invalid
+     * @throws java.nio.BufferUnderflowException if the message is truncated
+     */
+    void decodeData(ByteBuffer buffer) throws IOException;
 }
@@ -16,11 +16,15 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.BytesInputStream;
+import com.ghgande.j2mod.modbus.io.BytesOutputStream;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Abstract class implementing a <tt>ModbusMessage</tt>. This class provides
@@ -107,10 +111,14 @@ public abstract class ModbusMessageImpl implements ModbusMessage {
      * This method does not include the length of a final CRC/LRC for those
      * protocols which requirement.
      *
+     * <p>
+     * Messages of functions registered with the <tt>ModbusFunctionRegistry</tt>
+     * may be as long as the longest registered function allows.
+     *
      * @param length the data length as <tt>int</tt>.
      */
     public void setDataLength(int length) {
-        if (length < 0 || length + 2 > 255) {
+        if (length < 0 || length + 2 > Math.max(255, ModbusFunctionRegistry.getReference().getMaximumLength() + 3)) {
             throw new IllegalArgumentException("Invalid length: " + length);
         }
 
@@ -169,6 +177,19 @@ public abstract class ModbusMessageImpl implements ModbusMessage {
         headless = b;
     }
 
+    /**
+     * Returns the header of this message to the state of a newly created
+     * message so that the instance can be reused for another transaction.
+     * The function code and the data are left alone, the data is overwritten
+     * when the message is next decoded or populated.
+     */
+    public void reset() {
+        transactionID = Modbus.DEFAULT_TRANSACTION_ID;
+        protocolID = Modbus.DEFAULT_PROTOCOL_ID;
+        unitID = Modbus.DEFAULT_UNIT_ID;
+        headless = false;
+    }
+
     /**
      * Writes the subclass specific data to the given DataOutput.
      *
@@ -243,4 +264,78 @@ public abstract class ModbusMessageImpl implements ModbusMessage {
         readData(din);
     }
 
+    public void encode(ByteBuffer buffer) {
+        checkOrder(buffer);
+        if (!isHeadless()) {
+            buffer.putShort((short)getTransactionID());
+            buffer.putShort((short)getProtocolID());
+            buffer.putShort((short)getDataLength());
+        }
+        buffer.put((byte)getUnitID());
+        buffer.put((byte)getFunctionCode());
+        encodeData(buffer);
+    }
+
+    /**
+     * Writes the subclass specific data to the buffer.
+     * <p>
+     * This implementation goes through {@link #writeData(DataOutput)} so that
+     * every message can be encoded, the common messages override it to write
+     * to the buffer directly.
+     *
+     * @param buffer Buffer to write to
+     */
+    public void encodeData(ByteBuffer buffer) {
+        BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+        try {
+            writeData(out);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Cannot encode message - " + e.getMessage(), e);
+        }
+        buffer.put(out.getBuffer(), 0, out.size());
+    }
+
+    public void decode(ByteBuffer buffer) throws IOException {
+        checkOrder(buffer);
+        if (!isHeadless()) {
+            setTransactionID(buffer.getShort() & 0xFFFF);
+            setProtocolID(buffer.getShort() & 0xFFFF);
+            dataLength = buffer.getShort() & 0xFFFF;
+        }
+        setUnitID(buffer.get() & 0xFF);
+        setFunctionCode(buffer.get() & 0xFF);
+        decodeData(buffer);
+    }
+
+    /**
+     * Reads the subclass specific data from the buffer.
+     * <p>
+     * This implementation goes through {@link #readData(DataInput)} so that
+     * every message can be decoded, the common messages override it to read
+     * from the buffer directly.
+     *
+     * @param buffer Buffer to read from
+     *
+     * @throws IOException if the data is invalid
+     */
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        BytesInputStream in = new BytesInputStream(data);
+        readData(in);
+        buffer.position(buffer.position() + data.length - in.available());
+    }
+
+    /**
+     * Checks that the buffer uses the network byte order
+     *
+     * @param buffer Buffer to check
+     */
+    private static void checkOrder(ByteBuffer buffer) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            throw new IllegalArgumentException("Buffer must be big-endian");
+        }
+    }
+
 }
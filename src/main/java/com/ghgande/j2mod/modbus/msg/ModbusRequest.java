@@ -28,6 +28,10 @@ import com.ghgande.j2mod.modbus.Modbus;
  */
 public abstract class ModbusRequest extends ModbusMessageImpl {
 
+    private boolean pooled = false;
+    private ModbusResponse pooledResponse;
+    private ExceptionResponse pooledExceptionResponse;
+
     /**
      * Factory method creating the required specialized <tt>ModbusRequest</tt>
      * instance.
@@ -37,8 +41,27 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
      * @return a ModbusRequest instance specific for the given function type.
      */
     public static ModbusRequest createModbusRequest(int functionCode) {
+        return createModbusRequest(functionCode, ModbusFunctionRegistry.NO_MEI_TYPE);
+    }
+
+    /**
+     * Factory method creating the required specialized <tt>ModbusRequest</tt>
+     * instance, using any function registered with the
+     * <tt>ModbusFunctionRegistry</tt> in preference to the built in ones.
+     *
+     * @param functionCode the function code of the request as <tt>int</tt>.
+     * @param meiType      the MEI type for the MEI function code, or <tt>NO_MEI_TYPE</tt>.
+     *
+     * @return a ModbusRequest instance specific for the given function type.
+     */
+    public static ModbusRequest createModbusRequest(int functionCode, int meiType) {
         ModbusRequest request;
 
+        ModbusFunction function = ModbusFunctionRegistry.getReference().getFunction(functionCode, meiType);
+        if (function != null) {
+            return function.createRequest();
+        }
+
         switch (functionCode) {
             case Modbus.READ_COILS:
                 request = new ReadCoilsRequest();
@@ -147,7 +170,17 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
      * @return a ModbusResponse instance representing the exception response.
      */
     public ModbusResponse createExceptionResponse(int code) {
-        ExceptionResponse response = new ExceptionResponse(getFunctionCode(), code);
+        ExceptionResponse response = pooledExceptionResponse;
+        if (response == null) {
+            response = new ExceptionResponse(getFunctionCode(), code);
+            if (pooled) {
+                pooledExceptionResponse = response;
+            }
+        }
+        else {
+            response.reset();
+            response.setExceptionCode(code);
+        }
         if (!isHeadless()) {
             response.setTransactionID(getTransactionID());
             response.setProtocolID(getProtocolID());
@@ -158,4 +191,59 @@ public abstract class ModbusRequest extends ModbusMessageImpl {
         response.setUnitID(getUnitID());
         return response;
     }
+
+    /**
+     * Tests if this request is reused from a <tt>ModbusRequestPool</tt>, in
+     * which case the responses it creates are reused as well
+     *
+     * @return True if pooled
+     */
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Sets whether this request is reused from a <tt>ModbusRequestPool</tt>.
+     * A pooled request keeps the responses it creates and hands the same
+     * instances back for the next transaction, so a response is only valid
+     * until the next call to <tt>getResponse()</tt> or <tt>createResponse()</tt>.
+     *
+     * @param pooled True if pooled
+     */
+    public void setPooled(boolean pooled) {
+        this.pooled = pooled;
+        if (!pooled) {
+            pooledResponse = null;
+            pooledExceptionResponse = null;
+        }
+    }
+
+    /**
+     * Returns the response kept from the previous transaction, with its
+     * header reset, if this request is pooled
+     *
+     * @return Response to reuse or null if a new one is needed
+     */
+    protected ModbusResponse getPooledResponse() {
+        ModbusResponse response = pooledResponse;
+        if (response != null) {
+            response.reset();
+        }
+        return response;
+    }
+
+    /**
+     * Keeps a newly created response for reuse if this request is pooled
+     *
+     * @param response Response that has just been created
+     * @param <T>      Type of the response
+     *
+     * @return The response
+     */
+    protected <T extends ModbusResponse> T poolResponse(T response) {
+        if (pooled) {
+            pooledResponse = response;
+        }
+        return response;
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.msg;
+
+import com.ghgande.j2mod.modbus.Modbus;
+
+/**
+ * Pool of reusable requests, one per function code, for a slave transport
+ * to decode incoming frames into instead of creating a new request for
+ * every frame.
+ * <p>
+ * The requests handed out are marked as pooled, so the responses they
+ * create are reused as well.  A request and its response are only valid
+ * until the next request with the same function code is taken from the
+ * pool, so a pool must only be used by a single thread (normally that of the
+ * connection it belongs to) and nothing may hold on to the messages after
+ * the response has been sent.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusRequestPool {
+
+    private final ModbusRequest[] requests = new ModbusRequest[256];
+    private final ModbusRequest[] meiRequests = new ModbusRequest[256];
+
+    /**
+     * Returns the request to decode a frame with the given function code
+     * into, creating it the first time
+     *
+     * @param functionCode Function code of the frame
+     *
+     * @return Request reset to its default header
+     */
+    public ModbusRequest getRequest(int functionCode) {
+        return getRequest(functionCode, ModbusFunctionRegistry.NO_MEI_TYPE);
+    }
+
+    /**
+     * Returns the request to decode a frame with the given function code
+     * and MEI type into, creating it the first time.  Requests for the MEI
+     * function code are kept for each MEI type, as they can be of
+     * different types.
+     *
+     * @param functionCode Function code of the frame
+     * @param meiType      MEI type of the frame or <tt>NO_MEI_TYPE</tt>
+     *
+     * @return Request reset to its default header
+     */
+    public ModbusRequest getRequest(int functionCode, int meiType) {
+        ModbusRequest[] table = requests;
+        int index = functionCode & 0xFF;
+        if (functionCode == Modbus.READ_MEI && meiType >= 0) {
+            table = meiRequests;
+            index = meiType & 0xFF;
+        }
+        ModbusRequest request = table[index];
+        if (request == null) {
+            request = ModbusRequest.createModbusRequest(functionCode, meiType);
+            request.setPooled(true);
+            table[index] = request;
+        }
+        else {
+            request.reset();
+        }
+        return request;
+    }
+
+    /**
+     * Discards all the pooled requests and their responses
+     */
+    public void clear() {
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = null;
+            meiRequests[i] = null;
+        }
+    }
+}
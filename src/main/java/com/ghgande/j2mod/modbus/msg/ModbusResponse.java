@@ -41,8 +41,27 @@ public abstract class ModbusResponse extends ModbusMessageImpl {
      * @return a ModbusResponse instance specific for the given function code.
      */
     public static ModbusResponse createModbusResponse(int functionCode) {
+        return createModbusResponse(functionCode, ModbusFunctionRegistry.NO_MEI_TYPE);
+    }
+
+    /**
+     * Factory method creating the required specialized <tt>ModbusResponse</tt>
+     * instance, using any function registered with the
+     * <tt>ModbusFunctionRegistry</tt> in preference to the built in ones.
+     *
+     * @param functionCode the function code of the response as <tt>int</tt>.
+     * @param meiType      the MEI type for the MEI function code, or <tt>NO_MEI_TYPE</tt>.
+     *
+     * @return a ModbusResponse instance specific for the given function code.
+     */
+    public static ModbusResponse createModbusResponse(int functionCode, int meiType) {
         ModbusResponse response;
 
+        ModbusFunction function = ModbusFunctionRegistry.getReference().getFunction(functionCode, meiType);
+        if (function != null) {
+            return function.createResponse();
+        }
+
         switch (functionCode) {
             case Modbus.READ_COILS:
                 response = new ReadCoilsResponse();
@@ -18,12 +18,14 @@ package com.ghgande.j2mod.modbus.msg;
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.procimg.DigitalOut;
+import com.ghgande.j2mod.modbus.procimg.ExportableProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadCoilsRequest</tt>. The implementation directly
@@ -74,8 +76,10 @@ public final class ReadCoilsRequest extends ModbusRequest {
 
     @Override
     public ReadCoilsResponse getResponse() {
-        ReadCoilsResponse response;
-        response = new ReadCoilsResponse(bitCount);
+        ReadCoilsResponse response = (ReadCoilsResponse)getPooledResponse();
+        if (response == null || response.getBitCount() != bitCount) {
+            response = poolResponse(new ReadCoilsResponse(bitCount));
+        }
 
         // transfer header data
         if (!isHeadless()) {
@@ -92,27 +96,24 @@ public final class ReadCoilsRequest extends ModbusRequest {
 
     @Override
     public ModbusResponse createResponse() {
-        ModbusResponse response;
-        DigitalOut[] douts;
+        ReadCoilsResponse response = getResponse();
 
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
-        // 2. get input discretes range
+        // 2. export the coils straight into the response if the image can
         try {
-            douts = procimg.getDigitalOutRange(getReference(), getBitCount());
+            if (procimg instanceof ExportableProcessImage) {
+                ((ExportableProcessImage)procimg).exportDigitalOutRange(getReference(), response.getCoils());
+            }
+            else {
+                DigitalOut[] douts = procimg.getDigitalOutRange(getReference(), getBitCount());
+                for (int i = 0; i < douts.length; i++) {
+                    response.setCoilStatus(i, douts[i].isSet());
+                }
+            }
         }
         catch (IllegalAddressException e) {
-            response = new IllegalAddressExceptionResponse();
-            response.setUnitID(getUnitID());
-            response.setFunctionCode(getFunctionCode());
-
-            return response;
-        }
-        response = getResponse();
-
-        // Populate the discrete values from the process image.
-        for (int i = 0; i < douts.length; i++) {
-            ((ReadCoilsResponse)response).setCoilStatus(i, douts[i].isSet());
+            return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
 
         return response;
@@ -179,6 +180,18 @@ public final class ReadCoilsRequest extends ModbusRequest {
         bitCount = din.readUnsignedShort();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)bitCount);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        bitCount = buffer.getShort() & 0xFFFF;
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
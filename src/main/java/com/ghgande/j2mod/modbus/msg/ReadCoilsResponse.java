@@ -21,6 +21,7 @@ import com.ghgande.j2mod.modbus.util.BitVector;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadCoilsResponse</tt>.
@@ -155,6 +156,20 @@ public final class ReadCoilsResponse extends ModbusResponse {
         setDataLength(count + 1);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.put((byte)coils.byteSize());
+        coils.getBytes(buffer);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        int count = buffer.get() & 0xFF;
+        coils = new BitVector(count * 8);
+        coils.setBytes(buffer);
+        setDataLength(count + 1);
+    }
+
     public byte[] getMessage() {
         int len = 1 + coils.byteSize();
         byte result[] = new byte[len];
@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.FIFO;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
@@ -89,7 +90,8 @@ public final class ReadFIFOQueueRequest extends ModbusRequest {
     }
 
     /**
-     * Create a response using the named register as the queue length count.
+     * Create a response from the FIFO at the reference or, if there is none,
+     * using the named register as the queue length count.
      */
     public ModbusResponse createResponse() {
         ReadFIFOQueueResponse response;
@@ -98,16 +100,32 @@ public final class ReadFIFOQueueRequest extends ModbusRequest {
         // Get the process image.
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
 
+        FIFO fifo;
         try {
-            // Get the FIFO queue location and read the count of available
-            // registers.
-            Register queue = procimg.getRegister(reference);
-            int count = queue.getValue();
-            if (count < 0 || count > 31) {
-                return createExceptionResponse(Modbus.ILLEGAL_VALUE_EXCEPTION);
-            }
+            fifo = procimg.getFIFOByAddress(reference);
+        }
+        catch (IllegalAddressException e) {
+            fifo = null;
+        }
 
-            registers = procimg.getRegisterRange(reference + 1, count);
+        try {
+            if (fifo != null) {
+                // The first register of the FIFO holds the count
+                Register[] queue = fifo.getRegisters();
+                registers = new InputRegister[queue.length - 1];
+                System.arraycopy(queue, 1, registers, 0, registers.length);
+            }
+            else {
+                // Get the FIFO queue location and read the count of available
+                // registers.
+                Register queue = procimg.getRegister(reference);
+                int count = queue.getValue();
+                if (count < 0 || count > FIFO.MAX_QUEUE_LENGTH) {
+                    return createExceptionResponse(Modbus.ILLEGAL_VALUE_EXCEPTION);
+                }
+
+                registers = procimg.getRegisterRange(reference + 1, count);
+            }
         }
         catch (IllegalAddressException e) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
@@ -90,6 +90,7 @@ public final class ReadFIFOQueueResponse extends ModbusResponse {
         registers = regs;
         if (regs == null) {
             count = 0;
+            setDataLength(4);
             return;
         }
 
@@ -98,6 +99,7 @@ public final class ReadFIFOQueueResponse extends ModbusResponse {
         }
 
         count = regs.length;
+        setDataLength(count * 2 + 4);
     }
 
     public int getRegister(int index) {
@@ -132,6 +134,7 @@ public final class ReadFIFOQueueResponse extends ModbusResponse {
         for (int i = 0; i < count; i++) {
             registers[i] = new SimpleInputRegister(din.readShort());
         }
+        setDataLength(count * 2 + 4);
     }
 
     /**
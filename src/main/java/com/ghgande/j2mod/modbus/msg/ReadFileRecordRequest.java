@@ -142,11 +142,7 @@ public final class ReadFileRecordRequest extends ModbusRequest {
         try {
             for (int i = 0; i < getRequestCount(); i++) {
                 RecordRequest recordRequest = getRecord(i);
-                if (recordRequest.getFileNumber() < 0
-                        || recordRequest.getFileNumber() >= procimg.getFileCount()) {
-                    return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
-                }
-
+                // Files are looked up by number, which need not be their index
                 File file = procimg.getFileByNumber(recordRequest.getFileNumber());
 
                 if (recordRequest.getRecordNumber() < 0
@@ -154,22 +150,10 @@ public final class ReadFileRecordRequest extends ModbusRequest {
                     return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
                 }
 
-                Record record = file.getRecord(recordRequest.getRecordNumber());
                 int registers = recordRequest.getWordCount();
-                if (record == null && registers != 0) {
-                    return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
-                }
-
-                short data[] = new short[registers];
-                for (int j = 0; j < registers; j++) {
-                    Register register = record.getRegister(j);
-                    if (register == null) {
-                        return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
-                    }
-
-                    data[j] = register.toShort();
-                }
-                RecordResponse recordResponse = new RecordResponse(data);
+                byte data[] = new byte[registers * 2];
+                file.getRegisters(recordRequest.getRecordNumber(), registers, data, 0);
+                RecordResponse recordResponse = new RecordResponse(data, 0, registers);
                 response.addResponse(recordResponse);
             }
         }
@@ -166,10 +166,35 @@ public final class ReadFileRecordResponse extends ModbusResponse {
             }
         }
 
+        /**
+         * Creates the response for a record from register data in wire
+         * order, the high byte of each register first
+         *
+         * @param data      Register data
+         * @param offset    Position of the first register in the data
+         * @param wordCount Number of registers
+         */
+        public RecordResponse(byte[] data, int offset, int wordCount) {
+            this.wordCount = wordCount;
+            this.data = new byte[wordCount * 2];
+            System.arraycopy(data, offset, this.data, 0, this.data.length);
+        }
+
         public int getWordCount() {
             return wordCount;
         }
 
+        /**
+         * Copies the register data in wire order, the high byte of each
+         * register first
+         *
+         * @param dest   Buffer to copy <tt>2 * getWordCount()</tt> bytes to
+         * @param offset Position in the buffer
+         */
+        public void getData(byte[] dest, int offset) {
+            System.arraycopy(data, 0, dest, offset, data.length);
+        }
+
         public SimpleRegister getRegister(int register) {
             if (register < 0 || register >= wordCount) {
                 throw new IndexOutOfBoundsException("0 <= " + register + " < " + wordCount);
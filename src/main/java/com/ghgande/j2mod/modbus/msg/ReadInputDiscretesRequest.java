@@ -18,12 +18,14 @@ package com.ghgande.j2mod.modbus.msg;
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.procimg.DigitalIn;
+import com.ghgande.j2mod.modbus.procimg.ExportableProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadInputDiscretesRequest</tt>. The implementation
@@ -83,7 +85,10 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
      * @return Discretes response
      */
     public ReadInputDiscretesResponse getResponse() {
-        ReadInputDiscretesResponse response = new ReadInputDiscretesResponse(getBitCount());
+        ReadInputDiscretesResponse response = (ReadInputDiscretesResponse)getPooledResponse();
+        if (response == null || response.getBitCount() != getBitCount()) {
+            response = poolResponse(new ReadInputDiscretesResponse(getBitCount()));
+        }
 
         response.setUnitID(getUnitID());
         response.setFunctionCode(getFunctionCode());
@@ -97,24 +102,26 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
-        ReadInputDiscretesResponse response;
-        DigitalIn[] dins;
+        ReadInputDiscretesResponse response = getResponse();
 
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
-        // 2. get input discretes range
+        // 2. export the input discretes straight into the response if the
+        // image can
         try {
-            dins = procimg.getDigitalInRange(getReference(), getBitCount());
+            if (procimg instanceof ExportableProcessImage) {
+                ((ExportableProcessImage)procimg).exportDigitalInRange(getReference(), response.getDiscretes());
+            }
+            else {
+                DigitalIn[] dins = procimg.getDigitalInRange(getReference(), getBitCount());
+                for (int i = 0; i < dins.length; i++) {
+                    response.setDiscreteStatus(i, dins[i].isSet());
+                }
+            }
         }
         catch (IllegalAddressException e) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = getResponse();
-
-        // Populate the discrete values from the process image.
-        for (int i = 0; i < dins.length; i++) {
-            response.setDiscreteStatus(i, dins[i].isSet());
-        }
 
         return response;
     }
@@ -180,6 +187,18 @@ public final class ReadInputDiscretesRequest extends ModbusRequest {
         bitCount = din.readUnsignedShort();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)bitCount);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        bitCount = buffer.getShort() & 0xFFFF;
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
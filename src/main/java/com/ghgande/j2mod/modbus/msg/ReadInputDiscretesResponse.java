@@ -21,6 +21,7 @@ import com.ghgande.j2mod.modbus.util.BitVector;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadInputDiscretesResponse</tt>.
@@ -150,6 +151,20 @@ public final class ReadInputDiscretesResponse
         setDataLength(count + 1);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.put((byte)discretes.byteSize());
+        discretes.getBytes(buffer);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        int count = buffer.get() & 0xFF;
+        discretes = new BitVector(count * 8);
+        discretes.setBytes(buffer);
+        setDataLength(count + 1);
+    }
+
     public byte[] getMessage() {
         byte result[];
         int len = 1 + discretes.byteSize();
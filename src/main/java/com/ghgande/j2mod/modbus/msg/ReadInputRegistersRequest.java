@@ -17,13 +17,14 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.ExportableProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
-import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadInputRegistersRequest</tt>. The implementation
@@ -71,7 +72,10 @@ public final class ReadInputRegistersRequest extends ModbusRequest {
     }
 
     public ReadInputRegistersResponse getResponse() {
-        ReadInputRegistersResponse response = new ReadInputRegistersResponse();
+        ReadInputRegistersResponse response = (ReadInputRegistersResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new ReadInputRegistersResponse());
+        }
 
         response.setUnitID(getUnitID());
         response.setHeadless(isHeadless());
@@ -85,20 +89,23 @@ public final class ReadInputRegistersRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
-        ReadInputRegistersResponse response;
-        InputRegister[] inpregs;
+        ReadInputRegistersResponse response = getResponse();
 
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
-        // 2. get input registers range
+        // 2. export the input registers straight into the response if the
+        // image can
         try {
-            inpregs = procimg.getInputRegisterRange(getReference(), getWordCount());
+            if (procimg instanceof ExportableProcessImage) {
+                response.setRegisters((ExportableProcessImage)procimg, getReference(), getWordCount());
+            }
+            else {
+                response.setRegisters(procimg.getInputRegisterRange(getReference(), getWordCount()));
+            }
         }
         catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = getResponse();
-        response.setRegisters(inpregs);
 
         return response;
     }
@@ -158,6 +165,18 @@ public final class ReadInputRegistersRequest extends ModbusRequest {
         wordCount = din.readUnsignedShort();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)wordCount);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        wordCount = buffer.getShort() & 0xFFFF;
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
         result[0] = (byte)((reference >> 8) & 0xff);
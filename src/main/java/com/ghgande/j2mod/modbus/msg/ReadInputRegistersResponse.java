@@ -16,12 +16,15 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.procimg.ExportableProcessImage;
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadInputRegistersRequest</tt>. The implementation
@@ -37,6 +40,7 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
     // instance attributes
     private int byteCount;
     private InputRegister[] registers;
+    private ExportedRegisters exported;
 
     /**
      * Constructs a new <tt>ReadInputRegistersResponse</tt> instance.
@@ -58,7 +62,7 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
         setFunctionCode(Modbus.READ_INPUT_REGISTERS);
         setDataLength(registers.length * 2 + 1);
 
-        byteCount = registers.length * 2 + 1;
+        byteCount = registers.length * 2;
         this.registers = registers;
     }
 
@@ -85,7 +89,7 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
      * Set the number of words to be written.
      */
     public void setWordCount(int count) {
-        byteCount = count * 2 + 1;
+        byteCount = count * 2;
     }
 
     /**
@@ -99,6 +103,7 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public InputRegister getRegister(int index) throws IndexOutOfBoundsException {
+        resolveRegisters();
         if (index < 0) {
             throw new IndexOutOfBoundsException(index + " < 0");
         }
@@ -122,6 +127,9 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        if (registers == null && exported != null && index >= 0 && index < exported.getCount()) {
+            return exported.getValue(index);
+        }
         return getRegister(index).toUnsignedShort();
     }
 
@@ -131,6 +139,7 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
      * @return a <tt>InputRegister[]</tt> instance.
      */
     public synchronized InputRegister[] getRegisters() {
+        resolveRegisters();
         InputRegister[] dest = new InputRegister[registers.length];
         System.arraycopy(registers, 0, dest, 0, dest.length);
         return dest;
@@ -141,15 +150,51 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
      */
     public void setRegisters(InputRegister[] registers) {
         setDataLength(registers.length * 2 + 1);
-        byteCount = registers.length * 2 + 1;
+        byteCount = registers.length * 2;
         this.registers = registers;
     }
 
+    /**
+     * Sets the block of registers for this response by exporting the values
+     * of a range of input registers straight from the process image, without
+     * creating a <tt>Register</tt> for each of them
+     *
+     * @param procimg the process image to read.
+     * @param ref     the reference of the first register.
+     * @param count   the number of registers.
+     *
+     * @throws IllegalAddressException if the range does not exist.
+     */
+    public void setRegisters(ExportableProcessImage procimg, int ref, int count) throws IllegalAddressException {
+        if (exported == null) {
+            exported = new ExportedRegisters();
+        }
+        registers = null;
+        exported.exportInputRegisters(procimg, ref, count);
+        byteCount = count * 2;
+        setDataLength(byteCount + 1);
+    }
+
+    /**
+     * Creates the register objects from the exported values the first time
+     * they are asked for
+     */
+    private void resolveRegisters() {
+        if (registers == null && exported != null) {
+            registers = exported.toInputRegisters();
+        }
+    }
+
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(byteCount);
 
-        for (int k = 0; k < getWordCount(); k++) {
-            dout.write(registers[k].toBytes());
+        if (registers == null && exported != null) {
+            exported.write(dout);
+        }
+        else {
+            for (int k = 0; k < getWordCount(); k++) {
+                dout.write(registers[k].toBytes());
+            }
         }
     }
 
@@ -165,7 +210,40 @@ public final class ReadInputRegistersResponse extends ModbusResponse {
         setDataLength(byteCount + 1);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.put((byte)byteCount);
+        if (registers == null && exported != null) {
+            exported.encode(buffer);
+        }
+        else {
+            for (int k = 0; k < getWordCount(); k++) {
+                buffer.putShort(registers[k].toShort());
+            }
+        }
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        byteCount = buffer.get() & 0xFF;
+
+        InputRegister[] registers = new InputRegister[getWordCount()];
+        for (int k = 0; k < getWordCount(); k++) {
+            registers[k] = new SimpleInputRegister(buffer.get(), buffer.get());
+        }
+        this.registers = registers;
+
+        setDataLength(byteCount + 1);
+    }
+
     public byte[] getMessage() {
+        if (registers == null && exported != null) {
+            byte result[] = new byte[byteCount + 1];
+            result[0] = (byte)byteCount;
+            exported.copy(result, 1);
+            return result;
+        }
+
         byte result[] = new byte[registers.length * 2 + 1];
         result[0] = (byte)(registers.length * 2);
 
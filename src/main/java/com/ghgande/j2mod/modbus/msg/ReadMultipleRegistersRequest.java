@@ -17,13 +17,14 @@ package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.procimg.ExportableProcessImage;
 import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
-import com.ghgande.j2mod.modbus.procimg.Register;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadMultipleRegistersRequest</tt>. The
@@ -71,9 +72,10 @@ public final class ReadMultipleRegistersRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        ReadMultipleRegistersResponse response;
-
-        response = new ReadMultipleRegistersResponse();
+        ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new ReadMultipleRegistersResponse());
+        }
 
         response.setUnitID(getUnitID());
         response.setHeadless(isHeadless());
@@ -85,20 +87,22 @@ public final class ReadMultipleRegistersRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
-        ReadMultipleRegistersResponse response;
-        Register[] regs;
+        ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse)getResponse();
 
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
-        // 2. get input registers range
+        // 2. export the registers straight into the response if the image can
         try {
-            regs = procimg.getRegisterRange(getReference(), getWordCount());
+            if (procimg instanceof ExportableProcessImage) {
+                response.setRegisters((ExportableProcessImage)procimg, getReference(), getWordCount());
+            }
+            else {
+                response.setRegisters(procimg.getRegisterRange(getReference(), getWordCount()));
+            }
         }
         catch (IllegalAddressException e) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = (ReadMultipleRegistersResponse)getResponse();
-        response.setRegisters(regs);
 
         return response;
     }
@@ -158,6 +162,18 @@ public final class ReadMultipleRegistersRequest extends ModbusRequest {
         wordCount = din.readUnsignedShort();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)wordCount);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        wordCount = buffer.getShort() & 0xFFFF;
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
@@ -16,12 +16,15 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.procimg.ExportableProcessImage;
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.Register;
 import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadMultipleRegistersResponse</tt>. The
@@ -38,6 +41,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
     // instance attributes
     private int byteCount;
     private Register[] registers;
+    private ExportedRegisters exported;
 
     /**
      * Constructs a new <tt>ReadMultipleRegistersResponse</tt> instance.
@@ -93,6 +97,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public Register getRegister(int index) {
+        resolveRegisters();
         if (registers == null) {
             throw new IndexOutOfBoundsException("No registers defined!");
         }
@@ -120,6 +125,9 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        if (registers == null && exported != null && index >= 0 && index < exported.getCount()) {
+            return exported.getValue(index);
+        }
         return getRegister(index).toUnsignedShort();
     }
 
@@ -129,6 +137,7 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
      * @return a <tt>Register[]</tt> instance.
      */
     public synchronized Register[] getRegisters() {
+        resolveRegisters();
         Register[] dest = new Register[registers.length];
         System.arraycopy(registers, 0, dest, 0, dest.length);
         return dest;
@@ -143,11 +152,47 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
         this.registers = registers;
     }
 
+    /**
+     * Sets the block of registers for this response by exporting the values
+     * of a range of holding registers straight from the process image, without
+     * creating a <tt>Register</tt> for each of them
+     *
+     * @param procimg the process image to read.
+     * @param ref     the reference of the first register.
+     * @param count   the number of registers.
+     *
+     * @throws IllegalAddressException if the range does not exist.
+     */
+    public void setRegisters(ExportableProcessImage procimg, int ref, int count) throws IllegalAddressException {
+        if (exported == null) {
+            exported = new ExportedRegisters();
+        }
+        registers = null;
+        exported.exportRegisters(procimg, ref, count);
+        byteCount = count * 2;
+        setDataLength(byteCount + 1);
+    }
+
+    /**
+     * Creates the register objects from the exported values the first time
+     * they are asked for
+     */
+    private void resolveRegisters() {
+        if (registers == null && exported != null) {
+            registers = exported.toRegisters();
+        }
+    }
+
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(byteCount);
 
-        for (int k = 0; k < getWordCount(); k++) {
-            dout.write(registers[k].toBytes());
+        if (registers == null && exported != null) {
+            exported.write(dout);
+        }
+        else {
+            for (int k = 0; k < getWordCount(); k++) {
+                dout.write(registers[k].toBytes());
+            }
         }
     }
 
@@ -163,6 +208,32 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
         setDataLength(byteCount + 1);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.put((byte)byteCount);
+        if (registers == null && exported != null) {
+            exported.encode(buffer);
+        }
+        else {
+            for (int k = 0; k < getWordCount(); k++) {
+                buffer.putShort(registers[k].toShort());
+            }
+        }
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        byteCount = buffer.get() & 0xFF;
+
+        Register[] registers = new Register[getWordCount()];
+        for (int k = 0; k < getWordCount(); k++) {
+            registers[k] = new SimpleRegister(buffer.get(), buffer.get());
+        }
+        this.registers = registers;
+
+        setDataLength(byteCount + 1);
+    }
+
     public byte[] getMessage() {
         byte result[];
 
@@ -171,6 +242,11 @@ public final class ReadMultipleRegistersResponse extends ModbusResponse {
         int offset = 0;
         result[offset++] = (byte)byteCount;
 
+        if (registers == null && exported != null) {
+            exported.copy(result, offset);
+            return result;
+        }
+
         for (Register register : registers) {
             byte[] data = register.toBytes();
 
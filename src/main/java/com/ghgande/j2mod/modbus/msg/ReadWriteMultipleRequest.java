@@ -23,6 +23,7 @@ import com.ghgande.j2mod.modbus.procimg.*;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>Read / Write Multiple Registers</tt> request.
@@ -91,9 +92,10 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
      * createResponse -- create an empty response for this request.
      */
     public ModbusResponse getResponse() {
-        ReadWriteMultipleResponse response;
-
-        response = new ReadWriteMultipleResponse();
+        ReadWriteMultipleResponse response = (ReadWriteMultipleResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new ReadWriteMultipleResponse());
+        }
 
         // Copy any header data from the request.
         response.setHeadless(isHeadless());
@@ -110,38 +112,58 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
     }
 
     public ModbusResponse createResponse() {
-        ReadWriteMultipleResponse response;
-        InputRegister[] readRegs;
+        ReadWriteMultipleResponse response = (ReadWriteMultipleResponse)getResponse();
         Register[] writeRegs;
 
         // 1. get process image
         ProcessImage procimg = ModbusCoupler.getReference().getProcessImage(getUnitID());
-        // 2. get input registers range
+        // 2. check both ranges, then write before reading as the
+        // specification requires
         try {
-            readRegs = procimg.getRegisterRange(getReadReference(), getReadWordCount());
-
-            InputRegister[] dummy = new InputRegister[readRegs.length];
-            for (int i = 0; i < readRegs.length; i++) {
-                dummy[i] = new SimpleInputRegister(readRegs[i].getValue());
-            }
-
-            readRegs = dummy;
+            readRegisters(procimg, response);
 
             writeRegs = procimg.getRegisterRange(getWriteReference(), getWriteWordCount());
 
             for (int i = 0; i < writeRegs.length; i++) {
                 writeRegs[i].setValue(getRegister(i).getValue());
             }
+
+            // 3. read again if the write changed what was read
+            if (getWriteReference() < getReadReference() + getReadWordCount()
+                    && getReadReference() < getWriteReference() + getWriteWordCount()) {
+                readRegisters(procimg, response);
+            }
         }
         catch (IllegalAddressException e) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = (ReadWriteMultipleResponse)getResponse();
-        response.setRegisters(readRegs);
 
         return response;
     }
 
+    /**
+     * Fills the response with the registers being read, exporting them
+     * straight from the process image if it can, otherwise copying them
+     *
+     * @param procimg  Process image to read
+     * @param response Response to fill
+     *
+     * @throws IllegalAddressException if the range does not exist
+     */
+    private void readRegisters(ProcessImage procimg, ReadWriteMultipleResponse response) throws IllegalAddressException {
+        if (procimg instanceof ExportableProcessImage) {
+            response.setRegisters((ExportableProcessImage)procimg, getReadReference(), getReadWordCount());
+        }
+        else {
+            Register[] readRegs = procimg.getRegisterRange(getReadReference(), getReadWordCount());
+            InputRegister[] values = new InputRegister[readRegs.length];
+            for (int i = 0; i < readRegs.length; i++) {
+                values[i] = new SimpleInputRegister(readRegs[i].getValue());
+            }
+            response.setRegisters(values);
+        }
+    }
+
     /**
      * getReadReference - Returns the reference of the register to start writing
      * to with this <tt>ReadWriteMultipleRequest</tt>.
@@ -213,6 +235,7 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
     public void setRegisters(Register[] registers) {
         this.registers = registers;
         writeCount = registers != null ? registers.length : 0;
+        setDataLength(9 + writeCount * 2);
     }
 
     /**
@@ -352,6 +375,40 @@ public final class ReadWriteMultipleRequest extends ModbusRequest {
         }
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)readReference);
+        buffer.putShort((short)readCount);
+        buffer.putShort((short)writeReference);
+        buffer.putShort((short)writeCount);
+        buffer.put((byte)(writeCount * 2));
+        for (int i = 0; i < writeCount; i++) {
+            buffer.putShort(getRegister(i).toShort());
+        }
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        if (nonWordDataHandler != null) {
+            super.decodeData(buffer);
+            return;
+        }
+        readReference = buffer.getShort() & 0xFFFF;
+        readCount = buffer.getShort() & 0xFFFF;
+        writeReference = buffer.getShort() & 0xFFFF;
+        writeCount = buffer.getShort() & 0xFFFF;
+        int byteCount = buffer.get() & 0xFF;
+        if (byteCount < writeCount * 2) {
+            throw new IOException("Register count " + writeCount + " exceeds the " + byteCount + " bytes of data");
+        }
+
+        registers = new Register[writeCount];
+        for (int register = 0; register < writeCount; register++) {
+            registers[register] = new SimpleRegister(buffer.get(), buffer.get());
+        }
+        buffer.position(buffer.position() + byteCount - writeCount * 2);
+    }
+
     /**
      * getMessage -- return a prepared message.
      */
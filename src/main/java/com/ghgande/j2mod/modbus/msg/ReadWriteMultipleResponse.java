@@ -16,6 +16,8 @@
 package com.ghgande.j2mod.modbus.msg;
 
 import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.procimg.ExportableProcessImage;
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
 import com.ghgande.j2mod.modbus.procimg.InputRegister;
 import com.ghgande.j2mod.modbus.procimg.Register;
 import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
@@ -23,6 +25,7 @@ import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>ReadWriteMultipleResponse</tt>.
@@ -35,6 +38,7 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
 
     private int byteCount;
     private InputRegister[] registers;
+    private ExportedRegisters exported;
 
     /**
      * Constructs a new <tt>ReadWriteMultipleResponse</tt> instance.
@@ -48,7 +52,7 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
         setDataLength(registers.length * 2 + 1);
 
         this.registers = registers;
-        byteCount = registers.length * 2 + 1;
+        byteCount = registers.length * 2;
     }
 
     /**
@@ -63,7 +67,7 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
         setDataLength(count * 2 + 1);
 
         registers = new InputRegister[count];
-        byteCount = count * 2 + 1;
+        byteCount = count * 2;
     }
 
     /**
@@ -106,6 +110,7 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public InputRegister getRegister(int index) {
+        resolveRegisters();
         if (registers == null) {
             throw new IndexOutOfBoundsException("No registers defined!");
         }
@@ -133,6 +138,9 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
      * @throws IndexOutOfBoundsException if the index is out of bounds.
      */
     public int getRegisterValue(int index) throws IndexOutOfBoundsException {
+        if (registers == null && exported != null && index >= 0 && index < exported.getCount()) {
+            return exported.getValue(index);
+        }
         return getRegister(index).toUnsignedShort();
     }
 
@@ -142,6 +150,7 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
      * @return a <tt>InputRegister[]</tt> instance.
      */
     public synchronized InputRegister[] getRegisters() {
+        resolveRegisters();
         InputRegister[] dest = new InputRegister[registers.length];
         System.arraycopy(registers, 0, dest, 0, dest.length);
         return dest;
@@ -151,17 +160,53 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
      * Sets the entire block of registers for this response
      */
     public void setRegisters(InputRegister[] registers) {
-        byteCount = registers.length * 2 + 1;
-        setDataLength(byteCount);
+        byteCount = registers.length * 2;
+        setDataLength(byteCount + 1);
 
         this.registers = registers;
     }
 
+    /**
+     * Sets the block of registers for this response by exporting the values
+     * of a range of holding registers straight from the process image, without
+     * creating a <tt>Register</tt> for each of them
+     *
+     * @param procimg the process image to read.
+     * @param ref     the reference of the first register.
+     * @param count   the number of registers.
+     *
+     * @throws IllegalAddressException if the range does not exist.
+     */
+    public void setRegisters(ExportableProcessImage procimg, int ref, int count) throws IllegalAddressException {
+        if (exported == null) {
+            exported = new ExportedRegisters();
+        }
+        registers = null;
+        exported.exportRegisters(procimg, ref, count);
+        byteCount = count * 2;
+        setDataLength(byteCount + 1);
+    }
+
+    /**
+     * Creates the register objects from the exported values the first time
+     * they are asked for
+     */
+    private void resolveRegisters() {
+        if (registers == null && exported != null) {
+            registers = exported.toRegisters();
+        }
+    }
+
     public void writeData(DataOutput dout) throws IOException {
         dout.writeByte(byteCount);
 
-        for (int k = 0; k < getWordCount(); k++) {
-            dout.write(registers[k].toBytes());
+        if (registers == null && exported != null) {
+            exported.write(dout);
+        }
+        else {
+            for (int k = 0; k < getWordCount(); k++) {
+                dout.write(registers[k].toBytes());
+            }
         }
     }
 
@@ -177,6 +222,32 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
         setDataLength(byteCount + 1);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.put((byte)byteCount);
+        if (registers == null && exported != null) {
+            exported.encode(buffer);
+        }
+        else {
+            for (int k = 0; k < getWordCount(); k++) {
+                buffer.putShort(registers[k].toShort());
+            }
+        }
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        byteCount = buffer.get() & 0xFF;
+
+        InputRegister[] registers = new InputRegister[getWordCount()];
+        for (int k = 0; k < getWordCount(); k++) {
+            registers[k] = new SimpleRegister(buffer.get(), buffer.get());
+        }
+        this.registers = registers;
+
+        setDataLength(byteCount + 1);
+    }
+
     public byte[] getMessage() {
         byte result[];
 
@@ -185,6 +256,11 @@ public final class ReadWriteMultipleResponse extends ModbusResponse {
         int offset = 0;
         result[offset++] = (byte)byteCount;
 
+        if (registers == null && exported != null) {
+            exported.copy(result, offset);
+            return result;
+        }
+
         for (InputRegister register : registers) {
             byte[] data = register.toBytes();
 
@@ -24,6 +24,7 @@ import com.ghgande.j2mod.modbus.procimg.ProcessImage;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteCoilRequest</tt>. The implementation directly
@@ -68,7 +69,10 @@ public final class WriteCoilRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteCoilResponse response = new WriteCoilResponse();
+        WriteCoilResponse response = (WriteCoilResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new WriteCoilResponse());
+        }
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -168,6 +172,21 @@ public final class WriteCoilRequest extends ModbusRequest {
         din.readByte();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.put(coil ? Modbus.COIL_ON_BYTES : Modbus.COIL_OFF_BYTES, 0, 2);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        coil = buffer.get() == Modbus.COIL_ON;
+
+        // discard the next byte.
+        buffer.get();
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
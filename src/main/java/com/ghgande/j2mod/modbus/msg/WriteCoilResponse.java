@@ -20,6 +20,7 @@ import com.ghgande.j2mod.modbus.Modbus;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteCoilResponse</tt>. The implementation directly
@@ -114,6 +115,21 @@ public final class WriteCoilResponse extends ModbusResponse {
         setDataLength(4);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.put(coil ? Modbus.COIL_ON_BYTES : Modbus.COIL_OFF_BYTES, 0, 2);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        setReference(buffer.getShort() & 0xFFFF);
+        setCoil(buffer.get() == Modbus.COIL_ON);
+        buffer.get();
+
+        setDataLength(4);
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
@@ -143,11 +143,7 @@ public final class WriteFileRecordRequest extends ModbusRequest {
         try {
             for (int i = 0; i < getRequestCount(); i++) {
                 RecordRequest recordRequest = getRecord(i);
-                if (recordRequest.getFileNumber() < 0 ||
-                        recordRequest.getFileNumber() >= procimg.getFileCount()) {
-                    return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
-                }
-
+                // Files are looked up by number, which need not be their index
                 File file = procimg.getFileByNumber(recordRequest.getFileNumber());
 
                 if (recordRequest.getRecordNumber() < 0 ||
@@ -155,23 +151,11 @@ public final class WriteFileRecordRequest extends ModbusRequest {
                     return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
                 }
 
-                Record record = file.getRecord(recordRequest.getRecordNumber());
                 int registers = recordRequest.getWordCount();
-                if (record == null && registers != 0) {
-                    return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
-                }
-
-                short data[] = new short[registers];
-                for (int j = 0; j < registers; j++) {
-                    Register register = record.getRegister(j);
-                    if (register == null) {
-                        return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
-                    }
-
-                    register.setValue(recordRequest.getRegister(j).getValue());
-                    data[j] = recordRequest.getRegister(j).toShort();
-                }
-                RecordResponse recordResponse = new RecordResponse(file.getFileNumber(), record == null ? 0 : record.getRecordNumber(), data);
+                byte data[] = new byte[registers * 2];
+                recordRequest.getData(data, 0);
+                file.setRegisters(recordRequest.getRecordNumber(), registers, data, 0);
+                RecordResponse recordResponse = new RecordResponse(file.getFileNumber(), recordRequest.getRecordNumber(), data, 0, registers);
                 response.addResponse(recordResponse);
             }
         }
@@ -266,10 +250,39 @@ public final class WriteFileRecordRequest extends ModbusRequest {
             }
         }
 
+        /**
+         * Creates the request for a record from register data in wire
+         * order, the high byte of each register first
+         *
+         * @param file   File number
+         * @param record Record number
+         * @param values Register data
+         * @param offset Position of the first register in the data
+         * @param count  Number of registers
+         */
+        public RecordRequest(int file, int record, byte[] values, int offset, int count) {
+            fileNumber = file;
+            recordNumber = record;
+            wordCount = count;
+            data = new byte[wordCount * 2];
+            System.arraycopy(values, offset, data, 0, data.length);
+        }
+
         public int getFileNumber() {
             return fileNumber;
         }
 
+        /**
+         * Copies the register data in wire order, the high byte of each
+         * register first
+         *
+         * @param dest   Buffer to copy <tt>2 * getWordCount()</tt> bytes to
+         * @param offset Position in the buffer
+         */
+        public void getData(byte[] dest, int offset) {
+            System.arraycopy(data, 0, dest, offset, data.length);
+        }
+
         public int getRecordNumber() {
             return recordNumber;
         }
@@ -178,10 +178,39 @@ public final class WriteFileRecordResponse extends ModbusResponse {
             }
         }
 
+        /**
+         * Creates the response for a record from register data in wire
+         * order, the high byte of each register first
+         *
+         * @param file   File number
+         * @param record Record number
+         * @param values Register data
+         * @param offset Position of the first register in the data
+         * @param count  Number of registers
+         */
+        public RecordResponse(int file, int record, byte[] values, int offset, int count) {
+            fileNumber = file;
+            recordNumber = record;
+            wordCount = count;
+            data = new byte[wordCount * 2];
+            System.arraycopy(values, offset, data, 0, data.length);
+        }
+
         public int getFileNumber() {
             return fileNumber;
         }
 
+        /**
+         * Copies the register data in wire order, the high byte of each
+         * register first
+         *
+         * @param dest   Buffer to copy <tt>2 * getWordCount()</tt> bytes to
+         * @param offset Position in the buffer
+         */
+        public void getData(byte[] dest, int offset) {
+            System.arraycopy(data, 0, dest, offset, data.length);
+        }
+
         public int getRecordNumber() {
             return recordNumber;
         }
@@ -25,6 +25,7 @@ import com.ghgande.j2mod.modbus.util.BitVector;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteMultipleCoilsRequest</tt>. The implementation
@@ -97,7 +98,10 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteMultipleCoilsResponse response = new WriteMultipleCoilsResponse();
+        WriteMultipleCoilsResponse response = (WriteMultipleCoilsResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new WriteMultipleCoilsResponse());
+        }
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -250,6 +254,32 @@ public final class WriteMultipleCoilsRequest extends ModbusRequest {
         setDataLength(coilBytes + 5);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)coils.size());
+
+        buffer.put((byte)coils.byteSize());
+        coils.getBytes(buffer);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        int bitcount = buffer.getShort() & 0xFFFF;
+        int coilBytes = buffer.get() & 0xFF;
+        if (bitcount > coilBytes * 8) {
+            throw new IOException("Coil count " + bitcount + " exceeds the " + coilBytes + " bytes of data");
+        }
+
+        coils = new BitVector(coilBytes * 8);
+        coils.setBytes(buffer);
+        coils.forceSize(bitcount);
+
+        // update data length
+        setDataLength(coilBytes + 5);
+    }
+
     public byte[] getMessage() {
         int len = coils.byteSize() + 5;
         byte result[] = new byte[len];
@@ -15,9 +15,12 @@
  */
 package com.ghgande.j2mod.modbus.msg;
 
+import com.ghgande.j2mod.modbus.Modbus;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteMultipleCoilsResponse</tt>. The implementation
@@ -49,6 +52,7 @@ public final class WriteMultipleCoilsResponse
     public WriteMultipleCoilsResponse(int ref, int count) {
         super();
 
+        setFunctionCode(Modbus.WRITE_MULTIPLE_COILS);
         reference = ref;
         bitCount = count;
 
@@ -61,6 +65,7 @@ public final class WriteMultipleCoilsResponse
     public WriteMultipleCoilsResponse() {
         super();
 
+        setFunctionCode(Modbus.WRITE_MULTIPLE_COILS);
         setDataLength(4);
     }
 
@@ -124,6 +129,18 @@ public final class WriteMultipleCoilsResponse
         bitCount = din.readUnsignedShort();
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)bitCount);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        bitCount = buffer.getShort() & 0xFFFF;
+    }
+
     public byte[] getMessage() {
         byte results[] = new byte[4];
 
@@ -26,6 +26,7 @@ import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteMultipleRegistersRequest</tt>. The
@@ -66,7 +67,10 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteMultipleRegistersResponse response = new WriteMultipleRegistersResponse();
+        WriteMultipleRegistersResponse response = (WriteMultipleRegistersResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new WriteMultipleRegistersResponse());
+        }
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -289,6 +293,41 @@ public final class WriteMultipleRegistersRequest extends ModbusRequest {
         }
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        if (nonWordDataHandler != null) {
+            super.encodeData(buffer);
+            return;
+        }
+        int registerCount = registers != null ? registers.length : 0;
+        buffer.putShort((short)reference);
+        buffer.putShort((short)registerCount);
+        buffer.put((byte)(registerCount * 2));
+        for (int i = 0; i < registerCount; i++) {
+            buffer.putShort(registers[i].toShort());
+        }
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        if (nonWordDataHandler != null) {
+            super.decodeData(buffer);
+            return;
+        }
+        reference = buffer.getShort() & 0xFFFF;
+        int registerCount = buffer.getShort() & 0xFFFF;
+        int byteCount = buffer.get() & 0xFF;
+        if (byteCount < registerCount * 2) {
+            throw new IOException("Register count " + registerCount + " exceeds the " + byteCount + " bytes of data");
+        }
+
+        registers = new Register[registerCount];
+        for (int register = 0; register < registerCount; register++) {
+            registers[register] = new SimpleRegister(buffer.get(), buffer.get());
+        }
+        buffer.position(buffer.position() + byteCount - registerCount * 2);
+    }
+
     public byte[] getMessage() {
         int len = 5;
 
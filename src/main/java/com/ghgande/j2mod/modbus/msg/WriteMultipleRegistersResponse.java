@@ -20,6 +20,7 @@ import com.ghgande.j2mod.modbus.Modbus;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteMultipleRegistersResponse</tt>. The
@@ -125,6 +126,20 @@ public final class WriteMultipleRegistersResponse extends ModbusResponse {
         setDataLength(4);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)wordCount);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        setReference(buffer.getShort() & 0xFFFF);
+        setWordCount(buffer.getShort() & 0xFFFF);
+
+        setDataLength(4);
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
@@ -25,6 +25,7 @@ import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteSingleRegisterRequest</tt>. The implementation
@@ -69,7 +70,10 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
     }
 
     public ModbusResponse getResponse() {
-        WriteSingleRegisterResponse response = new WriteSingleRegisterResponse();
+        WriteSingleRegisterResponse response = (WriteSingleRegisterResponse)getPooledResponse();
+        if (response == null) {
+            response = poolResponse(new WriteSingleRegisterResponse());
+        }
 
         response.setHeadless(isHeadless());
         if (!isHeadless()) {
@@ -97,17 +101,9 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
         catch (IllegalAddressException iaex) {
             return createExceptionResponse(Modbus.ILLEGAL_ADDRESS_EXCEPTION);
         }
-        response = new WriteSingleRegisterResponse(this.getReference(), reg.getValue());
-        // transfer header data
-        if (!isHeadless()) {
-            response.setTransactionID(this.getTransactionID());
-            response.setProtocolID(this.getProtocolID());
-        }
-        else {
-            response.setHeadless();
-        }
-        response.setUnitID(this.getUnitID());
-        response.setFunctionCode(this.getFunctionCode());
+        response = (WriteSingleRegisterResponse)getResponse();
+        response.setReference(getReference());
+        response.setRegisterValue(reg.getValue());
 
         return response;
     }
@@ -162,6 +158,18 @@ public final class WriteSingleRegisterRequest extends ModbusRequest {
         register = new SimpleRegister(din.readByte(), din.readByte());
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort(register.toShort());
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        reference = buffer.getShort() & 0xFFFF;
+        register = new SimpleRegister(buffer.get(), buffer.get());
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
@@ -20,6 +20,7 @@ import com.ghgande.j2mod.modbus.Modbus;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class implementing a <tt>WriteSingleRegisterResponse</tt>.
@@ -81,7 +82,7 @@ public final class WriteSingleRegisterResponse
      *
      * @param value the returned register value.
      */
-    private void setRegisterValue(int value) {
+    public void setRegisterValue(int value) {
         registerValue = value;
     }
 
@@ -103,7 +104,7 @@ public final class WriteSingleRegisterResponse
      *
      * @param ref the reference of the written register.
      */
-    private void setReference(int ref) {
+    public void setReference(int ref) {
         reference = ref;
         //setChanged(true);
     }
@@ -119,6 +120,20 @@ public final class WriteSingleRegisterResponse
         setDataLength(4);
     }
 
+    @Override
+    public void encodeData(ByteBuffer buffer) {
+        buffer.putShort((short)reference);
+        buffer.putShort((short)registerValue);
+    }
+
+    @Override
+    public void decodeData(ByteBuffer buffer) throws IOException {
+        setReference(buffer.getShort() & 0xFFFF);
+        setRegisterValue(buffer.getShort() & 0xFFFF);
+        //update data length
+        setDataLength(4);
+    }
+
     public byte[] getMessage() {
         byte result[] = new byte[4];
 
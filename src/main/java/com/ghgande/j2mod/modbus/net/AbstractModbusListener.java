@@ -19,9 +19,13 @@ import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.ModbusCoupler;
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.io.TransportStatistics;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
 import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusRequestPool;
 import com.ghgande.j2mod.modbus.msg.ModbusResponse;
 import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +45,9 @@ public abstract class AbstractModbusListener implements Runnable {
     protected InetAddress address;
     protected String error;
     protected int timeout = Modbus.DEFAULT_TIMEOUT;
+    protected volatile ModbusMetrics metrics;
+    protected final TransportStatistics statistics = new TransportStatistics();
+    protected volatile boolean pooling = false;
 
     /**
      * Main execution loop for this Modbus interface listener - this is called by
@@ -136,6 +143,67 @@ public abstract class AbstractModbusListener implements Runnable {
         this.timeout = timeout;
     }
 
+    /**
+     * Returns the metrics that requests are recorded in
+     *
+     * @return Metrics or null if not recording
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to record each request in.  The latency recorded is
+     * the time taken to process the request and write the response.
+     *
+     * @param metrics Metrics or null to stop recording
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the totals of the messages and bytes passing through the
+     * transports of this listener
+     *
+     * @return Transport statistics
+     */
+    public TransportStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Tests if the requests and responses of each connection are pooled
+     *
+     * @return True if pooling
+     */
+    public boolean isPooling() {
+        return pooling;
+    }
+
+    /**
+     * Sets whether the requests and responses of each connection are taken
+     * from a pool and reused instead of being created for every request.
+     * This stops the listener allocating messages for every request, but the
+     * messages are only valid until the next request on the same connection,
+     * so any transport listeners must not keep hold of them.
+     * Only applies to connections opened after it is set.
+     *
+     * @param pooling True to pool the messages
+     */
+    public void setPooling(boolean pooling) {
+        this.pooling = pooling;
+    }
+
+    /**
+     * Gives the transport its own request pool if pooling is enabled
+     *
+     * @param transport Transport that requests will be read from
+     */
+    protected void configureRequestPool(AbstractModbusTransport transport) {
+        transport.setRequestPool(pooling ? new ModbusRequestPool() : null);
+    }
+
     /**
      * Reads the request, checks it is valid and that the unit ID is ok
      * and sends back a response
@@ -144,12 +212,32 @@ public abstract class AbstractModbusListener implements Runnable {
      * @throws ModbusIOException
      */
     protected static void handleRequest(AbstractModbusTransport transport) throws ModbusIOException {
+        handleRequest(transport, null);
+    }
+
+    /**
+     * Reads the request, checks it is valid and that the unit ID is ok
+     * and sends back a response, recording the request in the metrics of
+     * the listener
+     *
+     * @param transport Transport to read request from
+     * @param listener  Listener that the request was received by or null
+     * @throws ModbusIOException
+     */
+    protected static void handleRequest(AbstractModbusTransport transport, AbstractModbusListener listener) throws ModbusIOException {
 
         // Get the request from the transport. It will be processed
         // using an associated process image.
         ModbusRequest request = transport.readRequest();
         ModbusResponse response;
 
+        // Serial transports return nothing if the frame was lost or corrupt
+        if (request == null) {
+            return;
+        }
+        ModbusMetrics metrics = listener == null ? null : listener.getMetrics();
+        long start = metrics == null ? 0 : System.nanoTime();
+
         // Test if Process image exists and has a correct unit ID
         ProcessImage spi = ModbusCoupler.getReference().getProcessImage(request.getUnitID());
         if (spi == null ||
@@ -159,11 +247,23 @@ public abstract class AbstractModbusListener implements Runnable {
         else {
             response = request.createResponse();
         }
-        logger.debug("Request:{}", request.getHexMessage());
-        logger.debug("Response:{}", response.getHexMessage());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request:{}", request.getHexMessage());
+            logger.debug("Response:{}", response.getHexMessage());
+        }
 
         // Write the response
         transport.writeMessage(response);
+
+        if (metrics != null) {
+            long elapsed = System.nanoTime() - start;
+            if (response instanceof ExceptionResponse) {
+                metrics.recordExceptionResponse(request.getUnitID(), request.getFunctionCode(), ((ExceptionResponse)response).getExceptionCode(), elapsed);
+            }
+            else {
+                metrics.recordRequest(request.getUnitID(), request.getFunctionCode(), elapsed);
+            }
+        }
     }
 
 }
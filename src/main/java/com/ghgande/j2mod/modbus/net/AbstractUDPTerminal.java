@@ -17,9 +17,11 @@ package com.ghgande.j2mod.modbus.net;
 
 import com.ghgande.j2mod.modbus.Modbus;
 import com.ghgande.j2mod.modbus.io.ModbusUDPTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 
 /**
  * Interface defining a <tt>UDPTerminal</tt>.
@@ -64,6 +66,53 @@ public abstract class AbstractUDPTerminal {
         this.port = port;
     }
 
+    /**
+     * Returns the address of the local end of the terminal
+     *
+     * @return Socket address or null if the terminal isn't active
+     */
+    public InetSocketAddress getLocalSocketAddress() {
+        DatagramSocket current = socket;
+        return current == null ? null : (InetSocketAddress)current.getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the address of the remote end that the message was received
+     * from or is being sent to
+     *
+     * @param msg Message being sent or received
+     *
+     * @return Socket address or null if not known
+     */
+    public InetSocketAddress getRemoteSocketAddress(ModbusMessage msg) {
+        return null;
+    }
+
+    /**
+     * Returns the address of the remote end that the frame was received
+     * from or is being sent to
+     *
+     * @param frame Frame being sent or received, starting with the MBAP header
+     *
+     * @return Socket address or null if not known
+     */
+    public InetSocketAddress getRemoteSocketAddress(byte[] frame) {
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes received in a frame returned by
+     * {@link #receiveMessage()}, which is held in a buffer of the largest
+     * size
+     *
+     * @param frame Frame received
+     *
+     * @return Length of the datagram
+     */
+    public int getFrameLength(byte[] frame) {
+        return frame.length;
+    }
+
     /**
      * Tests if this <tt>UDPSlaveTerminal</tt> is active.
      *
@@ -36,6 +36,7 @@ public class ModbusSerialListener extends AbstractModbusListener {
 
     private static final Logger logger = LoggerFactory.getLogger(ModbusSerialListener.class);
     private SerialConnection serialCon;
+    private int[] unitIDs;
 
     /**
      * Constructs a new <tt>ModbusSerialListener</tt> instance.
@@ -57,10 +58,31 @@ public class ModbusSerialListener extends AbstractModbusListener {
         }
     }
 
+    /**
+     * Sets the unit IDs served by this listener.  Frames addressed to any
+     * other unit are skipped by the transport without being decoded.
+     * If none are set, all the units with a process image in the
+     * <tt>ModbusCoupler</tt> are served.
+     *
+     * @param unitIDs Unit IDs to serve
+     */
+    public void setUnitIDs(int... unitIDs) {
+        this.unitIDs = unitIDs;
+        if (serialCon != null && listening) {
+            ModbusSerialTransport transport = (ModbusSerialTransport)serialCon.getModbusTransport();
+            if (transport != null) {
+                transport.setUnitIDs(unitIDs);
+            }
+        }
+    }
+
     @Override
     public void run() {
         try {
             serialCon.open();
+            ((ModbusSerialTransport)serialCon.getModbusTransport()).setUnitIDs(unitIDs);
+            serialCon.getModbusTransport().addTransportListener(statistics);
+            configureRequestPool(serialCon.getModbusTransport());
         }
         // Catch any fatal errors and set the listening flag to false to indicate an error
         catch (Exception e) {
@@ -75,7 +97,7 @@ public class ModbusSerialListener extends AbstractModbusListener {
                 AbstractModbusTransport transport = serialCon.getModbusTransport();
                 if (listening) {
                     try {
-                        handleRequest(transport);
+                        handleRequest(transport, this);
                     }
                     catch (ModbusIOException ex) {
                         logger.debug(ex.getMessage());
@@ -21,6 +21,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class that implements a ModbusTCPListener.
@@ -41,6 +46,7 @@ public class ModbusTCPListener extends AbstractModbusListener {
     private ServerSocket serverSocket = null;
     private ThreadPool threadPool;
     private Thread listener;
+    private final Set<TCPSlaveConnection> connections = Collections.newSetFromMap(new ConcurrentHashMap<TCPSlaveConnection, Boolean>());
 
     /**
      * Constructs a ModbusTCPListener instance.<br>
@@ -86,6 +92,61 @@ public class ModbusTCPListener extends AbstractModbusListener {
         }
     }
 
+    /**
+     * Returns the pool of threads that handle the connections
+     *
+     * @return Thread pool
+     */
+    public ThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    /**
+     * Returns the number of connections currently being handled
+     *
+     * @return Number of connections
+     */
+    public int getActiveConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Returns the connections currently being handled
+     *
+     * @return List of connections
+     */
+    public List<TCPSlaveConnection> getActiveConnections() {
+        return new ArrayList<TCPSlaveConnection>(connections);
+    }
+
+    /**
+     * Closes all the connections currently being handled, leaving the
+     * listener accepting new connections
+     */
+    public void closeConnections() {
+        for (TCPSlaveConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Registers a connection that has started being handled
+     *
+     * @param connection Connection
+     */
+    void addConnection(TCPSlaveConnection connection) {
+        connections.add(connection);
+    }
+
+    /**
+     * Removes a connection that has finished being handled
+     *
+     * @param connection Connection
+     */
+    void removeConnection(TCPSlaveConnection connection) {
+        connections.remove(connection);
+    }
+
     @Override
     public void run() {
         try {
@@ -120,7 +181,7 @@ public class ModbusTCPListener extends AbstractModbusListener {
                 Socket incoming = serverSocket.accept();
                 logger.debug("Making new connection {}", incoming.toString());
                 if (listening) {
-                    threadPool.execute(new TCPConnectionHandler(new TCPSlaveConnection(incoming)));
+                    threadPool.execute(new TCPConnectionHandler(new TCPSlaveConnection(incoming), this));
                 }
                 else {
                     incoming.close();
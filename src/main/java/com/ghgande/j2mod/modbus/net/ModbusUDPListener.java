@@ -85,6 +85,8 @@ public class ModbusUDPListener extends AbstractModbusListener {
             terminal.setPort(port);
             terminal.activate();
             transport = new ModbusUDPTransport(terminal);
+            transport.addTransportListener(statistics);
+            configureRequestPool(transport);
         }
 
         // Catch any fatal errors and set the listening flag to false to indicate an error
@@ -97,7 +99,16 @@ public class ModbusUDPListener extends AbstractModbusListener {
         listening = true;
         try {
             while (listening) {
-                handleRequest(transport);
+                try {
+                    handleRequest(transport, this);
+                }
+                catch (ModbusIOException ex) {
+                    // A datagram that cannot be decoded doesn't stop the listener
+                    if (!listening || ex.isEOF()) {
+                        throw ex;
+                    }
+                    logger.debug("Discarded invalid request - {}", ex.getMessage());
+                }
             }
         }
         catch (ModbusIOException ex1) {
@@ -21,6 +21,7 @@ import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
 import com.ghgande.j2mod.modbus.io.ModbusASCIITransport;
 import com.ghgande.j2mod.modbus.io.ModbusRTUTransport;
 import com.ghgande.j2mod.modbus.io.ModbusSerialTransport;
+import com.ghgande.j2mod.modbus.io.SerialTimeoutCalculator;
 import com.ghgande.j2mod.modbus.util.SerialParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,7 @@ public class SerialConnection {
     private SerialPort serialPort;
     private InputStream inputStream;
     private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private SerialTimeoutCalculator timeoutCalculator;
 
     /**
      * Creates a SerialConnection object and initializes variables passed in as
@@ -89,6 +91,7 @@ public class SerialConnection {
         }
         transport.setEcho(parameters.isEcho());
         transport.setTimeout(timeout);
+        transport.setTimeoutCalculator(timeoutCalculator);
 
         // Open the input and output streams for the connection. If they won't
         // open, close the port before throwing an exception.
@@ -166,4 +169,26 @@ public class SerialConnection {
         }
     }
 
+    /**
+     * Returns the calculator used to work out per-request response timeouts
+     *
+     * @return Calculator or null if the fixed timeout is used
+     */
+    public synchronized SerialTimeoutCalculator getTimeoutCalculator() {
+        return timeoutCalculator;
+    }
+
+    /**
+     * Sets the calculator used to work out per-request response timeouts.
+     * The timeout of this connection remains the upper limit.
+     *
+     * @param timeoutCalculator Calculator or null to use the fixed timeout
+     */
+    public synchronized void setTimeoutCalculator(SerialTimeoutCalculator timeoutCalculator) {
+        this.timeoutCalculator = timeoutCalculator;
+        if (transport != null) {
+            transport.setTimeoutCalculator(timeoutCalculator);
+        }
+    }
+
 }
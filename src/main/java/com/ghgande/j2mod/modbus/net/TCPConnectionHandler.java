@@ -17,6 +17,7 @@ package com.ghgande.j2mod.modbus.net;
 
 import com.ghgande.j2mod.modbus.ModbusIOException;
 import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +34,8 @@ public class TCPConnectionHandler implements Runnable {
 
     private TCPSlaveConnection connection;
     private AbstractModbusTransport transport;
+    private ModbusTCPListener listener;
+    private long queued;
 
     /**
      * Constructs a new <tt>TCPConnectionHandler</tt> instance.
@@ -48,6 +51,22 @@ public class TCPConnectionHandler implements Runnable {
         setConnection(con);
     }
 
+    /**
+     * Constructs a new <tt>TCPConnectionHandler</tt> instance that records
+     * each request in the metrics and statistics of the listener, and
+     * registers the connection with the listener while it is being handled.
+     * The time the connection waits for a free thread in the pool is recorded
+     * as the queue wait.
+     *
+     * @param con      an incoming connection.
+     * @param listener Listener that accepted the connection
+     */
+    public TCPConnectionHandler(TCPSlaveConnection con, ModbusTCPListener listener) {
+        setConnection(con);
+        this.listener = listener;
+        queued = System.nanoTime();
+    }
+
     /**
      * Sets a connection to be handled by this <tt>
      * TCPConnectionHandler</tt>.
@@ -61,9 +80,18 @@ public class TCPConnectionHandler implements Runnable {
 
     @Override
     public void run() {
+        if (listener != null) {
+            ModbusMetrics metrics = listener.getMetrics();
+            if (metrics != null) {
+                metrics.recordQueueWait(System.nanoTime() - queued);
+            }
+            transport.addTransportListener(listener.getStatistics());
+            listener.configureRequestPool(transport);
+            listener.addConnection(connection);
+        }
         try {
             do {
-                AbstractModbusListener.handleRequest(transport);
+                AbstractModbusListener.handleRequest(transport, listener);
             } while (!Thread.currentThread().isInterrupted());
         }
         catch (ModbusIOException ex) {
@@ -72,6 +100,9 @@ public class TCPConnectionHandler implements Runnable {
             }
         }
         finally {
+            if (listener != null) {
+                listener.removeConnection(connection);
+            }
             connection.close();
         }
     }
@@ -46,6 +46,8 @@ public class TCPMasterConnection {
     private int port = Modbus.DEFAULT_PORT;
 
     private ModbusTCPTransport transport;
+    private long connectCount;
+    private String lastConnectError;
 
     /**
      * m_useUrgentData - sent a byte of urgent data when testing the TCP
@@ -87,7 +89,13 @@ public class TCPMasterConnection {
         if (!isConnected()) {
             logger.debug("connect()");
 
-            socket = new Socket(address, port);
+            try {
+                socket = new Socket(address, port);
+            }
+            catch (Exception e) {
+                lastConnectError = e.getMessage();
+                throw e;
+            }
             socket.setReuseAddress(true);
             socket.setSoLinger(true, 1);
             socket.setKeepAlive(true);
@@ -95,10 +103,30 @@ public class TCPMasterConnection {
             setTimeout(timeout);
             prepareTransport();
 
+            connectCount++;
             connected = true;
         }
     }
 
+    /**
+     * Returns the number of times this <tt>TCPMasterConnection</tt> has
+     * connected, so anything more than one indicates reconnections.
+     *
+     * @return Number of successful connects
+     */
+    public synchronized long getConnectCount() {
+        return connectCount;
+    }
+
+    /**
+     * Returns the reason the last connect attempt failed
+     *
+     * @return Error message or null if no attempt has failed
+     */
+    public synchronized String getLastConnectError() {
+        return lastConnectError;
+    }
+
     /**
      * Tests if this <tt>TCPMasterConnection</tt> is connected.
      *
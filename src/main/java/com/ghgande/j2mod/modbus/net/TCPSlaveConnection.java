@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 
 /**
  * Class that implements a TCPSlaveConnection.
@@ -150,6 +151,16 @@ public class TCPSlaveConnection {
         return socket.getLocalAddress();
     }
 
+    /**
+     * Returns the address and port of the master at the other end of this
+     * <tt>TCPSlaveConnection</tt>.
+     *
+     * @return the remote address or null if not connected.
+     */
+    public SocketAddress getRemoteSocketAddress() {
+        return socket.getRemoteSocketAddress();
+    }
+
     /**
      * Tests if this <tt>TCPSlaveConnection</tt> is connected.
      *
@@ -16,12 +16,14 @@
 package com.ghgande.j2mod.modbus.net;
 
 import com.ghgande.j2mod.modbus.io.ModbusUDPTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 
 /**
  * Class implementing a <tt>UDPMasterTerminal</tt>.
@@ -33,6 +35,7 @@ import java.net.InetAddress;
 class UDPMasterTerminal extends AbstractUDPTerminal {
 
     private static final Logger logger = LoggerFactory.getLogger(UDPMasterTerminal.class);
+    private int received;
 
     /**
      * Create a UDP master connection to the specified Internet address.
@@ -83,6 +86,21 @@ class UDPMasterTerminal extends AbstractUDPTerminal {
         }
     }
 
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(ModbusMessage msg) {
+        return address == null ? null : new InetSocketAddress(address, port);
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(byte[] frame) {
+        return address == null ? null : new InetSocketAddress(address, port);
+    }
+
+    @Override
+    public synchronized int getFrameLength(byte[] frame) {
+        return received;
+    }
+
     @Override
     public synchronized void sendMessage(byte[] msg) throws Exception {
         DatagramPacket req = new DatagramPacket(msg, msg.length, address, port);
@@ -98,6 +116,7 @@ class UDPMasterTerminal extends AbstractUDPTerminal {
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
         socket.setSoTimeout(timeout);
         socket.receive(packet);
+        received = packet.getLength();
         return buffer;
     }
 
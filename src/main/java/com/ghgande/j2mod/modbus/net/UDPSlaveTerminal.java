@@ -16,6 +16,7 @@
 package com.ghgande.j2mod.modbus.net;
 
 import com.ghgande.j2mod.modbus.io.ModbusUDPTransport;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
 import com.ghgande.j2mod.modbus.util.ModbusUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.Hashtable;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -112,6 +114,47 @@ class UDPSlaveTerminal extends AbstractUDPTerminal {
         }
     }
 
+    /**
+     * Returns the address of the master that sent the request with the same
+     * transaction and protocol IDs as the message.  The address is only known
+     * until the response to the request has been sent.
+     *
+     * @param msg Request received or response being sent
+     *
+     * @return Socket address or null if not known
+     */
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(ModbusMessage msg) {
+        DatagramPacket packet = requests.get((msg.getTransactionID() << 16) | (msg.getProtocolID() & 0xFFFF));
+        return packet == null ? null : (InetSocketAddress)packet.getSocketAddress();
+    }
+
+    /**
+     * Returns the address of the master that sent the request with the same
+     * transaction and protocol IDs as the frame
+     *
+     * @param frame Request received or response being sent
+     *
+     * @return Socket address or null if not known
+     */
+    @Override
+    public InetSocketAddress getRemoteSocketAddress(byte[] frame) {
+        if (frame == null || frame.length < 4) {
+            return null;
+        }
+        DatagramPacket packet = requests.get(ModbusUtil.registersToInt(frame));
+        return packet == null ? null : (InetSocketAddress)packet.getSocketAddress();
+    }
+
+    @Override
+    public int getFrameLength(byte[] frame) {
+        if (frame == null || frame.length < 4) {
+            return 0;
+        }
+        DatagramPacket packet = requests.get(ModbusUtil.registersToInt(frame));
+        return packet == null || packet.getData() != frame ? frame.length : packet.getLength();
+    }
+
     @Override
     public void sendMessage(byte[] msg) throws Exception {
         sendQueue.add(msg);
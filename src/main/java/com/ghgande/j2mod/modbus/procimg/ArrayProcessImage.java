@@ -0,0 +1,457 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import com.ghgande.j2mod.modbus.util.BitVector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A process image backed by primitive arrays rather than an object per
+ * point, so that thousands of them fit comfortably in one JVM.
+ * <p>
+ * The points can be accessed directly by their value, or through the normal
+ * {@link ProcessImage} methods which return lightweight views onto the
+ * arrays, so the image can also be used with the standard listeners.  The
+ * same image can be shared by any number of simulated devices.
+ * <p>
+ * Individual values are read without locking; a read of several points
+ * that is concurrent with a write may see a mix of old and new values.
+ * Coils and discrete inputs are packed into words, so writes to them lock
+ * their table to avoid losing a concurrent write to a neighbouring point.
+ * The image has no files or FIFOs.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ArrayProcessImage implements ExportableProcessImage {
+
+    private final int unitID;
+    private final BitVector digitalOuts;
+    private final BitVector digitalIns;
+    private final short[] inputRegisters;
+    private final short[] registers;
+
+    /**
+     * Creates an image with the same number of points of each type
+     *
+     * @param unitID Unit ID of the image
+     * @param size   Number of points of each type
+     */
+    public ArrayProcessImage(int unitID, int size) {
+        this(unitID, size, size, size, size);
+    }
+
+    /**
+     * Creates an image with the given number of points of each type, all
+     * initially zero
+     *
+     * @param unitID         Unit ID of the image
+     * @param digitalOuts    Number of coils
+     * @param digitalIns     Number of discrete inputs
+     * @param inputRegisters Number of input registers
+     * @param registers      Number of holding registers
+     */
+    public ArrayProcessImage(int unitID, int digitalOuts, int digitalIns, int inputRegisters, int registers) {
+        this.unitID = unitID;
+        this.digitalOuts = new BitVector(digitalOuts);
+        this.digitalIns = new BitVector(digitalIns);
+        this.inputRegisters = new short[inputRegisters];
+        this.registers = new short[registers];
+    }
+
+    @Override
+    public int getUnitID() {
+        return unitID;
+    }
+
+    /**
+     * Returns true if the coil is set
+     *
+     * @param ref Reference of the coil
+     *
+     * @return True if set
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public boolean isDigitalOutSet(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, digitalOuts.size());
+        return digitalOuts.getBit(ref);
+    }
+
+    /**
+     * Sets the state of the coil
+     *
+     * @param ref   Reference of the coil
+     * @param value New state
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public void setDigitalOutValue(int ref, boolean value) throws IllegalAddressException {
+        checkRange(ref, 1, digitalOuts.size());
+        setBit(digitalOuts, ref, value);
+    }
+
+    /**
+     * Returns true if the discrete input is set
+     *
+     * @param ref Reference of the input
+     *
+     * @return True if set
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public boolean isDigitalInSet(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, digitalIns.size());
+        return digitalIns.getBit(ref);
+    }
+
+    /**
+     * Sets the state of the discrete input
+     *
+     * @param ref   Reference of the input
+     * @param value New state
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public void setDigitalInValue(int ref, boolean value) throws IllegalAddressException {
+        checkRange(ref, 1, digitalIns.size());
+        setBit(digitalIns, ref, value);
+    }
+
+    /**
+     * Returns the unsigned value of the input register
+     *
+     * @param ref Reference of the register
+     *
+     * @return Value between 0 and 65535
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public int getInputRegisterValue(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, inputRegisters.length);
+        return inputRegisters[ref] & 0xFFFF;
+    }
+
+    /**
+     * Sets the value of the input register
+     *
+     * @param ref   Reference of the register
+     * @param value New value, only the low 16 bits are used
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public void setInputRegisterValue(int ref, int value) throws IllegalAddressException {
+        checkRange(ref, 1, inputRegisters.length);
+        inputRegisters[ref] = (short)value;
+    }
+
+    /**
+     * Returns the unsigned value of the holding register
+     *
+     * @param ref Reference of the register
+     *
+     * @return Value between 0 and 65535
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public int getRegisterValue(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, registers.length);
+        return registers[ref] & 0xFFFF;
+    }
+
+    /**
+     * Sets the value of the holding register
+     *
+     * @param ref   Reference of the register
+     * @param value New value, only the low 16 bits are used
+     *
+     * @throws IllegalAddressException if the reference is invalid
+     */
+    public void setRegisterValue(int ref, int value) throws IllegalAddressException {
+        checkRange(ref, 1, registers.length);
+        registers[ref] = (short)value;
+    }
+
+    /**
+     * Checks that a range of points lies within a table
+     *
+     * @param ref   First reference
+     * @param count Number of points
+     * @param size  Size of the table
+     *
+     * @throws IllegalAddressException if any of the range is outside the table
+     */
+    public static void checkRange(int ref, int count, int size) throws IllegalAddressException {
+        if (ref < 0 || count < 0 || ref + count > size) {
+            throw new IllegalAddressException();
+        }
+    }
+
+    /**
+     * Sets a point in a bit table
+     *
+     * @param table Table to change
+     * @param ref   Reference of the point
+     * @param value New state
+     */
+    private static void setBit(BitVector table, int ref, boolean value) {
+        synchronized (table) {
+            table.setBit(ref, value);
+        }
+    }
+
+    /**
+     * Copies a range of a bit table into a bit vector a word at a time
+     *
+     * @param table  Table to copy from
+     * @param offset First reference
+     * @param bits   Bits to set, sized to the number of points
+     *
+     * @throws IllegalAddressException if any of the range is outside the table
+     */
+    private static void exportBits(BitVector table, int offset, BitVector bits) throws IllegalAddressException {
+        int count = bits.size();
+        checkRange(offset, count, table.size());
+        bits.copyFrom(table, offset, count);
+    }
+
+    /**
+     * Writes a range of a register table to a buffer
+     *
+     * @param table  Table to copy from
+     * @param offset First reference
+     * @param count  Number of registers
+     * @param buffer Buffer to write to
+     *
+     * @throws IllegalAddressException if any of the range is outside the table
+     */
+    private static void exportWords(short[] table, int offset, int count, ByteBuffer buffer) throws IllegalAddressException {
+        checkRange(offset, count, table.length);
+        for (int i = 0; i < count; i++) {
+            buffer.putShort(table[offset + i]);
+        }
+    }
+
+    @Override
+    public DigitalOut[] getDigitalOutRange(int offset, int count) throws IllegalAddressException {
+        checkRange(offset, count, digitalOuts.size());
+        DigitalOut[] result = new DigitalOut[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new BitView(digitalOuts, offset + i);
+        }
+        return result;
+    }
+
+    @Override
+    public void exportDigitalOutRange(int offset, BitVector bits) throws IllegalAddressException {
+        exportBits(digitalOuts, offset, bits);
+    }
+
+    @Override
+    public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, digitalOuts.size());
+        return new BitView(digitalOuts, ref);
+    }
+
+    @Override
+    public int getDigitalOutCount() {
+        return digitalOuts.size();
+    }
+
+    @Override
+    public DigitalIn[] getDigitalInRange(int offset, int count) throws IllegalAddressException {
+        checkRange(offset, count, digitalIns.size());
+        DigitalIn[] result = new DigitalIn[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new BitView(digitalIns, offset + i);
+        }
+        return result;
+    }
+
+    @Override
+    public void exportDigitalInRange(int offset, BitVector bits) throws IllegalAddressException {
+        exportBits(digitalIns, offset, bits);
+    }
+
+    @Override
+    public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, digitalIns.size());
+        return new BitView(digitalIns, ref);
+    }
+
+    @Override
+    public int getDigitalInCount() {
+        return digitalIns.size();
+    }
+
+    @Override
+    public InputRegister[] getInputRegisterRange(int offset, int count) throws IllegalAddressException {
+        checkRange(offset, count, inputRegisters.length);
+        InputRegister[] result = new InputRegister[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new RegisterView(inputRegisters, offset + i);
+        }
+        return result;
+    }
+
+    @Override
+    public void exportInputRegisterRange(int offset, int count, ByteBuffer buffer) throws IllegalAddressException {
+        exportWords(inputRegisters, offset, count, buffer);
+    }
+
+    @Override
+    public InputRegister getInputRegister(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, inputRegisters.length);
+        return new RegisterView(inputRegisters, ref);
+    }
+
+    @Override
+    public int getInputRegisterCount() {
+        return inputRegisters.length;
+    }
+
+    @Override
+    public Register[] getRegisterRange(int offset, int count) throws IllegalAddressException {
+        checkRange(offset, count, registers.length);
+        Register[] result = new Register[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new RegisterView(registers, offset + i);
+        }
+        return result;
+    }
+
+    @Override
+    public void exportRegisterRange(int offset, int count, ByteBuffer buffer) throws IllegalAddressException {
+        exportWords(registers, offset, count, buffer);
+    }
+
+    @Override
+    public Register getRegister(int ref) throws IllegalAddressException {
+        checkRange(ref, 1, registers.length);
+        return new RegisterView(registers, ref);
+    }
+
+    @Override
+    public int getRegisterCount() {
+        return registers.length;
+    }
+
+    @Override
+    public File getFile(int ref) throws IllegalAddressException {
+        throw new IllegalAddressException();
+    }
+
+    @Override
+    public File getFileByNumber(int ref) throws IllegalAddressException {
+        throw new IllegalAddressException();
+    }
+
+    @Override
+    public int getFileCount() {
+        return 0;
+    }
+
+    @Override
+    public FIFO getFIFO(int ref) throws IllegalAddressException {
+        throw new IllegalAddressException();
+    }
+
+    @Override
+    public FIFO getFIFOByAddress(int ref) throws IllegalAddressException {
+        throw new IllegalAddressException();
+    }
+
+    @Override
+    public int getFIFOCount() {
+        return 0;
+    }
+
+    /**
+     * A coil or discrete input viewed in its array
+     */
+    private static class BitView implements DigitalOut, DigitalIn {
+        private final BitVector bits;
+        private final int index;
+
+        BitView(BitVector bits, int index) {
+            this.bits = bits;
+            this.index = index;
+        }
+
+        @Override
+        public boolean isSet() {
+            return bits.getBit(index);
+        }
+
+        @Override
+        public void set(boolean b) {
+            setBit(bits, index, b);
+        }
+    }
+
+    /**
+     * A register viewed in its array
+     */
+    private static class RegisterView implements Register {
+        private final short[] values;
+        private final int index;
+
+        RegisterView(short[] values, int index) {
+            this.values = values;
+            this.index = index;
+        }
+
+        @Override
+        public int getValue() {
+            return values[index] & 0xFFFF;
+        }
+
+        @Override
+        public int toUnsignedShort() {
+            return values[index] & 0xFFFF;
+        }
+
+        @Override
+        public short toShort() {
+            return values[index];
+        }
+
+        @Override
+        public byte[] toBytes() {
+            short value = values[index];
+            return new byte[]{(byte)(value >> 8), (byte)value};
+        }
+
+        @Override
+        public void setValue(int v) {
+            values[index] = (short)v;
+        }
+
+        @Override
+        public void setValue(short s) {
+            values[index] = s;
+        }
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            values[index] = (short)(((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import java.util.zip.CRC32;
+
+/**
+ * A file backed by a byte array rather than <tt>Record</tt> and
+ * <tt>Register</tt> objects, for holding blobs such as configuration that
+ * are moved with the READ FILE RECORD and WRITE FILE RECORD functions.
+ * <p>
+ * As in the Modbus specification, each record is one register, so record
+ * <tt>n</tt> is bytes <tt>2n</tt> and <tt>2n+1</tt> of the file, and a
+ * request for several registers from a record runs on through the records
+ * that follow it.  A file number can hold at most 10000 records, so larger
+ * blobs are spread over consecutive file numbers by
+ * {@link #createFiles(int, byte[])}, with the files sharing the blob.
+ * <p>
+ * The bulk register methods lock the file, so a read of several registers
+ * does not see half of a concurrent write.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ByteArrayFile extends File {
+
+    /**
+     * The most records a file number can hold
+     */
+    public static final int MAX_RECORDS = 10000;
+
+    private final byte[] data;
+    private final int offset;
+    private final int recordCount;
+
+    /**
+     * Creates a file of zeros
+     *
+     * @param fileNumber Number of the file
+     * @param records    Number of records, each a register
+     */
+    public ByteArrayFile(int fileNumber, int records) {
+        this(fileNumber, new byte[records * 2], 0, records);
+    }
+
+    /**
+     * Creates a file over part of a byte array, without copying it
+     *
+     * @param fileNumber Number of the file
+     * @param data       Bytes of the file, the high byte of each register first
+     * @param offset     Position of the first record in the array
+     * @param records    Number of records, each a register
+     */
+    public ByteArrayFile(int fileNumber, byte[] data, int offset, int records) {
+        super(fileNumber, 0);
+        if (records < 0 || records > MAX_RECORDS) {
+            throw new IllegalArgumentException("Invalid record count: " + records);
+        }
+        if (offset < 0 || offset + records * 2 > data.length) {
+            throw new IllegalArgumentException("Records exceed the data");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.recordCount = records;
+    }
+
+    /**
+     * Creates the files needed to hold a blob, numbered consecutively from
+     * the first file number and sharing the blob.  A blob with an odd length
+     * has its last byte in the high byte of the last register, so it is
+     * given an extra byte of padding.
+     *
+     * @param firstFileNumber Number of the first file
+     * @param blob            Bytes to hold, which should have an even length
+     *                        if it is to be written to
+     *
+     * @return Files in order
+     */
+    public static ByteArrayFile[] createFiles(int firstFileNumber, byte[] blob) {
+        byte[] data = blob;
+        if (blob.length % 2 != 0) {
+            data = new byte[blob.length + 1];
+            System.arraycopy(blob, 0, data, 0, blob.length);
+        }
+        int records = data.length / 2;
+        ByteArrayFile[] files = new ByteArrayFile[Math.max(1, (records + MAX_RECORDS - 1) / MAX_RECORDS)];
+        for (int i = 0; i < files.length; i++) {
+            int first = i * MAX_RECORDS;
+            files[i] = new ByteArrayFile(firstFileNumber + i, data, first * 2, Math.min(MAX_RECORDS, records - first));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the array holding the file.  It is shared with any files
+     * created alongside this one and is changed by writes to them.
+     *
+     * @return Backing array
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the CRC32 of the bytes of this file, for checking a transfer
+     *
+     * @return CRC32 value
+     */
+    public synchronized long getChecksum() {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, recordCount * 2);
+        return crc.getValue();
+    }
+
+    @Override
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns a view of the registers from the record to the end of the
+     * file.  The bulk register methods are much cheaper for reading and
+     * writing several registers.
+     *
+     * @param i Record number
+     *
+     * @return View of the record
+     */
+    @Override
+    public Record getRecord(int i) {
+        checkRange(i, 1);
+        return new RecordView(i);
+    }
+
+    @Override
+    public File setRecord(int i, Record record) {
+        throw new UnsupportedOperationException("The records of a byte array file cannot be replaced");
+    }
+
+    @Override
+    public synchronized void getRegisters(int recordNumber, int count, byte[] dest, int offset) throws IllegalAddressException {
+        checkRange(recordNumber, count);
+        System.arraycopy(data, this.offset + recordNumber * 2, dest, offset, count * 2);
+    }
+
+    @Override
+    public synchronized void setRegisters(int recordNumber, int count, byte[] src, int offset) throws IllegalAddressException {
+        checkRange(recordNumber, count);
+        System.arraycopy(src, offset, data, this.offset + recordNumber * 2, count * 2);
+    }
+
+    /**
+     * Checks that a run of records lies within the file
+     *
+     * @param recordNumber First record
+     * @param count        Number of records
+     *
+     * @throws IllegalAddressException if any of the records is outside the file
+     */
+    private void checkRange(int recordNumber, int count) throws IllegalAddressException {
+        if (recordNumber < 0 || count < 0 || recordNumber + count > recordCount) {
+            throw new IllegalAddressException();
+        }
+    }
+
+    /**
+     * The registers from a record to the end of the file
+     */
+    private class RecordView extends Record {
+        private final int first;
+
+        RecordView(int first) {
+            super(first, 0);
+            this.first = first;
+        }
+
+        @Override
+        public int getRegisterCount() {
+            return recordCount - first;
+        }
+
+        @Override
+        public Register getRegister(int register) {
+            checkRange(first + register, 1);
+            return new RegisterView(offset + (first + register) * 2);
+        }
+
+        @Override
+        public Record setRegister(int ref, Register register) {
+            throw new UnsupportedOperationException("The registers of a byte array file cannot be replaced");
+        }
+    }
+
+    /**
+     * A register viewed in the array
+     */
+    private class RegisterView implements Register {
+        private final int position;
+
+        RegisterView(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public int getValue() {
+            synchronized (ByteArrayFile.this) {
+                return ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            }
+        }
+
+        @Override
+        public int toUnsignedShort() {
+            return getValue();
+        }
+
+        @Override
+        public short toShort() {
+            return (short)getValue();
+        }
+
+        @Override
+        public byte[] toBytes() {
+            synchronized (ByteArrayFile.this) {
+                return new byte[]{data[position], data[position + 1]};
+            }
+        }
+
+        @Override
+        public void setValue(int v) {
+            synchronized (ByteArrayFile.this) {
+                data[position] = (byte)(v >> 8);
+                data[position + 1] = (byte)v;
+            }
+        }
+
+        @Override
+        public void setValue(short s) {
+            setValue((int)s);
+        }
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            synchronized (ByteArrayFile.this) {
+                data[position] = bytes[0];
+                data[position + 1] = bytes[1];
+            }
+        }
+    }
+}
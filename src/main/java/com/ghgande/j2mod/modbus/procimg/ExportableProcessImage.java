@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+import com.ghgande.j2mod.modbus.util.BitVector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A process image that can copy ranges of its points out in the form they
+ * are sent in, without creating an object for each point.
+ * <p>
+ * The read requests use these methods when the process image of the slave
+ * implements them and fall back to the range methods of
+ * <tt>ProcessImage</tt> otherwise, so existing process images keep working.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public interface ExportableProcessImage extends ProcessImage {
+
+    /**
+     * Copies the state of a range of <tt>DigitalOut</tt> instances into a
+     * bit vector, one bit for each point starting at bit 0.  Used to answer
+     * reads without creating an array of the points.
+     *
+     * @param offset the start offset.
+     * @param bits   the bits to set, the size of which is the number of points.
+     *
+     * @throws IllegalAddressException if the range from offset to offset+count is non existant.
+     */
+    void exportDigitalOutRange(int offset, BitVector bits) throws IllegalAddressException;
+
+    /**
+     * Copies the state of a range of <tt>DigitalIn</tt> instances into a
+     * bit vector, one bit for each point starting at bit 0.  Used to answer
+     * reads without creating an array of the points.
+     *
+     * @param offset the start offset.
+     * @param bits   the bits to set, the size of which is the number of points.
+     *
+     * @throws IllegalAddressException if the range from offset to offset+count is non existant.
+     */
+    void exportDigitalInRange(int offset, BitVector bits) throws IllegalAddressException;
+
+    /**
+     * Writes the values of a range of <tt>InputRegister</tt> instances to a
+     * big-endian buffer, in the form they are sent in a response.
+     * Used to answer reads without creating an array of the registers.
+     * The buffer contents are undefined if an exception is thrown.
+     *
+     * @param offset the start offset.
+     * @param count  the amount of <tt>InputRegister</tt> from the offset.
+     * @param buffer the buffer to write <tt>2 * count</tt> bytes to.
+     *
+     * @throws IllegalAddressException if the range from offset to offset+count is non existant.
+     */
+    void exportInputRegisterRange(int offset, int count, ByteBuffer buffer) throws IllegalAddressException;
+
+    /**
+     * Writes the values of a range of <tt>Register</tt> instances to a
+     * big-endian buffer, in the form they are sent in a response.
+     * Used to answer reads without creating an array of the registers.
+     * The buffer contents are undefined if an exception is thrown.
+     *
+     * @param offset the start offset.
+     * @param count  the amount of <tt>Register</tt> from the offset.
+     * @param buffer the buffer to write <tt>2 * count</tt> bytes to.
+     *
+     * @throws IllegalAddressException if the range from offset to offset+count is non existant.
+     */
+    void exportRegisterRange(int offset, int count, ByteBuffer buffer) throws IllegalAddressException;
+}
@@ -36,6 +36,11 @@ public class FIFO {
 
     private static final Logger logger = LoggerFactory.getLogger(FIFO.class);
 
+    /**
+     * The most registers a READ FIFO QUEUE response can carry
+     */
+    public static final int MAX_QUEUE_LENGTH = 31;
+
     private int address;
     private int registerCount;
     private Vector<Register> registers;
@@ -62,7 +67,7 @@ public class FIFO {
     }
 
     public synchronized void pushRegister(Register register) {
-        if (registerCount == 31) {
+        if (registerCount == MAX_QUEUE_LENGTH) {
             registers.remove(0);
         }
         else {
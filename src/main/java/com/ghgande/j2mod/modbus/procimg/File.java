@@ -65,4 +65,58 @@ public class File {
 
         return this;
     }
+
+    /**
+     * Copies registers of a record into a buffer in wire order, the high
+     * byte of each register first.  This implementation reads the registers
+     * of the <tt>Record</tt>; files with other storage override it.
+     *
+     * @param recordNumber Record to read
+     * @param count        Number of registers
+     * @param dest         Buffer to copy to
+     * @param offset       Position in the buffer
+     *
+     * @throws IllegalAddressException if the registers do not exist
+     */
+    public void getRegisters(int recordNumber, int count, byte[] dest, int offset) throws IllegalAddressException {
+        Record record = getRecord(recordNumber);
+        if (record == null && count != 0) {
+            throw new IllegalAddressException();
+        }
+        for (int i = 0; i < count; i++) {
+            Register register = record.getRegister(i);
+            if (register == null) {
+                throw new IllegalAddressException();
+            }
+            short value = register.toShort();
+            dest[offset + i * 2] = (byte)(value >> 8);
+            dest[offset + i * 2 + 1] = (byte)value;
+        }
+    }
+
+    /**
+     * Sets registers of a record from a buffer in wire order, the high byte
+     * of each register first.  This implementation writes the registers of
+     * the <tt>Record</tt>; files with other storage override it.
+     *
+     * @param recordNumber Record to write
+     * @param count        Number of registers
+     * @param src          Buffer to copy from
+     * @param offset       Position in the buffer
+     *
+     * @throws IllegalAddressException if the registers do not exist
+     */
+    public void setRegisters(int recordNumber, int count, byte[] src, int offset) throws IllegalAddressException {
+        Record record = getRecord(recordNumber);
+        if (record == null && count != 0) {
+            throw new IllegalAddressException();
+        }
+        for (int i = 0; i < count; i++) {
+            Register register = record.getRegister(i);
+            if (register == null) {
+                throw new IllegalAddressException();
+            }
+            register.setValue(((src[offset + i * 2] & 0xFF) << 8) | (src[offset + i * 2 + 1] & 0xFF));
+        }
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.procimg;
+
+/**
+ * A bounded FIFO held in a ring buffer, for slaves that queue samples
+ * faster than a master reads them one READ FIFO QUEUE at a time.
+ * <p>
+ * Reading the queue does not remove anything.  Each value pushed is given
+ * the next 16 bit sequence number, and a master removes the values it has
+ * taken by writing the sequence number of the first value it still wants
+ * to the pointer register, {@link #getPointerRegister()}, which should be
+ * added to the process image at the address of the FIFO.  Reading the
+ * pointer register gives the sequence number of the oldest value.  As the
+ * acknowledgement is a position rather than a count, repeating it after a
+ * lost response does no harm, so a master can take every value exactly
+ * once.
+ * <p>
+ * When the buffer is full, a push either fails so that the producer can
+ * hold on to the value, or drops the oldest value and counts it as an
+ * overflow.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class RingBufferFIFO extends FIFO {
+
+    private final short[] buffer;
+    private final boolean overwrite;
+    private final Register pointer = new PointerRegister();
+    private int head;
+    private int size;
+    private int sequence;
+    private long overflowCount;
+
+    /**
+     * Creates a FIFO that refuses values when it is full
+     *
+     * @param address  Address of the FIFO
+     * @param capacity Most values held, at most 32768
+     */
+    public RingBufferFIFO(int address, int capacity) {
+        this(address, capacity, false);
+    }
+
+    /**
+     * Creates a FIFO
+     *
+     * @param address   Address of the FIFO
+     * @param capacity  Most values held, at most 32768
+     * @param overwrite True to drop the oldest value when full, false to
+     *                  refuse the new value
+     */
+    public RingBufferFIFO(int address, int capacity, boolean overwrite) {
+        super(address);
+        // Acknowledgements more than half the sequence space ahead are
+        // taken as stale, so the buffer must be no bigger than that
+        if (capacity < 1 || capacity > 0x8000) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        buffer = new short[capacity];
+        this.overwrite = overwrite;
+    }
+
+    /**
+     * Returns the most values the FIFO holds
+     *
+     * @return Capacity
+     */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of values dropped because the FIFO was full
+     *
+     * @return Overflows
+     */
+    public synchronized long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * Returns the sequence number of the oldest value, or of the next value
+     * to be pushed if the FIFO is empty
+     *
+     * @return Sequence number from 0 to 65535
+     */
+    public synchronized int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the register that reads the sequence number of the oldest
+     * value and removes values when written
+     *
+     * @return Pointer register
+     */
+    public Register getPointerRegister() {
+        return pointer;
+    }
+
+    /**
+     * Adds a value to the FIFO
+     *
+     * @param value Value to add
+     *
+     * @return False if the FIFO is full and does not overwrite
+     */
+    public synchronized boolean offer(int value) {
+        if (size == buffer.length) {
+            if (!overwrite) {
+                return false;
+            }
+            head = (head + 1) % buffer.length;
+            size--;
+            sequence = (sequence + 1) & 0xFFFF;
+            overflowCount++;
+        }
+        buffer[(head + size) % buffer.length] = (short)value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the values before a sequence number.  Sequence numbers of
+     * values already removed are ignored, and ones past the newest value
+     * empty the FIFO.
+     *
+     * @param next Sequence number of the first value to keep
+     *
+     * @return Number of values removed
+     */
+    public synchronized int acknowledge(int next) {
+        int distance = (next - sequence) & 0xFFFF;
+        if (distance >= 0x8000) {
+            return 0;
+        }
+        int count = Math.min(distance, size);
+        head = (head + count) % buffer.length;
+        size -= count;
+        sequence = (sequence + count) & 0xFFFF;
+        return count;
+    }
+
+    /**
+     * Adds a value to the FIFO, dropping it if the FIFO is full and does
+     * not overwrite.  Use {@link #offer(int)} to find out.
+     *
+     * @param register Register holding the value
+     */
+    @Override
+    public void pushRegister(Register register) {
+        offer(register.getValue());
+    }
+
+    /**
+     * Returns the number of values held, which may be more than a single
+     * read of the queue returns
+     *
+     * @return Values held
+     */
+    @Override
+    public synchronized int getRegisterCount() {
+        return size;
+    }
+
+    /**
+     * Returns the oldest values, as many as a read of the queue can carry,
+     * after a register holding their count
+     *
+     * @return Count and values
+     */
+    @Override
+    public synchronized Register[] getRegisters() {
+        int count = Math.min(size, MAX_QUEUE_LENGTH);
+        Register[] result = new Register[count + 1];
+        result[0] = new SimpleRegister(count);
+        for (int i = 0; i < count; i++) {
+            result[i + 1] = new SimpleRegister(buffer[(head + i) % buffer.length]);
+        }
+        return result;
+    }
+
+    /**
+     * Removes every value
+     */
+    @Override
+    public synchronized void resetRegisters() {
+        acknowledge(sequence + size);
+    }
+
+    /**
+     * The pointer register of the FIFO
+     */
+    private class PointerRegister implements Register {
+
+        @Override
+        public int getValue() {
+            return getSequence();
+        }
+
+        @Override
+        public int toUnsignedShort() {
+            return getSequence();
+        }
+
+        @Override
+        public short toShort() {
+            return (short)getSequence();
+        }
+
+        @Override
+        public byte[] toBytes() {
+            int value = getSequence();
+            return new byte[]{(byte)(value >> 8), (byte)value};
+        }
+
+        @Override
+        public void setValue(int v) {
+            acknowledge(v);
+        }
+
+        @Override
+        public void setValue(short s) {
+            acknowledge(s & 0xFFFF);
+        }
+
+        @Override
+        public void setValue(byte[] bytes) {
+            if (bytes.length < 2) {
+                throw new IllegalArgumentException();
+            }
+            acknowledge(((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF));
+        }
+    }
+}
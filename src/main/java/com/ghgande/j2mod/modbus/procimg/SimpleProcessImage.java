@@ -15,6 +15,9 @@
  */
 package com.ghgande.j2mod.modbus.procimg;
 
+import com.ghgande.j2mod.modbus.util.BitVector;
+
+import java.nio.ByteBuffer;
 import java.util.Vector;
 
 /**
@@ -31,7 +34,7 @@ import java.util.Vector;
  * @author Steve O'Hara (4energy)
  * @version 2.0 (March 2016)
  */
-public class SimpleProcessImage implements ProcessImageImplementation {
+public class SimpleProcessImage implements ProcessImageImplementation, ExportableProcessImage {
 
     // instance attributes
     protected final Vector<DigitalIn> digitalIns = new Vector<DigitalIn>();
@@ -105,6 +108,27 @@ public class SimpleProcessImage implements ProcessImageImplementation {
         }
     }
 
+    public void exportDigitalOutRange(int ref, BitVector bits) {
+        int count = bits.size();
+        if (ref < 0 || ref + count > digitalOuts.size()) {
+            throw new IllegalAddressException();
+        }
+        // Hold the table lock for the whole range rather than taking it for
+        // every point, and pack the points into the vector a word at a time
+        synchronized (digitalOuts) {
+            for (int i = 0; i < count; i += 64) {
+                int n = Math.min(64, count - i);
+                long word = 0;
+                for (int j = 0; j < n; j++) {
+                    if (getDigitalOut(ref + i + j).isSet()) {
+                        word |= 1L << j;
+                    }
+                }
+                bits.setBits(i, word, n);
+            }
+        }
+    }
+
     public DigitalOut getDigitalOut(int ref) throws IllegalAddressException {
         try {
             DigitalOut result = digitalOuts.elementAt(ref);
@@ -136,6 +160,25 @@ public class SimpleProcessImage implements ProcessImageImplementation {
         }
     }
 
+    public void exportDigitalInRange(int ref, BitVector bits) {
+        int count = bits.size();
+        if (ref < 0 || ref + count > digitalIns.size()) {
+            throw new IllegalAddressException();
+        }
+        synchronized (digitalIns) {
+            for (int i = 0; i < count; i += 64) {
+                int n = Math.min(64, count - i);
+                long word = 0;
+                for (int j = 0; j < n; j++) {
+                    if (getDigitalIn(ref + i + j).isSet()) {
+                        word |= 1L << j;
+                    }
+                }
+                bits.setBits(i, word, n);
+            }
+        }
+    }
+
     public DigitalIn getDigitalIn(int ref) throws IllegalAddressException {
         try {
             DigitalIn result = digitalIns.elementAt(ref);
@@ -167,6 +210,17 @@ public class SimpleProcessImage implements ProcessImageImplementation {
         return iregs;
     }
 
+    public void exportInputRegisterRange(int ref, int count, ByteBuffer buffer) {
+        if (ref < 0 || ref + count > inputRegisters.size()) {
+            throw new IllegalAddressException();
+        }
+        synchronized (inputRegisters) {
+            for (int i = 0; i < count; i++) {
+                buffer.putShort(getInputRegister(ref + i).toShort());
+            }
+        }
+    }
+
     public InputRegister getInputRegister(int ref) throws IllegalAddressException {
         try {
             InputRegister result = inputRegisters.elementAt(ref);
@@ -198,6 +252,17 @@ public class SimpleProcessImage implements ProcessImageImplementation {
         }
     }
 
+    public void exportRegisterRange(int ref, int count, ByteBuffer buffer) {
+        if (ref < 0 || ref + count > registers.size()) {
+            throw new IllegalAddressException();
+        }
+        synchronized (registers) {
+            for (int i = 0; i < count; i++) {
+                buffer.putShort(getRegister(ref + i).toShort());
+            }
+        }
+    }
+
     public Register getRegister(int ref) throws IllegalAddressException {
         try {
             Register result = registers.elementAt(ref);
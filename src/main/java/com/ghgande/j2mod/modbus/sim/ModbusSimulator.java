@@ -0,0 +1,720 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.sim;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts any number of simulated Modbus/TCP slaves in one JVM.
+ * <p>
+ * Each device is a unit ID on a port and is backed by an
+ * {@link ArrayProcessImage}.  Devices can be spread over many ports, put
+ * behind one port as different unit IDs, or both, and the same image can be
+ * shared by as many devices as needed.  Unlike {@link com.ghgande.j2mod.modbus.net.ModbusTCPListener}
+ * the simulator does not use the global <tt>ModbusCoupler</tt>, so the same
+ * unit ID can be used on every port.
+ * <p>
+ * All the ports and connections are served by a single non-blocking event
+ * loop thread, so thousands of devices and clients need no more threads.
+ * Requests for a unit ID with no device get a gateway exception.  The
+ * simulator answers the coil, discrete, register and mask write functions
+ * (1 to 6, 15, 16, 22 and 23) - anything else gets an illegal function
+ * exception.
+ * <p>
+ * Register values can be driven over time with {@link RegisterDynamics},
+ * which are applied to each image by a separate thread.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusSimulator implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusSimulator.class);
+
+    /**
+     * Default interval between updates of the register dynamics (=<tt>100</tt> ms)
+     */
+    public static final int DEFAULT_UPDATE_INTERVAL = 100;
+
+    private static final int MBAP_LENGTH = 6;
+    private static final int MAX_ADU_LENGTH = MBAP_LENGTH + 254;
+
+    private final InetAddress address;
+    private final Map<Integer, ArrayProcessImage[]> devices = new ConcurrentHashMap<Integer, ArrayProcessImage[]>();
+    private final List<DynamicsEntry> dynamics = new CopyOnWriteArrayList<DynamicsEntry>();
+    private final AtomicInteger deviceCount = new AtomicInteger();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong exceptionCount = new AtomicLong();
+    private long updateInterval = DEFAULT_UPDATE_INTERVAL;
+    private volatile ModbusMetrics metrics;
+    private volatile boolean running;
+    private volatile long started;
+    private Selector selector;
+    private Thread thread;
+    private ScheduledExecutorService updater;
+
+    /**
+     * Creates a simulator listening on all interfaces
+     */
+    public ModbusSimulator() {
+        this(null);
+    }
+
+    /**
+     * Creates a simulator listening on the given address
+     *
+     * @param address Address to listen on or null for all interfaces
+     */
+    public ModbusSimulator(InetAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Adds a device on the port using the unit ID of its image
+     *
+     * @param port  Port to serve the device on
+     * @param image Process image of the device
+     */
+    public void addDevice(int port, ArrayProcessImage image) {
+        addDevice(port, image.getUnitID(), image);
+    }
+
+    /**
+     * Adds a device on the port.  Devices can be added while the simulator
+     * is running as long as the port is already being listened on.
+     *
+     * @param port   Port to serve the device on
+     * @param unitId Unit ID of the device
+     * @param image  Process image of the device, which can be shared with other devices
+     */
+    public synchronized void addDevice(int port, int unitId, ArrayProcessImage image) {
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port " + port);
+        }
+        if (unitId < 0 || unitId > 255) {
+            throw new IllegalArgumentException("Invalid unit ID " + unitId);
+        }
+        if (image == null) {
+            throw new IllegalArgumentException("Process image cannot be null");
+        }
+        ArrayProcessImage[] units = devices.get(port);
+        if (units == null) {
+            if (thread != null) {
+                throw new IllegalStateException(String.format("Port %d cannot be added while the simulator is running", port));
+            }
+            units = new ArrayProcessImage[256];
+            devices.put(port, units);
+        }
+        if (units[unitId] == null) {
+            deviceCount.incrementAndGet();
+        }
+        units[unitId] = image;
+    }
+
+    /**
+     * Adds the same set of unit IDs on every port in a range, each device
+     * getting the image returned by the factory
+     *
+     * @param firstPort First port
+     * @param ports     Number of consecutive ports
+     * @param firstUnit First unit ID on each port
+     * @param units     Number of consecutive unit IDs on each port
+     * @param factory   Supplies the image of each device
+     */
+    public void addDevices(int firstPort, int ports, int firstUnit, int units, ImageFactory factory) {
+        for (int port = firstPort; port < firstPort + ports; port++) {
+            for (int unit = firstUnit; unit < firstUnit + units; unit++) {
+                addDevice(port, unit, factory.createImage(port, unit));
+            }
+        }
+    }
+
+    /**
+     * Drives a register of the image over time.  The dynamics are applied
+     * once per update however many devices share the image.
+     *
+     * @param image    Process image to update
+     * @param dynamics Register dynamics
+     *
+     * @throws IllegalAddressException if the register isn't in the image
+     */
+    public void addDynamics(ArrayProcessImage image, RegisterDynamics dynamics) throws IllegalAddressException {
+        dynamics.apply(image, 0);
+        this.dynamics.add(new DynamicsEntry(image, dynamics));
+    }
+
+    /**
+     * Opens all the ports and starts the event loop and the dynamics
+     *
+     * @throws IOException if a port cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        selector = Selector.open();
+        try {
+            for (Integer port : devices.keySet()) {
+                ServerSocketChannel server = ServerSocketChannel.open();
+                server.configureBlocking(false);
+                server.socket().setReuseAddress(true);
+                server.register(selector, SelectionKey.OP_ACCEPT, port);
+                server.socket().bind(new InetSocketAddress(address, port), 1024);
+            }
+        }
+        catch (IOException e) {
+            closeAll();
+            throw e;
+        }
+        running = true;
+        started = System.currentTimeMillis();
+        thread = new Thread(this, "j2mod-simulator");
+        thread.setDaemon(true);
+        thread.start();
+
+        updater = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "j2mod-simulator-dynamics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        updater.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                updateDynamics();
+            }
+        }, updateInterval, updateInterval, TimeUnit.MILLISECONDS);
+        logger.info("Simulating {} devices on {} ports", deviceCount.get(), devices.size());
+    }
+
+    /**
+     * Stops the simulator and closes all the ports and connections
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        updater.shutdownNow();
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept(key);
+                        }
+                        else {
+                            Connection connection = (Connection)key.attachment();
+                            if (key.isReadable() && connection.channel.read(connection.in) < 0) {
+                                close(key);
+                                continue;
+                            }
+                            if (!process(connection)) {
+                                close(key);
+                            }
+                        }
+                    }
+                    catch (IOException e) {
+                        logger.debug("Closing simulator connection - {}", e.getMessage());
+                        close(key);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.error("Simulator event loop failed - {}", e.getMessage());
+        }
+        finally {
+            running = false;
+            closeAll();
+        }
+    }
+
+    /**
+     * Accepts a connection on one of the ports
+     *
+     * @param key Key of the server channel
+     *
+     * @throws IOException if the connection cannot be set up
+     */
+    private void accept(SelectionKey key) throws IOException {
+        SocketChannel channel = ((ServerSocketChannel)key.channel()).accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel, devices.get((Integer)key.attachment()));
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connectionCount.incrementAndGet();
+    }
+
+    /**
+     * Answers all the complete requests that have been received and writes
+     * as much of the responses as the socket will take
+     *
+     * @param connection Client connection
+     *
+     * @return False if the client sent something that isn't Modbus/TCP
+     *
+     * @throws IOException if the responses cannot be written
+     */
+    private boolean process(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        in.flip();
+        try {
+            while (in.remaining() >= MBAP_LENGTH + 2 && out.remaining() >= MAX_ADU_LENGTH) {
+                int pos = in.position();
+                int length = in.getShort(pos + 4) & 0xFFFF;
+                if (in.getShort(pos + 2) != 0 || length < 2 || length > MAX_ADU_LENGTH - MBAP_LENGTH) {
+                    return false;
+                }
+                if (in.remaining() < MBAP_LENGTH + length) {
+                    break;
+                }
+                answer(connection, in, pos, length, out);
+                in.position(pos + MBAP_LENGTH + length);
+            }
+        }
+        finally {
+            in.compact();
+        }
+
+        if (out.position() > 0) {
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+        }
+        connection.key.interestOps((in.hasRemaining() ? SelectionKey.OP_READ : 0) | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+        return true;
+    }
+
+    /**
+     * Answers one request
+     *
+     * @param connection Client connection
+     * @param in         Received bytes
+     * @param pos        Position of the request ADU
+     * @param length     Length from the MBAP header
+     * @param out        Buffer to write the response ADU to
+     */
+    private void answer(Connection connection, ByteBuffer in, int pos, int length, ByteBuffer out) {
+        long start = System.nanoTime();
+        int unitId = in.get(pos + MBAP_LENGTH) & 0xFF;
+        int functionCode = in.get(pos + MBAP_LENGTH + 1) & 0xFF;
+        int data = pos + MBAP_LENGTH + 2;
+        int dataLength = length - 2;
+
+        int header = out.position();
+        out.putShort(in.getShort(pos));
+        out.putShort((short)0);
+        out.putShort((short)0);
+        out.put((byte)unitId);
+        int body = out.position();
+
+        int exception;
+        ArrayProcessImage image = connection.units[unitId];
+        if (image == null) {
+            exception = Modbus.GATEWAY_TARGET_NO_RESPONSE;
+        }
+        else {
+            try {
+                exception = execute(image, functionCode, in, data, dataLength, out);
+            }
+            catch (IllegalAddressException e) {
+                exception = Modbus.ILLEGAL_ADDRESS_EXCEPTION;
+            }
+        }
+        if (exception != 0) {
+            out.position(body);
+            out.put((byte)(functionCode | Modbus.EXCEPTION_OFFSET));
+            out.put((byte)exception);
+            exceptionCount.incrementAndGet();
+        }
+        out.putShort(header + 4, (short)(out.position() - header - MBAP_LENGTH));
+        requestCount.incrementAndGet();
+
+        ModbusMetrics current = metrics;
+        if (current != null) {
+            if (exception != 0) {
+                current.recordExceptionResponse(unitId, functionCode, exception, System.nanoTime() - start);
+            }
+            else {
+                current.recordRequest(unitId, functionCode, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Executes a request against the process image and writes the function
+     * code and data of the response
+     *
+     * @param image        Process image of the device
+     * @param functionCode Function code of the request
+     * @param in           Received bytes
+     * @param data         Position of the request data
+     * @param length       Length of the request data
+     * @param out          Buffer to write the response to
+     *
+     * @return Zero or the exception code to return
+     *
+     * @throws IllegalAddressException if the request addresses points outside the image
+     */
+    private static int execute(ArrayProcessImage image, int functionCode, ByteBuffer in, int data, int length, ByteBuffer out) throws IllegalAddressException {
+        int ref = length >= 2 ? in.getShort(data) & 0xFFFF : 0;
+        int count = length >= 4 ? in.getShort(data + 2) & 0xFFFF : 0;
+        switch (functionCode) {
+            case Modbus.READ_COILS:
+            case Modbus.READ_INPUT_DISCRETES:
+                if (length != 4 || count < 1 || count > Modbus.MAX_BITS) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                boolean coils = functionCode == Modbus.READ_COILS;
+                ArrayProcessImage.checkRange(ref, count, coils ? image.getDigitalOutCount() : image.getDigitalInCount());
+                out.put((byte)functionCode);
+                out.put((byte)((count + 7) / 8));
+                for (int i = 0; i < count; i += 8) {
+                    int bits = 0;
+                    for (int bit = 0; bit < 8 && i + bit < count; bit++) {
+                        if (coils ? image.isDigitalOutSet(ref + i + bit) : image.isDigitalInSet(ref + i + bit)) {
+                            bits |= 1 << bit;
+                        }
+                    }
+                    out.put((byte)bits);
+                }
+                return 0;
+
+            case Modbus.READ_MULTIPLE_REGISTERS:
+            case Modbus.READ_INPUT_REGISTERS:
+                if (length != 4 || count < 1 || count > 125) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                boolean holding = functionCode == Modbus.READ_MULTIPLE_REGISTERS;
+                ArrayProcessImage.checkRange(ref, count, holding ? image.getRegisterCount() : image.getInputRegisterCount());
+                out.put((byte)functionCode);
+                out.put((byte)(count * 2));
+                for (int i = 0; i < count; i++) {
+                    out.putShort((short)(holding ? image.getRegisterValue(ref + i) : image.getInputRegisterValue(ref + i)));
+                }
+                return 0;
+
+            case Modbus.WRITE_COIL:
+                if (length != 4 || (count != 0xFF00 && count != 0)) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                image.setDigitalOutValue(ref, count == 0xFF00);
+                return echo(functionCode, in, data, 4, out);
+
+            case Modbus.WRITE_SINGLE_REGISTER:
+                if (length != 4) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                image.setRegisterValue(ref, count);
+                return echo(functionCode, in, data, 4, out);
+
+            case Modbus.WRITE_MULTIPLE_COILS:
+                if (length < 5 || count < 1 || count > 1968 || (in.get(data + 4) & 0xFF) != (count + 7) / 8 || length != 5 + (count + 7) / 8) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                ArrayProcessImage.checkRange(ref, count, image.getDigitalOutCount());
+                for (int i = 0; i < count; i++) {
+                    image.setDigitalOutValue(ref + i, (in.get(data + 5 + i / 8) & (1 << (i % 8))) != 0);
+                }
+                return echo(functionCode, in, data, 4, out);
+
+            case Modbus.WRITE_MULTIPLE_REGISTERS:
+                if (length < 5 || count < 1 || count > 123 || (in.get(data + 4) & 0xFF) != count * 2 || length != 5 + count * 2) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                ArrayProcessImage.checkRange(ref, count, image.getRegisterCount());
+                for (int i = 0; i < count; i++) {
+                    image.setRegisterValue(ref + i, in.getShort(data + 5 + i * 2));
+                }
+                return echo(functionCode, in, data, 4, out);
+
+            case Modbus.MASK_WRITE_REGISTER:
+                if (length != 6) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                int or = in.getShort(data + 4) & 0xFFFF;
+                image.setRegisterValue(ref, (image.getRegisterValue(ref) & count) | (or & ~count));
+                return echo(functionCode, in, data, 6, out);
+
+            case Modbus.READ_WRITE_MULTIPLE:
+                if (length < 9) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                int writeRef = in.getShort(data + 4) & 0xFFFF;
+                int writeCount = in.getShort(data + 6) & 0xFFFF;
+                if (count < 1 || count > 125 || writeCount < 1 || writeCount > 121 ||
+                        (in.get(data + 8) & 0xFF) != writeCount * 2 || length != 9 + writeCount * 2) {
+                    return Modbus.ILLEGAL_VALUE_EXCEPTION;
+                }
+                ArrayProcessImage.checkRange(ref, count, image.getRegisterCount());
+                ArrayProcessImage.checkRange(writeRef, writeCount, image.getRegisterCount());
+                for (int i = 0; i < writeCount; i++) {
+                    image.setRegisterValue(writeRef + i, in.getShort(data + 9 + i * 2));
+                }
+                out.put((byte)functionCode);
+                out.put((byte)(count * 2));
+                for (int i = 0; i < count; i++) {
+                    out.putShort((short)image.getRegisterValue(ref + i));
+                }
+                return 0;
+
+            default:
+                return Modbus.ILLEGAL_FUNCTION_EXCEPTION;
+        }
+    }
+
+    /**
+     * Writes a response that repeats the start of the request data
+     *
+     * @param functionCode Function code
+     * @param in           Received bytes
+     * @param data         Position of the request data
+     * @param length       Number of bytes to repeat
+     * @param out          Buffer to write the response to
+     *
+     * @return Zero
+     */
+    private static int echo(int functionCode, ByteBuffer in, int data, int length, ByteBuffer out) {
+        out.put((byte)functionCode);
+        for (int i = 0; i < length; i++) {
+            out.put(in.get(data + i));
+        }
+        return 0;
+    }
+
+    /**
+     * Applies all the register dynamics for the current time
+     */
+    private void updateDynamics() {
+        long elapsed = System.currentTimeMillis() - started;
+        for (DynamicsEntry entry : dynamics) {
+            try {
+                entry.dynamics.apply(entry.image, elapsed);
+            }
+            catch (RuntimeException e) {
+                logger.warn("Cannot apply dynamics to register {} - {}", entry.dynamics.getRef(), e.getMessage());
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch (IOException e) {
+            logger.debug("Cannot close channel - {}", e.getMessage());
+        }
+        if (key.attachment() instanceof Connection) {
+            connectionCount.decrementAndGet();
+        }
+    }
+
+    private void closeAll() {
+        if (selector != null) {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                logger.debug("Cannot close selector - {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns true if the simulator is running
+     *
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of simulated devices
+     *
+     * @return Number of devices
+     */
+    public int getDeviceCount() {
+        return deviceCount.get();
+    }
+
+    /**
+     * Returns the ports that devices are served on
+     *
+     * @return Set of ports
+     */
+    public Set<Integer> getPorts() {
+        return new TreeSet<Integer>(devices.keySet());
+    }
+
+    /**
+     * Returns the number of clients connected
+     *
+     * @return Number of connections
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Returns the number of requests answered, including with an exception
+     *
+     * @return Number of requests
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests answered with an exception
+     *
+     * @return Number of requests
+     */
+    public long getExceptionCount() {
+        return exceptionCount.get();
+    }
+
+    /**
+     * Returns the metrics that requests are recorded in
+     *
+     * @return Metrics or null if not recording
+     */
+    public ModbusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to record the requests of all the devices in
+     *
+     * @param metrics Metrics or null to stop recording
+     */
+    public void setMetrics(ModbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the interval between updates of the register dynamics
+     *
+     * @return Interval in milliseconds
+     */
+    public long getUpdateInterval() {
+        return updateInterval;
+    }
+
+    /**
+     * Sets the interval between updates of the register dynamics - takes
+     * effect when the simulator is next started
+     *
+     * @param updateInterval Interval in milliseconds
+     */
+    public void setUpdateInterval(long updateInterval) {
+        if (updateInterval <= 0) {
+            throw new IllegalArgumentException("Update interval must be positive");
+        }
+        this.updateInterval = updateInterval;
+    }
+
+    /**
+     * Supplies the process image of each simulated device
+     */
+    public interface ImageFactory {
+
+        /**
+         * Returns the process image for a device
+         *
+         * @param port   Port of the device
+         * @param unitId Unit ID of the device
+         *
+         * @return Process image, which may be shared with other devices
+         */
+        ArrayProcessImage createImage(int port, int unitId);
+    }
+
+    /**
+     * A client connection with its receive and transmit buffers
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ArrayProcessImage[] units;
+        private final ByteBuffer in = ByteBuffer.allocate(4 * MAX_ADU_LENGTH);
+        private final ByteBuffer out = ByteBuffer.allocate(16 * MAX_ADU_LENGTH);
+        private SelectionKey key;
+
+        Connection(SocketChannel channel, ArrayProcessImage[] units) {
+            this.channel = channel;
+            this.units = units;
+        }
+    }
+
+    /**
+     * Dynamics and the image they drive
+     */
+    private static class DynamicsEntry {
+        private final ArrayProcessImage image;
+        private final RegisterDynamics dynamics;
+
+        DynamicsEntry(ArrayProcessImage image, RegisterDynamics dynamics) {
+            this.image = image;
+            this.dynamics = dynamics;
+        }
+    }
+}
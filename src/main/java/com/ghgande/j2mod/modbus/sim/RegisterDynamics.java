@@ -0,0 +1,232 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.sim;
+
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+import com.ghgande.j2mod.modbus.procimg.IllegalAddressException;
+
+import java.util.Random;
+
+/**
+ * Drives the value of a simulated register over time.
+ * <p>
+ * The value is a function of the time since the simulator started, so a
+ * run can be repeated exactly - noise is generated from a fixed seed.
+ * Dynamics can be created in code or parsed from a one line script e.g.
+ * <pre>
+ * ramp hr 0 0 1000 60000      holding register 0 rises from 0 to 1000 every minute
+ * noise ir 5 500 20 42        input register 5 varies by up to 20 either side of 500 (seed 42)
+ * replay ir 7 10,20,30 1000   input register 7 steps through the values once a second
+ * </pre>
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public abstract class RegisterDynamics {
+
+    /**
+     * Dynamics applied to an input register
+     */
+    public static final int INPUT_REGISTER = 4;
+
+    /**
+     * Dynamics applied to a holding register
+     */
+    public static final int HOLDING_REGISTER = 3;
+
+    private final int type;
+    private final int ref;
+
+    /**
+     * Creates dynamics for a register
+     *
+     * @param type Type of register, {@link #INPUT_REGISTER} or {@link #HOLDING_REGISTER}
+     * @param ref  Reference of the register
+     */
+    protected RegisterDynamics(int type, int ref) {
+        if (type != INPUT_REGISTER && type != HOLDING_REGISTER) {
+            throw new IllegalArgumentException("Invalid register type " + type);
+        }
+        this.type = type;
+        this.ref = ref;
+    }
+
+    /**
+     * Returns the value of the register at the given time
+     *
+     * @param elapsed Milliseconds since the simulation started
+     *
+     * @return Register value
+     */
+    public abstract int getValue(long elapsed);
+
+    /**
+     * Sets the register in the image to its value at the given time
+     *
+     * @param image   Process image to update
+     * @param elapsed Milliseconds since the simulation started
+     *
+     * @throws IllegalAddressException if the register isn't in the image
+     */
+    public void apply(ArrayProcessImage image, long elapsed) throws IllegalAddressException {
+        if (type == INPUT_REGISTER) {
+            image.setInputRegisterValue(ref, getValue(elapsed));
+        }
+        else {
+            image.setRegisterValue(ref, getValue(elapsed));
+        }
+    }
+
+    /**
+     * Returns the type of register driven
+     *
+     * @return {@link #INPUT_REGISTER} or {@link #HOLDING_REGISTER}
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the reference of the register driven
+     *
+     * @return Reference
+     */
+    public int getRef() {
+        return ref;
+    }
+
+    /**
+     * Creates a sawtooth that rises from the minimum to the maximum over
+     * each period
+     *
+     * @param type   Type of register
+     * @param ref    Reference of the register
+     * @param min    Value at the start of each period
+     * @param max    Value at the end of each period
+     * @param period Period in milliseconds
+     *
+     * @return Dynamics
+     */
+    public static RegisterDynamics ramp(int type, int ref, final int min, final int max, final long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Ramp period must be positive");
+        }
+        return new RegisterDynamics(type, ref) {
+            @Override
+            public int getValue(long elapsed) {
+                return min + (int)((max - min) * (elapsed % period) / period);
+            }
+        };
+    }
+
+    /**
+     * Creates random noise around a base value, repeatable for a given seed
+     *
+     * @param type      Type of register
+     * @param ref       Reference of the register
+     * @param base      Centre value
+     * @param amplitude Largest deviation either side of the centre
+     * @param seed      Random seed
+     *
+     * @return Dynamics
+     */
+    public static RegisterDynamics noise(int type, int ref, final int base, final int amplitude, long seed) {
+        if (amplitude < 0) {
+            throw new IllegalArgumentException("Noise amplitude cannot be negative");
+        }
+        final Random random = new Random(seed);
+        return new RegisterDynamics(type, ref) {
+            @Override
+            public int getValue(long elapsed) {
+                return base + random.nextInt(2 * amplitude + 1) - amplitude;
+            }
+        };
+    }
+
+    /**
+     * Creates a sequence of values that is stepped through at a fixed
+     * interval and then repeated
+     *
+     * @param type     Type of register
+     * @param ref      Reference of the register
+     * @param values   Values to step through
+     * @param interval Time each value is held for in milliseconds
+     *
+     * @return Dynamics
+     */
+    public static RegisterDynamics replay(int type, int ref, int[] values, final long interval) {
+        if (values == null || values.length == 0) {
+            throw new IllegalArgumentException("Replay needs at least one value");
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Replay interval must be positive");
+        }
+        final int[] sequence = values.clone();
+        return new RegisterDynamics(type, ref) {
+            @Override
+            public int getValue(long elapsed) {
+                return sequence[(int)((elapsed / interval) % sequence.length)];
+            }
+        };
+    }
+
+    /**
+     * Parses dynamics from a script line of the form
+     * <tt>ramp|noise|replay ir|hr ref arguments...</tt>
+     *
+     * @param spec Script line
+     *
+     * @return Dynamics
+     */
+    public static RegisterDynamics parse(String spec) {
+        String[] parts = spec.trim().split("\\s+");
+        try {
+            if (parts.length < 4) {
+                throw new IllegalArgumentException("Too few arguments");
+            }
+            int type;
+            if ("ir".equalsIgnoreCase(parts[1])) {
+                type = INPUT_REGISTER;
+            }
+            else if ("hr".equalsIgnoreCase(parts[1])) {
+                type = HOLDING_REGISTER;
+            }
+            else {
+                throw new IllegalArgumentException("Register type must be ir or hr");
+            }
+            int ref = Integer.parseInt(parts[2]);
+            if ("ramp".equalsIgnoreCase(parts[0]) && parts.length == 6) {
+                return ramp(type, ref, Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), Long.parseLong(parts[5]));
+            }
+            else if ("noise".equalsIgnoreCase(parts[0]) && (parts.length == 5 || parts.length == 6)) {
+                return noise(type, ref, Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                        parts.length == 6 ? Long.parseLong(parts[5]) : 0);
+            }
+            else if ("replay".equalsIgnoreCase(parts[0]) && parts.length == 5) {
+                String[] items = parts[3].split(",");
+                int[] values = new int[items.length];
+                for (int i = 0; i < items.length; i++) {
+                    values[i] = Integer.parseInt(items[i].trim());
+                }
+                return replay(type, ref, values, Long.parseLong(parts[4]));
+            }
+            throw new IllegalArgumentException("Unknown dynamics or wrong number of arguments");
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid dynamics '%s' - %s", spec, e.getMessage()), e);
+        }
+    }
+}
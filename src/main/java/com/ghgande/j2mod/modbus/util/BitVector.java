@@ -18,11 +18,19 @@ package com.ghgande.j2mod.modbus.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * Class that implements a collection for
- * bits, storing them packed into bytes.
+ * bits, storing them packed into long words in the
+ * order they are sent, the first bit in the LSB of the first byte.
  * Per default the access operations will index from
  * the LSB (rightmost) bit.
+ * <p>
+ * The bulk operations copy, fill and count whole words at a time.  They
+ * always index the bits in the order they are sent, whatever the access
+ * mode of the single bit operations.
  *
  * @author Dieter Wimberger
  * @author Steve O'Hara (4energy)
@@ -35,7 +43,8 @@ public final class BitVector {
     private static final int[] STRAIGHT_OFFSETS = {7, 5, 3, 1};
     //instance attributes
     private int size;
-    private byte[] data;
+    private final int byteSize;
+    private final long[] words;
     private boolean MSBAccess = false;
 
     /**
@@ -50,14 +59,9 @@ public final class BitVector {
         //store bits
         this.size = size;
 
-        //calculate size in bytes
-        if ((size % 8) > 0) {
-            size = (size / 8) + 1;
-        }
-        else {
-            size = (size / 8);
-        }
-        data = new byte[size];
+        //calculate size in bytes and words
+        byteSize = (size + 7) / 8;
+        words = new long[(byteSize + 7) / 8];
     }
 
     /**
@@ -156,8 +160,10 @@ public final class BitVector {
      * @return the <tt>byte[]</tt> used to store the bits.
      */
     public synchronized final byte[] getBytes() {
-        byte[] dest = new byte[data.length];
-        System.arraycopy(data, 0, dest, 0, dest.length);
+        byte[] dest = new byte[byteSize];
+        for (int i = 0; i < byteSize; i++) {
+            dest[i] = getByte(i);
+        }
         return dest;
     }
 
@@ -169,7 +175,12 @@ public final class BitVector {
      * @param data a <tt>byte[]</tt>.
      */
     public final void setBytes(byte[] data) {
-        System.arraycopy(data, 0, this.data, 0, data.length);
+        if (data.length > byteSize) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = 0; i < data.length; i++) {
+            setByte(i, data[i]);
+        }
     }
 
     /**
@@ -180,10 +191,207 @@ public final class BitVector {
      * @param data a <tt>byte[]</tt>.
      */
     public final void setBytes(byte[] data, int size) {
-        System.arraycopy(data, 0, this.data, 0, data.length);
+        setBytes(data);
         this.size = size;
     }
 
+    /**
+     * Writes the bytes which store the bits of this
+     * <tt>BitVector</tt> to the buffer without copying them first.
+     *
+     * @param buffer Buffer to write <tt>byteSize()</tt> bytes to
+     */
+    public synchronized final void getBytes(ByteBuffer buffer) {
+        // Whole words go out least significant byte first
+        boolean reverse = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int full = byteSize / 8;
+        for (int i = 0; i < full; i++) {
+            buffer.putLong(reverse ? Long.reverseBytes(words[i]) : words[i]);
+        }
+        for (int i = full * 8; i < byteSize; i++) {
+            buffer.put(getByte(i));
+        }
+    }
+
+    /**
+     * Sets the bytes which store the bits of this
+     * <tt>BitVector</tt> from the buffer.
+     *
+     * @param buffer Buffer to read <tt>byteSize()</tt> bytes from
+     */
+    public final void setBytes(ByteBuffer buffer) {
+        boolean reverse = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int full = byteSize / 8;
+        for (int i = 0; i < full; i++) {
+            long word = buffer.getLong();
+            words[i] = reverse ? Long.reverseBytes(word) : word;
+        }
+        for (int i = full * 8; i < byteSize; i++) {
+            setByte(i, buffer.get());
+        }
+    }
+
+    /**
+     * Copies bits from an array of words, where bit <tt>n</tt> is bit
+     * <tt>n % 64</tt> of word <tt>n / 64</tt>, into the start of this
+     * <tt>BitVector</tt>.
+     *
+     * @param source Words to copy from
+     * @param offset Index of the first bit to copy
+     * @param count  Number of bits to copy
+     *
+     * @throws IndexOutOfBoundsException if the bits don't fit
+     */
+    public final void copyFrom(long[] source, int offset, int count) {
+        checkRange(0, count);
+        if (offset < 0 || (long)offset + count > (long)source.length * 64) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = 0; i < count; i += 64) {
+            setBits(i, extract(source, offset + i), Math.min(64, count - i));
+        }
+    }
+
+    /**
+     * Copies bits from an array of bytes in the order they are sent, bit
+     * <tt>n</tt> being bit <tt>n % 8</tt> of byte <tt>n / 8</tt>, into the
+     * start of this <tt>BitVector</tt>.
+     *
+     * @param source Bytes to copy from
+     * @param offset Index of the first bit to copy
+     * @param count  Number of bits to copy
+     *
+     * @throws IndexOutOfBoundsException if the bits don't fit
+     */
+    public final void copyFrom(byte[] source, int offset, int count) {
+        checkRange(0, count);
+        if (offset < 0 || (long)offset + count > (long)source.length * 8) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = 0; i < count; i += 64) {
+            int bits = Math.min(64, count - i);
+            int first = (offset + i) / 8;
+            int shift = (offset + i) % 8;
+            int last = (offset + i + bits - 1) / 8;
+            long value = 0;
+            for (int b = first; b <= last && b < first + 8; b++) {
+                value |= (source[b] & 0xFFL) << (8 * (b - first));
+            }
+            value >>>= shift;
+            if (last == first + 8) {
+                // 64 bits that don't start on a byte boundary spill into a ninth byte
+                value |= (source[last] & 0xFFL) << (64 - shift);
+            }
+            setBits(i, value, bits);
+        }
+    }
+
+    /**
+     * Copies bits from another <tt>BitVector</tt> into the start of this one
+     *
+     * @param source <tt>BitVector</tt> to copy from
+     * @param offset Index of the first bit to copy
+     * @param count  Number of bits to copy
+     *
+     * @throws IndexOutOfBoundsException if the bits don't fit
+     */
+    public final void copyFrom(BitVector source, int offset, int count) {
+        source.checkRange(offset, count);
+        copyFrom(source.words, offset, count);
+    }
+
+    /**
+     * Returns up to 64 bits starting at the index, the first in the LSB
+     *
+     * @param index Index of the first bit
+     * @param count Number of bits between 0 and 64
+     *
+     * @return Bits, with any above <tt>count</tt> clear
+     *
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public final long getBits(int index, int count) {
+        checkCount(count);
+        checkRange(index, count);
+        if (count == 0) {
+            return 0;
+        }
+        return extract(words, index) & mask(count);
+    }
+
+    /**
+     * Sets up to 64 bits starting at the index from the low bits of the
+     * value, the first from the LSB
+     *
+     * @param index Index of the first bit
+     * @param value Bits to set
+     * @param count Number of bits between 0 and 64
+     *
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public final void setBits(int index, long value, int count) {
+        checkCount(count);
+        checkRange(index, count);
+        if (count == 0) {
+            return;
+        }
+        int word = index >>> 6;
+        int shift = index & 63;
+        long mask = mask(count);
+        value &= mask;
+        words[word] = (words[word] & ~(mask << shift)) | (value << shift);
+        if (shift + count > 64) {
+            words[word + 1] = (words[word + 1] & ~(mask >>> (64 - shift))) | (value >>> (64 - shift));
+        }
+    }
+
+    /**
+     * Sets or clears all the bits from <tt>from</tt> up to but not including
+     * <tt>to</tt>
+     *
+     * @param from  Index of the first bit
+     * @param to    Index after the last bit
+     * @param value True to set the bits, false to clear them
+     *
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public final void setRange(int from, int to, boolean value) {
+        checkRange(from, to - from);
+        for (int i = from; i < to; i = (i | 63) + 1) {
+            setBits(i, value ? -1L : 0L, Math.min(to, (i | 63) + 1) - i);
+        }
+    }
+
+    /**
+     * Returns the number of bits that are set
+     *
+     * @return Number of set bits within <tt>size()</tt>
+     */
+    public final int cardinality() {
+        return cardinality(0, Math.min(size, byteSize * 8));
+    }
+
+    /**
+     * Returns the number of bits that are set from <tt>from</tt> up to but
+     * not including <tt>to</tt>
+     *
+     * @param from Index of the first bit
+     * @param to   Index after the last bit
+     *
+     * @return Number of set bits
+     *
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public final int cardinality(int from, int to) {
+        checkRange(from, to - from);
+        int count = 0;
+        for (int i = from; i < to; i = (i | 63) + 1) {
+            int bits = Math.min(to, (i | 63) + 1) - i;
+            count += Long.bitCount((words[i >>> 6] >>> (i & 63)) & mask(bits));
+        }
+        return count;
+    }
+
     /**
      * Returns the state of the bit at the given index of this
      * <tt>BitVector</tt>.
@@ -198,10 +406,8 @@ public final class BitVector {
      */
     public final boolean getBit(int index) throws IndexOutOfBoundsException {
         index = translateIndex(index);
-        logger.debug("Get bit #{}", index);
-        return ((data[byteIndex(index)]
-                & (0x01 << bitIndex(index))) != 0
-        );
+        checkRange(index, 1);
+        return (words[index >>> 6] & (1L << (index & 63))) != 0;
     }
 
     /**
@@ -216,13 +422,13 @@ public final class BitVector {
      */
     public final void setBit(int index, boolean b) throws IndexOutOfBoundsException {
         index = translateIndex(index);
-        logger.debug("Set bit #{}", index);
-        int value = ((b) ? 1 : 0);
-        int byteNum = byteIndex(index);
-        int bitNum = bitIndex(index);
-        data[byteNum] = (byte)((data[byteNum] & ~(0x01 << bitNum))
-                | ((value & 0x01) << bitNum)
-        );
+        checkRange(index, 1);
+        if (b) {
+            words[index >>> 6] |= 1L << (index & 63);
+        }
+        else {
+            words[index >>> 6] &= ~(1L << (index & 63));
+        }
     }
 
     /**
@@ -245,7 +451,7 @@ public final class BitVector {
      *                                  the byte[] store size multiplied by 8.
      */
     public final void forceSize(int size) {
-        if (size > data.length * 8) {
+        if (size > byteSize * 8) {
             throw new IllegalArgumentException("Size exceeds byte[] store");
         }
         else {
@@ -261,7 +467,7 @@ public final class BitVector {
      * @return the number of bits in this <tt>BitVector</tt>.
      */
     public final int byteSize() {
-        return data.length;
+        return byteSize;
     }
 
     /**
@@ -277,7 +483,7 @@ public final class BitVector {
      */
     public String toString() {
         StringBuilder sbuf = new StringBuilder();
-        for (int i = 0; i < data.length; i++) {
+        for (int i = 0; i < byteSize; i++) {
 
             int numberOfBitsToPrint = Byte.SIZE;
             int remainingBits = size - (i * Byte.SIZE);
@@ -285,55 +491,87 @@ public final class BitVector {
                 numberOfBitsToPrint = remainingBits;
             }
 
-            sbuf.append(String.format("%" + numberOfBitsToPrint + "s", Integer.toBinaryString(data[i] & 0xFF)).replace(' ', '0'));
+            sbuf.append(String.format("%" + numberOfBitsToPrint + "s", Integer.toBinaryString(getByte(i) & 0xFF)).replace(' ', '0'));
             sbuf.append(" ");
         }
         return sbuf.toString();
     }
 
     /**
-     * Returns the index of the byte in the the byte array
-     * that contains the given bit.
-     * <p>
+     * Returns a byte of the bits in the order they are sent
      *
-     * @param index the index of the bit.
+     * @param index the index of the byte.
      *
-     * @return the index of the byte where the given bit is stored.
+     * @return the byte.
+     */
+    private byte getByte(int index) {
+        return (byte)(words[index >>> 3] >>> ((index & 7) * 8));
+    }
+
+    /**
+     * Sets a byte of the bits in the order they are sent
      *
-     * @throws IndexOutOfBoundsException if index is
-     *                                   out of bounds.
+     * @param index the index of the byte.
+     * @param value the byte.
      */
-    private int byteIndex(int index) throws IndexOutOfBoundsException {
+    private void setByte(int index, byte value) {
+        int shift = (index & 7) * 8;
+        words[index >>> 3] = (words[index >>> 3] & ~(0xFFL << shift)) | ((value & 0xFFL) << shift);
+    }
 
-        if (index < 0 || index >= data.length * 8) {
+    /**
+     * Checks that a range of bits lies within the bytes that store them
+     *
+     * @param index the index of the first bit.
+     * @param count the number of bits.
+     *
+     * @throws IndexOutOfBoundsException if any of the range is out of bounds.
+     */
+    private void checkRange(int index, int count) throws IndexOutOfBoundsException {
+        if (index < 0 || count < 0 || index + count > byteSize * 8) {
             throw new IndexOutOfBoundsException();
         }
-        else {
-            return index / 8;
-        }
     }
 
     /**
-     * Returns the index of the given bit in the byte
-     * where it it stored.
-     * <p>
+     * Checks that a number of bits fits in a long
      *
-     * @param index the index of the bit.
+     * @param count the number of bits.
+     */
+    private static void checkCount(int count) {
+        if (count < 0 || count > 64) {
+            throw new IllegalArgumentException("Invalid bit count: " + count);
+        }
+    }
+
+    /**
+     * Returns a mask of the low bits
      *
-     * @return the bit index relative to the position in the byte
-     * that stores the specified bit.
+     * @param count the number of bits, between 1 and 64.
      *
-     * @throws IndexOutOfBoundsException if index is
-     *                                   out of bounds.
+     * @return the mask.
      */
-    private int bitIndex(int index) throws IndexOutOfBoundsException {
+    private static long mask(int count) {
+        return count == 64 ? -1L : (1L << count) - 1;
+    }
 
-        if (index < 0 || index >= data.length * 8) {
-            throw new IndexOutOfBoundsException();
-        }
-        else {
-            return index % 8;
+    /**
+     * Returns the 64 bits starting at the index, padded with zeros where
+     * the words run out
+     *
+     * @param source the words to read.
+     * @param index  the index of the first bit.
+     *
+     * @return the bits.
+     */
+    private static long extract(long[] source, int index) {
+        int word = index >>> 6;
+        int shift = index & 63;
+        long value = source[word] >>> shift;
+        if (shift != 0 && word + 1 < source.length) {
+            value |= source[word + 1] << (64 - shift);
         }
+        return value;
     }
 
     private int translateIndex(int idx) {
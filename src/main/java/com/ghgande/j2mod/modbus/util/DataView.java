@@ -0,0 +1,547 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.procimg.Register;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A typed view over a run of registers, reading and writing values wider
+ * than a register at a register offset in a configurable
+ * {@link RegisterOrder}, directly on the underlying data.
+ * <p>
+ * Views can be created over a <tt>short[]</tt>, the registers of a
+ * <tt>ByteBuffer</tt> in wire order, an array of registers such as the
+ * result of a read, or the holding or input registers of a process image.
+ * None of the numeric accessors allocate anything.
+ * <p>
+ * Strings are ASCII, two characters to a register with the first in the
+ * high byte unless the order swaps bytes.  The word order does not apply to
+ * strings, which always run from the first register to the last.
+ * <p>
+ * A view is not synchronized; a value spread over several registers may
+ * be torn if the registers are written while it is read.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public abstract class DataView {
+
+    private final RegisterOrder order;
+
+    /**
+     * Creates a view that uses the given order
+     *
+     * @param order Order of the bytes of wide values
+     */
+    protected DataView(RegisterOrder order) {
+        if (order == null) {
+            throw new IllegalArgumentException("Order cannot be null");
+        }
+        this.order = order;
+    }
+
+    /**
+     * Creates a view over part of an array of registers
+     *
+     * @param registers Register values
+     * @param offset    Index of the first register of the view
+     * @param count     Number of registers in the view
+     * @param order     Order of the bytes of wide values
+     *
+     * @return View
+     */
+    public static DataView wrap(short[] registers, int offset, int count, RegisterOrder order) {
+        if (offset < 0 || count < 0 || offset + count > registers.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new ArrayView(registers, offset, count, order);
+    }
+
+    /**
+     * Creates a view over a whole array of registers
+     *
+     * @param registers Register values
+     * @param order     Order of the bytes of wide values
+     *
+     * @return View
+     */
+    public static DataView wrap(short[] registers, RegisterOrder order) {
+        return wrap(registers, 0, registers.length, order);
+    }
+
+    /**
+     * Creates a view over the remaining bytes of a buffer, as registers in
+     * wire order with the high byte first, whatever the order of the buffer.
+     * The view does not move the position of the buffer.
+     *
+     * @param buffer Buffer of registers
+     * @param order  Order of the bytes of wide values
+     *
+     * @return View
+     */
+    public static DataView wrap(ByteBuffer buffer, RegisterOrder order) {
+        return new BufferView(buffer, buffer.position(), buffer.remaining() / 2, order);
+    }
+
+    /**
+     * Creates a view over registers such as those returned by a read.  The
+     * view can only be written to if they are <tt>Register</tt>s.
+     *
+     * @param registers Registers
+     * @param order     Order of the bytes of wide values
+     *
+     * @return View
+     */
+    public static DataView wrap(InputRegister[] registers, RegisterOrder order) {
+        return new RegistersView(registers, order);
+    }
+
+    /**
+     * Creates a view over the holding registers of a process image
+     *
+     * @param image Process image
+     * @param order Order of the bytes of wide values
+     *
+     * @return View
+     */
+    public static DataView wrapRegisters(ProcessImage image, RegisterOrder order) {
+        return new ImageView(image, false, order);
+    }
+
+    /**
+     * Creates a view over the input registers of a process image, which can
+     * only be written to if the image is an <tt>ArrayProcessImage</tt>
+     *
+     * @param image Process image
+     * @param order Order of the bytes of wide values
+     *
+     * @return View
+     */
+    public static DataView wrapInputRegisters(ProcessImage image, RegisterOrder order) {
+        return new ImageView(image, true, order);
+    }
+
+    /**
+     * Returns the order of the bytes of wide values
+     *
+     * @return Order
+     */
+    public RegisterOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the number of registers in the view
+     *
+     * @return Number of registers
+     */
+    public abstract int size();
+
+    /**
+     * Returns the unsigned value of a register
+     *
+     * @param index Index of the register in the view
+     *
+     * @return Value between 0 and 65535
+     */
+    public abstract int getRegister(int index);
+
+    /**
+     * Sets the value of a register
+     *
+     * @param index Index of the register in the view
+     * @param value New value, only the low 16 bits are used
+     */
+    public abstract void setRegister(int index, int value);
+
+    /**
+     * Returns the 32-bit float at the register offset
+     *
+     * @param index Index of the first register
+     *
+     * @return Value
+     */
+    public float getFloat(int index) {
+        return Float.intBitsToFloat((int)getBits(index, 2));
+    }
+
+    /**
+     * Sets the 32-bit float at the register offset
+     *
+     * @param index Index of the first register
+     * @param value Value
+     */
+    public void setFloat(int index, float value) {
+        setBits(index, 2, Float.floatToIntBits(value));
+    }
+
+    /**
+     * Returns the signed 32-bit integer at the register offset
+     *
+     * @param index Index of the first register
+     *
+     * @return Value
+     */
+    public int getInt(int index) {
+        return (int)getBits(index, 2);
+    }
+
+    /**
+     * Sets the 32-bit integer at the register offset
+     *
+     * @param index Index of the first register
+     * @param value Value
+     */
+    public void setInt(int index, int value) {
+        setBits(index, 2, value);
+    }
+
+    /**
+     * Returns the unsigned 32-bit integer at the register offset
+     *
+     * @param index Index of the first register
+     *
+     * @return Value between 0 and 4294967295
+     */
+    public long getUnsignedInt(int index) {
+        return getBits(index, 2);
+    }
+
+    /**
+     * Sets the unsigned 32-bit integer at the register offset
+     *
+     * @param index Index of the first register
+     * @param value Value, only the low 32 bits are used
+     */
+    public void setUnsignedInt(int index, long value) {
+        setBits(index, 2, value);
+    }
+
+    /**
+     * Returns the signed 64-bit integer at the register offset
+     *
+     * @param index Index of the first register
+     *
+     * @return Value
+     */
+    public long getLong(int index) {
+        return getBits(index, 4);
+    }
+
+    /**
+     * Sets the 64-bit integer at the register offset
+     *
+     * @param index Index of the first register
+     * @param value Value
+     */
+    public void setLong(int index, long value) {
+        setBits(index, 4, value);
+    }
+
+    /**
+     * Returns the 64-bit float at the register offset
+     *
+     * @param index Index of the first register
+     *
+     * @return Value
+     */
+    public double getDouble(int index) {
+        return Double.longBitsToDouble(getBits(index, 4));
+    }
+
+    /**
+     * Sets the 64-bit float at the register offset
+     *
+     * @param index Index of the first register
+     * @param value Value
+     */
+    public void setDouble(int index, double value) {
+        setBits(index, 4, Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Appends the ASCII string held in the registers to a builder, stopping
+     * at the first NUL
+     *
+     * @param index   Index of the first register
+     * @param count   Number of registers holding the string
+     * @param builder Builder to append to
+     *
+     * @return The builder
+     */
+    public StringBuilder getString(int index, int count, StringBuilder builder) {
+        checkRange(index, count);
+        for (int i = 0; i < count; i++) {
+            int value = getRegister(index + i);
+            int first = order.isSwapBytes() ? value & 0xFF : value >>> 8;
+            if (first == 0) {
+                break;
+            }
+            builder.append((char)first);
+            int second = order.isSwapBytes() ? value >>> 8 : value & 0xFF;
+            if (second == 0) {
+                break;
+            }
+            builder.append((char)second);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the ASCII string held in the registers, up to the first NUL
+     *
+     * @param index Index of the first register
+     * @param count Number of registers holding the string
+     *
+     * @return String
+     */
+    public String getString(int index, int count) {
+        return getString(index, count, new StringBuilder(count * 2)).toString();
+    }
+
+    /**
+     * Writes a string to the registers as ASCII, truncating it if it is too
+     * long and padding it with NULs if it is too short.  Characters outside
+     * ASCII are written as <tt>?</tt>.
+     *
+     * @param index Index of the first register
+     * @param count Number of registers to fill
+     * @param value String to write
+     */
+    public void setString(int index, int count, CharSequence value) {
+        checkRange(index, count);
+        for (int i = 0; i < count; i++) {
+            int first = toAscii(value, i * 2);
+            int second = toAscii(value, i * 2 + 1);
+            setRegister(index + i, order.isSwapBytes() ? (second << 8) | first : (first << 8) | second);
+        }
+    }
+
+    /**
+     * Returns a character of a string as an ASCII byte
+     *
+     * @param value String
+     * @param index Index of the character
+     *
+     * @return ASCII code, or 0 past the end of the string
+     */
+    private static int toAscii(CharSequence value, int index) {
+        if (index >= value.length()) {
+            return 0;
+        }
+        char c = value.charAt(index);
+        return c < 0x80 ? c : '?';
+    }
+
+    /**
+     * Reads a value spread over registers in the order of the view
+     *
+     * @param index Index of the first register
+     * @param count Number of registers, 2 or 4
+     *
+     * @return Value in the low <tt>16 * count</tt> bits
+     */
+    private long getBits(int index, int count) {
+        checkRange(index, count);
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            int word = getRegister(index + (order.isSwapWords() ? count - 1 - i : i));
+            if (order.isSwapBytes()) {
+                word = ((word & 0xFF) << 8) | (word >>> 8);
+            }
+            value = (value << 16) | word;
+        }
+        return value;
+    }
+
+    /**
+     * Writes a value spread over registers in the order of the view
+     *
+     * @param index Index of the first register
+     * @param count Number of registers, 2 or 4
+     * @param value Value in the low <tt>16 * count</tt> bits
+     */
+    private void setBits(int index, int count, long value) {
+        checkRange(index, count);
+        for (int i = count - 1; i >= 0; i--) {
+            int word = (int)value & 0xFFFF;
+            if (order.isSwapBytes()) {
+                word = ((word & 0xFF) << 8) | (word >>> 8);
+            }
+            setRegister(index + (order.isSwapWords() ? count - 1 - i : i), word);
+            value >>>= 16;
+        }
+    }
+
+    /**
+     * Checks that a range of registers lies within the view
+     *
+     * @param index Index of the first register
+     * @param count Number of registers
+     */
+    private void checkRange(int index, int count) {
+        if (index < 0 || count < 0 || index + count > size()) {
+            throw new IndexOutOfBoundsException(String.format("Registers %d to %d are outside the view of %d", index, index + count - 1, size()));
+        }
+    }
+
+    /**
+     * View of a <tt>short[]</tt>
+     */
+    private static class ArrayView extends DataView {
+        private final short[] registers;
+        private final int offset;
+        private final int count;
+
+        ArrayView(short[] registers, int offset, int count, RegisterOrder order) {
+            super(order);
+            this.registers = registers;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public int getRegister(int index) {
+            return registers[offset + index] & 0xFFFF;
+        }
+
+        @Override
+        public void setRegister(int index, int value) {
+            registers[offset + index] = (short)value;
+        }
+    }
+
+    /**
+     * View of registers in a <tt>ByteBuffer</tt>
+     */
+    private static class BufferView extends DataView {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int count;
+
+        BufferView(ByteBuffer buffer, int start, int count, RegisterOrder order) {
+            super(order);
+            this.buffer = buffer;
+            this.start = start;
+            this.count = count;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public int getRegister(int index) {
+            int position = start + index * 2;
+            return ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+        }
+
+        @Override
+        public void setRegister(int index, int value) {
+            int position = start + index * 2;
+            buffer.put(position, (byte)(value >> 8));
+            buffer.put(position + 1, (byte)value);
+        }
+    }
+
+    /**
+     * View of an array of register objects
+     */
+    private static class RegistersView extends DataView {
+        private final InputRegister[] registers;
+
+        RegistersView(InputRegister[] registers, RegisterOrder order) {
+            super(order);
+            this.registers = registers;
+        }
+
+        @Override
+        public int size() {
+            return registers.length;
+        }
+
+        @Override
+        public int getRegister(int index) {
+            return registers[index].toUnsignedShort();
+        }
+
+        @Override
+        public void setRegister(int index, int value) {
+            if (!(registers[index] instanceof Register)) {
+                throw new UnsupportedOperationException("Input registers cannot be written");
+            }
+            ((Register)registers[index]).setValue(value & 0xFFFF);
+        }
+    }
+
+    /**
+     * View of the registers of a process image
+     */
+    private static class ImageView extends DataView {
+        private final ProcessImage image;
+        private final ArrayProcessImage arrayImage;
+        private final boolean input;
+
+        ImageView(ProcessImage image, boolean input, RegisterOrder order) {
+            super(order);
+            this.image = image;
+            this.arrayImage = image instanceof ArrayProcessImage ? (ArrayProcessImage)image : null;
+            this.input = input;
+        }
+
+        @Override
+        public int size() {
+            return input ? image.getInputRegisterCount() : image.getRegisterCount();
+        }
+
+        @Override
+        public int getRegister(int index) {
+            if (arrayImage != null) {
+                return input ? arrayImage.getInputRegisterValue(index) : arrayImage.getRegisterValue(index);
+            }
+            return input ? image.getInputRegister(index).toUnsignedShort() : image.getRegister(index).toUnsignedShort();
+        }
+
+        @Override
+        public void setRegister(int index, int value) {
+            if (arrayImage != null) {
+                if (input) {
+                    arrayImage.setInputRegisterValue(index, value);
+                }
+                else {
+                    arrayImage.setRegisterValue(index, value);
+                }
+            }
+            else if (input) {
+                throw new UnsupportedOperationException("Input registers cannot be written");
+            }
+            else {
+                image.getRegister(index).setValue(value & 0xFFFF);
+            }
+        }
+    }
+}
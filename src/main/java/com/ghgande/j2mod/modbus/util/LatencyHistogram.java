@@ -0,0 +1,228 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies (or any other positive long values)
+ * that can be recorded from many threads at once without blocking.
+ * <p>
+ * Values are kept in log-linear buckets in the same way as HdrHistogram -
+ * every power of two is split into 64 linear sub-buckets, so any percentile is
+ * reported to within 1.6% of the true value whatever the range, using a
+ * fixed array of counters and no allocation when recording.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF << 1;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF + SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a value - negative values are recorded as zero
+     *
+     * @param value Value to record e.g. a latency in nanoseconds
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(getIndex(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        long current = maxValue.get();
+        while (value > current && !maxValue.compareAndSet(current, value)) {
+            current = maxValue.get();
+        }
+        current = minValue.get();
+        while (value < current && !minValue.compareAndSet(current, value)) {
+            current = minValue.get();
+        }
+    }
+
+    /**
+     * Adds all the values recorded in another histogram to this one
+     *
+     * @param other Histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.getCount());
+        totalValue.addAndGet(other.totalValue.get());
+        long value = other.maxValue.get();
+        long current = maxValue.get();
+        while (value > current && !maxValue.compareAndSet(current, value)) {
+            current = maxValue.get();
+        }
+        value = other.minValue.get();
+        current = minValue.get();
+        while (value < current && !minValue.compareAndSet(current, value)) {
+            current = minValue.get();
+        }
+    }
+
+    /**
+     * Clears all the recorded values.
+     * Values recorded while the reset is in progress may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        minValue.set(Long.MAX_VALUE);
+        maxValue.set(0);
+    }
+
+    /**
+     * Returns the number of values recorded
+     *
+     * @return Number of values
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the smallest value recorded
+     *
+     * @return Smallest value or 0 if nothing has been recorded
+     */
+    public long getMin() {
+        long min = minValue.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * Returns the largest value recorded
+     *
+     * @return Largest value or 0 if nothing has been recorded
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the arithmetic mean of the values recorded
+     *
+     * @return Mean or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double)totalValue.get() / count;
+    }
+
+    /**
+     * Returns the value that the given percentage of the recorded values are
+     * less than or equal to.
+     * The value returned is the highest value that shares the bucket, so it is
+     * never less than the true value.
+     *
+     * @param percentile Percentile between 0 and 100 e.g. 99.9
+     *
+     * @return Value at the percentile or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double limit = Math.min(100.0, Math.max(0.0, percentile));
+        long target = Math.max(1, (long)Math.ceil(limit * total / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(getHighestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns a one line summary of the histogram with the values scaled
+     * by the divisor e.g. 1000 to show nanoseconds as microseconds
+     *
+     * @param divisor Scale to divide the values by
+     *
+     * @return Summary
+     */
+    public String toString(double divisor) {
+        return String.format("count=%d min=%.1f mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                getCount(), getMin() / divisor, getMean() / divisor,
+                getValueAtPercentile(50) / divisor, getValueAtPercentile(90) / divisor,
+                getValueAtPercentile(99) / divisor, getValueAtPercentile(99.9) / divisor,
+                getMax() / divisor);
+    }
+
+    @Override
+    public String toString() {
+        return toString(1);
+    }
+
+    /**
+     * Returns the bucket that holds the value
+     *
+     * @param value Positive value
+     *
+     * @return Bucket index
+     */
+    private static int getIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF + (int)(value >>> shift);
+    }
+
+    /**
+     * Returns the highest value that falls into the bucket
+     *
+     * @param index Bucket index
+     *
+     * @return Highest value
+     */
+    private static long getHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - shift * SUB_BUCKET_HALF;
+        long highest = ((subBucket + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
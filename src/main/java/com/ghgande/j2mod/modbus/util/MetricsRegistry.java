@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.util.Collection;
+
+/**
+ * A registry of named <tt>ModbusMetrics</tt>.
+ * <p>
+ * Masters and listeners are given the metrics to record into, usually
+ * obtained from a registry by name.  Implementations can export every set of
+ * metrics they hand out to a monitoring system.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Returns the metrics with the given name, creating them if they don't exist
+     *
+     * @param name Name of the metrics e.g. <tt>slave-tcp-502</tt>
+     *
+     * @return Metrics
+     */
+    ModbusMetrics getMetrics(String name);
+
+    /**
+     * Returns all the metrics in the registry
+     *
+     * @return Metrics
+     */
+    Collection<ModbusMetrics> getAllMetrics();
+
+    /**
+     * Removes the metrics with the given name
+     *
+     * @param name Name of the metrics
+     */
+    void removeMetrics(String name);
+}
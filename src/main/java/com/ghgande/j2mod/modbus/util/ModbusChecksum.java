@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The checksums used by the serial framings - the CRC16 of RTU frames and
+ * the LRC of ASCII frames - calculated without allocating anything.
+ * <p>
+ * The CRC is calculated eight bytes at a time (slice-by-8), using eight
+ * tables of 256 entries, each giving the effect on the CRC of a byte
+ * followed by a number of zero bytes.  Because the CRC is only two bytes
+ * wide, the current CRC only affects the first two bytes of each slice and
+ * the other six are looked up directly, so the loop has no dependency
+ * between most of its lookups.  Short tails are done a byte at a time.
+ * <p>
+ * The CRC is returned as an <tt>int</tt> holding the value of the CRC,
+ * whose low byte is sent first.  It can be calculated incrementally as the
+ * bytes of a frame arrive by starting with {@link #CRC_INITIAL} and passing
+ * the result of each call to the next.  The CRC of a frame including its
+ * own CRC is zero.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public final class ModbusChecksum {
+
+    /**
+     * Value to start a CRC calculation with
+     */
+    public static final int CRC_INITIAL = 0xFFFF;
+
+    private static final int POLYNOMIAL = 0xA001; // 0x8005 reflected
+
+    private static final int[][] CRC_TABLES = createTables();
+
+    /**
+     * Only static methods
+     */
+    private ModbusChecksum() {
+    }
+
+    /**
+     * Builds the slice tables, table <tt>n</tt> giving the CRC of a byte
+     * followed by <tt>n</tt> zero bytes
+     *
+     * @return Tables
+     */
+    private static int[][] createTables() {
+        int[][] tables = new int[8][256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            tables[0][i] = crc;
+        }
+        for (int n = 1; n < 8; n++) {
+            for (int i = 0; i < 256; i++) {
+                int crc = tables[n - 1][i];
+                tables[n][i] = (crc >>> 8) ^ tables[0][crc & 0xFF];
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Calculates the CRC of a range of bytes
+     *
+     * @param data   Bytes to check
+     * @param offset Position of the first byte
+     * @param length Number of bytes
+     *
+     * @return CRC with the byte to send first in the low 8 bits
+     */
+    public static int crc16(byte[] data, int offset, int length) {
+        return updateCRC16(CRC_INITIAL, data, offset, length);
+    }
+
+    /**
+     * Calculates the CRC of the remaining bytes of a buffer without moving
+     * its position
+     *
+     * @param buffer Bytes to check
+     *
+     * @return CRC with the byte to send first in the low 8 bits
+     */
+    public static int crc16(ByteBuffer buffer) {
+        return updateCRC16(CRC_INITIAL, buffer);
+    }
+
+    /**
+     * Adds a byte to a CRC
+     *
+     * @param crc   CRC so far, or <tt>CRC_INITIAL</tt>
+     * @param value Byte to add
+     *
+     * @return New CRC
+     */
+    public static int updateCRC16(int crc, int value) {
+        return (crc >>> 8) ^ CRC_TABLES[0][(crc ^ value) & 0xFF];
+    }
+
+    /**
+     * Adds a range of bytes to a CRC
+     *
+     * @param crc    CRC so far, or <tt>CRC_INITIAL</tt>
+     * @param data   Bytes to add
+     * @param offset Position of the first byte
+     * @param length Number of bytes
+     *
+     * @return New CRC
+     */
+    public static int updateCRC16(int crc, byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int[] t0 = CRC_TABLES[0], t1 = CRC_TABLES[1], t2 = CRC_TABLES[2], t3 = CRC_TABLES[3];
+        int[] t4 = CRC_TABLES[4], t5 = CRC_TABLES[5], t6 = CRC_TABLES[6], t7 = CRC_TABLES[7];
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            crc = t7[(crc ^ data[i]) & 0xFF] ^ t6[((crc >>> 8) ^ data[i + 1]) & 0xFF]
+                    ^ t5[data[i + 2] & 0xFF] ^ t4[data[i + 3] & 0xFF]
+                    ^ t3[data[i + 4] & 0xFF] ^ t2[data[i + 5] & 0xFF]
+                    ^ t1[data[i + 6] & 0xFF] ^ t0[data[i + 7] & 0xFF];
+        }
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Adds the remaining bytes of a buffer to a CRC without moving its
+     * position
+     *
+     * @param crc    CRC so far, or <tt>CRC_INITIAL</tt>
+     * @param buffer Bytes to add
+     *
+     * @return New CRC
+     */
+    public static int updateCRC16(int crc, ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return updateCRC16(crc, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        int[] t0 = CRC_TABLES[0], t1 = CRC_TABLES[1], t2 = CRC_TABLES[2], t3 = CRC_TABLES[3];
+        int[] t4 = CRC_TABLES[4], t5 = CRC_TABLES[5], t6 = CRC_TABLES[6], t7 = CRC_TABLES[7];
+        int i = buffer.position();
+        int end = buffer.limit();
+        for (; i + 8 <= end; i += 8) {
+            crc = t7[(crc ^ buffer.get(i)) & 0xFF] ^ t6[((crc >>> 8) ^ buffer.get(i + 1)) & 0xFF]
+                    ^ t5[buffer.get(i + 2) & 0xFF] ^ t4[buffer.get(i + 3) & 0xFF]
+                    ^ t3[buffer.get(i + 4) & 0xFF] ^ t2[buffer.get(i + 5) & 0xFF]
+                    ^ t1[buffer.get(i + 6) & 0xFF] ^ t0[buffer.get(i + 7) & 0xFF];
+        }
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ buffer.get(i)) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Calculates the LRC of a range of bytes, the two's complement of their
+     * sum
+     *
+     * @param data   Bytes to check
+     * @param offset Position of the first byte
+     * @param length Number of bytes
+     *
+     * @return LRC between 0 and 255
+     */
+    public static int lrc(byte[] data, int offset, int length) {
+        return (-updateSum(0, data, offset, length)) & 0xFF;
+    }
+
+    /**
+     * Adds a range of bytes to the running sum an LRC is made from, so that
+     * the LRC of a frame can be calculated as it arrives.  The LRC is the
+     * negated final sum, <tt>(-sum) &amp; 0xFF</tt>.
+     *
+     * @param sum    Sum so far, starting from zero
+     * @param data   Bytes to add
+     * @param offset Position of the first byte
+     * @param length Number of bytes
+     *
+     * @return New sum, of which only the low 8 bits are significant
+     */
+    public static int updateSum(int sum, byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        // Sum four independent lanes so the additions don't wait for each
+        // other; the sum only matters modulo 256 so overflow is harmless
+        int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 4 <= end; i += 4) {
+            s0 += data[i] & 0xFF;
+            s1 += data[i + 1] & 0xFF;
+            s2 += data[i + 2] & 0xFF;
+            s3 += data[i + 3] & 0xFF;
+        }
+        for (; i < end; i++) {
+            s0 += data[i] & 0xFF;
+        }
+        return sum + s0 + s1 + s2 + s3;
+    }
+}
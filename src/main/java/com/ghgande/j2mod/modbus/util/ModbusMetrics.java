@@ -0,0 +1,378 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free counters and latency histograms for the requests handled by a
+ * master or a slave, broken down by function code, unit ID and exception code.
+ * <p>
+ * For a master the latency is the time taken to complete a transaction,
+ * including any retries.  For a slave the latency is the time taken to
+ * process a request and write the response, and the queue wait is the time
+ * a request (or connection) waited before processing started.
+ * <p>
+ * Recording never blocks or allocates, apart from creating the histogram
+ * for a function code the first time it is seen.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ModbusMetrics {
+
+    private static final int CODES = 256;
+
+    private final String name;
+    private final AtomicLongArray functionRequests = new AtomicLongArray(CODES);
+    private final AtomicLongArray unitRequests = new AtomicLongArray(CODES);
+    private final AtomicLongArray exceptionResponses = new AtomicLongArray(CODES);
+    private final AtomicLongArray functionTimeouts = new AtomicLongArray(CODES);
+    private final AtomicLongArray unitTimeouts = new AtomicLongArray(CODES);
+    private final AtomicLongArray functionRetries = new AtomicLongArray(CODES);
+    private final AtomicLongArray unitRetries = new AtomicLongArray(CODES);
+    private final AtomicReferenceArray<LatencyHistogram> functionLatency = new AtomicReferenceArray<LatencyHistogram>(CODES);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong exceptions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * Creates a set of metrics
+     *
+     * @param name Name used to identify the metrics when exported
+     */
+    public ModbusMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the metrics
+     *
+     * @return Name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a request that was answered with a normal response
+     *
+     * @param unitId       Unit ID of the request
+     * @param functionCode Function code of the request
+     * @param elapsed      Latency in nanoseconds
+     */
+    public void recordRequest(int unitId, int functionCode, long elapsed) {
+        int code = functionCode & 0x7F;
+        requests.incrementAndGet();
+        functionRequests.incrementAndGet(code);
+        unitRequests.incrementAndGet(unitId & 0xFF);
+        latency.recordValue(elapsed);
+        getOrCreateLatency(code).recordValue(elapsed);
+    }
+
+    /**
+     * Records a request that was answered with an exception response
+     *
+     * @param unitId        Unit ID of the request
+     * @param functionCode  Function code of the request
+     * @param exceptionCode Exception code of the response
+     * @param elapsed       Latency in nanoseconds
+     */
+    public void recordExceptionResponse(int unitId, int functionCode, int exceptionCode, long elapsed) {
+        recordRequest(unitId, functionCode, elapsed);
+        exceptions.incrementAndGet();
+        exceptionResponses.incrementAndGet(exceptionCode & 0xFF);
+    }
+
+    /**
+     * Records a request that got no usable response after all its retries
+     *
+     * @param unitId       Unit ID of the request
+     * @param functionCode Function code of the request
+     */
+    public void recordTimeout(int unitId, int functionCode) {
+        timeouts.incrementAndGet();
+        functionTimeouts.incrementAndGet(functionCode & 0x7F);
+        unitTimeouts.incrementAndGet(unitId & 0xFF);
+    }
+
+    /**
+     * Records a request being sent again after a failure
+     *
+     * @param unitId       Unit ID of the request
+     * @param functionCode Function code of the request
+     */
+    public void recordRetry(int unitId, int functionCode) {
+        retries.incrementAndGet();
+        functionRetries.incrementAndGet(functionCode & 0x7F);
+        unitRetries.incrementAndGet(unitId & 0xFF);
+    }
+
+    /**
+     * Records the time a request or connection waited before it was processed
+     *
+     * @param wait Wait in nanoseconds
+     */
+    public void recordQueueWait(long wait) {
+        queueWait.recordValue(wait);
+    }
+
+    /**
+     * Returns the number of requests answered, including exception responses
+     *
+     * @return Number of requests
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of requests answered for the function code
+     *
+     * @param functionCode Function code
+     *
+     * @return Number of requests
+     */
+    public long getRequestCount(int functionCode) {
+        return functionRequests.get(functionCode & 0x7F);
+    }
+
+    /**
+     * Returns the number of requests answered for the unit ID
+     *
+     * @param unitId Unit ID
+     *
+     * @return Number of requests
+     */
+    public long getUnitRequestCount(int unitId) {
+        return unitRequests.get(unitId & 0xFF);
+    }
+
+    /**
+     * Returns the number of exception responses
+     *
+     * @return Number of exception responses
+     */
+    public long getExceptionCount() {
+        return exceptions.get();
+    }
+
+    /**
+     * Returns the number of exception responses with the exception code
+     *
+     * @param exceptionCode Exception code e.g. <tt>Modbus.ILLEGAL_ADDRESS_EXCEPTION</tt>
+     *
+     * @return Number of exception responses
+     */
+    public long getExceptionCount(int exceptionCode) {
+        return exceptionResponses.get(exceptionCode & 0xFF);
+    }
+
+    /**
+     * Returns the number of requests that got no usable response
+     *
+     * @return Number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns the number of requests for the function code that got no usable response
+     *
+     * @param functionCode Function code
+     *
+     * @return Number of timeouts
+     */
+    public long getTimeoutCount(int functionCode) {
+        return functionTimeouts.get(functionCode & 0x7F);
+    }
+
+    /**
+     * Returns the number of requests for the unit ID that got no usable response
+     *
+     * @param unitId Unit ID
+     *
+     * @return Number of timeouts
+     */
+    public long getUnitTimeoutCount(int unitId) {
+        return unitTimeouts.get(unitId & 0xFF);
+    }
+
+    /**
+     * Returns the number of times requests were retried
+     *
+     * @return Number of retries
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * Returns the number of times requests for the function code were retried
+     *
+     * @param functionCode Function code
+     *
+     * @return Number of retries
+     */
+    public long getRetryCount(int functionCode) {
+        return functionRetries.get(functionCode & 0x7F);
+    }
+
+    /**
+     * Returns the number of times requests for the unit ID were retried
+     *
+     * @param unitId Unit ID
+     *
+     * @return Number of retries
+     */
+    public long getUnitRetryCount(int unitId) {
+        return unitRetries.get(unitId & 0xFF);
+    }
+
+    /**
+     * Returns the latency of all requests
+     *
+     * @return Latency histogram in nanoseconds
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the latency of the requests with the function code
+     *
+     * @param functionCode Function code
+     *
+     * @return Latency histogram in nanoseconds or null if no requests have been recorded
+     */
+    public LatencyHistogram getLatency(int functionCode) {
+        return functionLatency.get(functionCode & 0x7F);
+    }
+
+    /**
+     * Returns the time requests waited before they were processed
+     *
+     * @return Queue wait histogram in nanoseconds
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Returns the function codes that have been recorded, including those
+     * that have only timed out or been retried
+     *
+     * @return Function codes in ascending order
+     */
+    public int[] getFunctionCodes() {
+        return getUsed(functionRequests, functionTimeouts, functionRetries);
+    }
+
+    /**
+     * Returns the unit IDs that have been recorded, including those that
+     * have only timed out or been retried
+     *
+     * @return Unit IDs in ascending order
+     */
+    public int[] getUnitIDs() {
+        return getUsed(unitRequests, unitTimeouts, unitRetries);
+    }
+
+    /**
+     * Returns the exception codes that have been recorded
+     *
+     * @return Exception codes in ascending order
+     */
+    public int[] getExceptionCodes() {
+        return getUsed(exceptionResponses);
+    }
+
+    /**
+     * Clears all the counters and histograms
+     */
+    public void reset() {
+        for (int i = 0; i < CODES; i++) {
+            functionRequests.set(i, 0);
+            unitRequests.set(i, 0);
+            exceptionResponses.set(i, 0);
+            functionTimeouts.set(i, 0);
+            unitTimeouts.set(i, 0);
+            functionRetries.set(i, 0);
+            unitRetries.set(i, 0);
+            LatencyHistogram histogram = functionLatency.get(i);
+            if (histogram != null) {
+                histogram.reset();
+            }
+        }
+        latency.reset();
+        queueWait.reset();
+        requests.set(0);
+        exceptions.set(0);
+        timeouts.set(0);
+        retries.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s requests=%d exceptions=%d timeouts=%d retries=%d latency(us) %s",
+                name, getRequestCount(), getExceptionCount(), getTimeoutCount(), getRetryCount(), latency.toString(1000.0));
+    }
+
+    /**
+     * Returns the histogram for the function code, creating it if needed
+     *
+     * @param code Function code
+     *
+     * @return Histogram
+     */
+    private LatencyHistogram getOrCreateLatency(int code) {
+        LatencyHistogram histogram = functionLatency.get(code);
+        if (histogram == null) {
+            functionLatency.compareAndSet(code, null, new LatencyHistogram());
+            histogram = functionLatency.get(code);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the indexes that are non-zero in any of the counters
+     *
+     * @param counters Counters to check, all of the same length
+     *
+     * @return Indexes in ascending order
+     */
+    private static int[] getUsed(AtomicLongArray... counters) {
+        int count = 0;
+        int[] used = new int[CODES];
+        for (int i = 0; i < CODES; i++) {
+            for (AtomicLongArray counter : counters) {
+                if (counter.get(i) > 0) {
+                    used[count++] = i;
+                    break;
+                }
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(used, 0, result, 0, count);
+        return result;
+    }
+}
@@ -35,65 +35,7 @@ public final class ModbusUtil {
 
     private static final Logger logger = LoggerFactory.getLogger(ModbusUtil.class);
 
-    /* Table of CRC values for high-order byte */
-    private final static short[] auchCRCHi = {
-            0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0,
-            0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41,
-            0x00, 0xC1, 0x81, 0x40, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0,
-            0x80, 0x41, 0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1, 0x81, 0x40,
-            0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1,
-            0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0, 0x80, 0x41,
-            0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1,
-            0x81, 0x40, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41,
-            0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0,
-            0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x00, 0xC1, 0x81, 0x40,
-            0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1,
-            0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1, 0x81, 0x40,
-            0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0,
-            0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x00, 0xC1, 0x81, 0x40,
-            0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0,
-            0x80, 0x41, 0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1, 0x81, 0x40,
-            0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0,
-            0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41,
-            0x00, 0xC1, 0x81, 0x40, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0,
-            0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41,
-            0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0,
-            0x80, 0x41, 0x00, 0xC1, 0x81, 0x40, 0x00, 0xC1, 0x81, 0x40,
-            0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0, 0x80, 0x41, 0x00, 0xC1,
-            0x81, 0x40, 0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41,
-            0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0,
-            0x80, 0x41, 0x00, 0xC1, 0x81, 0x40
-    };
-    /* Table of CRC values for low-order byte */
-    private final static short[] auchCRCLo = {
-            0x00, 0xC0, 0xC1, 0x01, 0xC3, 0x03, 0x02, 0xC2, 0xC6, 0x06,
-            0x07, 0xC7, 0x05, 0xC5, 0xC4, 0x04, 0xCC, 0x0C, 0x0D, 0xCD,
-            0x0F, 0xCF, 0xCE, 0x0E, 0x0A, 0xCA, 0xCB, 0x0B, 0xC9, 0x09,
-            0x08, 0xC8, 0xD8, 0x18, 0x19, 0xD9, 0x1B, 0xDB, 0xDA, 0x1A,
-            0x1E, 0xDE, 0xDF, 0x1F, 0xDD, 0x1D, 0x1C, 0xDC, 0x14, 0xD4,
-            0xD5, 0x15, 0xD7, 0x17, 0x16, 0xD6, 0xD2, 0x12, 0x13, 0xD3,
-            0x11, 0xD1, 0xD0, 0x10, 0xF0, 0x30, 0x31, 0xF1, 0x33, 0xF3,
-            0xF2, 0x32, 0x36, 0xF6, 0xF7, 0x37, 0xF5, 0x35, 0x34, 0xF4,
-            0x3C, 0xFC, 0xFD, 0x3D, 0xFF, 0x3F, 0x3E, 0xFE, 0xFA, 0x3A,
-            0x3B, 0xFB, 0x39, 0xF9, 0xF8, 0x38, 0x28, 0xE8, 0xE9, 0x29,
-            0xEB, 0x2B, 0x2A, 0xEA, 0xEE, 0x2E, 0x2F, 0xEF, 0x2D, 0xED,
-            0xEC, 0x2C, 0xE4, 0x24, 0x25, 0xE5, 0x27, 0xE7, 0xE6, 0x26,
-            0x22, 0xE2, 0xE3, 0x23, 0xE1, 0x21, 0x20, 0xE0, 0xA0, 0x60,
-            0x61, 0xA1, 0x63, 0xA3, 0xA2, 0x62, 0x66, 0xA6, 0xA7, 0x67,
-            0xA5, 0x65, 0x64, 0xA4, 0x6C, 0xAC, 0xAD, 0x6D, 0xAF, 0x6F,
-            0x6E, 0xAE, 0xAA, 0x6A, 0x6B, 0xAB, 0x69, 0xA9, 0xA8, 0x68,
-            0x78, 0xB8, 0xB9, 0x79, 0xBB, 0x7B, 0x7A, 0xBA, 0xBE, 0x7E,
-            0x7F, 0xBF, 0x7D, 0xBD, 0xBC, 0x7C, 0xB4, 0x74, 0x75, 0xB5,
-            0x77, 0xB7, 0xB6, 0x76, 0x72, 0xB2, 0xB3, 0x73, 0xB1, 0x71,
-            0x70, 0xB0, 0x50, 0x90, 0x91, 0x51, 0x93, 0x53, 0x52, 0x92,
-            0x96, 0x56, 0x57, 0x97, 0x55, 0x95, 0x94, 0x54, 0x9C, 0x5C,
-            0x5D, 0x9D, 0x5F, 0x9F, 0x9E, 0x5E, 0x5A, 0x9A, 0x9B, 0x5B,
-            0x99, 0x59, 0x58, 0x98, 0x88, 0x48, 0x49, 0x89, 0x4B, 0x8B,
-            0x8A, 0x4A, 0x4E, 0x8E, 0x8F, 0x4F, 0x8D, 0x4D, 0x4C, 0x8C,
-            0x44, 0x84, 0x85, 0x45, 0x87, 0x47, 0x46, 0x86, 0x82, 0x42,
-            0x43, 0x83, 0x41, 0x81, 0x80, 0x40
-    };
-    private static BytesOutputStream byteOutputStream = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
     /**
      * Converts a <tt>ModbusMessage</tt> instance into
@@ -104,17 +46,14 @@ public final class ModbusUtil {
      * @return the converted hex encoded string representation of the message.
      */
     public static String toHex(ModbusMessage msg) {
-        String ret = "-1";
         try {
-            synchronized (byteOutputStream) {
-                msg.writeTo(byteOutputStream);
-                ret = toHex(byteOutputStream.getBuffer(), 0, byteOutputStream.size());
-                byteOutputStream.reset();
-            }
+            BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH);
+            msg.writeTo(out);
+            return toHex(out.getBuffer(), 0, out.size());
         }
         catch (IOException ex) {
+            return "-1";
         }
-        return ret;
     }
 
     /**
@@ -143,19 +82,64 @@ public final class ModbusUtil {
      * @return the generated hexadecimal representation as <code>String</code>.
      */
     public static String toHex(byte[] data, int off, int length) {
-        //double size, two bytes (hex range) for one byte
-        StringBuilder buf = new StringBuilder(data.length * 2);
-        for (int i = off; i < length; i++) {
-            //don't forget the second hex digit
-            if (((int)data[i] & 0xff) < 0x10) {
-                buf.append("0");
-            }
-            buf.append(Long.toString((int)data[i] & 0xff, 16).toUpperCase());
-            if (i < data.length - 1) {
-                buf.append(" ");
+        int end = Math.min(data.length, off + length);
+        if (end <= off) {
+            return "";
+        }
+
+        // Two hex digits for each byte plus a separating space
+        char[] buf = new char[(end - off) * 3 - 1];
+        int pos = 0;
+        for (int i = off; i < end; i++) {
+            if (i > off) {
+                buf[pos++] = ' ';
             }
+            buf[pos++] = HEX_DIGITS[(data[i] >> 4) & 0x0F];
+            buf[pos++] = HEX_DIGITS[data[i] & 0x0F];
         }
-        return buf.toString();
+        return new String(buf);
+    }
+
+    /**
+     * Returns an object that converts the bytes to a hex encoded string when
+     * its <tt>toString()</tt> method is called.  Passing this to a logger
+     * instead of the result of {@link #toHex(byte[], int, int)} means the
+     * conversion only happens if the message is actually logged.
+     * <p>
+     * The bytes are not copied so the object must only be used before the
+     * buffer is changed, which is the case for the parameters of a log call.
+     *
+     * @param data   the array of bytes to be converted into a hex-string.
+     * @param off    the offset to start converting from.
+     * @param length the number of bytes to be converted.
+     *
+     * @return Lazy hex formatter
+     */
+    public static Object lazyHex(final byte[] data, final int off, final int length) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return toHex(data, off, length);
+            }
+        };
+    }
+
+    /**
+     * Returns an object that converts the message to a hex encoded string
+     * when its <tt>toString()</tt> method is called, so that the conversion
+     * only happens if the message is actually logged.
+     *
+     * @param msg the message to be converted.
+     *
+     * @return Lazy hex formatter
+     */
+    public static Object lazyHex(final ModbusMessage msg) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return msg == null ? "null" : toHex(msg);
+            }
+        };
     }
 
     /**
@@ -470,19 +454,25 @@ public final class ModbusUtil {
         return ((hi << 8) | low);
     }
 
+    /**
+     * Calculates the RTU CRC of the bytes from <tt>offset</tt> up to but not
+     * including <tt>len</tt>.
+     * <p>
+     * {@link ModbusChecksum#crc16(byte[], int, int)} calculates the same CRC
+     * without allocating an array for the result.
+     *
+     * @param data   Bytes to check
+     * @param offset Position of the first byte
+     * @param len    Position after the last byte
+     *
+     * @return CRC bytes in the order they are sent
+     */
     public static int[] calculateCRC(byte[] data, int offset, int len) {
-
-        int[] crc = {0xFF, 0xFF};
-        int nextByte;
-        int uIndex; /* will index into CRC lookup*/ /* table */
-    /* pass through message buffer */
-        for (int i = offset; i < len && i < data.length; i++) {
-            nextByte = 0xFF & ((int)data[i]);
-            uIndex = crc[0] ^ nextByte; //*puchMsg++; /* calculate the CRC */
-            crc[0] = crc[1] ^ auchCRCHi[uIndex];
-            crc[1] = auchCRCLo[uIndex];
+        int end = Math.min(len, data.length);
+        int crc = ModbusChecksum.CRC_INITIAL;
+        if (end > offset) {
+            crc = ModbusChecksum.crc16(data, offset, end - offset);
         }
-
-        return crc;
+        return new int[]{crc & 0xFF, crc >>> 8};
     }
-}
\ No newline at end of file
+}
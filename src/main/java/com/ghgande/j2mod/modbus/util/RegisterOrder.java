@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+/**
+ * The order in which the bytes of a value wider than one register are
+ * spread over its registers, named after the bytes of a 32-bit value
+ * <tt>ABCD</tt> with <tt>A</tt> the most significant.
+ * <p>
+ * The standard Modbus order is <tt>ABCD</tt>, big-endian words with the
+ * most significant word first.  Many devices put the least significant word
+ * first (<tt>CDAB</tt>), and some also swap the bytes of each register.
+ * For 64-bit values the words are reversed, or the bytes swapped, in the
+ * same way across all four registers.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public enum RegisterOrder {
+
+    /**
+     * Big-endian, most significant word first
+     */
+    ABCD(false, false),
+
+    /**
+     * Least significant word first, big-endian words
+     */
+    CDAB(true, false),
+
+    /**
+     * Most significant word first, bytes of each word swapped
+     */
+    BADC(false, true),
+
+    /**
+     * Little-endian, least significant word first with bytes swapped
+     */
+    DCBA(true, true);
+
+    private final boolean swapWords;
+    private final boolean swapBytes;
+
+    RegisterOrder(boolean swapWords, boolean swapBytes) {
+        this.swapWords = swapWords;
+        this.swapBytes = swapBytes;
+    }
+
+    /**
+     * Tests if the least significant register comes first
+     *
+     * @return True if the words are swapped
+     */
+    public boolean isSwapWords() {
+        return swapWords;
+    }
+
+    /**
+     * Tests if the bytes of each register are swapped
+     *
+     * @return True if the bytes are swapped
+     */
+    public boolean isSwapBytes() {
+        return swapBytes;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A <tt>MetricsRegistry</tt> that simply keeps the metrics in memory
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private final ConcurrentMap<String, ModbusMetrics> metrics = new ConcurrentHashMap<String, ModbusMetrics>();
+
+    @Override
+    public ModbusMetrics getMetrics(String name) {
+        ModbusMetrics existing = metrics.get(name);
+        if (existing == null) {
+            ModbusMetrics created = createMetrics(name);
+            existing = metrics.putIfAbsent(name, created);
+            if (existing == null) {
+                existing = created;
+                registered(created);
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public Collection<ModbusMetrics> getAllMetrics() {
+        return new ArrayList<ModbusMetrics>(metrics.values());
+    }
+
+    @Override
+    public void removeMetrics(String name) {
+        ModbusMetrics removed = metrics.remove(name);
+        if (removed != null) {
+            unregistered(removed);
+        }
+    }
+
+    /**
+     * Creates the metrics for a name - override to return a subclass
+     *
+     * @param name Name of the metrics
+     *
+     * @return New metrics
+     */
+    protected ModbusMetrics createMetrics(String name) {
+        return new ModbusMetrics(name);
+    }
+
+    /**
+     * Called when metrics are added to the registry so that subclasses can
+     * export them
+     *
+     * @param metrics Metrics added
+     */
+    protected void registered(ModbusMetrics metrics) {
+    }
+
+    /**
+     * Called when metrics are removed from the registry
+     *
+     * @param metrics Metrics removed
+     */
+    protected void unregistered(ModbusMetrics metrics) {
+    }
+}
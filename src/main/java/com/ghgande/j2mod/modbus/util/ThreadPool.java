@@ -21,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class implementing a simple thread pool.
@@ -37,6 +38,7 @@ public class ThreadPool {
     private List<PoolThread> threadPool = new ArrayList<PoolThread>();
     private int size = 1;
     private boolean running;
+    private final AtomicInteger active = new AtomicInteger();
 
     /**
      * Constructs a new <tt>ThreadPool</tt> instance.
@@ -66,6 +68,33 @@ public class ThreadPool {
         }
     }
 
+    /**
+     * Returns the number of threads in the pool
+     *
+     * @return Number of threads
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of threads currently running a task
+     *
+     * @return Number of busy threads
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of tasks waiting for a free thread
+     *
+     * @return Number of queued tasks
+     */
+    public int getQueueDepth() {
+        return taskPool.size();
+    }
+
     /**
      * Initializes the pool, populating it with
      * n started threads.
@@ -112,7 +141,14 @@ public class ThreadPool {
             do {
                 try {
                     logger.debug(this.toString());
-                    taskPool.take().run();
+                    Runnable task = taskPool.take();
+                    active.incrementAndGet();
+                    try {
+                        task.run();
+                    }
+                    finally {
+                        active.decrementAndGet();
+                    }
                 }
                 catch (Exception ex) {
                     if (running) {
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.PcapngReader;
+import com.ghgande.j2mod.modbus.io.PcapngWriter;
+import com.ghgande.j2mod.modbus.io.WireCapture;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.utils.ReplayingASCIITransport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+public class ASCIITransportTest {
+
+    private static byte[] request(int unitID, int reference) {
+        return ReplayingASCIITransport.asciiFrame((byte)unitID, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)0, (byte)reference, (byte)0, (byte)1);
+    }
+
+    @Test
+    public void testSkipsFramesForOtherUnits() throws Exception {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.write(request(7, 1));
+        // A frame cut short is ended by the start of the next one
+        line.write(":070300".getBytes());
+        line.write(request(5, 0x10));
+        ReplayingASCIITransport transport = new ReplayingASCIITransport(line.toByteArray());
+        transport.setUnitIDs(5);
+        ModbusRequest req = transport.readRequest();
+        Assert.assertEquals("Incorrect unit ID", 5, req.getUnitID());
+        Assert.assertEquals("Incorrect reference", 0x10, ((ReadMultipleRegistersRequest)req).getReference());
+    }
+
+    @Test
+    public void testFrameStartLeftForNextRead() throws Exception {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.write(":0703".getBytes());
+        line.write(request(5, 1));
+        line.write(request(6, 2));
+        ReplayingASCIITransport transport = new ReplayingASCIITransport(line.toByteArray());
+        transport.setUnitIDs(5, 6);
+        Assert.assertEquals("Unit 5 frame should follow the skipped frame", 5, transport.readRequest().getUnitID());
+        Assert.assertEquals("Unit 6 frame should follow", 6, transport.readRequest().getUnitID());
+    }
+
+    @Test(expected = ModbusIOException.class)
+    public void testIdleLine() throws Exception {
+        ReplayingASCIITransport transport = new ReplayingASCIITransport(request(7, 1));
+        transport.setUnitIDs(5);
+        transport.readRequest();
+    }
+
+    @Test
+    public void testCaptureRecordsBadFrame() throws Exception {
+        byte[] bad = request(5, 1);
+        bad[bad.length - 3] = bad[bad.length - 3] == '0' ? (byte)'1' : (byte)'0';
+        byte[] good = request(5, 2);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.write(bad);
+        line.write(good);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        WireCapture capture = new WireCapture(file, WireCapture.DEFAULT_CAPACITY);
+        ReplayingASCIITransport transport = new ReplayingASCIITransport(line.toByteArray());
+        transport.setUnitIDs(5);
+        transport.addTransportListener(capture);
+        Assert.assertEquals("Frame with a bad LRC should be skipped", 2, ((ReadMultipleRegistersRequest)transport.readRequest()).getReference());
+        capture.close();
+
+        PcapngReader reader = new PcapngReader(new ByteArrayInputStream(file.toByteArray()));
+        for (byte[] frame : new byte[][]{bad, good}) {
+            PcapngReader.Packet packet = reader.readPacket();
+            Assert.assertNotNull("Frame should be captured", packet);
+            Assert.assertEquals("Incorrect link type", PcapngWriter.LINKTYPE_USER1, packet.getLinkType());
+            Assert.assertArrayEquals("Frame should be captured as received", frame, packet.getData());
+        }
+        Assert.assertNull("Only two frames should be captured", reader.readPacket());
+    }
+}
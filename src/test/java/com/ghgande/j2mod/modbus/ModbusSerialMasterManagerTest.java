@@ -0,0 +1,279 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusSerialMasterManager;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.net.SerialConnection;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ModbusSerialMasterManagerTest {
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long delay;
+    private volatile CyclicBarrier barrier;
+    private volatile boolean closedInFlight;
+    private ModbusSerialMasterManager manager;
+
+    /**
+     * Transaction that answers every request itself, taking the configured
+     * time and ignoring interrupts like a read from a serial port
+     */
+    private class FakeTransaction extends ModbusTransaction {
+        @Override
+        public void execute() throws ModbusException {
+            int running = inFlight.incrementAndGet();
+            try {
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), running));
+                }
+                sent.add(Thread.currentThread().getName() + ":" + request.getUnitID() + ":" + ((ReadMultipleRegistersRequest)request).getReference());
+                if (barrier != null) {
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (Exception e) {
+                        throw new ModbusException("Buses did not run in parallel", e);
+                    }
+                }
+                boolean interrupted = false;
+                long end = System.nanoTime() + delay * 1000000L;
+                long remaining;
+                while ((remaining = end - System.nanoTime()) > 0) {
+                    try {
+                        Thread.sleep(Math.max(1, remaining / 1000000L));
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                response = ModbusResponse.createModbusResponse(request.getFunctionCode());
+                response.setUnitID(request.getUnitID());
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private ModbusSerialMasterManager createManager(String... ports) throws Exception {
+        manager = new ModbusSerialMasterManager() {
+            @Override
+            protected ModbusTransaction openTransaction(SerialConnection connection) {
+                return new FakeTransaction();
+            }
+
+            @Override
+            protected void closeConnection(SerialConnection connection) {
+                if (inFlight.get() > 0) {
+                    closedInFlight = true;
+                }
+            }
+        };
+        for (String port : ports) {
+            SerialParameters params = new SerialParameters();
+            params.setPortName(port);
+            manager.addPort(params);
+        }
+        manager.connect();
+        return manager;
+    }
+
+    private static ReadMultipleRegistersRequest request(int unitId, int reference) {
+        ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(reference, 1);
+        request.setUnitID(unitId);
+        return request;
+    }
+
+    @After
+    public void tearDown() {
+        if (manager != null) {
+            manager.disconnect();
+        }
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        createManager("COM1", "COM2");
+        manager.mapUnit(1, "COM1");
+        manager.mapUnit(2, "COM2");
+        Assert.assertEquals("Incorrect port", "COM2", manager.getPortName(2));
+
+        Assert.assertEquals("Incorrect unit ID", 1, manager.execute(request(1, 10)).getUnitID());
+        Assert.assertEquals("Incorrect unit ID", 2, manager.execute(request(2, 20)).getUnitID());
+        Assert.assertEquals("Incorrect requests", "[j2mod-serial-COM1:1:10, j2mod-serial-COM2:2:20]", sent.toString());
+        Assert.assertEquals("Incorrect completed count", 1, manager.getCompletedCount("COM1"));
+        Assert.assertEquals("Incorrect completed count", 2, manager.getCompletedCount());
+
+        manager.unmapUnit(2);
+        try {
+            manager.execute(request(2, 20));
+            Assert.fail("Unmapped unit should be rejected");
+        }
+        catch (ModbusException e) {
+            Assert.assertNull("Unit should not be mapped", manager.getPortName(2));
+        }
+    }
+
+    @Test
+    public void testSameUnitOnTwoPorts() throws Exception {
+        createManager("COM1", "COM2");
+        manager.mapUnit(1, "COM1");
+        manager.mapUnit(1, "COM2");
+        Assert.assertNull("Unit on two ports has no single port", manager.getPortName(1));
+        Assert.assertEquals("Incorrect ports", "[COM1, COM2]", manager.getPortNames(1).toString());
+
+        Assert.assertEquals("Incorrect unit ID", 1, manager.execute("COM2", request(1, 20)).getUnitID());
+        Assert.assertEquals("Incorrect unit ID", 1, manager.submit("COM1", request(1, 10)).get(10, TimeUnit.SECONDS).getUnitID());
+        Assert.assertEquals("Incorrect requests", "[j2mod-serial-COM2:1:20, j2mod-serial-COM1:1:10]", sent.toString());
+        try {
+            manager.execute(request(1, 30));
+            Assert.fail("Unit on two ports should need a port name");
+        }
+        catch (ModbusException e) {
+            Assert.assertEquals("Nothing should be sent", 2, sent.size());
+        }
+
+        manager.unmapUnit(1, "COM1");
+        Assert.assertEquals("Incorrect port", "COM2", manager.getPortName(1));
+        Assert.assertEquals("Incorrect unit ID", 1, manager.execute(request(1, 40)).getUnitID());
+        try {
+            manager.execute("COM1", request(1, 50));
+            Assert.fail("Unit should no longer be mapped to COM1");
+        }
+        catch (ModbusException e) {
+            Assert.assertEquals("Nothing should be sent", 3, sent.size());
+        }
+    }
+
+    @Test
+    public void testOrderingOnBus() throws Exception {
+        createManager("COM1");
+        manager.mapUnit(1, "COM1");
+        manager.mapUnit(2, "COM1");
+        delay = 1;
+        List<Future<ModbusResponse>> futures = new ArrayList<Future<ModbusResponse>>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(manager.submit(request(1 + i % 2, i)));
+            expected.add("j2mod-serial-COM1:" + (1 + i % 2) + ":" + i);
+        }
+        for (Future<ModbusResponse> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals("Requests should be sent in the order submitted", expected, sent);
+        Assert.assertEquals("Only one request should be on the bus at a time", 1, maxInFlight.get());
+    }
+
+    @Test
+    public void testParallelBuses() throws Exception {
+        createManager("COM1", "COM2");
+        manager.mapUnit(1, "COM1");
+        manager.mapUnit(2, "COM2");
+
+        // Each request waits for the other, so they only complete if the buses run in parallel
+        barrier = new CyclicBarrier(2);
+        Future<ModbusResponse> first = manager.submit(request(1, 0));
+        Future<ModbusResponse> second = manager.submit(request(2, 0));
+        Assert.assertEquals("Incorrect unit ID", 1, first.get(10, TimeUnit.SECONDS).getUnitID());
+        Assert.assertEquals("Incorrect unit ID", 2, second.get(10, TimeUnit.SECONDS).getUnitID());
+        Assert.assertEquals("Both buses should have been busy", 2, maxInFlight.get());
+    }
+
+    @Test
+    public void testCloseWithRequestInFlight() throws Exception {
+        createManager("COM1");
+        manager.mapUnit(1, "COM1");
+        delay = 300;
+        Future<ModbusResponse> sending = manager.submit(request(1, 0));
+        Future<ModbusResponse> queued = manager.submit(request(1, 1));
+        long start = System.nanoTime();
+        while (inFlight.get() == 0) {
+            Assert.assertTrue("Request was not sent", System.nanoTime() - start < 5000000000L);
+            Thread.sleep(1);
+        }
+
+        manager.disconnect();
+        Assert.assertFalse("Port was closed with a request in flight", closedInFlight);
+        Assert.assertTrue("Queued request should be cancelled", queued.isCancelled());
+        Assert.assertEquals("Request in flight should complete", 1, sending.get(1, TimeUnit.SECONDS).getUnitID());
+        Assert.assertEquals("Queued request should not be sent", 1, sent.size());
+        try {
+            manager.submit(request(1, 2));
+            Assert.fail("Closed port should reject requests");
+        }
+        catch (ModbusException e) {
+            Assert.assertEquals("Nothing should be queued", 0, manager.getQueueDepth());
+        }
+    }
+
+    @Test
+    public void testPortsCloseTogether() throws Exception {
+        createManager("COM1", "COM2", "COM3", "COM4");
+        for (int port = 1; port <= 4; port++) {
+            manager.mapUnit(port, "COM" + port);
+        }
+        delay = 300;
+        List<Future<ModbusResponse>> sending = new ArrayList<Future<ModbusResponse>>();
+        for (int port = 1; port <= 4; port++) {
+            sending.add(manager.submit(request(port, 0)));
+        }
+        long start = System.nanoTime();
+        while (inFlight.get() < 4) {
+            Assert.assertTrue("Requests were not sent", System.nanoTime() - start < 5000000000L);
+            Thread.sleep(1);
+        }
+
+        final CountDownLatch getterDone = new CountDownLatch(1);
+        final long[] getterTime = new long[1];
+        Thread getter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long called = System.nanoTime();
+                manager.getQueueDepth();
+                getterTime[0] = System.nanoTime() - called;
+                getterDone.countDown();
+            }
+        });
+        start = System.nanoTime();
+        getter.start();
+        manager.disconnect();
+        long elapsed = System.nanoTime() - start;
+        Assert.assertTrue("Getter should return", getterDone.await(5, TimeUnit.SECONDS));
+
+        for (Future<ModbusResponse> future : sending) {
+            Assert.assertTrue("Request in flight should complete", future.isDone());
+        }
+        Assert.assertTrue("Ports should be waited for together, took " + elapsed / 1000000L + "ms", elapsed < 4 * 300 * 1000000L);
+        Assert.assertTrue("Getter should not wait for the ports to close", getterTime[0] < 200 * 1000000L);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.sim.ModbusSimulator;
+import com.ghgande.j2mod.modbus.sim.RegisterDynamics;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.Assert.*;
+
+public class ModbusSimulatorTest {
+
+    private static final int FIRST_PORT = 2502;
+    private static final int PORTS = 2;
+    private static ModbusSimulator simulator;
+    private static ArrayProcessImage shared;
+    private static ArrayProcessImage ramp;
+
+    @BeforeClass
+    public static void setUpSimulator() throws Exception {
+        simulator = new ModbusSimulator(InetAddress.getLoopbackAddress());
+        simulator.setUpdateInterval(10);
+        shared = new ArrayProcessImage(0, 100);
+        simulator.addDevices(FIRST_PORT, PORTS, 1, 10, new ModbusSimulator.ImageFactory() {
+            @Override
+            public ArrayProcessImage createImage(int port, int unitId) {
+                return unitId == 1 ? new ArrayProcessImage(unitId, 100) : shared;
+            }
+        });
+        ramp = new ArrayProcessImage(20, 10);
+        simulator.addDevice(FIRST_PORT, ramp);
+        simulator.addDynamics(ramp, RegisterDynamics.parse("replay ir 0 7,8 60000"));
+        simulator.start();
+    }
+
+    @AfterClass
+    public static void tearDownSimulator() {
+        simulator.stop();
+    }
+
+    @Test
+    public void testDeviceCount() {
+        assertEquals("Incorrect device count", PORTS * 10 + 1, simulator.getDeviceCount());
+        assertEquals("Incorrect port count", PORTS, simulator.getPorts().size());
+    }
+
+    @Test
+    public void testDevicesAreIndependentPerPort() throws Exception {
+        ModbusTCPMaster first = new ModbusTCPMaster("127.0.0.1", FIRST_PORT);
+        ModbusTCPMaster second = new ModbusTCPMaster("127.0.0.1", FIRST_PORT + 1);
+        try {
+            first.connect();
+            second.connect();
+            first.writeSingleRegister(1, 5, new SimpleRegister(1234));
+            assertEquals("Register should be written", 1234, first.readMultipleRegisters(1, 5, 1)[0].getValue());
+            assertEquals("Unit 1 on another port is a different device", 0, second.readMultipleRegisters(1, 5, 1)[0].getValue());
+
+            second.writeMultipleRegisters(2, 10, new Register[]{new SimpleRegister(1), new SimpleRegister(2)});
+            assertEquals("Shared image should be seen by every device", 2, first.readMultipleRegisters(9, 11, 1)[0].getValue());
+        }
+        finally {
+            first.disconnect();
+            second.disconnect();
+        }
+    }
+
+    @Test
+    public void testCoilsAndExceptions() throws Exception {
+        ModbusTCPMaster master = new ModbusTCPMaster("127.0.0.1", FIRST_PORT);
+        try {
+            master.connect();
+            BitVector coils = new BitVector(10);
+            coils.setBit(3, true);
+            coils.setBit(9, true);
+            master.writeMultipleCoils(1, 0, coils);
+            BitVector read = master.readCoils(1, 0, 10);
+            assertTrue("Coil 3 should be set", read.getBit(3));
+            assertTrue("Coil 9 should be set", read.getBit(9));
+            assertFalse("Coil 4 should not be set", read.getBit(4));
+
+            try {
+                master.readMultipleRegisters(99, 0, 1);
+                fail("Unknown unit should fail");
+            }
+            catch (ModbusSlaveException e) {
+                assertEquals("Unknown unit should be a gateway exception", Modbus.GATEWAY_TARGET_NO_RESPONSE, e.getType());
+            }
+            try {
+                master.readMultipleRegisters(1, 99, 2);
+                fail("Out of range read should fail");
+            }
+            catch (ModbusSlaveException e) {
+                assertEquals("Out of range read should be an address exception", Modbus.ILLEGAL_ADDRESS_EXCEPTION, e.getType());
+            }
+        }
+        finally {
+            master.disconnect();
+        }
+    }
+
+    @Test
+    public void testDynamics() throws Exception {
+        ModbusTCPMaster master = new ModbusTCPMaster("127.0.0.1", FIRST_PORT);
+        try {
+            master.connect();
+            assertEquals("Replay should start with the first value", 7, master.readInputRegisters(20, 0, 1)[0].getValue());
+        }
+        finally {
+            master.disconnect();
+        }
+        assertEquals("Ramp should reach half way", 500, RegisterDynamics.ramp(RegisterDynamics.HOLDING_REGISTER, 0, 0, 1000, 100).getValue(150));
+        assertEquals("Replay should step through the values", 8,
+                RegisterDynamics.replay(RegisterDynamics.INPUT_REGISTER, 0, new int[]{7, 8}, 10).getValue(15));
+        RegisterDynamics noise = RegisterDynamics.noise(RegisterDynamics.INPUT_REGISTER, 0, 100, 5, 1);
+        for (int i = 0; i < 100; i++) {
+            int value = noise.getValue(i);
+            assertTrue("Noise should stay within its amplitude", value >= 95 && value <= 105);
+        }
+    }
+}
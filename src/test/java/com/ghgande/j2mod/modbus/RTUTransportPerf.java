@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusRTUTransport;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbus;
+import com.ghgande.j2mod.modbus.utils.PerfMeter;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the RTU transport decoding responses from memory, so that the
+ * framing and CRC checks are covered without a serial port, and fails if the
+ * rate, latency or allocation has regressed
+ */
+public class RTUTransportPerf extends AbstractTestModbus {
+
+    private static final int REGISTERS = 10;
+
+    /**
+     * RTU transport that reads the same frame over and over instead of
+     * reading from the serial port
+     */
+    private static class ReplayingRTUTransport extends ModbusRTUTransport {
+        private final byte[] frame;
+        private int pos;
+
+        ReplayingRTUTransport(byte[] frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        protected int readByte() throws IOException {
+            int value = frame[pos] & 0xFF;
+            pos = (pos + 1) % frame.length;
+            return value;
+        }
+
+        @Override
+        protected void readBytes(byte[] buffer, long bytesToRead) throws IOException {
+            for (int i = 0; i < bytesToRead; i++) {
+                buffer[i] = (byte)readByte();
+            }
+        }
+    }
+
+    @Test
+    public void testReadHoldingRegistersResponse() throws Exception {
+        byte[] frame = new byte[5 + REGISTERS * 2];
+        frame[0] = UNIT_ID;
+        frame[1] = Modbus.READ_HOLDING_REGISTERS;
+        frame[2] = REGISTERS * 2;
+        for (int i = 0; i < REGISTERS; i++) {
+            frame[3 + i * 2] = (byte)(i >> 8);
+            frame[4 + i * 2] = (byte)i;
+        }
+        int[] crc = ModbusUtil.calculateCRC(frame, 0, frame.length - 2);
+        frame[frame.length - 2] = (byte)crc[0];
+        frame[frame.length - 1] = (byte)crc[1];
+
+        final ReplayingRTUTransport transport = new ReplayingRTUTransport(frame);
+        ReadMultipleRegistersResponse res = (ReadMultipleRegistersResponse)transport.readResponse();
+        assertEquals("Incorrect register count", REGISTERS, res.getWordCount());
+        assertEquals("Incorrect register value", REGISTERS - 1, res.getRegisterValue(REGISTERS - 1));
+
+        PerfMeter.check(PerfMeter.measure("rtu.readHoldingRegistersResponse", new PerfMeter.Operation() {
+            public void execute() throws Exception {
+                transport.readResponse();
+            }
+        }));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.PcapngReader;
+import com.ghgande.j2mod.modbus.io.PcapngWriter;
+import com.ghgande.j2mod.modbus.io.WireCapture;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.utils.ReplayingRTUTransport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+public class RTUTransportTest {
+
+    private static final byte[] RESPONSE = ReplayingRTUTransport.withCRC((byte)1, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)4, (byte)0x12, (byte)0x34, (byte)0x56, (byte)0x78);
+
+    @Test
+    public void testValidCRC() throws Exception {
+        ReadMultipleRegistersResponse res = (ReadMultipleRegistersResponse)new ReplayingRTUTransport(RESPONSE).readResponse();
+        Assert.assertEquals("Incorrect register value", 0x1234, res.getRegisterValue(0));
+        Assert.assertEquals("Incorrect register value", 0x5678, res.getRegisterValue(1));
+    }
+
+    @Test
+    public void testEitherCRCByteWrong() throws Exception {
+        for (int i = RESPONSE.length - 2; i < RESPONSE.length; i++) {
+            byte[] frame = RESPONSE.clone();
+            frame[i] ^= 0x01;
+            try {
+                new ReplayingRTUTransport(frame).readResponse();
+                Assert.fail("Frame with CRC byte " + i + " wrong should be rejected");
+            }
+            catch (ModbusIOException e) {
+                Assert.assertTrue("Should be reported as a CRC error", e.getMessage().contains("CRC"));
+            }
+        }
+    }
+
+    @Test
+    public void testSkipsFramesForOtherUnits() throws Exception {
+        // The frame for unit 7 is too short to decode, so it must not be read as a request
+        ReplayingRTUTransport transport = new ReplayingRTUTransport(
+                new byte[]{7, Modbus.READ_HOLDING_REGISTERS, 0x00},
+                ReplayingRTUTransport.withCRC((byte)7, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)0, (byte)1, (byte)0, (byte)1),
+                ReplayingRTUTransport.withCRC((byte)5, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)0, (byte)0x10, (byte)0, (byte)2));
+        transport.setUnitIDs(5, 6);
+        ModbusRequest req = transport.readRequest();
+        Assert.assertNotNull("Request for unit 5 should be read", req);
+        Assert.assertEquals("Incorrect unit ID", 5, req.getUnitID());
+        Assert.assertEquals("Incorrect reference", 0x10, ((ReadMultipleRegistersRequest)req).getReference());
+        Assert.assertEquals("Incorrect word count", 2, ((ReadMultipleRegistersRequest)req).getWordCount());
+    }
+
+    @Test
+    public void testIdleLine() throws Exception {
+        ReplayingRTUTransport transport = new ReplayingRTUTransport();
+        transport.setUnitIDs(5);
+        Assert.assertNull("Idle line should not return a request", transport.readRequest());
+
+        transport = new ReplayingRTUTransport(ReplayingRTUTransport.withCRC((byte)7, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)0, (byte)1, (byte)0, (byte)1));
+        transport.setUnitIDs(5);
+        Assert.assertNull("Line with only other units should not return a request", transport.readRequest());
+    }
+
+    @Test
+    public void testUnitsServedByCoupler() throws Exception {
+        ModbusCoupler.getReference().setProcessImage(new SimpleProcessImage(201));
+        ReplayingRTUTransport transport = new ReplayingRTUTransport(
+                ReplayingRTUTransport.withCRC((byte)201, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)0, (byte)1, (byte)0, (byte)1),
+                ReplayingRTUTransport.withCRC((byte)202, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)0, (byte)2, (byte)0, (byte)1),
+                ReplayingRTUTransport.withCRC((byte)201, (byte)Modbus.READ_HOLDING_REGISTERS, (byte)0, (byte)3, (byte)0, (byte)1));
+
+        // Only unit 202 is served until the unit IDs are cleared
+        transport.setUnitIDs(202);
+        Assert.assertEquals("Unit 202 should be served", 202, transport.readRequest().getUnitID());
+        transport.setUnitIDs();
+        ModbusRequest req = transport.readRequest();
+        Assert.assertEquals("Unit 201 has a process image", 201, req.getUnitID());
+        Assert.assertEquals("Incorrect reference", 3, ((ReadMultipleRegistersRequest)req).getReference());
+    }
+
+    @Test
+    public void testCaptureRecordsBadFrame() throws Exception {
+        byte[] frame = RESPONSE.clone();
+        frame[frame.length - 1] ^= 0x01;
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        WireCapture capture = new WireCapture(file, WireCapture.DEFAULT_CAPACITY);
+        ReplayingRTUTransport transport = new ReplayingRTUTransport(frame);
+        transport.addTransportListener(capture);
+        try {
+            transport.readResponse();
+            Assert.fail("Frame with a bad CRC should be rejected");
+        }
+        catch (ModbusIOException e) {
+            // Expected
+        }
+        capture.close();
+
+        PcapngReader reader = new PcapngReader(new ByteArrayInputStream(file.toByteArray()));
+        PcapngReader.Packet packet = reader.readPacket();
+        Assert.assertNotNull("Bad frame should be captured", packet);
+        Assert.assertEquals("Incorrect link type", PcapngWriter.LINKTYPE_USER0, packet.getLinkType());
+        Assert.assertArrayEquals("Frame should be captured as received", frame, packet.getData());
+        Assert.assertNull("Only one frame should be captured", reader.readPacket());
+    }
+}
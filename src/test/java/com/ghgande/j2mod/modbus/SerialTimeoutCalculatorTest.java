@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.ghgande.j2mod.modbus.io.SerialTimeoutCalculator;
+import com.ghgande.j2mod.modbus.msg.ReadCoilsRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.WriteCoilRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerialTimeoutCalculatorTest {
+
+    @Test
+    public void testExpectedResponseLength() {
+        Assert.assertEquals("Write coil response should be 8 bytes", 8,
+                SerialTimeoutCalculator.getExpectedResponseLength(new WriteCoilRequest(1, true)));
+        Assert.assertEquals("Read 10 registers response should be 25 bytes", 25,
+                SerialTimeoutCalculator.getExpectedResponseLength(new ReadMultipleRegistersRequest(0, 10)));
+        Assert.assertEquals("Read 9 coils response should be 7 bytes", 7,
+                SerialTimeoutCalculator.getExpectedResponseLength(new ReadCoilsRequest(0, 9)));
+    }
+
+    @Test
+    public void testCharacterTime() {
+        SerialTimeoutCalculator calc = new SerialTimeoutCalculator(9600, 8, SerialPort.ONE_STOP_BIT, SerialPort.EVEN_PARITY, false);
+        Assert.assertEquals("11 bits at 9600 baud", 11 * 1000000000.0 / 9600, calc.getCharacterTime(), 0.001);
+        calc = new SerialTimeoutCalculator(19200, 8, SerialPort.TWO_STOP_BITS, SerialPort.NO_PARITY, false);
+        Assert.assertEquals("11 bits at 19200 baud", 11 * 1000000000.0 / 19200, calc.getCharacterTime(), 0.001);
+    }
+
+    @Test
+    public void testResponseTimeout() {
+        SerialTimeoutCalculator calc = new SerialTimeoutCalculator(9600, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY, false);
+        int timeout = calc.getResponseTimeout(new WriteCoilRequest(1, true), Modbus.DEFAULT_TIMEOUT);
+        Assert.assertTrue("Timeout for an 8 byte reply should be tens of milliseconds, was " + timeout, timeout < 100);
+        Assert.assertTrue("Timeout must allow for the turnaround", timeout >= SerialTimeoutCalculator.DEFAULT_TURNAROUND);
+        Assert.assertEquals("Timeout must be limited to the maximum", 40, calc.getResponseTimeout(new ReadMultipleRegistersRequest(0, 125), 40));
+    }
+
+    @Test
+    public void testLearning() {
+        SerialTimeoutCalculator calc = new SerialTimeoutCalculator(115200, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY, false);
+        calc.setLearning(true);
+        WriteCoilRequest request = new WriteCoilRequest(1, true);
+        request.setUnitID(7);
+        for (int i = 0; i < 20; i++) {
+            calc.recordResponse(request, 2000000L);
+        }
+        int learnt = calc.getResponseTimeout(request, Modbus.DEFAULT_TIMEOUT);
+        Assert.assertEquals("Learnt timeout should fall to the minimum", SerialTimeoutCalculator.DEFAULT_MINIMUM_TIMEOUT, learnt);
+
+        request.setUnitID(8);
+        Assert.assertTrue("Other units should use the default turnaround",
+                calc.getResponseTimeout(request, Modbus.DEFAULT_TIMEOUT) >= SerialTimeoutCalculator.DEFAULT_TURNAROUND);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusTCPMaster;
+import com.ghgande.j2mod.modbus.utils.PerfMeter;
+import org.junit.Test;
+
+/**
+ * Measures the TCP master against the same test slave as the read and write
+ * tests and fails if the rate, latency or allocation has regressed
+ */
+public class TCPMasterReadPerf extends AbstractTestModbusTCPMaster {
+
+    @Test
+    public void testReadHoldingRegisters() throws Exception {
+        PerfMeter.check(PerfMeter.measure("tcp.readHoldingRegisters", new PerfMeter.Operation() {
+            public void execute() throws Exception {
+                master.readMultipleRegisters(UNIT_ID, 0, 5);
+            }
+        }));
+    }
+
+    @Test
+    public void testReadCoils() throws Exception {
+        PerfMeter.check(PerfMeter.measure("tcp.readCoils", new PerfMeter.Operation() {
+            public void execute() throws Exception {
+                master.readCoils(UNIT_ID, 0, 2);
+            }
+        }));
+    }
+
+    @Test
+    public void testWriteSingleRegister() throws Exception {
+        final SimpleRegister register = new SimpleRegister(4444);
+        PerfMeter.check(PerfMeter.measure("tcp.writeSingleRegister", new PerfMeter.Operation() {
+            public void execute() throws Exception {
+                master.writeSingleRegister(UNIT_ID, 4, register);
+            }
+        }));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.TraceSink;
+import com.ghgande.j2mod.modbus.io.TransactionTrace;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import com.ghgande.j2mod.modbus.utils.StaleResponseSlave;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests how a TCP master accounts for responses that carry the
+ * wrong transaction ID
+ */
+public class TestModbusTCPRetries {
+
+    private static final int UNIT_ID = 1;
+
+    @Test
+    public void testMismatchIsTracedAsRetry() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        StaleResponseSlave slave = new StaleResponseSlave(1);
+        slave.start();
+        TCPMasterConnection connection = connect(slave);
+        try {
+            ModbusTCPTransaction transaction = createTransaction(connection);
+            transaction.setTraceSink(sink);
+            transaction.execute();
+        }
+        finally {
+            connection.close();
+            slave.close();
+        }
+        assertEquals("Retried transaction should be reported", 1, sink.traces.size());
+        TransactionTrace trace = sink.traces.get(0);
+        assertEquals("Retry should be recorded", 1, trace.getRetries());
+        assertEquals("Retry reason should be recorded", 1, trace.getRetryReasons().size());
+        assertTrue("Retry reason should be the mismatch", trace.getRetryReasons().get(0).contains("Transaction ID mismatch"));
+        assertNull("There should be no error", trace.getError());
+    }
+
+    @Test
+    public void testMismatchesUseUpRetries() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        StaleResponseSlave slave = new StaleResponseSlave(Modbus.DEFAULT_RETRIES + 1);
+        slave.start();
+        TCPMasterConnection connection = connect(slave);
+        try {
+            ModbusTCPTransaction transaction = createTransaction(connection);
+            transaction.setTraceSink(sink);
+            try {
+                transaction.execute();
+                fail("Transaction should fail once the retries are used up");
+            }
+            catch (ModbusIOException e) {
+                // Expected
+            }
+        }
+        finally {
+            connection.close();
+            slave.close();
+        }
+        assertEquals("Failed transaction should be reported", 1, sink.traces.size());
+        TransactionTrace trace = sink.traces.get(0);
+        assertEquals("Every mismatch before the last attempt should be a retry", Modbus.DEFAULT_RETRIES - 1, trace.getRetries());
+        assertEquals("Retry reasons should be recorded", Modbus.DEFAULT_RETRIES - 1, trace.getRetryReasons().size());
+        assertNotNull("Failure should be recorded", trace.getError());
+    }
+
+    @Test
+    public void testMismatchIsCountedAsRetry() throws Exception {
+        ModbusMetrics metrics = new ModbusMetrics("stale");
+        StaleResponseSlave slave = new StaleResponseSlave(1);
+        slave.start();
+        TCPMasterConnection connection = connect(slave);
+        try {
+            ModbusTCPTransaction transaction = createTransaction(connection);
+            transaction.setMetrics(metrics);
+            transaction.execute();
+        }
+        finally {
+            connection.close();
+            slave.close();
+        }
+        assertEquals("Incorrect retry count", 1, metrics.getRetryCount());
+        assertEquals("Incorrect FC3 retry count", 1, metrics.getRetryCount(Modbus.READ_MULTIPLE_REGISTERS));
+        assertEquals("Incorrect unit retry count", 1, metrics.getUnitRetryCount(UNIT_ID));
+        assertEquals("There should be no timeouts", 0, metrics.getTimeoutCount());
+    }
+
+    @Test
+    public void testFailedConnectionIsCountedAsTimeout() throws Exception {
+        ModbusMetrics metrics = new ModbusMetrics("unreachable");
+        StaleResponseSlave slave = new StaleResponseSlave(0);
+        TCPMasterConnection connection = new TCPMasterConnection(InetAddress.getByName("127.0.0.1"));
+        connection.setPort(slave.getPort());
+        slave.close();
+        ModbusTCPTransaction transaction = createTransaction(connection);
+        transaction.setMetrics(metrics);
+        try {
+            transaction.execute();
+            fail("Transaction should fail when the slave cannot be reached");
+        }
+        catch (ModbusIOException e) {
+            // Expected
+        }
+        assertEquals("Incorrect timeout count", 1, metrics.getTimeoutCount());
+        assertEquals("Incorrect FC3 timeout count", 1, metrics.getTimeoutCount(Modbus.READ_MULTIPLE_REGISTERS));
+        assertEquals("Incorrect unit timeout count", 1, metrics.getUnitTimeoutCount(UNIT_ID));
+    }
+
+    /**
+     * Opens a connection to the slave
+     *
+     * @param slave Slave to connect to
+     *
+     * @return Open connection
+     *
+     * @throws Exception if the connection cannot be opened
+     */
+    private static TCPMasterConnection connect(StaleResponseSlave slave) throws Exception {
+        TCPMasterConnection connection = new TCPMasterConnection(InetAddress.getByName("127.0.0.1"));
+        connection.setPort(slave.getPort());
+        connection.connect();
+        return connection;
+    }
+
+    /**
+     * Creates a transaction reading one register, with a transaction ID so
+     * that the response is checked against it
+     *
+     * @param connection Connection to use
+     *
+     * @return Transaction
+     */
+    private static ModbusTCPTransaction createTransaction(TCPMasterConnection connection) {
+        ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(0, 1);
+        request.setUnitID(UNIT_ID);
+        request.setTransactionID(5);
+        ModbusTCPTransaction transaction = new ModbusTCPTransaction(connection);
+        transaction.setRequest(request);
+        return transaction;
+    }
+
+    /**
+     * Keeps every trace reported
+     */
+    private static class CollectingSink implements TraceSink {
+        private final List<TransactionTrace> traces = new ArrayList<TransactionTrace>();
+
+        @Override
+        public void traceEvent(TransactionTrace trace) {
+            traces.add(trace);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.io.PcapngWriter;
+import com.ghgande.j2mod.modbus.io.WireCapture;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusUDPMaster;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests capturing the traffic of a master and a slave
+ */
+public class TestModbusUDPCapture extends AbstractTestModbusUDPMaster {
+
+    @Test
+    public void testCaptureMasterTraffic() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WireCapture capture = new WireCapture(out, WireCapture.DEFAULT_CAPACITY);
+        master.getTransport().addTransportListener(capture);
+        try {
+            master.readMultipleRegisters(UNIT_ID, 0, 1);
+        }
+        finally {
+            master.getTransport().removeTransportListener(capture);
+            capture.close();
+        }
+        assertEquals("Request and response should be captured", 2, capture.getCapturedCount());
+        assertEquals("Nothing should be dropped", 0, capture.getDroppedCount());
+
+        List<byte[]> packets = readPackets(out.toByteArray());
+        assertEquals("Incorrect number of packets", 2, packets.size());
+
+        // IPv4 + UDP headers followed by the MBAP header and a FC3 request
+        byte[] request = packets.get(0);
+        assertEquals("Should be an IPv4 packet", 0x45, request[0]);
+        assertEquals("Should be a UDP packet", 17, request[9]);
+        assertEquals("Incorrect destination port", PORT, ((request[22] & 0xFF) << 8) | (request[23] & 0xFF));
+        assertEquals("Incorrect unit ID", UNIT_ID, request[28 + 6]);
+        assertEquals("Incorrect function code", Modbus.READ_MULTIPLE_REGISTERS, request[28 + 7]);
+
+        byte[] response = packets.get(1);
+        assertEquals("Incorrect source port", PORT, ((response[20] & 0xFF) << 8) | (response[21] & 0xFF));
+        assertEquals("Incorrect response function code", Modbus.READ_MULTIPLE_REGISTERS, response[28 + 7]);
+    }
+
+    /**
+     * Walks the blocks of a pcapng capture checking their structure and
+     * returns the data of each enhanced packet block
+     *
+     * @param capture Capture bytes
+     *
+     * @return List of packets
+     *
+     * @throws Exception if the capture is malformed
+     */
+    private static List<byte[]> readPackets(byte[] capture) throws Exception {
+        List<byte[]> packets = new ArrayList<byte[]>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(capture));
+        assertEquals("Capture should start with a section header", 0x0A0D0D0A, in.readInt());
+        int length = in.readInt();
+        assertEquals("Incorrect byte order magic", 0x1A2B3C4D, in.readInt());
+        in.skipBytes(length - 12);
+        while (in.available() > 0) {
+            int type = in.readInt();
+            length = in.readInt();
+            byte[] body = new byte[length - 12];
+            in.readFully(body);
+            assertEquals("Block lengths should match", length, in.readInt());
+            if (type == 6) {
+                DataInputStream block = new DataInputStream(new ByteArrayInputStream(body));
+                block.skipBytes(12);
+                byte[] packet = new byte[block.readInt()];
+                block.readInt();
+                block.readFully(packet);
+                packets.add(packet);
+            }
+            else {
+                assertEquals("Unexpected block type", 1, type);
+                assertTrue("Incorrect link type", ((body[0] & 0xFF) << 8 | (body[1] & 0xFF)) >= PcapngWriter.LINKTYPE_RAW);
+            }
+        }
+        return packets;
+    }
+}
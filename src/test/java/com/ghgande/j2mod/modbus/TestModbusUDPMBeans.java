@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.jmx.JmxMetricsRegistry;
+import com.ghgande.j2mod.modbus.jmx.ModbusMBeans;
+import com.ghgande.j2mod.modbus.util.MetricsRegistry;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusUDPMaster;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the JMX MBeans of a master and a slave
+ */
+public class TestModbusUDPMBeans extends AbstractTestModbusUDPMaster {
+
+    @Test
+    public void testListenerAndMasterMBeans() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName listenerName = ModbusMBeans.register(listener, "test-slave");
+        ObjectName masterName = ModbusMBeans.register(master, "test-master");
+        try {
+            master.readMultipleRegisters(UNIT_ID, 0, 1);
+
+            assertEquals("Incorrect listener type", "UDP", server.getAttribute(listenerName, "Type"));
+            assertEquals("Listener should be listening", true, server.getAttribute(listenerName, "Listening"));
+            assertEquals("Master should be connected", true, server.getAttribute(masterName, "Connected"));
+            assertTrue("Master should have sent bytes", (Long)server.getAttribute(masterName, "BytesOut") > 0);
+            assertTrue("Master should have received a message", (Long)server.getAttribute(masterName, "MessagesIn") > 0);
+
+            server.invoke(masterName, "resetStatistics", null, null);
+            assertEquals("Reset should clear the bytes", 0L, server.getAttribute(masterName, "BytesOut"));
+        }
+        finally {
+            ModbusMBeans.unregister(listenerName);
+            ModbusMBeans.unregister(masterName);
+        }
+        assertFalse("Listener MBean should be unregistered", server.isRegistered(listenerName));
+    }
+
+    @Test
+    public void testMetricsRegistryMBeans() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        MetricsRegistry registry = new JmxMetricsRegistry();
+        ModbusMetrics metrics = registry.getMetrics("test-metrics");
+        ObjectName name = ModbusMBeans.getObjectName("Metrics", "test-metrics");
+        try {
+            metrics.recordRequest(UNIT_ID, Modbus.READ_COILS, 2000000);
+            assertTrue("Metrics MBean should be registered", server.isRegistered(name));
+            assertEquals("Incorrect request count", 1L, server.getAttribute(name, "RequestCount"));
+            assertEquals("Incorrect maximum latency", 2000.0, (Double)server.getAttribute(name, "MaxLatency"), 0.001);
+            Object latency = server.invoke(name, "getFunctionCodeLatency", new Object[]{Modbus.READ_COILS, 100.0}, new String[]{"int", "double"});
+            assertEquals("Incorrect function code latency", 2000.0, (Double)latency, 0.001);
+        }
+        finally {
+            registry.removeMetrics("test-metrics");
+        }
+        assertFalse("Metrics MBean should be unregistered", server.isRegistered(name));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.util.MetricsRegistry;
+import com.ghgande.j2mod.modbus.util.ModbusMetrics;
+import com.ghgande.j2mod.modbus.util.SimpleMetricsRegistry;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusUDPMaster;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the metrics recorded by a master and a slave
+ */
+public class TestModbusUDPMetrics extends AbstractTestModbusUDPMaster {
+
+    @Test
+    public void testMetricsCounters() {
+        ModbusMetrics metrics = new ModbusMetrics("test");
+        metrics.recordRequest(1, Modbus.READ_MULTIPLE_REGISTERS, 1000);
+        metrics.recordRequest(2, Modbus.READ_MULTIPLE_REGISTERS, 2000);
+        metrics.recordExceptionResponse(1, Modbus.READ_COILS | Modbus.EXCEPTION_OFFSET, Modbus.ILLEGAL_ADDRESS_EXCEPTION, 500);
+        metrics.recordTimeout(1, Modbus.READ_COILS);
+        metrics.recordRetry(1, Modbus.READ_COILS);
+        metrics.recordTimeout(3, Modbus.READ_INPUT_REGISTERS);
+        metrics.recordRetry(3, Modbus.READ_INPUT_REGISTERS);
+        metrics.recordRetry(3, Modbus.READ_INPUT_REGISTERS);
+
+        assertEquals("Incorrect request count", 3, metrics.getRequestCount());
+        assertEquals("Incorrect FC3 count", 2, metrics.getRequestCount(Modbus.READ_MULTIPLE_REGISTERS));
+        assertEquals("Exception should be counted against the original function code", 1, metrics.getRequestCount(Modbus.READ_COILS));
+        assertEquals("Incorrect unit 1 count", 2, metrics.getUnitRequestCount(1));
+        assertEquals("Incorrect exception count", 1, metrics.getExceptionCount(Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+        assertEquals("Incorrect timeout count", 2, metrics.getTimeoutCount());
+        assertEquals("Incorrect retry count", 3, metrics.getRetryCount());
+        assertEquals("Incorrect FC1 timeout count", 1, metrics.getTimeoutCount(Modbus.READ_COILS));
+        assertEquals("Incorrect FC4 retry count", 2, metrics.getRetryCount(Modbus.READ_INPUT_REGISTERS));
+        assertEquals("Incorrect unit 1 timeout count", 1, metrics.getUnitTimeoutCount(1));
+        assertEquals("Incorrect unit 3 retry count", 2, metrics.getUnitRetryCount(3));
+        assertEquals("Unit 2 has not timed out", 0, metrics.getUnitTimeoutCount(2));
+        assertArrayEquals("Incorrect function codes", new int[]{Modbus.READ_COILS, Modbus.READ_MULTIPLE_REGISTERS, Modbus.READ_INPUT_REGISTERS}, metrics.getFunctionCodes());
+        assertArrayEquals("Units that only timed out should be included", new int[]{1, 2, 3}, metrics.getUnitIDs());
+        assertEquals("Incorrect FC3 maximum latency", 2000, metrics.getLatency(Modbus.READ_MULTIPLE_REGISTERS).getMax());
+
+        metrics.reset();
+        assertEquals("Reset should clear the requests", 0, metrics.getRequestCount());
+        assertEquals("Reset should clear the function codes", 0, metrics.getFunctionCodes().length);
+        assertEquals("Reset should clear the unit timeouts", 0, metrics.getUnitTimeoutCount(3));
+    }
+
+    @Test
+    public void testRegistryReturnsSameMetrics() {
+        MetricsRegistry registry = new SimpleMetricsRegistry();
+        ModbusMetrics metrics = registry.getMetrics("master");
+        assertSame("Registry should return the same metrics for a name", metrics, registry.getMetrics("master"));
+        assertEquals("Registry should contain one entry", 1, registry.getAllMetrics().size());
+        registry.removeMetrics("master");
+        assertNotSame("Removed metrics should be replaced", metrics, registry.getMetrics("master"));
+    }
+
+    @Test
+    public void testMasterAndSlaveMetrics() throws Exception {
+        ModbusMetrics masterMetrics = new ModbusMetrics("master");
+        ModbusMetrics slaveMetrics = new ModbusMetrics("slave");
+        master.setMetrics(masterMetrics);
+        listener.setMetrics(slaveMetrics);
+        try {
+            master.readMultipleRegisters(UNIT_ID, 0, 1);
+            try {
+                master.readMultipleRegisters(UNIT_ID, 100, 1);
+                fail("Read of a missing register should fail");
+            }
+            catch (ModbusSlaveException e) {
+                // Expected
+            }
+
+            assertEquals("Incorrect master request count", 2, masterMetrics.getRequestCount(Modbus.READ_MULTIPLE_REGISTERS));
+            assertEquals("Incorrect master exception count", 1, masterMetrics.getExceptionCount(Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+
+            // The slave records a request after the response has been sent
+            for (int i = 0; i < 50 && slaveMetrics.getRequestCount() < 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals("Incorrect slave request count", 2, slaveMetrics.getRequestCount(Modbus.READ_MULTIPLE_REGISTERS));
+            assertEquals("Incorrect slave unit count", 2, slaveMetrics.getUnitRequestCount(UNIT_ID));
+        }
+        finally {
+            master.setMetrics(null);
+            listener.setMetrics(null);
+        }
+    }
+}
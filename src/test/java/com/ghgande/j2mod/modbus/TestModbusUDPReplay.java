@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.io.WireCapture;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusUDPMaster;
+import com.ghgande.j2mod.modbus.utils.RecordedTraffic;
+import com.ghgande.j2mod.modbus.utils.ReplayEngine;
+import com.ghgande.j2mod.modbus.utils.ReplaySlave;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests replaying captured traffic against a slave and a master
+ */
+public class TestModbusUDPReplay extends AbstractTestModbusUDPMaster {
+
+    @Test
+    public void testReplayAgainstSlave() throws Exception {
+        RecordedTraffic traffic = record();
+        assertEquals("Incorrect number of recorded transactions", 4, traffic.getTransactions().size());
+        assertEquals("Nothing should be undecoded", 0, traffic.getUndecodedCount());
+        assertNotNull("Response should be recorded", traffic.getTransactions().get(0).getResponse());
+
+        ReplayEngine engine = new ReplayEngine(traffic);
+        engine.setSpeed(0);
+        ReplayEngine.Result result = engine.run(master.getTransport());
+        assertEquals("All responses should match: " + result, 4, result.getMatched());
+        assertEquals("Nothing should fail", 0, result.getFailed());
+        assertEquals("Latency should be recorded", 4, result.getLatency().getCount());
+    }
+
+    @Test
+    public void testReplayDetectsMismatch() throws Exception {
+        RecordedTraffic traffic = record();
+        Register register = ModbusCoupler.getReference().getProcessImage(UNIT_ID).getRegister(0);
+        int value = register.getValue();
+        register.setValue(value + 1);
+        ReplayEngine.Result result;
+        try {
+            ReplayEngine engine = new ReplayEngine(traffic);
+            engine.setSpeed(0);
+            result = engine.run(master.getTransport());
+        }
+        finally {
+            register.setValue(value);
+        }
+        assertEquals("Changed register should not match", 1, result.getMismatched());
+        assertEquals("Mismatch should be described", 1, result.getMismatches().size());
+    }
+
+    @Test
+    public void testReplayAgainstMaster() throws Exception {
+        RecordedTraffic traffic = record();
+        ReplaySlave slave = new ReplaySlave(traffic, InetAddress.getLoopbackAddress(), 0);
+        slave.start();
+        ModbusTCPMaster tcpMaster = new ModbusTCPMaster("127.0.0.1", slave.getPort());
+        try {
+            tcpMaster.connect();
+            ReplayEngine engine = new ReplayEngine(traffic);
+            engine.setSpeed(0);
+            ReplayEngine.Result result = engine.run(tcpMaster.getTransport());
+            assertEquals("All recorded responses should be served: " + result, 4, result.getMatched());
+            assertEquals("Slave should answer every request", 4, slave.getAnsweredCount());
+        }
+        finally {
+            tcpMaster.disconnect();
+            slave.close();
+        }
+    }
+
+    /**
+     * Captures a few transactions between the master and the slave
+     *
+     * @return Recorded transactions
+     *
+     * @throws Exception if the capture fails
+     */
+    private static RecordedTraffic record() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WireCapture capture = new WireCapture(out, WireCapture.DEFAULT_CAPACITY);
+        master.getTransport().addTransportListener(capture);
+        try {
+            master.readMultipleRegisters(UNIT_ID, 0, 5);
+            master.readInputRegisters(UNIT_ID, 0, 5);
+            master.readCoils(UNIT_ID, 0, 2);
+            master.readInputDiscretes(UNIT_ID, 0, 5);
+        }
+        finally {
+            master.getTransport().removeTransportListener(capture);
+            capture.close();
+        }
+        return RecordedTraffic.load(new ByteArrayInputStream(out.toByteArray()), PORT);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus;
+
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.io.TraceSink;
+import com.ghgande.j2mod.modbus.io.TransactionTrace;
+import com.ghgande.j2mod.modbus.utils.AbstractTestModbusUDPMaster;
+import com.ghgande.j2mod.modbus.utils.TestUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the transaction traces reported by a master
+ */
+public class TestModbusUDPTrace extends AbstractTestModbusUDPMaster {
+
+    @Test
+    public void testTraceOfEveryTransaction() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        master.setTraceSink(sink, 0);
+        try {
+            master.readMultipleRegisters(UNIT_ID, 0, 1);
+        }
+        finally {
+            master.setTraceSink(null, 0);
+        }
+        assertEquals("One trace should be reported", 1, sink.traces.size());
+        TransactionTrace trace = sink.traces.get(0);
+        assertEquals("Incorrect unit ID", UNIT_ID, trace.getUnitId());
+        assertEquals("Incorrect function code", Modbus.READ_MULTIPLE_REGISTERS, trace.getFunctionCode());
+        assertTrue("Write time should be measured", trace.getWriteTime() >= 0);
+        assertTrue("First byte time should be measured", trace.getFirstByteTime() >= 0);
+        assertTrue("Decode time should be measured", trace.getDecodeTime() >= 0);
+        assertTrue("Total should cover the phases", trace.getTotalTime() >= trace.getWriteTime() + trace.getFirstByteTime());
+        assertEquals("There should be no retries", 0, trace.getRetries());
+        assertNull("There should be no error", trace.getError());
+        assertTrue("Trace should describe the timings", trace.toString().contains("firstByte="));
+    }
+
+    @Test
+    public void testFastTransactionsAreNotReported() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        master.setTraceSink(sink, 60000);
+        try {
+            master.readMultipleRegisters(UNIT_ID, 0, 1);
+        }
+        finally {
+            master.setTraceSink(null, 0);
+        }
+        assertTrue("Fast transaction should not be reported", sink.traces.isEmpty());
+    }
+
+    @Test
+    public void testRetriesAndFailureAreReported() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        ModbusUDPMaster silent = new ModbusUDPMaster(TestUtils.getFirstIp4Address(), PORT + 1, 100);
+        try {
+            silent.connect();
+            silent.setTraceSink(sink, 60000);
+            try {
+                silent.readMultipleRegisters(UNIT_ID, 0, 1);
+            }
+            catch (Exception e) {
+                // Expected - nothing is listening
+            }
+        }
+        finally {
+            silent.disconnect();
+        }
+        assertEquals("Failed transaction should be reported", 1, sink.traces.size());
+        TransactionTrace trace = sink.traces.get(0);
+        assertEquals("Retries should be recorded", Modbus.DEFAULT_RETRIES, trace.getRetries());
+        assertEquals("Retry reasons should be recorded", Modbus.DEFAULT_RETRIES, trace.getRetryReasons().size());
+        assertNotNull("Failure should be recorded", trace.getError());
+    }
+
+    /**
+     * Keeps every trace reported
+     */
+    private static class CollectingSink implements TraceSink {
+        private final List<TransactionTrace> traces = new ArrayList<TransactionTrace>();
+
+        @Override
+        public void traceEvent(TransactionTrace trace) {
+            traces.add(trace);
+        }
+    }
+}
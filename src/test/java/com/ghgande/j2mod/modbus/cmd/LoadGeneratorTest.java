@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.cmd;
+
+import com.ghgande.j2mod.modbus.utils.LoadGenerator;
+
+import java.net.InetAddress;
+
+/**
+ * Command line tool that drives a Modbus TCP or UDP slave with a configurable
+ * load and reports the throughput and latency percentiles achieved.
+ * <p>
+ * With <tt>-local</tt> a j2mod listener is started on localhost so that the
+ * library can be sized without any other hardware e.g.
+ * <pre>
+ * java com.ghgande.j2mod.modbus.cmd.LoadGeneratorTest -local 1000 -clients 8 -depth 4 -mix 3:0:10:4,1:0:100
+ * </pre>
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class LoadGeneratorTest {
+
+    private static void printUsage() {
+        System.out.printf("\nUsage:\n    java com.ghgande.j2mod.modbus.cmd.LoadGeneratorTest [options]%n" +
+                "        -protocol tcp|udp       Protocol to use (default tcp)%n" +
+                "        -host <address>         Slave address (default localhost)%n" +
+                "        -port <port>            Slave port (default 502)%n" +
+                "        -unit <id>              Unit ID to address (default 1)%n" +
+                "        -local <size>           Start a local slave with size points of each type%n" +
+                "        -clients <n>            Number of concurrent clients (default 1)%n" +
+                "        -depth <n>              Requests outstanding per client (default 1)%n" +
+                "        -rate <n>               Total requests per second, 0 for flat out (default 0)%n" +
+                "        -duration <seconds>     Length of the measurement (default 10)%n" +
+                "        -warmup <seconds>       Load applied before measuring (default 1)%n" +
+                "        -timeout <ms>           Response timeout (default 3000)%n" +
+                "        -mix <list>             function:reference:count[:weight],... (default 3:0:10)%n");
+    }
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        String mix = "3:0:10";
+        int localSize = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+                if ("-protocol".equals(option)) {
+                    generator.setProtocol(value);
+                }
+                else if ("-host".equals(option)) {
+                    generator.setAddress(InetAddress.getByName(value));
+                }
+                else if ("-port".equals(option)) {
+                    generator.setPort(Integer.parseInt(value));
+                }
+                else if ("-unit".equals(option)) {
+                    generator.setUnitId(Integer.parseInt(value));
+                }
+                else if ("-local".equals(option)) {
+                    localSize = Integer.parseInt(value);
+                }
+                else if ("-clients".equals(option)) {
+                    generator.setClients(Integer.parseInt(value));
+                }
+                else if ("-depth".equals(option)) {
+                    generator.setDepth(Integer.parseInt(value));
+                }
+                else if ("-rate".equals(option)) {
+                    generator.setRate(Integer.parseInt(value));
+                }
+                else if ("-duration".equals(option)) {
+                    generator.setDuration(Long.parseLong(value) * 1000);
+                }
+                else if ("-warmup".equals(option)) {
+                    generator.setWarmup(Long.parseLong(value) * 1000);
+                }
+                else if ("-timeout".equals(option)) {
+                    generator.setTimeout(Integer.parseInt(value));
+                }
+                else if ("-mix".equals(option)) {
+                    mix = value;
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            generator.addRequests(mix);
+        }
+        catch (Exception ex) {
+            System.out.printf("%s%n", ex.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        try {
+            if (localSize > 0) {
+                generator.startLocalSlave(localSize);
+            }
+            generator.setReport(1000, System.out);
+            LoadGenerator.Result result = generator.run();
+            System.out.printf("%n%s%n", result);
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        finally {
+            generator.stopLocalSlave();
+        }
+        System.exit(0);
+    }
+}
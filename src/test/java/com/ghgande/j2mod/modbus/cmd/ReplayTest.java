@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.cmd;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.facade.AbstractModbusMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.facade.ModbusUDPMaster;
+import com.ghgande.j2mod.modbus.utils.RecordedTraffic;
+import com.ghgande.j2mod.modbus.utils.ReplayEngine;
+import com.ghgande.j2mod.modbus.utils.ReplaySlave;
+
+import java.io.File;
+
+/**
+ * Command line tool that replays the requests in a pcap or pcapng capture
+ * against a Modbus TCP or UDP slave and reports how many of the responses
+ * match the recorded ones e.g.
+ * <pre>
+ * java com.ghgande.j2mod.modbus.cmd.ReplayTest -file plant.pcapng -host 10.0.0.5 -speed 0
+ * </pre>
+ * With <tt>-serve</tt> the recorded responses are served on the given port
+ * instead, so that a master under test can be pointed at them.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ReplayTest {
+
+    private static void printUsage() {
+        System.out.printf("\nUsage:\n    java com.ghgande.j2mod.modbus.cmd.ReplayTest -file <capture> [options]%n" +
+                "        -file <capture>         pcap or pcapng file to replay%n" +
+                "        -recorded-port <port>   Port the slaves listened on in the capture (default 502)%n" +
+                "        -protocol tcp|udp       Protocol to use (default tcp)%n" +
+                "        -host <address>         Slave address (default localhost)%n" +
+                "        -port <port>            Slave port (default 502)%n" +
+                "        -unit <id>              Send all requests to this unit ID (default as recorded)%n" +
+                "        -speed <factor>         1 for the original pace, 0 for flat out (default 1)%n" +
+                "        -timeout <ms>           Response timeout (default 3000)%n" +
+                "        -serve <port>           Serve the recorded responses on this port instead%n");
+    }
+
+    public static void main(String[] args) {
+        String file = null;
+        int recordedPort = Modbus.DEFAULT_PORT;
+        String protocol = "tcp";
+        String host = "localhost";
+        int port = Modbus.DEFAULT_PORT;
+        int unitId = -1;
+        double speed = 1;
+        int timeout = Modbus.DEFAULT_TIMEOUT;
+        int servePort = -1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+                if ("-file".equals(option)) {
+                    file = value;
+                }
+                else if ("-recorded-port".equals(option)) {
+                    recordedPort = Integer.parseInt(value);
+                }
+                else if ("-protocol".equals(option)) {
+                    protocol = value;
+                }
+                else if ("-host".equals(option)) {
+                    host = value;
+                }
+                else if ("-port".equals(option)) {
+                    port = Integer.parseInt(value);
+                }
+                else if ("-unit".equals(option)) {
+                    unitId = Integer.parseInt(value);
+                }
+                else if ("-speed".equals(option)) {
+                    speed = Double.parseDouble(value);
+                }
+                else if ("-timeout".equals(option)) {
+                    timeout = Integer.parseInt(value);
+                }
+                else if ("-serve".equals(option)) {
+                    servePort = Integer.parseInt(value);
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            if (file == null) {
+                throw new IllegalArgumentException("No capture file given");
+            }
+        }
+        catch (Exception ex) {
+            System.out.printf("%s%n", ex.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        AbstractModbusMaster master = null;
+        try {
+            RecordedTraffic traffic = RecordedTraffic.load(new File(file), recordedPort);
+            System.out.printf("Loaded %d transactions (%d undecoded packets, %d unmatched responses)%n",
+                    traffic.getTransactions().size(), traffic.getUndecodedCount(), traffic.getUnmatchedResponseCount());
+
+            if (servePort >= 0) {
+                ReplaySlave slave = new ReplaySlave(traffic, null, servePort);
+                System.out.printf("Serving recorded responses on port %d - press Ctrl-C to stop%n", slave.getPort());
+                slave.run();
+            }
+            else {
+                if ("udp".equalsIgnoreCase(protocol)) {
+                    master = new ModbusUDPMaster(host, port);
+                }
+                else {
+                    master = new ModbusTCPMaster(host, port);
+                }
+                master.setTimeout(timeout);
+                master.connect();
+
+                ReplayEngine engine = new ReplayEngine(traffic);
+                engine.setSpeed(speed);
+                engine.setUnitId(unitId);
+                ReplayEngine.Result result = engine.run(master.getTransport());
+                System.out.printf("%n%s%n", result);
+            }
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        finally {
+            if (master != null) {
+                master.disconnect();
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.cmd;
+
+import com.ghgande.j2mod.modbus.procimg.ArrayProcessImage;
+import com.ghgande.j2mod.modbus.sim.ModbusSimulator;
+import com.ghgande.j2mod.modbus.sim.RegisterDynamics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line tool that simulates a large number of Modbus/TCP slaves e.g.
+ * 5,000 devices as 10 unit IDs on each of 500 ports
+ * <pre>
+ * java com.ghgande.j2mod.modbus.cmd.SimulatorTest -port 5020 -ports 500 -units 10 -dynamics "ramp ir 0 0 1000 60000"
+ * </pre>
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class SimulatorTest {
+
+    private static void printUsage() {
+        System.out.printf("\nUsage:\n    java com.ghgande.j2mod.modbus.cmd.SimulatorTest [options]%n" +
+                "        -port <port>            First port (default 502)%n" +
+                "        -ports <n>              Number of consecutive ports (default 1)%n" +
+                "        -units <n>              Unit IDs 1 to n on each port (default 1)%n" +
+                "        -size <n>               Points of each type per device (default 1000)%n" +
+                "        -shared true|false      All devices share one process image (default false)%n" +
+                "        -dynamics <script>      Register dynamics applied to every image, separated by ';'%n");
+    }
+
+    public static void main(String[] args) {
+        int port = 502;
+        int ports = 1;
+        int units = 1;
+        int size = 1000;
+        boolean shared = false;
+        final List<RegisterDynamics> dynamics = new ArrayList<RegisterDynamics>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+                if ("-port".equals(option)) {
+                    port = Integer.parseInt(value);
+                }
+                else if ("-ports".equals(option)) {
+                    ports = Integer.parseInt(value);
+                }
+                else if ("-units".equals(option)) {
+                    units = Integer.parseInt(value);
+                }
+                else if ("-size".equals(option)) {
+                    size = Integer.parseInt(value);
+                }
+                else if ("-shared".equals(option)) {
+                    shared = Boolean.parseBoolean(value);
+                }
+                else if ("-dynamics".equals(option)) {
+                    for (String spec : value.split(";")) {
+                        if (spec.trim().length() > 0) {
+                            dynamics.add(RegisterDynamics.parse(spec));
+                        }
+                    }
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+        }
+        catch (Exception ex) {
+            System.out.printf("%s%n", ex.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        final ModbusSimulator simulator = new ModbusSimulator();
+        final List<ArrayProcessImage> images = new ArrayList<ArrayProcessImage>();
+        final ArrayProcessImage sharedImage = shared ? new ArrayProcessImage(0, size) : null;
+        final int imageSize = size;
+        try {
+            simulator.addDevices(port, ports, 1, units, new ModbusSimulator.ImageFactory() {
+                @Override
+                public ArrayProcessImage createImage(int port, int unitId) {
+                    if (sharedImage != null) {
+                        return sharedImage;
+                    }
+                    ArrayProcessImage image = new ArrayProcessImage(unitId, imageSize);
+                    images.add(image);
+                    return image;
+                }
+            });
+            if (sharedImage != null) {
+                images.add(sharedImage);
+            }
+            for (ArrayProcessImage image : images) {
+                for (RegisterDynamics item : dynamics) {
+                    simulator.addDynamics(image, item);
+                }
+            }
+            simulator.start();
+            System.out.printf("Simulating %d devices on %d ports - press Ctrl-C to stop%n", simulator.getDeviceCount(), ports);
+            long last = 0;
+            while (simulator.isRunning()) {
+                Thread.sleep(10000);
+                long requests = simulator.getRequestCount();
+                System.out.printf("%d connections, %d requests/s, %d exceptions%n", simulator.getConnectionCount(),
+                        (requests - last) / 10, simulator.getExceptionCount());
+                last = requests;
+            }
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        finally {
+            simulator.stop();
+        }
+        System.exit(0);
+    }
+}
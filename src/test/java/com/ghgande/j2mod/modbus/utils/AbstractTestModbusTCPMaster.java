@@ -87,6 +87,17 @@ public class AbstractTestModbusTCPMaster extends AbstractTestModbus {
             listener.setListening(true);
             listener.setPort(PORT);
             new Thread(listener).start();
+
+            // Wait for the listener to bind so that the tests don't race it
+            for (int i = 0; i < 50; i++) {
+                try {
+                    new Socket(LOCALHOST, PORT).close();
+                    break;
+                }
+                catch (IOException e) {
+                    Thread.sleep(20);
+                }
+            }
         }
         catch (Exception x) {
             if (listener != null) {
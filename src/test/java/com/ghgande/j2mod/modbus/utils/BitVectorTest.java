@@ -4,6 +4,9 @@ import com.ghgande.j2mod.modbus.util.BitVector;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Random;
+
 public final class BitVectorTest {
 
     @Test
@@ -105,4 +108,70 @@ public final class BitVectorTest {
         Assert.assertEquals("BitVector string is incorrect",
                 "00000000 00000001 00000010 00000011 00000100 00000101 00000110 000111 ", bv.toString());
     }
+
+    @Test
+    public void testCopyFrom() {
+        Random random = new Random(42);
+        byte[] source = new byte[40];
+        random.nextBytes(source);
+        BitVector reference = BitVector.createBitVector(source);
+        long[] words = new long[5];
+        for (int i = 0; i < 320; i++) {
+            if (reference.getBit(i)) {
+                words[i / 64] |= 1L << (i % 64);
+            }
+        }
+        for (int offset = 0; offset < 70; offset += 3) {
+            for (int count = 0; count + offset <= 320; count += 29) {
+                BitVector fromBytes = new BitVector(count);
+                BitVector fromWords = new BitVector(count);
+                BitVector fromVector = new BitVector(count);
+                fromBytes.copyFrom(source, offset, count);
+                fromWords.copyFrom(words, offset, count);
+                fromVector.copyFrom(reference, offset, count);
+                for (int i = 0; i < count; i++) {
+                    boolean expected = reference.getBit(offset + i);
+                    Assert.assertEquals("Incorrect bit " + i + " copied from bytes at " + offset, expected, fromBytes.getBit(i));
+                    Assert.assertEquals("Incorrect bit " + i + " copied from words at " + offset, expected, fromWords.getBit(i));
+                    Assert.assertEquals("Incorrect bit " + i + " copied from vector at " + offset, expected, fromVector.getBit(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRangesAndCardinality() {
+        BitVector bv = new BitVector(200);
+        bv.setRange(10, 150, true);
+        Assert.assertEquals("Incorrect cardinality", 140, bv.cardinality());
+        Assert.assertEquals("Incorrect range cardinality", 50, bv.cardinality(100, 160));
+        Assert.assertFalse("Bit 9 should not be set", bv.getBit(9));
+        Assert.assertTrue("Bit 149 should be set", bv.getBit(149));
+        Assert.assertFalse("Bit 150 should not be set", bv.getBit(150));
+
+        bv.setRange(60, 70, false);
+        Assert.assertEquals("Incorrect cardinality after clearing", 130, bv.cardinality());
+        Assert.assertEquals("Incorrect bits before a word boundary", 0x3FFL, bv.getBits(50, 10));
+        Assert.assertEquals("Incorrect bits across a word boundary", 0L, bv.getBits(60, 10));
+        bv.setBits(60, 0x2AAL, 10);
+        Assert.assertEquals("Incorrect bits after setting", 0x2AAL, bv.getBits(60, 10));
+        Assert.assertEquals("Incorrect cardinality after setting", 135, bv.cardinality());
+    }
+
+    @Test
+    public void testWireOrderExport() {
+        BitVector bv = new BitVector(77);
+        for (int i = 0; i < 77; i += 3) {
+            bv.setBit(i, true);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bv.byteSize());
+        bv.getBytes(buffer);
+        Assert.assertArrayEquals("Buffer should match the bytes", bv.getBytes(), buffer.array());
+        Assert.assertEquals("Coil 9 is bit 1 of the second byte", 0x02, bv.getBytes()[1] & 0x03);
+
+        buffer.flip();
+        BitVector copy = new BitVector(77);
+        copy.setBytes(buffer);
+        Assert.assertEquals("Copy should match", bv.toString(), copy.toString());
+    }
 }
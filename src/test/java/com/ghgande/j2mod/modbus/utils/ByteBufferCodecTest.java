@@ -0,0 +1,140 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.BytesOutputStream;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class ByteBufferCodecTest {
+
+    private static List<ModbusMessageImpl> getMessages() {
+        List<ModbusMessageImpl> messages = new ArrayList<ModbusMessageImpl>();
+        Register[] registers = new Register[]{new SimpleRegister(1), new SimpleRegister(0xFFFF), new SimpleRegister(0x1234)};
+        InputRegister[] inputRegisters = new InputRegister[]{new SimpleInputRegister(7), new SimpleInputRegister(0x8001)};
+        BitVector bits = new BitVector(11);
+        bits.setBit(0, true);
+        bits.setBit(10, true);
+
+        messages.add(new ReadCoilsRequest(3, 11));
+        ReadCoilsResponse coils = new ReadCoilsResponse(11);
+        coils.setCoilStatus(1, true);
+        coils.setCoilStatus(9, true);
+        messages.add(coils);
+        messages.add(new ReadInputDiscretesRequest(5, 9));
+        ReadInputDiscretesResponse discretes = new ReadInputDiscretesResponse(9);
+        discretes.setDiscreteStatus(8, true);
+        messages.add(discretes);
+        messages.add(new ReadInputRegistersRequest(10, 2));
+        messages.add(new ReadInputRegistersResponse(inputRegisters));
+        messages.add(new ReadMultipleRegistersRequest(40000, 3));
+        messages.add(new ReadMultipleRegistersResponse(registers));
+        messages.add(new WriteCoilRequest(7, true));
+        messages.add(new WriteCoilResponse(7, false));
+        messages.add(new WriteSingleRegisterRequest(65535, new SimpleRegister(0xABCD)));
+        messages.add(new WriteSingleRegisterResponse(65535, 0xABCD));
+        messages.add(new WriteMultipleCoilsRequest(20, bits));
+        messages.add(new WriteMultipleCoilsResponse(20, 11));
+        messages.add(new WriteMultipleRegistersRequest(30, registers));
+        messages.add(new WriteMultipleRegistersResponse(30, 3));
+        messages.add(new MaskWriteRegisterRequest(4, 0xF0F0, 0x0F0F));
+        ReadWriteMultipleRequest readWrite = new ReadWriteMultipleRequest(1, 100, 2, 200, 3);
+        readWrite.setRegisters(registers);
+        messages.add(readWrite);
+        messages.add(new ReadWriteMultipleResponse(inputRegisters));
+        messages.add(new ExceptionResponse(Modbus.READ_COILS, Modbus.ILLEGAL_ADDRESS_EXCEPTION));
+
+        // Goes through the DataOutput bridge
+        ReadFIFOQueueRequest fifo = new ReadFIFOQueueRequest();
+        fifo.setReference(12);
+        messages.add(fifo);
+        return messages;
+    }
+
+    private static byte[] writeTo(ModbusMessageImpl msg) throws Exception {
+        BytesOutputStream out = new BytesOutputStream(Modbus.MAX_MESSAGE_LENGTH + 6);
+        msg.writeTo(out);
+        return Arrays.copyOf(out.getBuffer(), out.size());
+    }
+
+    private static byte[] encode(ModbusMessageImpl msg, ByteBuffer buffer) {
+        buffer.clear();
+        msg.encode(buffer);
+        byte[] data = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(data);
+        return data;
+    }
+
+    private static ModbusMessageImpl create(ModbusMessageImpl msg) {
+        if (msg instanceof ModbusRequest) {
+            return ModbusRequest.createModbusRequest(msg.getFunctionCode());
+        }
+        return ModbusResponse.createModbusResponse(msg.getFunctionCode());
+    }
+
+    @Test
+    public void testEncodeMatchesWriteTo() throws Exception {
+        ByteBuffer heap = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH + 6);
+        ByteBuffer direct = ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH + 6);
+        for (ModbusMessageImpl msg : getMessages()) {
+            msg.setTransactionID(0x1234);
+            byte[] expected = writeTo(msg);
+            Assert.assertArrayEquals("Heap encoding differs for " + msg.getClass().getSimpleName(), expected, encode(msg, heap));
+            Assert.assertArrayEquals("Direct encoding differs for " + msg.getClass().getSimpleName(), expected, encode(msg, direct));
+
+            msg.setHeadless();
+            Assert.assertArrayEquals("Headless encoding differs for " + msg.getClass().getSimpleName(), writeTo(msg), encode(msg, heap));
+        }
+    }
+
+    @Test
+    public void testDecodeRoundTrip() throws Exception {
+        ByteBuffer direct = ByteBuffer.allocateDirect(Modbus.MAX_MESSAGE_LENGTH + 6);
+        for (ModbusMessageImpl msg : getMessages()) {
+            msg.setTransactionID(99);
+            msg.setUnitID(17);
+            byte[] expected = writeTo(msg);
+
+            direct.clear();
+            direct.put(expected);
+            direct.flip();
+            ModbusMessageImpl decoded = create(msg);
+            decoded.decode(direct);
+            String name = msg.getClass().getSimpleName();
+            Assert.assertEquals("Whole frame not consumed for " + name, 0, direct.remaining());
+            Assert.assertEquals("Wrong class decoded for " + name, msg.getClass(), decoded.getClass());
+            Assert.assertEquals("Wrong transaction ID for " + name, 99, decoded.getTransactionID());
+            Assert.assertEquals("Wrong unit ID for " + name, 17, decoded.getUnitID());
+            Assert.assertArrayEquals("Decoded message differs for " + name, expected, writeTo(decoded));
+        }
+    }
+
+    @Test
+    public void testDecodeTruncated() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(writeTo(new ReadMultipleRegistersResponse(new Register[]{new SimpleRegister(1), new SimpleRegister(2)})), 0, 10);
+        try {
+            new ReadMultipleRegistersResponse().decode(buffer);
+            Assert.fail("Truncated frame was decoded");
+        }
+        catch (java.nio.BufferUnderflowException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLittleEndianRejected() {
+        new ReadCoilsRequest(1, 1).encode(ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN));
+    }
+}
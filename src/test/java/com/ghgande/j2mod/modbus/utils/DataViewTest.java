@@ -0,0 +1,120 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.procimg.*;
+import com.ghgande.j2mod.modbus.util.DataView;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import com.ghgande.j2mod.modbus.util.RegisterOrder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public final class DataViewTest {
+
+    @Test
+    public void testOrders() {
+        short[] registers = new short[2];
+        DataView view = DataView.wrap(registers, RegisterOrder.ABCD);
+        view.setInt(0, 0x11223344);
+        Assert.assertEquals("Incorrect ABCD high word", 0x1122, registers[0]);
+        Assert.assertEquals("Incorrect ABCD low word", 0x3344, registers[1]);
+
+        view = DataView.wrap(registers, RegisterOrder.CDAB);
+        view.setInt(0, 0x11223344);
+        Assert.assertEquals("Incorrect CDAB first word", 0x3344, registers[0]);
+        Assert.assertEquals("Incorrect CDAB second word", 0x1122, registers[1]);
+
+        view = DataView.wrap(registers, RegisterOrder.BADC);
+        view.setInt(0, 0x11223344);
+        Assert.assertEquals("Incorrect BADC first word", 0x2211, registers[0]);
+        Assert.assertEquals("Incorrect BADC second word", 0x4433, registers[1]);
+
+        view = DataView.wrap(registers, RegisterOrder.DCBA);
+        view.setInt(0, 0x11223344);
+        Assert.assertEquals("Incorrect DCBA first word", 0x4433, registers[0]);
+        Assert.assertEquals("Incorrect DCBA second word", 0x2211, registers[1]);
+        Assert.assertEquals("Incorrect DCBA read back", 0x11223344, view.getInt(0));
+    }
+
+    @Test
+    public void testTypesRoundTrip() {
+        for (RegisterOrder order : RegisterOrder.values()) {
+            short[] registers = new short[13];
+            DataView view = DataView.wrap(registers, 1, 12, order);
+            view.setFloat(0, -12.375f);
+            view.setUnsignedInt(2, 0xFEDCBA98L);
+            view.setLong(4, 0x0123456789ABCDEFL);
+            view.setDouble(8, Math.PI);
+            Assert.assertEquals("Incorrect float in " + order, -12.375f, view.getFloat(0), 0);
+            Assert.assertEquals("Incorrect unsigned int in " + order, 0xFEDCBA98L, view.getUnsignedInt(2));
+            Assert.assertEquals("Incorrect long in " + order, 0x0123456789ABCDEFL, view.getLong(4));
+            Assert.assertEquals("Incorrect double in " + order, Math.PI, view.getDouble(8), 0);
+            Assert.assertEquals("Register before the view should be untouched", 0, registers[0]);
+        }
+    }
+
+    @Test
+    public void testMatchesModbusUtil() {
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        DataView view = DataView.wrap(buffer, RegisterOrder.ABCD);
+        view.setFloat(0, 3.25f);
+        view.setDouble(2, -1.5e10);
+        byte[] expected = new byte[12];
+        System.arraycopy(ModbusUtil.floatToRegisters(3.25f), 0, expected, 0, 4);
+        System.arraycopy(ModbusUtil.doubleToRegisters(-1.5e10), 0, expected, 4, 8);
+        Assert.assertArrayEquals("Buffer should hold standard Modbus values", expected, buffer.array());
+        Assert.assertEquals("Buffer position should not move", 0, buffer.position());
+    }
+
+    @Test
+    public void testStrings() {
+        short[] registers = new short[4];
+        DataView view = DataView.wrap(registers, RegisterOrder.ABCD);
+        view.setString(0, 4, "j2mod");
+        Assert.assertEquals("Incorrect first register", ('j' << 8) | '2', registers[0]);
+        Assert.assertEquals("String should be padded with NULs", 0, registers[3]);
+        Assert.assertEquals("Incorrect string", "j2mod", view.getString(0, 4));
+        Assert.assertEquals("String should be truncated", "j2", view.getString(0, 1));
+
+        view = DataView.wrap(registers, RegisterOrder.BADC);
+        view.setString(0, 2, "modbus");
+        Assert.assertEquals("Swapped bytes should start with the low byte", ('o' << 8) | 'm', registers[0]);
+        Assert.assertEquals("Incorrect swapped string", "modb", view.getString(0, 2));
+    }
+
+    @Test
+    public void testProcessImages() {
+        SimpleProcessImage simple = new SimpleProcessImage();
+        for (int i = 0; i < 4; i++) {
+            simple.addRegister(new SimpleRegister(0));
+            simple.addInputRegister(new SimpleInputRegister(0));
+        }
+        ArrayProcessImage array = new ArrayProcessImage(1, 4);
+        for (ProcessImage image : new ProcessImage[]{simple, array}) {
+            DataView view = DataView.wrapRegisters(image, RegisterOrder.CDAB);
+            view.setFloat(1, 42.5f);
+            Assert.assertEquals("Incorrect float from image", 42.5f, view.getFloat(1), 0);
+            Assert.assertEquals("Low word should be first", 0, image.getRegister(1).getValue());
+            Assert.assertEquals("High word should be second", 0x422A, image.getRegister(2).getValue());
+            Assert.assertEquals("Registers should read back", 42.5f, DataView.wrap(image.getRegisterRange(1, 2), RegisterOrder.CDAB).getFloat(0), 0);
+            try {
+                view.getFloat(3);
+                Assert.fail("Read past the end of the image should fail");
+            }
+            catch (IndexOutOfBoundsException e) {
+                // Expected
+            }
+        }
+
+        DataView inputs = DataView.wrapInputRegisters(array, RegisterOrder.ABCD);
+        inputs.setInt(0, -2);
+        Assert.assertEquals("Incorrect input register", -2, DataView.wrapInputRegisters(array, RegisterOrder.ABCD).getInt(0));
+        try {
+            DataView.wrapInputRegisters(simple, RegisterOrder.ABCD).setInt(0, 1);
+            Assert.fail("Input registers of a simple image are read only");
+        }
+        catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+}
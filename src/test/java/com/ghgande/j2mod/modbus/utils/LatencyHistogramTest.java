@@ -0,0 +1,86 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.util.LatencyHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals("Empty histogram should have no values", 0, histogram.getCount());
+        Assert.assertEquals("Empty histogram should have a zero minimum", 0, histogram.getMin());
+        Assert.assertEquals("Empty histogram should have a zero percentile", 0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordValue(i);
+        }
+        Assert.assertEquals("Count is wrong", 100, histogram.getCount());
+        Assert.assertEquals("Minimum is wrong", 1, histogram.getMin());
+        Assert.assertEquals("Maximum is wrong", 100, histogram.getMax());
+        Assert.assertEquals("Mean is wrong", 50.5, histogram.getMean(), 0.001);
+        Assert.assertEquals("Median is wrong", 50, histogram.getValueAtPercentile(50));
+        Assert.assertEquals("99th percentile is wrong", 99, histogram.getValueAtPercentile(99));
+        Assert.assertEquals("100th percentile is wrong", 100, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testLargeValuesArePrecise() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.recordValue(i * 1000);
+        }
+        long[] expected = {5000000, 9000000, 9900000, 9990000};
+        double[] percentiles = {50, 90, 99, 99.9};
+        for (int i = 0; i < expected.length; i++) {
+            long actual = histogram.getValueAtPercentile(percentiles[i]);
+            Assert.assertTrue("Percentile " + percentiles[i] + " is below the true value: " + actual, actual >= expected[i]);
+            Assert.assertTrue("Percentile " + percentiles[i] + " is too imprecise: " + actual, actual <= expected[i] * 1.016);
+        }
+        Assert.assertEquals("Maximum should be exact", 10000000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testAddAndReset() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.recordValue(10);
+        second.recordValue(5);
+        second.recordValue(Long.MAX_VALUE);
+        first.add(second);
+        Assert.assertEquals("Count after add is wrong", 3, first.getCount());
+        Assert.assertEquals("Minimum after add is wrong", 5, first.getMin());
+        Assert.assertEquals("Maximum after add is wrong", Long.MAX_VALUE, first.getMax());
+        Assert.assertEquals("Top percentile after add is wrong", Long.MAX_VALUE, first.getValueAtPercentile(100));
+        first.reset();
+        Assert.assertEquals("Count after reset is wrong", 0, first.getCount());
+        Assert.assertEquals("Maximum after reset is wrong", 0, first.getMax());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.recordValue(i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals("Values were lost by concurrent recording", 40000, histogram.getCount());
+        Assert.assertEquals("Maximum is wrong", 9999, histogram.getMax());
+    }
+}
@@ -0,0 +1,651 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.net.*;
+import com.ghgande.j2mod.modbus.procimg.*;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import com.ghgande.j2mod.modbus.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a Modbus TCP or UDP slave with a configurable load and measures
+ * the throughput and latency it achieves.
+ * <p>
+ * Each client has its own master connection and thread, sends a weighted mix
+ * of requests and keeps up to the pipelining depth of requests outstanding,
+ * matching the responses by transaction ID.  When a target rate is given, the
+ * latency is measured from the time each request should have been sent so
+ * that a slave that stalls isn't flattered by the clients backing off.
+ * <p>
+ * The generator can also start a built-in listener on localhost so that
+ * j2mod can be measured against itself without any other hardware.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private String protocol = "tcp";
+    private InetAddress address;
+    private int port = Modbus.DEFAULT_PORT;
+    private int unitId = 1;
+    private int clients = 1;
+    private int depth = 1;
+    private int rate = 0;
+    private long duration = 10000;
+    private long warmup = 1000;
+    private int timeout = Modbus.DEFAULT_TIMEOUT;
+    private long reportInterval = 0;
+    private PrintStream reportStream = System.out;
+    private final List<RequestSpec> mix = new ArrayList<RequestSpec>();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram intervalLatency = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong exceptions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long measureStart;
+    private volatile long measureEnd;
+
+    private AbstractModbusListener localSlave;
+
+    /**
+     * Runs the load and waits for it to finish
+     *
+     * @return Results of the measurement period
+     *
+     * @throws Exception if the clients cannot be connected
+     */
+    public Result run() throws Exception {
+        if (mix.isEmpty()) {
+            throw new IllegalStateException("No requests have been added to the mix");
+        }
+        if (address == null) {
+            address = InetAddress.getByName("127.0.0.1");
+        }
+        latency.reset();
+        intervalLatency.reset();
+        completed.set(0);
+        exceptions.set(0);
+        timeouts.set(0);
+        errors.set(0);
+
+        long start = System.nanoTime();
+        measureStart = start + warmup * 1000000L;
+        measureEnd = measureStart + duration * 1000000L;
+
+        // Connect every client before any of them starts so that connection
+        // set up doesn't appear in the measurements
+
+        List<Client> clientList = new ArrayList<Client>();
+        CountDownLatch finished = new CountDownLatch(clients);
+        try {
+            for (int i = 0; i < clients; i++) {
+                clientList.add(new Client(i, finished));
+            }
+        }
+        catch (Exception e) {
+            for (Client client : clientList) {
+                client.close();
+            }
+            throw e;
+        }
+        for (Client client : clientList) {
+            client.start();
+        }
+        long lastReport = System.nanoTime();
+        while (!finished.await(reportInterval > 0 ? reportInterval : 1000, TimeUnit.MILLISECONDS)) {
+            if (reportInterval > 0 && reportStream != null) {
+                long now = System.nanoTime();
+                reportStream.printf("%s %8.0f req/s  latency(us) %s%n", now < measureStart ? "warmup " : "measure",
+                        intervalLatency.getCount() * 1000000000.0 / (now - lastReport), intervalLatency.toString(1000.0));
+                intervalLatency.reset();
+                lastReport = now;
+            }
+        }
+        return new Result(completed.get(), exceptions.get(), timeouts.get(), errors.get(), duration * 1000000L, latency);
+    }
+
+    /**
+     * Starts a listener on localhost with a process image of the given size
+     * for the unit ID, using the protocol and port of the generator
+     *
+     * @param size Number of coils, discretes, input registers and holding registers
+     *
+     * @throws Exception if the listener cannot be started
+     */
+    public void startLocalSlave(int size) throws Exception {
+        SimpleProcessImage spi = new SimpleProcessImage(unitId);
+        for (int i = 0; i < size; i++) {
+            spi.addDigitalOut(new SimpleDigitalOut(i % 2 == 0));
+            spi.addDigitalIn(new SimpleDigitalIn(i % 3 == 0));
+            spi.addRegister(new SimpleRegister(i & 0xFFFF));
+            spi.addInputRegister(new SimpleInputRegister(i & 0xFFFF));
+        }
+        ModbusCoupler.getReference().setProcessImage(spi);
+        ModbusCoupler.getReference().setMaster(false);
+
+        address = InetAddress.getByName("127.0.0.1");
+        if (isUDP()) {
+            localSlave = new ModbusUDPListener(address);
+        }
+        else {
+            localSlave = new ModbusTCPListener(Math.max(clients, 1), address);
+        }
+        localSlave.setPort(port);
+        localSlave.setTimeout(0);
+        localSlave.setListening(true);
+        new Thread(localSlave, "j2mod-load-slave").start();
+
+        // Wait for the listener to bind or fail
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            if (!localSlave.isListening() || isBound()) {
+                break;
+            }
+        }
+        if (!localSlave.isListening()) {
+            throw new Exception(localSlave.getError());
+        }
+    }
+
+    /**
+     * Stops the local listener if one was started
+     */
+    public void stopLocalSlave() {
+        if (localSlave != null) {
+            localSlave.stop();
+            localSlave = null;
+        }
+    }
+
+    /**
+     * Returns true if the local TCP listener is accepting connections.
+     * UDP doesn't have connections so it is considered bound once listening.
+     *
+     * @return True if bound
+     */
+    private boolean isBound() {
+        if (isUDP()) {
+            return true;
+        }
+        try {
+            new Socket(address, port).close();
+            return true;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    private boolean isUDP() {
+        return "udp".equalsIgnoreCase(protocol);
+    }
+
+    /**
+     * Adds a request type to the mix
+     *
+     * @param spec Request specification
+     */
+    public void addRequest(RequestSpec spec) {
+        mix.add(spec);
+    }
+
+    /**
+     * Adds the requests described by a comma separated list of
+     * <tt>function:reference:count[:weight]</tt> e.g. <tt>3:0:10:4,1:0:100</tt>
+     *
+     * @param specs Request list
+     */
+    public void addRequests(String specs) {
+        for (String spec : specs.split(" *, *")) {
+            if (spec.length() > 0) {
+                addRequest(RequestSpec.parse(spec));
+            }
+        }
+    }
+
+    public void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    public void setAddress(InetAddress address) {
+        this.address = address;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public void setUnitId(int unitId) {
+        this.unitId = unitId;
+    }
+
+    public void setClients(int clients) {
+        this.clients = Math.max(1, clients);
+    }
+
+    /**
+     * Sets the number of requests each client may have outstanding
+     *
+     * @param depth Pipelining depth
+     */
+    public void setDepth(int depth) {
+        this.depth = Math.max(1, depth);
+    }
+
+    /**
+     * Sets the total rate across all clients
+     *
+     * @param rate Requests per second or 0 to send as fast as possible
+     */
+    public void setRate(int rate) {
+        this.rate = Math.max(0, rate);
+    }
+
+    /**
+     * Sets the length of the measurement period
+     *
+     * @param duration Duration in milliseconds
+     */
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Sets the time that load is applied before measuring starts
+     *
+     * @param warmup Warmup in milliseconds
+     */
+    public void setWarmup(long warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Sets the time to wait for a response before counting a timeout
+     *
+     * @param timeout Timeout in milliseconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets how often progress is printed while running
+     *
+     * @param reportInterval Interval in milliseconds or 0 for no progress
+     * @param reportStream   Stream to print to
+     */
+    public void setReport(long reportInterval, PrintStream reportStream) {
+        this.reportInterval = reportInterval;
+        this.reportStream = reportStream;
+    }
+
+    /**
+     * One type of request in the mix
+     */
+    public static class RequestSpec {
+        private final int functionCode;
+        private final int reference;
+        private final int count;
+        private final int weight;
+
+        public RequestSpec(int functionCode, int reference, int count, int weight) {
+            this.functionCode = functionCode;
+            this.reference = reference;
+            this.count = Math.max(1, count);
+            this.weight = Math.max(1, weight);
+            createRequest(0);
+        }
+
+        /**
+         * Parses a <tt>function:reference:count[:weight]</tt> specification
+         *
+         * @param spec Specification
+         *
+         * @return Request specification
+         */
+        public static RequestSpec parse(String spec) {
+            String[] parts = spec.trim().split(" *: *");
+            if (parts.length < 3 || parts.length > 4) {
+                throw new IllegalArgumentException(String.format("Invalid request '%s' - expected function:reference:count[:weight]", spec));
+            }
+            return new RequestSpec(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                    parts.length == 4 ? Integer.parseInt(parts[3]) : 1);
+        }
+
+        /**
+         * Creates a request from the specification
+         *
+         * @param unitId Unit ID to address
+         *
+         * @return Request
+         */
+        ModbusRequest createRequest(int unitId) {
+            ModbusRequest request;
+            switch (functionCode) {
+                case Modbus.READ_COILS:
+                    request = new ReadCoilsRequest(reference, count);
+                    break;
+                case Modbus.READ_INPUT_DISCRETES:
+                    request = new ReadInputDiscretesRequest(reference, count);
+                    break;
+                case Modbus.READ_MULTIPLE_REGISTERS:
+                    request = new ReadMultipleRegistersRequest(reference, count);
+                    break;
+                case Modbus.READ_INPUT_REGISTERS:
+                    request = new ReadInputRegistersRequest(reference, count);
+                    break;
+                case Modbus.WRITE_COIL:
+                    request = new WriteCoilRequest(reference, true);
+                    break;
+                case Modbus.WRITE_SINGLE_REGISTER:
+                    request = new WriteSingleRegisterRequest(reference, new SimpleRegister(count));
+                    break;
+                case Modbus.WRITE_MULTIPLE_COILS:
+                    request = new WriteMultipleCoilsRequest(reference, new BitVector(count));
+                    break;
+                case Modbus.WRITE_MULTIPLE_REGISTERS:
+                    request = new WriteMultipleRegistersRequest(reference, createRegisters(count));
+                    break;
+                case Modbus.READ_WRITE_MULTIPLE:
+                    ReadWriteMultipleRequest readWrite = new ReadWriteMultipleRequest(unitId, reference, count, reference, count);
+                    readWrite.setRegisters(createRegisters(count));
+                    request = readWrite;
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Function code %d is not supported by the load generator", functionCode));
+            }
+            request.setUnitID(unitId);
+            return request;
+        }
+
+        private static Register[] createRegisters(int count) {
+            Register[] registers = new Register[count];
+            for (int i = 0; i < count; i++) {
+                registers[i] = new SimpleRegister(i);
+            }
+            return registers;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d:%d:%d:%d", functionCode, reference, count, weight);
+        }
+    }
+
+    /**
+     * The results of a run
+     */
+    public static class Result {
+        private final long completed;
+        private final long exceptions;
+        private final long timeouts;
+        private final long errors;
+        private final long elapsed;
+        private final LatencyHistogram latency;
+
+        Result(long completed, long exceptions, long timeouts, long errors, long elapsed, LatencyHistogram latency) {
+            this.completed = completed;
+            this.exceptions = exceptions;
+            this.timeouts = timeouts;
+            this.errors = errors;
+            this.elapsed = elapsed;
+            this.latency = latency;
+        }
+
+        /**
+         * Returns the number of responses received in the measurement period,
+         * including exception responses
+         *
+         * @return Number of responses
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getExceptions() {
+            return exceptions;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the responses per second achieved in the measurement period
+         *
+         * @return Throughput
+         */
+        public double getThroughput() {
+            return elapsed <= 0 ? 0 : completed * 1000000000.0 / elapsed;
+        }
+
+        /**
+         * Returns the latencies measured in nanoseconds
+         *
+         * @return Latency histogram
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("throughput=%.0f req/s completed=%d exceptions=%d timeouts=%d errors=%d%nlatency(us) %s",
+                    getThroughput(), completed, exceptions, timeouts, errors, latency.toString(1000.0));
+        }
+    }
+
+    /**
+     * A single client with its own connection and thread
+     */
+    private class Client extends Thread {
+
+        private final CountDownLatch finished;
+        private final Random random;
+        private final ModbusRequest[] requests;
+        private final int[] schedule;
+        private final long[] sentAt = new long[Modbus.MAX_TRANSACTION_ID + 1];
+        private final boolean[] outstanding = new boolean[Modbus.MAX_TRANSACTION_ID + 1];
+        private TCPMasterConnection tcpConnection;
+        private UDPMasterConnection udpConnection;
+        private AbstractModbusTransport transport;
+        private int transactionId;
+
+        Client(int number, CountDownLatch finished) throws Exception {
+            super("j2mod-load-" + number);
+            setDaemon(true);
+            this.finished = finished;
+            random = new Random(number);
+
+            // Expand the weights into a schedule to pick from
+
+            requests = new ModbusRequest[mix.size()];
+            int total = 0;
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = mix.get(i).createRequest(unitId);
+                total += mix.get(i).weight;
+            }
+            schedule = new int[total];
+            int pos = 0;
+            for (int i = 0; i < requests.length; i++) {
+                for (int w = 0; w < mix.get(i).weight; w++) {
+                    schedule[pos++] = i;
+                }
+            }
+            connect();
+        }
+
+        private void connect() throws Exception {
+            if (isUDP()) {
+                udpConnection = new UDPMasterConnection(address);
+                udpConnection.setPort(port);
+                udpConnection.setTimeout(timeout);
+                udpConnection.connect();
+                transport = udpConnection.getModbusTransport();
+            }
+            else {
+                tcpConnection = new TCPMasterConnection(address);
+                tcpConnection.setPort(port);
+                tcpConnection.setTimeout(timeout);
+                tcpConnection.connect();
+                transport = tcpConnection.getModbusTransport();
+            }
+        }
+
+        private void close() {
+            if (tcpConnection != null) {
+                tcpConnection.close();
+            }
+            if (udpConnection != null) {
+                udpConnection.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            long interval = rate > 0 ? (long)(clients * 1000000000.0 / rate) : 0;
+            long next = System.nanoTime() + (interval > 0 ? random.nextInt((int)Math.min(interval, Integer.MAX_VALUE)) : 0);
+            int inFlight = 0;
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    if (now >= measureEnd && inFlight == 0) {
+                        break;
+                    }
+
+                    // Fill the pipeline, sending on schedule when rate limited
+
+                    while (inFlight < depth && now < measureEnd) {
+                        if (interval > 0 && next > now) {
+                            if (inFlight > 0) {
+                                break;
+                            }
+                            LockSupport.parkNanos(next - now);
+                            now = System.nanoTime();
+                            continue;
+                        }
+                        ModbusRequest request = requests[schedule[random.nextInt(schedule.length)]];
+                        transactionId = transactionId >= Modbus.MAX_TRANSACTION_ID ? 1 : transactionId + 1;
+                        request.setTransactionID(transactionId);
+                        sentAt[transactionId] = interval > 0 ? next : now;
+                        try {
+                            transport.writeMessage(request);
+                            outstanding[transactionId] = true;
+                            inFlight++;
+                        }
+                        catch (ModbusIOException e) {
+                            errors.incrementAndGet();
+                            inFlight = 0;
+                            reconnect();
+                        }
+                        next += interval;
+                        now = System.nanoTime();
+                    }
+                    if (inFlight == 0) {
+                        continue;
+                    }
+
+                    // Collect a response
+
+                    try {
+                        ModbusResponse response = transport.readResponse();
+                        long received = System.nanoTime();
+                        int id = response.getTransactionID() & 0xFFFF;
+
+                        // A late response to a request already given up on
+
+                        if (!outstanding[id]) {
+                            continue;
+                        }
+                        outstanding[id] = false;
+                        inFlight--;
+                        long sent = sentAt[id];
+                        if (sent >= measureStart && sent < measureEnd) {
+                            latency.recordValue(received - sent);
+                            completed.incrementAndGet();
+                            if (response instanceof ExceptionResponse) {
+                                exceptions.incrementAndGet();
+                            }
+                        }
+                        intervalLatency.recordValue(received - sent);
+                    }
+                    catch (ModbusIOException e) {
+
+                        // Anything still outstanding is lost, start afresh
+
+                        if (System.nanoTime() < measureEnd) {
+                            timeouts.addAndGet(inFlight);
+                        }
+                        inFlight = 0;
+                        reconnect();
+                    }
+                }
+            }
+            catch (Exception e) {
+                logger.error("Load client failed", e);
+                errors.incrementAndGet();
+            }
+            finally {
+                close();
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Abandons the outstanding requests and re-opens the connection so
+         * that late responses aren't mistaken for the responses to new
+         * requests.  A UDP response that still arrives on the new socket is
+         * ignored because its transaction ID is no longer outstanding.
+         *
+         * @throws Exception if the connection cannot be re-opened
+         */
+        private void reconnect() throws Exception {
+            Arrays.fill(outstanding, false);
+            close();
+            connect();
+        }
+    }
+}
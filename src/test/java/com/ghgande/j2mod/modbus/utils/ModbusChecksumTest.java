@@ -0,0 +1,96 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.util.ModbusChecksum;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public final class ModbusChecksumTest {
+
+    /**
+     * Calculates the CRC a bit at a time, straight from the specification
+     */
+    private static int bitwiseCRC(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+
+    @Test
+    public void testKnownCRC() throws Exception {
+        byte[] check = "123456789".getBytes("US-ASCII");
+        Assert.assertEquals("Incorrect check value", 0x4B37, ModbusChecksum.crc16(check, 0, check.length));
+
+        // Read 10 holding registers from 1 at unit 17
+        byte[] frame = {0x11, 0x03, 0x00, 0x6B, 0x00, 0x03};
+        int crc = ModbusChecksum.crc16(frame, 0, frame.length);
+        Assert.assertEquals("Incorrect first CRC byte", 0x76, crc & 0xFF);
+        Assert.assertEquals("Incorrect second CRC byte", 0x87, crc >>> 8);
+        int[] legacy = ModbusUtil.calculateCRC(frame, 0, frame.length);
+        Assert.assertEquals("Legacy CRC should match", crc & 0xFF, legacy[0]);
+        Assert.assertEquals("Legacy CRC should match", crc >>> 8, legacy[1]);
+    }
+
+    @Test
+    public void testCRCMatchesBitwise() {
+        byte[] data = new byte[300];
+        new Random(7).nextBytes(data);
+        for (int offset = 0; offset < 9; offset++) {
+            for (int length = 0; length + offset <= data.length; length += 17) {
+                int expected = bitwiseCRC(data, offset, length);
+                Assert.assertEquals("Incorrect CRC at " + offset + " for " + length, expected, ModbusChecksum.crc16(data, offset, length));
+
+                ByteBuffer heap = ByteBuffer.wrap(data, offset, length);
+                Assert.assertEquals("Incorrect heap buffer CRC", expected, ModbusChecksum.crc16(heap.slice()));
+                ByteBuffer direct = ByteBuffer.allocateDirect(length);
+                direct.put(data, offset, length).flip();
+                Assert.assertEquals("Incorrect direct buffer CRC", expected, ModbusChecksum.crc16(direct));
+                Assert.assertEquals("Buffer position should not move", 0, direct.position());
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalCRC() {
+        byte[] data = new byte[100];
+        new Random(11).nextBytes(data);
+        int crc = ModbusChecksum.CRC_INITIAL;
+        crc = ModbusChecksum.updateCRC16(crc, data, 0, 13);
+        crc = ModbusChecksum.updateCRC16(crc, data[13]);
+        crc = ModbusChecksum.updateCRC16(crc, data, 14, 86);
+        Assert.assertEquals("Incremental CRC should match", ModbusChecksum.crc16(data, 0, 100), crc);
+
+        byte[] frame = new byte[102];
+        System.arraycopy(data, 0, frame, 0, 100);
+        frame[100] = (byte)crc;
+        frame[101] = (byte)(crc >>> 8);
+        Assert.assertEquals("CRC of a frame with its CRC should be zero", 0, ModbusChecksum.crc16(frame, 0, frame.length));
+    }
+
+    @Test
+    public void testLRC() {
+        byte[] frame = {0x11, 0x03, 0x00, 0x6B, 0x00, 0x03};
+        Assert.assertEquals("Incorrect LRC", 0x7E, ModbusChecksum.lrc(frame, 0, frame.length));
+
+        byte[] data = new byte[257];
+        new Random(3).nextBytes(data);
+        for (int length = 0; length <= data.length; length += 7) {
+            int sum = 0;
+            for (int i = 0; i < length; i++) {
+                sum += data[i] & 0xFF;
+            }
+            Assert.assertEquals("Incorrect LRC for " + length, (-sum) & 0xFF, ModbusChecksum.lrc(data, 0, length));
+        }
+        int sum = ModbusChecksum.updateSum(0, data, 0, 100);
+        sum = ModbusChecksum.updateSum(sum, data, 100, 157);
+        Assert.assertEquals("Incremental LRC should match", ModbusChecksum.lrc(data, 0, 257), (-sum) & 0xFF);
+    }
+}
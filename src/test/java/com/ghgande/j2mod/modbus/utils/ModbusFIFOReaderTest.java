@@ -0,0 +1,182 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusIOException;
+import com.ghgande.j2mod.modbus.facade.ModbusFIFOReader;
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.*;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public final class ModbusFIFOReaderTest extends AbstractTestModbusTCPMaster {
+
+    private static final int ADDRESS = 100;
+    private static RingBufferFIFO fifo;
+
+    @BeforeClass
+    public static void addFIFO() {
+        fifo = new RingBufferFIFO(ADDRESS, 64);
+        SimpleProcessImage image = (SimpleProcessImage)ModbusCoupler.getReference().getProcessImage(UNIT_ID);
+        image.addFIFO(fifo);
+        image.addRegister(ADDRESS, fifo.getPointerRegister());
+    }
+
+    @Test
+    public void testRingBufferFIFO() {
+        RingBufferFIFO ring = new RingBufferFIFO(0, 40);
+        for (int i = 0; i < 40; i++) {
+            Assert.assertTrue("Value should be accepted", ring.offer(i));
+        }
+        Assert.assertFalse("Full FIFO should refuse values", ring.offer(40));
+        Register[] queue = ring.getRegisters();
+        Assert.assertEquals("Incorrect count", FIFO.MAX_QUEUE_LENGTH, queue[0].getValue());
+        Assert.assertEquals("Incorrect oldest value", 0, queue[1].getValue());
+
+        ring.getPointerRegister().setValue(10);
+        ring.getPointerRegister().setValue(10);
+        Assert.assertEquals("Repeated acknowledgement should be ignored", 30, ring.getRegisterCount());
+        Assert.assertEquals("Incorrect sequence", 10, ring.getPointerRegister().getValue());
+        Assert.assertEquals("Stale acknowledgement should be ignored", 0, ring.acknowledge(5));
+        Assert.assertEquals("Incorrect oldest value", 10, ring.getRegisters()[1].getValue());
+
+        RingBufferFIFO overwriting = new RingBufferFIFO(0, 4, true);
+        for (int i = 0; i < 6; i++) {
+            overwriting.offer(i);
+        }
+        Assert.assertEquals("Incorrect overflow count", 2, overwriting.getOverflowCount());
+        Assert.assertEquals("Incorrect sequence", 2, overwriting.getSequence());
+        Assert.assertEquals("Incorrect oldest value", 2, overwriting.getRegisters()[1].getValue());
+        overwriting.resetRegisters();
+        Assert.assertEquals("FIFO should be empty", 0, overwriting.getRegisterCount());
+        Assert.assertEquals("Incorrect sequence", 6, overwriting.getSequence());
+    }
+
+    @Test
+    public void testReadQueueIsNotDestructive() throws Exception {
+        fifo.resetRegisters();
+        fifo.offer(7);
+        fifo.offer(0xFFFF);
+        Assert.assertArrayEquals("Incorrect queue", new int[]{7, 0xFFFF}, master.readFIFOQueue(UNIT_ID, ADDRESS));
+        Assert.assertArrayEquals("Queue should be left alone", new int[]{7, 0xFFFF}, master.readFIFOQueue(UNIT_ID, ADDRESS));
+
+        ModbusFIFOReader reader = new ModbusFIFOReader(master, UNIT_ID, ADDRESS);
+
+        reader.setAcknowledging(true);
+        int[] values = new int[FIFO.MAX_QUEUE_LENGTH];
+        Assert.assertEquals("Incorrect number of values", 1, reader.read(values, 0, 1));
+        Assert.assertEquals("Incorrect value", 7, values[0]);
+        Assert.assertEquals("Incorrect number of values", 1, reader.read(values, 0, values.length));
+        Assert.assertEquals("Incorrect value", 0xFFFF, values[0]);
+        Assert.assertEquals("FIFO should be empty", 0, reader.read(values, 0, values.length));
+    }
+
+    @Test
+    public void testPlainReadWritesNothing() throws Exception {
+        fifo.resetRegisters();
+        fifo.offer(1);
+        fifo.offer(2);
+        fifo.offer(3);
+        int sequence = fifo.getSequence();
+
+        ModbusFIFOReader reader = new ModbusFIFOReader(master, UNIT_ID, ADDRESS);
+        Assert.assertFalse("Acknowledging should be off by default", reader.isAcknowledging());
+        int[] values = new int[FIFO.MAX_QUEUE_LENGTH];
+        Arrays.fill(values, -1);
+        Assert.assertEquals("Incorrect number of values", 2, reader.read(values, 0, 2));
+        Assert.assertArrayEquals("Incorrect values", new int[]{1, 2, -1}, Arrays.copyOf(values, 3));
+        Assert.assertEquals("Incorrect number of values", 1, reader.read(values, 0, values.length));
+        Assert.assertEquals("Incorrect value", 3, values[0]);
+        Assert.assertEquals("Nothing should be written to the slave", sequence, fifo.getSequence());
+        Assert.assertEquals("FIFO should be left alone", 3, fifo.getRegisterCount());
+    }
+
+    @Test
+    public void testLostAcknowledgementRespectsMax() throws Exception {
+        fifo.resetRegisters();
+        for (int i = 0; i < 5; i++) {
+            fifo.offer(i);
+        }
+        final boolean[] lose = {true};
+        ModbusTCPMaster lossy = new ModbusTCPMaster(LOCALHOST, PORT) {
+            @Override
+            public synchronized void writeSingleRegister(int unitId, int ref, Register register) throws ModbusException {
+                super.writeSingleRegister(unitId, ref, register);
+                if (lose[0]) {
+                    lose[0] = false;
+                    throw new ModbusIOException("Confirmation lost");
+                }
+            }
+        };
+        lossy.connect();
+        try {
+            ModbusFIFOReader reader = new ModbusFIFOReader(lossy, UNIT_ID, ADDRESS);
+            reader.setAcknowledging(true);
+            int[] values = new int[FIFO.MAX_QUEUE_LENGTH];
+            Arrays.fill(values, -1);
+            try {
+                reader.read(values, 0, values.length);
+                Assert.fail("Lost confirmation should be reported");
+            }
+            catch (ModbusIOException e) {
+                // Expected
+            }
+            Assert.assertEquals("FIFO should have been drained by the slave", 0, fifo.getRegisterCount());
+
+            // The released values are handed on no more than max at a time
+            Assert.assertEquals("Incorrect number of values", 2, reader.read(values, 0, 2));
+            Assert.assertArrayEquals("Incorrect values", new int[]{0, 1}, Arrays.copyOf(values, 2));
+            Assert.assertEquals("Value past max should be untouched", -1, values[2]);
+            Assert.assertEquals("Incorrect number of values", 2, reader.read(values, 0, 2));
+            Assert.assertArrayEquals("Incorrect values", new int[]{2, 3}, Arrays.copyOf(values, 2));
+            Assert.assertEquals("Incorrect number of values", 1, reader.read(values, 0, values.length));
+            Assert.assertEquals("Incorrect value", 4, values[0]);
+            Assert.assertEquals("FIFO should be empty", 0, reader.read(values, 0, values.length));
+        }
+        finally {
+            lossy.disconnect();
+        }
+    }
+
+    @Test
+    public void testStreamHasNoGapsOrDuplicates() throws Exception {
+        fifo.resetRegisters();
+        final int total = 3000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    while (!fifo.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        ModbusFIFOReader reader = new ModbusFIFOReader(master, UNIT_ID, ADDRESS, 100);
+        reader.setAcknowledging(true);
+        reader.setPollInterval(1);
+        producer.start();
+        reader.start();
+        try {
+            int[] values = new int[50];
+            int expected = 0;
+            while (expected < total) {
+                int taken = reader.take(values, 0, values.length, 10000);
+                Assert.assertTrue("Values should arrive", taken > 0);
+                for (int i = 0; i < taken; i++) {
+                    Assert.assertEquals("Values should arrive in order once", expected++, values[i]);
+                }
+            }
+        }
+        finally {
+            reader.stop();
+            producer.join();
+        }
+        Assert.assertEquals("Nothing should be left over", 0, reader.available());
+        Assert.assertEquals("FIFO should be drained", 0, fifo.getRegisterCount());
+        Assert.assertEquals("Nothing should be dropped", 0, fifo.getOverflowCount());
+    }
+}
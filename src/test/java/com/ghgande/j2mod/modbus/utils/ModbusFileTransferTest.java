@@ -0,0 +1,107 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.facade.ModbusFileTransfer;
+import com.ghgande.j2mod.modbus.procimg.*;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public final class ModbusFileTransferTest extends AbstractTestModbusTCPMaster {
+
+    private static final int FIRST_FILE = 10;
+    private static final int LENGTH = 45001;
+    private static ByteArrayFile[] files;
+
+    @BeforeClass
+    public static void addFiles() {
+        files = ByteArrayFile.createFiles(FIRST_FILE, new byte[LENGTH]);
+        SimpleProcessImage image = (SimpleProcessImage)ModbusCoupler.getReference().getProcessImage(UNIT_ID);
+        for (ByteArrayFile file : files) {
+            image.addFile(file);
+        }
+    }
+
+    private static byte[] createBlob(int length) {
+        byte[] blob = new byte[length];
+        for (int i = 0; i < blob.length; i++) {
+            blob[i] = (byte)(i * 31 + i / 256);
+        }
+        return blob;
+    }
+
+    @Test
+    public void testByteArrayFile() {
+        Assert.assertEquals("Incorrect number of files", 3, files.length);
+        Assert.assertEquals("Incorrect file number", FIRST_FILE + 2, files[2].getFileNumber());
+        Assert.assertEquals("Incorrect records in the last file", 2501, files[2].getRecordCount());
+
+        ByteArrayFile file = new ByteArrayFile(1, 4);
+        file.setRegisters(1, 2, new byte[]{0x12, 0x34, 0x56, 0x78}, 0);
+        Record record = file.getRecord(1);
+        Assert.assertEquals("Incorrect register count", 3, record.getRegisterCount());
+        Assert.assertEquals("Incorrect register", 0x5678, record.getRegister(1).getValue());
+        record.getRegister(2).setValue(0xABCD);
+        byte[] registers = new byte[4];
+        file.getRegisters(2, 2, registers, 0);
+        Assert.assertArrayEquals("Incorrect registers", new byte[]{0x56, 0x78, (byte)0xAB, (byte)0xCD}, registers);
+        try {
+            file.getRegisters(3, 2, registers, 0);
+            Assert.fail("Registers past the end of the file should fail");
+        }
+        catch (IllegalAddressException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testWriteAndReadAcrossFiles() throws Exception {
+        byte[] blob = createBlob(LENGTH);
+        ModbusFileTransfer transfer = new ModbusFileTransfer(master);
+        transfer.setUnitId(UNIT_ID);
+        transfer.write(FIRST_FILE, blob);
+        Assert.assertEquals("Incorrect position", LENGTH, transfer.getPosition());
+        for (int i = 0; i < LENGTH; i++) {
+            if (files[0].getData()[i] != blob[i]) {
+                Assert.fail("Incorrect byte " + i + " in the slave");
+            }
+        }
+
+        transfer.setWindow(1);
+        byte[] copy = transfer.read(FIRST_FILE, LENGTH);
+        Assert.assertEquals("Checksum should match", ModbusFileTransfer.checksum(blob), ModbusFileTransfer.checksum(copy));
+        Assert.assertArrayEquals("Blob should be read back", blob, copy);
+    }
+
+    @Test
+    public void testResumeAfterReconnect() throws Exception {
+        byte[] blob = createBlob(1000);
+        ModbusFileTransfer transfer = new ModbusFileTransfer(master);
+        transfer.setUnitId(UNIT_ID);
+        transfer.setChunkWords(50);
+        transfer.setVerify(false);
+        transfer.write(FIRST_FILE, blob);
+
+        byte[] copy = new byte[blob.length];
+        System.arraycopy(blob, 0, copy, 0, 400);
+        master.getConnection().close();
+        transfer.read(FIRST_FILE, copy, 400);
+        Assert.assertTrue("Connection should be reopened", master.isConnected());
+        Assert.assertArrayEquals("Blob should be read from the position", blob, copy);
+    }
+
+    @Test
+    public void testSlaveExceptionIsNotRetried() throws Exception {
+        ModbusFileTransfer transfer = new ModbusFileTransfer(master);
+        transfer.setUnitId(UNIT_ID);
+        try {
+            transfer.read(FIRST_FILE + 3, 10);
+            Assert.fail("Reading a missing file should fail");
+        }
+        catch (ModbusSlaveException e) {
+            Assert.assertEquals("Nothing should be transferred", 0, transfer.getPosition());
+        }
+        Assert.assertEquals("Connection should still be usable", 9999, master.readInputRegisters(UNIT_ID, 1, 1)[0].getValue());
+    }
+}
@@ -0,0 +1,213 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
+import com.ghgande.j2mod.modbus.msg.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.Socket;
+
+public final class ModbusFunctionRegistryTest extends AbstractTestModbusTCPMaster {
+
+    private static final int ECHO = 65;
+
+    /**
+     * Request carrying a word count of bytes that the slave echoes back
+     */
+    public static class EchoRequest extends ModbusRequest {
+        private byte[] payload = new byte[0];
+
+        public EchoRequest() {
+            setFunctionCode(ECHO);
+            setDataLength(2);
+        }
+
+        public EchoRequest(byte[] payload) {
+            this();
+            this.payload = payload;
+            setDataLength(2 + payload.length);
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public ModbusResponse getResponse() {
+            EchoResponse response = new EchoResponse(payload);
+            response.setHeadless(isHeadless());
+            if (!isHeadless()) {
+                response.setTransactionID(getTransactionID());
+                response.setProtocolID(getProtocolID());
+            }
+            response.setUnitID(getUnitID());
+            return response;
+        }
+
+        public ModbusResponse createResponse() {
+            return getResponse();
+        }
+
+        public void writeData(DataOutput dout) throws IOException {
+            dout.writeShort(payload.length);
+            dout.write(payload);
+        }
+
+        public void readData(DataInput din) throws IOException {
+            payload = new byte[din.readUnsignedShort()];
+            din.readFully(payload);
+            setDataLength(2 + payload.length);
+        }
+
+        public byte[] getMessage() {
+            return null;
+        }
+    }
+
+    public static class EchoResponse extends ModbusResponse {
+        private byte[] payload = new byte[0];
+
+        public EchoResponse() {
+            setFunctionCode(ECHO);
+            setDataLength(2);
+        }
+
+        public EchoResponse(byte[] payload) {
+            this();
+            this.payload = payload;
+            setDataLength(2 + payload.length);
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public void writeData(DataOutput dout) throws IOException {
+            dout.writeShort(payload.length);
+            dout.write(payload);
+        }
+
+        public void readData(DataInput din) throws IOException {
+            payload = new byte[din.readUnsignedShort()];
+            din.readFully(payload);
+            setDataLength(2 + payload.length);
+        }
+
+        public byte[] getMessage() {
+            return null;
+        }
+    }
+
+    private static class EchoFunction extends ModbusFunction {
+        private final int maximumLength;
+
+        EchoFunction(int functionCode, int maximumLength) {
+            super(functionCode);
+            this.maximumLength = maximumLength;
+        }
+
+        public ModbusRequest createRequest() {
+            return new EchoRequest();
+        }
+
+        public ModbusResponse createResponse() {
+            return new EchoResponse();
+        }
+
+        public int getRequestLength(byte[] data, int offset, int available) {
+            return getWordCountLength(data, offset, available, 0);
+        }
+
+        public int getResponseLength(byte[] data, int offset, int available) {
+            return getWordCountLength(data, offset, available, 0);
+        }
+
+        public int getMaximumLength() {
+            return maximumLength;
+        }
+    }
+
+    @After
+    public void clearRegistry() {
+        ModbusFunctionRegistry.getReference().clear();
+    }
+
+    @Test
+    public void testRegisteredFunctionsAreCreated() {
+        ModbusFunctionRegistry registry = ModbusFunctionRegistry.getReference();
+        Assert.assertTrue("65 should be user defined", ModbusFunctionRegistry.isUserDefined(ECHO));
+        Assert.assertFalse("3 should not be user defined", ModbusFunctionRegistry.isUserDefined(Modbus.READ_MULTIPLE_REGISTERS));
+        Assert.assertTrue("Unregistered code should be illegal", ModbusRequest.createModbusRequest(ECHO) instanceof IllegalFunctionRequest);
+
+        registry.register(new EchoFunction(ECHO, Modbus.MAX_MESSAGE_LENGTH));
+        Assert.assertTrue("Incorrect request type", ModbusRequest.createModbusRequest(ECHO) instanceof EchoRequest);
+        Assert.assertTrue("Incorrect response type", ModbusResponse.createModbusResponse(ECHO) instanceof EchoResponse);
+        Assert.assertTrue("Exception responses should be built in", ModbusResponse.createModbusResponse(ECHO | Modbus.EXCEPTION_OFFSET) instanceof ExceptionResponse);
+        Assert.assertNull("Exception codes are never registered", registry.getFunction(ECHO | Modbus.EXCEPTION_OFFSET));
+
+        registry.unregister(ECHO);
+        Assert.assertNull("Function should be unregistered", registry.getFunction(ECHO));
+    }
+
+    @Test
+    public void testMEITypesAreDispatched() {
+        ModbusFunctionRegistry registry = ModbusFunctionRegistry.getReference();
+        registry.registerMEI(0x0D, new EchoFunction(Modbus.READ_MEI, Modbus.MAX_MESSAGE_LENGTH));
+        Assert.assertTrue("Incorrect request for registered MEI type", ModbusRequest.createModbusRequest(Modbus.READ_MEI, 0x0D) instanceof EchoRequest);
+        Assert.assertTrue("Device identification should be built in", ModbusRequest.createModbusRequest(Modbus.READ_MEI, 0x0E) instanceof ReadMEIRequest);
+        Assert.assertTrue("No MEI type should be built in", ModbusRequest.createModbusRequest(Modbus.READ_MEI) instanceof ReadMEIRequest);
+
+        ModbusRequestPool pool = new ModbusRequestPool();
+        Assert.assertTrue("Pool should key on the MEI type", pool.getRequest(Modbus.READ_MEI, 0x0D) instanceof EchoRequest);
+        Assert.assertTrue("Pool should key on the MEI type", pool.getRequest(Modbus.READ_MEI, 0x0E) instanceof ReadMEIRequest);
+
+        try {
+            registry.registerMEI(0x0D, new EchoFunction(ECHO, Modbus.MAX_MESSAGE_LENGTH));
+            Assert.fail("MEI functions must use the MEI function code");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testLengthsConverge() {
+        EchoFunction function = new EchoFunction(ECHO, Modbus.MAX_MESSAGE_LENGTH);
+        byte[] frame = {1, ECHO, 0x01, 0x04, 0, 0};
+        Assert.assertEquals("Count is needed first", 2, function.getRequestLength(frame, 2, 0));
+        Assert.assertEquals("Incorrect length from count", 262, function.getRequestLength(frame, 2, 2));
+        Assert.assertEquals("Maximum length should follow registrations", Modbus.MAX_MESSAGE_LENGTH, ModbusFunctionRegistry.getReference().getMaximumLength());
+
+        ModbusFunctionRegistry.getReference().register(new EchoFunction(ECHO, 1024));
+        Assert.assertEquals("Maximum length should follow registrations", 1024, ModbusFunctionRegistry.getReference().getMaximumLength());
+    }
+
+    @Test
+    public void testLongFrameOverTCP() throws Exception {
+        ModbusFunctionRegistry.getReference().register(new EchoFunction(ECHO, 1024));
+        byte[] payload = new byte[800];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte)i;
+        }
+        EchoRequest request = new EchoRequest(payload);
+        request.setUnitID(UNIT_ID);
+
+        ModbusTCPTransport transport = new ModbusTCPTransport(new Socket(LOCALHOST, PORT));
+        try {
+            ModbusTCPTransaction transaction = (ModbusTCPTransaction)transport.createTransaction();
+            transaction.setRequest(request);
+            transaction.execute();
+            ModbusResponse response = transaction.getResponse();
+            Assert.assertTrue("Incorrect response type", response instanceof EchoResponse);
+            Assert.assertArrayEquals("Payload should be echoed", payload, ((EchoResponse)response).getPayload());
+        }
+        finally {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.facade.ModbusReadWritePlanner;
+import com.ghgande.j2mod.modbus.facade.ModbusTCPMaster;
+import com.ghgande.j2mod.modbus.procimg.InputRegister;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class ModbusReadWritePlannerTest extends AbstractTestModbusTCPMaster {
+
+    /**
+     * Master for a slave that does not support read/write multiple registers
+     */
+    private static class NoReadWriteMaster extends ModbusTCPMaster {
+        int attempts;
+
+        NoReadWriteMaster() {
+            super(LOCALHOST, PORT);
+        }
+
+        @Override
+        public synchronized InputRegister[] readWriteMultipleRegisters(int unitId, int readRef, int readCount, int writeRef, Register[] registers) throws ModbusException {
+            attempts++;
+            throw new ModbusSlaveException(Modbus.ILLEGAL_FUNCTION_EXCEPTION);
+        }
+    }
+
+    private static int[] values(InputRegister[] registers) {
+        int[] values = new int[registers.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = registers[i].getValue();
+        }
+        return values;
+    }
+
+    @Test
+    public void testReadWriteWritesFirst() throws Exception {
+        InputRegister[] registers = master.readWriteMultipleRegisters(UNIT_ID, 2, 2, 3, new Register[]{new SimpleRegister(7)});
+        Assert.assertArrayEquals("Read should follow the write", new int[]{2222, 7}, values(registers));
+        master.writeSingleRegister(UNIT_ID, 3, new SimpleRegister(3333));
+    }
+
+    @Test
+    public void testWriteAndReadAreCombined() throws Exception {
+        ModbusReadWritePlanner planner = new ModbusReadWritePlanner(master);
+        planner.writeMultipleRegisters(UNIT_ID, 1, new Register[]{new SimpleRegister(500), new SimpleRegister(501)});
+        planner.writeMultipleRegisters(UNIT_ID, 3, new Register[]{new SimpleRegister(502)});
+        Assert.assertEquals("Write should be held", 1111, master.readMultipleRegisters(UNIT_ID, 1, 1)[0].getValue());
+
+        Assert.assertArrayEquals("Read should follow the writes", new int[]{251, 500, 501, 502}, values(planner.readMultipleRegisters(UNIT_ID, 0, 4)));
+        Assert.assertEquals("Incorrect combined count", 1, planner.getCombinedCount());
+        Assert.assertTrue("Unit should support combining", planner.isSupported(UNIT_ID));
+
+        planner.writeMultipleRegisters(UNIT_ID, 1, new Register[]{new SimpleRegister(1111)});
+        planner.writeMultipleRegisters(UNIT_ID, 3, new Register[]{new SimpleRegister(3333)});
+        Assert.assertEquals("Separate write should be sent", 1111, master.readMultipleRegisters(UNIT_ID, 1, 1)[0].getValue());
+        planner.writeMultipleRegisters(UNIT_ID, 2, new Register[]{new SimpleRegister(2222)});
+        planner.flush();
+        Assert.assertArrayEquals("Flush should send the writes", new int[]{1111, 2222, 3333}, values(master.readMultipleRegisters(UNIT_ID, 1, 3)));
+        Assert.assertEquals("Incorrect combined count", 1, planner.getCombinedCount());
+    }
+
+    @Test
+    public void testFallbackWhenUnsupported() throws Exception {
+        NoReadWriteMaster unsupported = new NoReadWriteMaster();
+        unsupported.connect();
+        try {
+            ModbusReadWritePlanner planner = new ModbusReadWritePlanner(unsupported);
+            planner.writeMultipleRegisters(UNIT_ID, 4, new Register[]{new SimpleRegister(600)});
+            Assert.assertArrayEquals("Write should still be made", new int[]{600}, values(planner.readMultipleRegisters(UNIT_ID, 4, 1)));
+            Assert.assertFalse("Unit should not support combining", planner.isSupported(UNIT_ID));
+
+            planner.writeMultipleRegisters(UNIT_ID, 4, new Register[]{new SimpleRegister(4444)});
+            Assert.assertArrayEquals("Write should still be made", new int[]{4444}, values(planner.readMultipleRegisters(UNIT_ID, 4, 1)));
+            Assert.assertEquals("Combining should only be tried once", 1, unsupported.attempts);
+            Assert.assertEquals("Nothing should be combined", 0, planner.getCombinedCount());
+        }
+        finally {
+            unsupported.disconnect();
+        }
+    }
+}
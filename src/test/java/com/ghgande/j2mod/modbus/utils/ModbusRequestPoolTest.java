@@ -0,0 +1,94 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public final class ModbusRequestPoolTest extends AbstractTestModbus {
+
+    @BeforeClass
+    public static void setUpProcessImage() {
+        getSimpleProcessImage();
+    }
+
+    @Test
+    public void testRequestsAreReusedAndReset() {
+        ModbusRequestPool pool = new ModbusRequestPool();
+        ModbusRequest request = pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS);
+        Assert.assertTrue("Request should be pooled", request.isPooled());
+        Assert.assertTrue("Incorrect request type", request instanceof ReadMultipleRegistersRequest);
+        request.setTransactionID(99);
+        request.setUnitID(UNIT_ID);
+        request.setHeadless(true);
+
+        Assert.assertSame("Request should be reused", request, pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS));
+        Assert.assertEquals("Transaction ID should be reset", Modbus.DEFAULT_TRANSACTION_ID, request.getTransactionID());
+        Assert.assertEquals("Unit ID should be reset", Modbus.DEFAULT_UNIT_ID, request.getUnitID());
+        Assert.assertFalse("Headless should be reset", request.isHeadless());
+        Assert.assertNotSame("Each function code should have its own request", request, pool.getRequest(Modbus.READ_COILS));
+
+        pool.clear();
+        Assert.assertNotSame("Clear should discard the requests", request, pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS));
+    }
+
+    @Test
+    public void testPooledResponsesAreReused() {
+        ModbusRequestPool pool = new ModbusRequestPool();
+        ReadMultipleRegistersRequest request = (ReadMultipleRegistersRequest)pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS);
+        request.setUnitID(UNIT_ID);
+        request.setTransactionID(1);
+        request.setReference(40000);
+        request.setWordCount(2);
+        ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse)request.createResponse();
+        Assert.assertEquals("Incorrect transaction ID", 1, response.getTransactionID());
+        Assert.assertEquals("Incorrect register value", 1234, response.getRegisterValue(0));
+
+        request = (ReadMultipleRegistersRequest)pool.getRequest(Modbus.READ_MULTIPLE_REGISTERS);
+        request.setUnitID(UNIT_ID);
+        request.setTransactionID(2);
+        request.setReference(40001);
+        request.setWordCount(2);
+        Assert.assertSame("Response should be reused", response, request.createResponse());
+        Assert.assertEquals("Incorrect transaction ID", 2, response.getTransactionID());
+        Assert.assertEquals("Incorrect word count", 2, response.getWordCount());
+        Assert.assertEquals("Incorrect register value", 3456, response.getRegisterValue(1));
+
+        request.setReference(100);
+        ExceptionResponse exception = (ExceptionResponse)request.createResponse();
+        Assert.assertEquals("Incorrect exception code", Modbus.ILLEGAL_ADDRESS_EXCEPTION, exception.getExceptionCode());
+        Assert.assertSame("Exception response should be reused", exception, request.createExceptionResponse(Modbus.SLAVE_DEVICE_FAILURE));
+        Assert.assertEquals("Incorrect exception code", Modbus.SLAVE_DEVICE_FAILURE, exception.getExceptionCode());
+        Assert.assertEquals("Incorrect exception function code", Modbus.READ_MULTIPLE_REGISTERS | Modbus.EXCEPTION_OFFSET, exception.getFunctionCode());
+    }
+
+    @Test
+    public void testCoilResponseFollowsBitCount() {
+        ModbusRequestPool pool = new ModbusRequestPool();
+        ReadCoilsRequest request = (ReadCoilsRequest)pool.getRequest(Modbus.READ_COILS);
+        request.setUnitID(UNIT_ID);
+        request.setBitCount(2);
+        ReadCoilsResponse response = (ReadCoilsResponse)request.createResponse();
+        Assert.assertTrue("Incorrect coil 0", response.getCoilStatus(0));
+        Assert.assertSame("Response should be reused for the same count", response, request.createResponse());
+
+        request.setReference(50000);
+        request.setBitCount(3);
+        ReadCoilsResponse resized = (ReadCoilsResponse)request.createResponse();
+        Assert.assertNotSame("Response should be replaced for a new count", response, resized);
+        Assert.assertEquals("Incorrect bit count", 3, resized.getBitCount());
+        Assert.assertTrue("Incorrect coil 50001", resized.getCoilStatus(1));
+    }
+
+    @Test
+    public void testUnpooledRequestsCreateNewResponses() {
+        WriteSingleRegisterRequest request = new WriteSingleRegisterRequest(0, new SimpleRegister(251));
+        request.setUnitID(UNIT_ID);
+        WriteSingleRegisterResponse response = (WriteSingleRegisterResponse)request.createResponse();
+        Assert.assertEquals("Incorrect register value", 251, response.getRegisterValue());
+        Assert.assertEquals("Incorrect function code", Modbus.WRITE_SINGLE_REGISTER, response.getFunctionCode());
+        Assert.assertNotSame("Response should not be reused", response, request.createResponse());
+    }
+}
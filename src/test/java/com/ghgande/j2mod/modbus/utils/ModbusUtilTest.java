@@ -0,0 +1,29 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class ModbusUtilTest {
+
+    @Test
+    public void testToHex() {
+        byte[] data = {0x01, (byte)0xAB, 0x0F, (byte)0xFF};
+        Assert.assertEquals("Incorrect hex for whole array", "01 AB 0F FF", ModbusUtil.toHex(data));
+        Assert.assertEquals("Incorrect hex for part of array", "AB 0F", ModbusUtil.toHex(data, 1, 2));
+        Assert.assertEquals("Length past the end should be truncated", "0F FF", ModbusUtil.toHex(data, 2, 10));
+        Assert.assertEquals("Empty range should be blank", "", ModbusUtil.toHex(data, 0, 0));
+    }
+
+    @Test
+    public void testLazyHex() {
+        byte[] data = {0x12, 0x34};
+        Object hex = ModbusUtil.lazyHex(data, 0, data.length);
+        data[1] = 0x56;
+        Assert.assertEquals("Lazy hex should format when used", "12 56", hex.toString());
+
+        ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(2, 3);
+        Assert.assertEquals("Lazy message hex should match the message hex", request.getHexMessage(), ModbusUtil.lazyHex(request).toString());
+    }
+}
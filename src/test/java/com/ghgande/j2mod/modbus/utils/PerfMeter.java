@@ -0,0 +1,327 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Measures the sustained rate, latency and allocation of a repeated operation
+ * and compares the figures with the baselines stored in
+ * <tt>perf-baselines.properties</tt>.
+ * <p>
+ * Allocation is read from the per-thread counters of the HotSpot
+ * <tt>ThreadMXBean</tt> summed over every thread alive at the end, so the bytes allocated
+ * by the listener threads serving the request are charged to the request as
+ * well as those allocated by the master.
+ * <p>
+ * Each figure is checked against its baseline with a tolerance, which is
+ * deliberately loose for the rate and latency as they depend on the machine,
+ * and tighter for the allocation which doesn't.  The following system
+ * properties change the behaviour:
+ * <ul>
+ * <li><tt>perf.duration</tt> - measurement time in milliseconds (default 2000)</li>
+ * <li><tt>perf.tolerance</tt> - allowed rate and latency regression as a fraction (default 2.0)</li>
+ * <li><tt>perf.allocation.tolerance</tt> - allowed allocation regression as a fraction (default 0.5)</li>
+ * <li><tt>perf.record</tt> - file to write the measured figures to as new baselines instead of checking them</li>
+ * </ul>
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class PerfMeter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerfMeter.class);
+
+    public static final String BASELINES = "/perf-baselines.properties";
+
+    private static final long WARMUP = 1000;
+
+    // Latency differences smaller than this are timer and scheduler noise
+    private static final double LATENCY_SLACK = 10;
+    private static Properties baselines;
+
+    /**
+     * An operation to repeat
+     */
+    public interface Operation {
+
+        /**
+         * Executes the operation once
+         *
+         * @throws Exception If it fails, which fails the measurement
+         */
+        void execute() throws Exception;
+    }
+
+    /**
+     * Figures measured for an operation
+     */
+    public static class Result {
+        private final String name;
+        private final long count;
+        private final double requestsPerSecond;
+        private final double p99;
+        private final long bytesPerRequest;
+
+        Result(String name, long count, double requestsPerSecond, double p99, long bytesPerRequest) {
+            this.name = name;
+            this.count = count;
+            this.requestsPerSecond = requestsPerSecond;
+            this.p99 = p99;
+            this.bytesPerRequest = bytesPerRequest;
+        }
+
+        /**
+         * Returns the name the baselines are stored under
+         *
+         * @return Name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of operations measured
+         *
+         * @return Count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sustained rate
+         *
+         * @return Operations per second
+         */
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        /**
+         * Returns the 99th percentile latency
+         *
+         * @return Latency in microseconds
+         */
+        public double getP99() {
+            return p99;
+        }
+
+        /**
+         * Returns the bytes allocated by all threads per operation, or -1 if
+         * the JVM cannot measure it
+         *
+         * @return Bytes per operation
+         */
+        public long getBytesPerRequest() {
+            return bytesPerRequest;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d requests, %.0f req/s, p99 %.1f us, %d bytes/request",
+                    name, count, requestsPerSecond, p99, bytesPerRequest);
+        }
+    }
+
+    /**
+     * Measures the operation, warming it up first
+     *
+     * @param name      Name of the measurement in the baselines
+     * @param operation Operation to repeat
+     *
+     * @return Figures measured
+     *
+     * @throws Exception If the operation fails
+     */
+    public static Result measure(String name, Operation operation) throws Exception {
+        long duration = Long.getLong("perf.duration", 2000);
+        LatencyHistogram latency = new LatencyHistogram();
+
+        long end = System.nanoTime() + WARMUP * 1000000L;
+        while (System.nanoTime() < end) {
+            operation.execute();
+        }
+
+        System.gc();
+        long count = 0;
+        Map<Long, Long> allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        end = start + duration * 1000000L;
+        long now = start;
+        while (now < end) {
+            operation.execute();
+            long finished = System.nanoTime();
+            latency.recordValue(finished - now);
+            now = finished;
+            count++;
+        }
+        long bytes = -1;
+        if (allocated != null) {
+            bytes = getAllocatedBytes(allocated, getAllocatedBytes()) / count;
+        }
+        Result result = new Result(name, count, count * 1000000000.0 / (now - start),
+                latency.getValueAtPercentile(99) / 1000.0, bytes);
+        logger.info(result.toString());
+        return result;
+    }
+
+    /**
+     * Checks the figures against the stored baselines, or records them as the
+     * new baselines if the <tt>perf.record</tt> property is set
+     *
+     * @param result Figures to check
+     *
+     * @throws IOException If the baselines cannot be read or written
+     * @throws AssertionError If any figure has regressed beyond the tolerance
+     */
+    public static synchronized void check(Result result) throws IOException {
+        String record = System.getProperty("perf.record");
+        if (record != null) {
+            record(new File(record), result);
+            return;
+        }
+        double tolerance = Double.parseDouble(System.getProperty("perf.tolerance", "2.0"));
+        double allocationTolerance = Double.parseDouble(System.getProperty("perf.allocation.tolerance", "0.5"));
+        Properties props = getBaselines();
+        List<String> failures = new ArrayList<String>();
+
+        String rate = props.getProperty(result.getName() + ".requestsPerSecond");
+        if (rate != null && result.getRequestsPerSecond() * (1 + tolerance) < Double.parseDouble(rate)) {
+            failures.add(String.format("rate %.0f req/s is below the baseline of %s req/s", result.getRequestsPerSecond(), rate));
+        }
+        String p99 = props.getProperty(result.getName() + ".p99");
+        if (p99 != null && result.getP99() > Double.parseDouble(p99) * (1 + tolerance) + LATENCY_SLACK) {
+            failures.add(String.format("p99 latency %.1f us is above the baseline of %s us", result.getP99(), p99));
+        }
+        String bytes = props.getProperty(result.getName() + ".bytesPerRequest");
+        if (bytes != null && result.getBytesPerRequest() >= 0 && result.getBytesPerRequest() > Long.parseLong(bytes) * (1 + allocationTolerance)) {
+            failures.add(String.format("allocation of %d bytes/request is above the baseline of %s bytes/request", result.getBytesPerRequest(), bytes));
+        }
+        if (rate == null && p99 == null && bytes == null) {
+            logger.warn("No baselines for {} - run with -Dperf.record=<file> to create them", result.getName());
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(String.format("Performance regression in %s: %s", result.getName(), failures));
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by each live thread
+     *
+     * @return Bytes allocated keyed by thread ID or null if the JVM cannot measure it
+     */
+    public static Map<Long, Long> getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<Long, Long>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * Returns the bytes allocated between two snapshots by the threads that
+     * are still alive, counting threads started in between from zero
+     *
+     * @param before Earlier snapshot
+     * @param after  Later snapshot
+     *
+     * @return Bytes allocated
+     */
+    private static long getAllocatedBytes(Map<Long, Long> before, Map<Long, Long> after) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long start = before.get(entry.getKey());
+            total += entry.getValue() - (start == null ? 0 : start);
+        }
+        return total;
+    }
+
+    /**
+     * Loads the baselines from the classpath
+     *
+     * @return Baselines
+     *
+     * @throws IOException If they cannot be read
+     */
+    private static Properties getBaselines() throws IOException {
+        if (baselines == null) {
+            baselines = new Properties();
+            InputStream in = PerfMeter.class.getResourceAsStream(BASELINES);
+            if (in != null) {
+                try {
+                    baselines.load(in);
+                }
+                finally {
+                    in.close();
+                }
+            }
+        }
+        return baselines;
+    }
+
+    /**
+     * Adds the figures to a baselines file, keeping any already in there
+     *
+     * @param file   File to update
+     * @param result Figures to add
+     *
+     * @throws IOException If the file cannot be read or written
+     */
+    private static void record(File file, Result result) throws IOException {
+        Properties props = new Properties();
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                props.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+        props.setProperty(result.getName() + ".requestsPerSecond", String.valueOf(Math.round(result.getRequestsPerSecond())));
+        props.setProperty(result.getName() + ".p99", String.valueOf(Math.round(result.getP99() * 10) / 10.0));
+        if (result.getBytesPerRequest() >= 0) {
+            props.setProperty(result.getName() + ".bytesPerRequest", String.valueOf(result.getBytesPerRequest()));
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            props.store(out, "j2mod performance baselines");
+        }
+        finally {
+            out.close();
+        }
+        logger.info("Recorded baselines for {} in {}", result.getName(), file);
+    }
+}
@@ -0,0 +1,164 @@
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.ModbusCoupler;
+import com.ghgande.j2mod.modbus.msg.*;
+import com.ghgande.j2mod.modbus.procimg.*;
+import com.ghgande.j2mod.modbus.util.BitVector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+
+public final class ProcessImageExportTest {
+
+    private static void checkExports(ExportableProcessImage image) {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        image.exportRegisterRange(1, 3, buffer);
+        Assert.assertEquals("Incorrect number of bytes exported", 6, buffer.position());
+        Register[] registers = image.getRegisterRange(1, 3);
+        for (int i = 0; i < registers.length; i++) {
+            Assert.assertEquals("Incorrect register " + i, registers[i].toShort(), buffer.getShort(i * 2));
+        }
+
+        buffer.clear();
+        image.exportInputRegisterRange(0, 4, buffer);
+        InputRegister[] inputRegisters = image.getInputRegisterRange(0, 4);
+        for (int i = 0; i < inputRegisters.length; i++) {
+            Assert.assertEquals("Incorrect input register " + i, inputRegisters[i].toShort(), buffer.getShort(i * 2));
+        }
+
+        BitVector bits = new BitVector(3);
+        image.exportDigitalOutRange(1, bits);
+        DigitalOut[] douts = image.getDigitalOutRange(1, 3);
+        for (int i = 0; i < douts.length; i++) {
+            Assert.assertEquals("Incorrect coil " + i, douts[i].isSet(), bits.getBit(i));
+        }
+        image.exportDigitalInRange(0, bits);
+        DigitalIn[] dins = image.getDigitalInRange(0, 3);
+        for (int i = 0; i < dins.length; i++) {
+            Assert.assertEquals("Incorrect discrete " + i, dins[i].isSet(), bits.getBit(i));
+        }
+
+        try {
+            image.exportRegisterRange(3, 2, ByteBuffer.allocate(4));
+            Assert.fail("Export past the end of the registers should fail");
+        }
+        catch (IllegalAddressException e) {
+            // Expected
+        }
+        try {
+            image.exportDigitalInRange(2, new BitVector(3));
+            Assert.fail("Export past the end of the discretes should fail");
+        }
+        catch (IllegalAddressException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSimpleProcessImageExport() {
+        SimpleProcessImage image = new SimpleProcessImage();
+        for (int i = 0; i < 4; i++) {
+            image.addRegister(new SimpleRegister(0x8000 + i * 0x111));
+            image.addInputRegister(new SimpleInputRegister(i * 1000));
+            image.addDigitalOut(new SimpleDigitalOut(i % 2 == 0));
+        }
+        image.addDigitalIn(new SimpleDigitalIn(true));
+        image.addDigitalIn(new SimpleDigitalIn(false));
+        image.addDigitalIn(new SimpleDigitalIn(true));
+        image.addDigitalIn(new SimpleDigitalIn(true));
+        checkExports(image);
+    }
+
+    @Test
+    public void testArrayProcessImageExport() {
+        ArrayProcessImage image = new ArrayProcessImage(1, 4);
+        for (int i = 0; i < 4; i++) {
+            image.setRegisterValue(i, 0x8000 + i * 0x111);
+            image.setInputRegisterValue(i, i * 1000);
+            image.setDigitalOutValue(i, i % 2 == 0);
+            image.setDigitalInValue(i, i != 1);
+        }
+        checkExports(image);
+    }
+
+    @Test
+    public void testExportedResponseMatchesRegisters() throws Exception {
+        ArrayProcessImage image = new ArrayProcessImage(1, 10);
+        for (int i = 0; i < 10; i++) {
+            image.setRegisterValue(i, 0xFF00 + i);
+        }
+        ReadMultipleRegistersResponse exported = new ReadMultipleRegistersResponse();
+        exported.setRegisters(image, 2, 5);
+        ReadMultipleRegistersResponse copied = new ReadMultipleRegistersResponse(image.getRegisterRange(2, 5));
+
+        Assert.assertArrayEquals("Exported message should match", copied.getMessage(), exported.getMessage());
+        ByteBuffer expected = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH);
+        ByteBuffer actual = ByteBuffer.allocate(Modbus.MAX_MESSAGE_LENGTH);
+        copied.encode(expected);
+        exported.encode(actual);
+        expected.flip();
+        actual.flip();
+        Assert.assertEquals("Exported frame should match", expected, actual);
+
+        Assert.assertEquals("Incorrect register value", 0xFF04, exported.getRegisterValue(2));
+        Assert.assertEquals("Incorrect register", 0xFF06, exported.getRegister(4).getValue());
+        Assert.assertEquals("Incorrect word count", 5, exported.getRegisters().length);
+    }
+
+    @Test
+    public void testPlainProcessImageFallsBack() throws Exception {
+        final SimpleProcessImage image = new SimpleProcessImage(77);
+        for (int i = 0; i < 4; i++) {
+            image.addRegister(new SimpleRegister(0x8000 + i));
+            image.addInputRegister(new SimpleInputRegister(i * 1000));
+            image.addDigitalOut(new SimpleDigitalOut(i % 2 == 0));
+            image.addDigitalIn(new SimpleDigitalIn(i != 1));
+        }
+
+        // A process image written against the interface alone
+        ProcessImage plain = (ProcessImage)Proxy.newProxyInstance(ProcessImage.class.getClassLoader(), new Class<?>[]{ProcessImage.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                try {
+                    return method.invoke(image, args);
+                }
+                catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+        Assert.assertFalse("Proxy should not be exportable", plain instanceof ExportableProcessImage);
+        ModbusCoupler.getReference().setProcessImage(plain);
+
+        ReadMultipleRegistersRequest registers = new ReadMultipleRegistersRequest(1, 2);
+        registers.setUnitID(77);
+        Assert.assertEquals("Incorrect register", 0x8002, ((ReadMultipleRegistersResponse)registers.createResponse()).getRegisterValue(1));
+
+        ReadInputRegistersRequest inputs = new ReadInputRegistersRequest(2, 2);
+        inputs.setUnitID(77);
+        Assert.assertEquals("Incorrect input register", 3000, ((ReadInputRegistersResponse)inputs.createResponse()).getRegisterValue(1));
+
+        ReadCoilsRequest coils = new ReadCoilsRequest(0, 3);
+        coils.setUnitID(77);
+        ReadCoilsResponse coilsResponse = (ReadCoilsResponse)coils.createResponse();
+        Assert.assertTrue("Incorrect coil 2", coilsResponse.getCoilStatus(2));
+        Assert.assertFalse("Incorrect coil 1", coilsResponse.getCoilStatus(1));
+
+        ReadInputDiscretesRequest discretes = new ReadInputDiscretesRequest(0, 3);
+        discretes.setUnitID(77);
+        ReadInputDiscretesResponse discretesResponse = (ReadInputDiscretesResponse)discretes.createResponse();
+        Assert.assertFalse("Incorrect discrete 1", discretesResponse.getDiscreteStatus(1));
+        Assert.assertTrue("Incorrect discrete 2", discretesResponse.getDiscreteStatus(2));
+
+        ReadWriteMultipleRequest readWrite = new ReadWriteMultipleRequest(77, 0, 2, 1, 1);
+        readWrite.setRegisters(new Register[]{new SimpleRegister(5)});
+        ReadWriteMultipleResponse readWriteResponse = (ReadWriteMultipleResponse)readWrite.createResponse();
+        Assert.assertEquals("Read should follow the write", 5, readWriteResponse.getRegisterValue(1));
+    }
+}
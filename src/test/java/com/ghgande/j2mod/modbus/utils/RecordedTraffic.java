@@ -0,0 +1,507 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.Modbus;
+import com.ghgande.j2mod.modbus.io.BytesInputStream;
+import com.ghgande.j2mod.modbus.io.PcapngReader;
+import com.ghgande.j2mod.modbus.io.PcapngWriter;
+import com.ghgande.j2mod.modbus.msg.ModbusMessage;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.*;
+
+/**
+ * The Modbus transactions decoded from a capture, in the order the requests
+ * were sent, each with the response that was recorded for it.
+ * <p>
+ * Captures can be pcap or pcapng files written by {@link com.ghgande.j2mod.modbus.io.WireCapture},
+ * tcpdump or Wireshark.  Modbus/TCP over TCP and UDP is decoded from
+ * Ethernet, Linux cooked, loopback and raw IP link types, reassembling TCP
+ * streams and matching responses to requests by transaction ID.  RTU frames
+ * are decoded from the <tt>DLT User 0</tt> link type, treating a frame as the
+ * response to the previous request if the unit ID and function code match.
+ * <p>
+ * The end of the connection that receives the first request is taken as the
+ * slave unless one end uses the server port (<tt>502</tt> by default).
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class RecordedTraffic {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordedTraffic.class);
+
+    private static final int LINKTYPE_NULL = 0;
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+    private static final int LINKTYPE_IPV4 = 228;
+    private static final int LINKTYPE_IPV6 = 229;
+
+    private final List<Transaction> transactions = new ArrayList<Transaction>();
+    private final int serverPort;
+    private final Set<String> servers = new HashSet<String>();
+    private final Map<String, ByteArrayOutputStream> streams = new HashMap<String, ByteArrayOutputStream>();
+    private final Map<String, Transaction> pending = new HashMap<String, Transaction>();
+    private Transaction lastSerialRequest;
+    private int unmatchedResponses;
+    private int undecoded;
+
+    /**
+     * Creates an empty set of transactions
+     *
+     * @param serverPort Port the slaves listen on
+     */
+    public RecordedTraffic(int serverPort) {
+        this.serverPort = serverPort;
+    }
+
+    /**
+     * Decodes the transactions from a capture file assuming the slaves
+     * listen on the default Modbus port
+     *
+     * @param file Capture file
+     *
+     * @return Decoded transactions
+     *
+     * @throws IOException if the capture cannot be read
+     */
+    public static RecordedTraffic load(File file) throws IOException {
+        return load(file, Modbus.DEFAULT_PORT);
+    }
+
+    /**
+     * Decodes the transactions from a capture file
+     *
+     * @param file       Capture file
+     * @param serverPort Port the slaves listen on
+     *
+     * @return Decoded transactions
+     *
+     * @throws IOException if the capture cannot be read
+     */
+    public static RecordedTraffic load(File file, int serverPort) throws IOException {
+        RecordedTraffic traffic = load(new PcapngReader(file), serverPort);
+        logger.debug("Loaded {} transactions from {}", traffic.transactions.size(), file);
+        return traffic;
+    }
+
+    /**
+     * Decodes the transactions from a capture stream
+     *
+     * @param in         Capture stream
+     * @param serverPort Port the slaves listen on
+     *
+     * @return Decoded transactions
+     *
+     * @throws IOException if the capture cannot be read
+     */
+    public static RecordedTraffic load(InputStream in, int serverPort) throws IOException {
+        return load(new PcapngReader(in), serverPort);
+    }
+
+    /**
+     * Decodes all the packets from the reader and closes it
+     *
+     * @param reader     Capture reader
+     * @param serverPort Port the slaves listen on
+     *
+     * @return Decoded transactions
+     *
+     * @throws IOException if the capture cannot be read
+     */
+    private static RecordedTraffic load(PcapngReader reader, int serverPort) throws IOException {
+        RecordedTraffic traffic = new RecordedTraffic(serverPort);
+        try {
+            PcapngReader.Packet packet;
+            while ((packet = reader.readPacket()) != null) {
+                traffic.addPacket(packet);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return traffic;
+    }
+
+    /**
+     * Decodes any Modbus messages in the packet
+     *
+     * @param packet Packet from a capture
+     */
+    public void addPacket(PcapngReader.Packet packet) {
+        byte[] data = packet.getData();
+        long timestamp = packet.getTimestamp();
+        try {
+            switch (packet.getLinkType()) {
+                case LINKTYPE_NULL:
+                    addIpPacket(data, 4, timestamp);
+                    break;
+                case LINKTYPE_ETHERNET:
+                    int type = getShort(data, 12);
+                    int offset = 14;
+                    if (type == 0x8100) {
+                        offset += 4;
+                    }
+                    addIpPacket(data, offset, timestamp);
+                    break;
+                case LINKTYPE_LINUX_SLL:
+                    addIpPacket(data, 16, timestamp);
+                    break;
+                case PcapngWriter.LINKTYPE_RAW:
+                case LINKTYPE_IPV4:
+                case LINKTYPE_IPV6:
+                    addIpPacket(data, 0, timestamp);
+                    break;
+                case PcapngWriter.LINKTYPE_USER0:
+                    addRtuFrame(data, timestamp);
+                    break;
+                default:
+                    undecoded++;
+            }
+        }
+        catch (RuntimeException e) {
+            logger.debug("Cannot decode packet - {}", e.getMessage());
+            undecoded++;
+        }
+    }
+
+    /**
+     * Returns the transactions in the order the requests were sent
+     *
+     * @return List of transactions
+     */
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Returns the number of responses that didn't match any request
+     *
+     * @return Number of responses
+     */
+    public int getUnmatchedResponseCount() {
+        return unmatchedResponses;
+    }
+
+    /**
+     * Returns the number of packets or messages that couldn't be decoded
+     *
+     * @return Number of packets
+     */
+    public int getUndecodedCount() {
+        return undecoded;
+    }
+
+    /**
+     * Decodes the TCP or UDP payload of an IP packet
+     *
+     * @param data      Packet data
+     * @param off       Offset of the IP header
+     * @param timestamp Time of the packet in nanoseconds
+     */
+    private void addIpPacket(byte[] data, int off, long timestamp) {
+        int version = (data[off] >> 4) & 0x0F;
+        int protocol;
+        int end;
+        byte[] source;
+        byte[] destination;
+        if (version == 4) {
+            protocol = data[off + 9] & 0xFF;
+            end = Math.min(data.length, off + getShort(data, off + 2));
+            source = Arrays.copyOfRange(data, off + 12, off + 16);
+            destination = Arrays.copyOfRange(data, off + 16, off + 20);
+            off += (data[off] & 0x0F) * 4;
+        }
+        else if (version == 6) {
+            protocol = data[off + 6] & 0xFF;
+            end = Math.min(data.length, off + 40 + getShort(data, off + 4));
+            source = Arrays.copyOfRange(data, off + 8, off + 24);
+            destination = Arrays.copyOfRange(data, off + 24, off + 40);
+            off += 40;
+        }
+        else {
+            undecoded++;
+            return;
+        }
+
+        int sourcePort = getShort(data, off);
+        int destinationPort = getShort(data, off + 2);
+        int payload;
+        if (protocol == 6) {
+            payload = off + ((data[off + 12] >> 4) & 0x0F) * 4;
+        }
+        else if (protocol == 17) {
+            payload = off + 8;
+        }
+        else {
+            undecoded++;
+            return;
+        }
+        if (payload >= end) {
+            return;
+        }
+
+        String from = toString(source, sourcePort);
+        String to = toString(destination, destinationPort);
+        boolean toServer;
+        if (destinationPort == serverPort || servers.contains(to)) {
+            toServer = true;
+        }
+        else if (sourcePort == serverPort || servers.contains(from)) {
+            toServer = false;
+        }
+        else {
+            servers.add(to);
+            toServer = true;
+        }
+        String connection = toServer ? from + ">" + to : to + ">" + from;
+
+        if (protocol == 6) {
+            String flow = from + ">" + to;
+            ByteArrayOutputStream stream = streams.get(flow);
+            if (stream == null) {
+                stream = new ByteArrayOutputStream();
+                streams.put(flow, stream);
+            }
+            stream.write(data, payload, end - payload);
+            byte[] remainder = addAdus(stream.toByteArray(), connection, toServer, timestamp);
+            stream.reset();
+            stream.write(remainder, 0, remainder.length);
+        }
+        else {
+            addAdus(Arrays.copyOfRange(data, payload, end), connection, toServer, timestamp);
+        }
+    }
+
+    /**
+     * Decodes all the complete Modbus/TCP messages in the bytes
+     *
+     * @param bytes      Bytes received on the flow
+     * @param connection Key of the connection
+     * @param toServer   True if the bytes were sent to the slave
+     * @param timestamp  Time of the packet in nanoseconds
+     *
+     * @return Bytes left over after the complete messages
+     */
+    private byte[] addAdus(byte[] bytes, String connection, boolean toServer, long timestamp) {
+        int pos = 0;
+        while (bytes.length - pos >= 8) {
+            int length = getShort(bytes, pos + 4);
+            if (getShort(bytes, pos + 2) != 0 || length < 2) {
+                // Not Modbus or lost synchronisation - discard the rest
+                undecoded++;
+                return new byte[0];
+            }
+            if (bytes.length - pos < 6 + length) {
+                break;
+            }
+            byte[] adu = Arrays.copyOfRange(bytes, pos, pos + 6 + length);
+            pos += 6 + length;
+            String key = connection + "#" + getShort(adu, 0);
+            if (toServer) {
+                ModbusRequest request = decodeRequest(adu, false);
+                if (request != null) {
+                    Transaction transaction = new Transaction(timestamp, request);
+                    transactions.add(transaction);
+                    pending.put(key, transaction);
+                }
+            }
+            else {
+                Transaction transaction = pending.remove(key);
+                if (transaction == null) {
+                    unmatchedResponses++;
+                }
+                else {
+                    transaction.response = decodeResponse(adu, false);
+                    transaction.responseTime = timestamp;
+                }
+            }
+        }
+        return Arrays.copyOfRange(bytes, pos, bytes.length);
+    }
+
+    /**
+     * Decodes an RTU frame as either a request or the response to the
+     * previous request
+     *
+     * @param frame     Frame including the CRC
+     * @param timestamp Time of the frame in nanoseconds
+     */
+    private void addRtuFrame(byte[] frame, long timestamp) {
+        if (frame.length < 4) {
+            undecoded++;
+            return;
+        }
+        int[] crc = ModbusUtil.calculateCRC(frame, 0, frame.length - 2);
+        if ((frame[frame.length - 2] & 0xFF) != crc[0] || (frame[frame.length - 1] & 0xFF) != crc[1]) {
+            undecoded++;
+            return;
+        }
+        byte[] pdu = Arrays.copyOf(frame, frame.length - 2);
+        Transaction last = lastSerialRequest;
+        if (last != null && last.response == null &&
+                last.request.getUnitID() == (pdu[0] & 0xFF) &&
+                last.request.getFunctionCode() == (pdu[1] & 0x7F)) {
+            ModbusResponse response = decodeResponse(pdu, true);
+            if (response != null) {
+                last.response = response;
+                last.responseTime = timestamp;
+                return;
+            }
+        }
+        ModbusRequest request = decodeRequest(pdu, true);
+        if (request != null) {
+            lastSerialRequest = new Transaction(timestamp, request);
+            transactions.add(lastSerialRequest);
+        }
+    }
+
+    /**
+     * Decodes a request
+     *
+     * @param bytes    Message bytes without any CRC
+     * @param headless True if there is no MBAP header
+     *
+     * @return Request or null if it cannot be decoded
+     */
+    private ModbusRequest decodeRequest(byte[] bytes, boolean headless) {
+        try {
+            ModbusRequest request = ModbusRequest.createModbusRequest(bytes[headless ? 1 : 7] & 0xFF);
+            request.setHeadless(headless);
+            request.readFrom(new BytesInputStream(bytes));
+            return request;
+        }
+        catch (Exception e) {
+            logger.debug("Cannot decode request {} - {}", ModbusUtil.toHex(bytes), e.getMessage());
+            undecoded++;
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a response
+     *
+     * @param bytes    Message bytes without any CRC
+     * @param headless True if there is no MBAP header
+     *
+     * @return Response or null if it cannot be decoded
+     */
+    private ModbusResponse decodeResponse(byte[] bytes, boolean headless) {
+        try {
+            ModbusResponse response = ModbusResponse.createModbusResponse(bytes[headless ? 1 : 7] & 0xFF);
+            response.setHeadless(headless);
+            response.readFrom(new BytesInputStream(bytes));
+            return response;
+        }
+        catch (Exception e) {
+            logger.debug("Cannot decode response {} - {}", ModbusUtil.toHex(bytes), e.getMessage());
+            undecoded++;
+            return null;
+        }
+    }
+
+    private static int getShort(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+    }
+
+    private static String toString(byte[] address, int port) {
+        try {
+            return InetAddress.getByAddress(address).getHostAddress() + ":" + port;
+        }
+        catch (IOException e) {
+            return Arrays.toString(address) + ":" + port;
+        }
+    }
+
+    /**
+     * Returns true if the two messages have the same unit ID, function code
+     * and data
+     *
+     * @param expected Recorded message
+     * @param actual   Message received
+     *
+     * @return True if they match
+     */
+    public static boolean matches(ModbusMessage expected, ModbusMessage actual) {
+        if (expected == null || actual == null) {
+            return expected == actual;
+        }
+        return expected.getUnitID() == actual.getUnitID() &&
+                expected.getFunctionCode() == actual.getFunctionCode() &&
+                Arrays.equals(expected.getMessage(), actual.getMessage());
+    }
+
+    /**
+     * A recorded request and its response
+     */
+    public static class Transaction {
+        private final long timestamp;
+        private final ModbusRequest request;
+        private ModbusResponse response;
+        private long responseTime;
+
+        Transaction(long timestamp, ModbusRequest request) {
+            this.timestamp = timestamp;
+            this.request = request;
+        }
+
+        /**
+         * Returns when the request was sent
+         *
+         * @return Nanoseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the recorded request
+         *
+         * @return Request
+         */
+        public ModbusRequest getRequest() {
+            return request;
+        }
+
+        /**
+         * Returns the recorded response
+         *
+         * @return Response or null if none was recorded
+         */
+        public ModbusResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * Returns the recorded response time
+         *
+         * @return Nanoseconds between the request and the response or -1 if there was no response
+         */
+        public long getResponseTime() {
+            return response == null ? -1 : responseTime - timestamp;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.io.AbstractModbusTransport;
+import com.ghgande.j2mod.modbus.io.ModbusSerialTransport;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.msg.ExceptionResponse;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-issues the requests of a recorded capture against a slave through the
+ * normal master transactions and compares the responses with the ones that
+ * were recorded.
+ * <p>
+ * Requests are sent one at a time in the order they were recorded so that a
+ * replay is deterministic, even if the original traffic came from several
+ * masters.  The speed sets how the recorded gaps between the requests are
+ * reproduced - <tt>1</tt> replays at the original pace, <tt>2</tt> at twice
+ * the pace and <tt>0</tt> sends each request as soon as the previous one
+ * has been answered.  A request is never sent before the previous one has
+ * been answered, so a slow slave stretches the replay rather than
+ * overlapping requests.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ReplayEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplayEngine.class);
+
+    private final RecordedTraffic traffic;
+    private double speed = 1;
+    private int unitId = -1;
+    private int retries = 0;
+    private int maxMismatches = 10;
+
+    /**
+     * Creates an engine to replay the recorded transactions
+     *
+     * @param traffic Recorded transactions
+     */
+    public ReplayEngine(RecordedTraffic traffic) {
+        this.traffic = traffic;
+    }
+
+    /**
+     * Replays all the recorded requests through the transport
+     *
+     * @param transport Transport of a connected master
+     *
+     * @return Results of the replay
+     */
+    public Result run(AbstractModbusTransport transport) {
+        ModbusTransaction transaction = transport.createTransaction();
+        transaction.setRetries(retries);
+        boolean headless = transport instanceof ModbusSerialTransport;
+
+        Result result = new Result();
+        List<RecordedTraffic.Transaction> transactions = traffic.getTransactions();
+        if (transactions.isEmpty()) {
+            return result;
+        }
+        long firstRecorded = transactions.get(0).getTimestamp();
+        long started = System.nanoTime();
+        for (RecordedTraffic.Transaction recorded : transactions) {
+            if (speed > 0) {
+                long due = started + (long)((recorded.getTimestamp() - firstRecorded) / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            ModbusRequest request = recorded.getRequest();
+            request.setHeadless(headless);
+            if (unitId >= 0) {
+                request.setUnitID(unitId);
+            }
+            transaction.setRequest(request);
+
+            ModbusResponse response;
+            long sent = System.nanoTime();
+            try {
+                transaction.execute();
+                response = transaction.getResponse();
+            }
+            catch (ModbusSlaveException e) {
+                response = transaction.getResponse();
+                if (!(response instanceof ExceptionResponse)) {
+                    response = new ExceptionResponse(request.getFunctionCode(), e.getType());
+                    response.setUnitID(request.getUnitID());
+                }
+            }
+            catch (ModbusException e) {
+                logger.debug("Replay of {} failed - {}", request.getHexMessage(), e.getMessage());
+                result.failed++;
+                continue;
+            }
+            result.latency.recordValue(System.nanoTime() - sent);
+            if (recorded.getResponse() == null || matches(recorded.getResponse(), response)) {
+                result.matched++;
+            }
+            else {
+                result.mismatched++;
+                if (result.mismatches.size() < maxMismatches) {
+                    result.mismatches.add(String.format("Request %s expected %s got %s", request.getHexMessage(),
+                            recorded.getResponse().getHexMessage(), response == null ? "nothing" : response.getHexMessage()));
+                }
+            }
+        }
+        result.elapsed = System.nanoTime() - started;
+        return result;
+    }
+
+    /**
+     * Returns true if the response has the same function code and data as
+     * the recorded one.  The unit ID isn't compared because it can be
+     * overridden for the replay.
+     *
+     * @param expected Recorded response
+     * @param actual   Response received
+     *
+     * @return True if they match
+     */
+    private boolean matches(ModbusResponse expected, ModbusResponse actual) {
+        if (actual == null) {
+            return false;
+        }
+        if (unitId >= 0) {
+            return expected.getFunctionCode() == actual.getFunctionCode() &&
+                    Arrays.equals(expected.getMessage(), actual.getMessage());
+        }
+        return RecordedTraffic.matches(expected, actual);
+    }
+
+    /**
+     * Returns the replay speed relative to the recording
+     *
+     * @return Speed factor, 0 for as fast as possible
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets the replay speed relative to the recording
+     *
+     * @param speed Speed factor e.g. <tt>1</tt> for the original pace, <tt>0</tt> for as fast as possible
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Speed cannot be negative");
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Sets the unit ID to address all the requests to
+     *
+     * @param unitId Unit ID or -1 to use the recorded ones
+     */
+    public void setUnitId(int unitId) {
+        this.unitId = unitId;
+    }
+
+    /**
+     * Sets the number of retries for each request
+     *
+     * @param retries Number of retries
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Sets how many mismatches are described in the result
+     *
+     * @param maxMismatches Maximum number of descriptions kept
+     */
+    public void setMaxMismatches(int maxMismatches) {
+        this.maxMismatches = maxMismatches;
+    }
+
+    /**
+     * The results of a replay
+     */
+    public static class Result {
+        private long matched;
+        private long mismatched;
+        private long failed;
+        private long elapsed;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final List<String> mismatches = new ArrayList<String>();
+
+        /**
+         * Returns the number of responses that matched the recording, including
+         * requests that had no recorded response
+         *
+         * @return Number of responses
+         */
+        public long getMatched() {
+            return matched;
+        }
+
+        /**
+         * Returns the number of responses that differed from the recording
+         *
+         * @return Number of responses
+         */
+        public long getMismatched() {
+            return mismatched;
+        }
+
+        /**
+         * Returns the number of requests that got no response
+         *
+         * @return Number of requests
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the response times of the replayed requests
+         *
+         * @return Latency histogram in nanoseconds
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * Returns descriptions of the first mismatched responses
+         *
+         * @return List of descriptions
+         */
+        public List<String> getMismatches() {
+            return Collections.unmodifiableList(mismatches);
+        }
+
+        /**
+         * Returns how long the replay took
+         *
+         * @return Elapsed time in milliseconds
+         */
+        public long getElapsed() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsed);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buffer = new StringBuilder();
+            buffer.append(String.format("Replayed %d requests in %d ms: %d matched, %d mismatched, %d failed%n",
+                    matched + mismatched + failed, getElapsed(), matched, mismatched, failed));
+            buffer.append(String.format("Latency (ms) %s", latency.toString(1000000.0)));
+            for (String mismatch : mismatches) {
+                buffer.append(String.format("%n  %s", mismatch));
+            }
+            return buffer.toString();
+        }
+    }
+}
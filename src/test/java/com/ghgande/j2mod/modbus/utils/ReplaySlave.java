@@ -0,0 +1,234 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.util.ModbusUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Modbus/TCP slave that answers requests with the responses recorded in a
+ * capture, so that a master under test can be driven with production
+ * traffic without the original equipment.
+ * <p>
+ * Requests are matched on their unit ID, function code and data.  When the
+ * same request was recorded more than once, the recorded responses are
+ * given out in turn and the last one is repeated.  Requests that were never
+ * recorded are not answered, so the master sees a timeout.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ReplaySlave implements Runnable, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplaySlave.class);
+
+    private final Map<String, LinkedList<ModbusResponse>> responses = new HashMap<String, LinkedList<ModbusResponse>>();
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong unknown = new AtomicLong();
+    private final ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * Creates a slave on the given port that answers with the recorded responses
+     *
+     * @param traffic Recorded transactions
+     * @param address Address to listen on or null for all
+     * @param port    Port to listen on, 0 for any free port
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public ReplaySlave(RecordedTraffic traffic, InetAddress address, int port) throws IOException {
+        for (RecordedTraffic.Transaction transaction : traffic.getTransactions()) {
+            if (transaction.getResponse() != null) {
+                String key = getKey(transaction.getRequest());
+                LinkedList<ModbusResponse> list = responses.get(key);
+                if (list == null) {
+                    list = new LinkedList<ModbusResponse>();
+                    responses.put(key, list);
+                }
+                list.add(transaction.getResponse());
+            }
+        }
+        serverSocket = new ServerSocket(port, 50, address);
+    }
+
+    /**
+     * Starts accepting connections on a daemon thread
+     */
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this, "j2mod-replay-slave");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                }, "j2mod-replay-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (IOException e) {
+                if (running) {
+                    logger.debug("Cannot accept connection - {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests on a connection until it is closed
+     *
+     * @param socket Connection from a master
+     */
+    private void handle(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (running) {
+                int transactionId = in.readUnsignedShort();
+                int protocolId = in.readUnsignedShort();
+                int length = in.readUnsignedShort();
+                if (length < 2) {
+                    break;
+                }
+                byte[] pdu = new byte[length];
+                in.readFully(pdu);
+
+                ModbusResponse response = getResponse(pdu);
+                if (response == null) {
+                    unknown.incrementAndGet();
+                    logger.debug("No recorded response for {}", ModbusUtil.toHex(pdu));
+                    continue;
+                }
+                byte[] message = response.getMessage();
+                int dataLength = message == null ? 0 : message.length;
+                out.writeShort(transactionId);
+                out.writeShort(protocolId);
+                out.writeShort(dataLength + 2);
+                out.writeByte(pdu[0]);
+                out.writeByte(response.getFunctionCode());
+                if (dataLength > 0) {
+                    out.write(message);
+                }
+                out.flush();
+                answered.incrementAndGet();
+            }
+        }
+        catch (IOException e) {
+            logger.debug("Replay connection closed - {}", e.getMessage());
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                logger.debug("Cannot close connection - {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the next recorded response to the request
+     *
+     * @param pdu Unit ID, function code and data of the request
+     *
+     * @return Response or null if the request wasn't recorded
+     */
+    private ModbusResponse getResponse(byte[] pdu) {
+        String key = ModbusUtil.toHex(pdu, 0, pdu.length);
+        synchronized (responses) {
+            LinkedList<ModbusResponse> list = responses.get(key);
+            if (list == null) {
+                return null;
+            }
+            return list.size() > 1 ? list.removeFirst() : list.getFirst();
+        }
+    }
+
+    /**
+     * Returns the lookup key of the request, the hex of its unit ID,
+     * function code and data
+     *
+     * @param request Request
+     *
+     * @return Key
+     */
+    private static String getKey(ModbusRequest request) {
+        byte[] message = request.getMessage();
+        int length = message == null ? 0 : message.length;
+        byte[] pdu = new byte[length + 2];
+        pdu[0] = (byte)request.getUnitID();
+        pdu[1] = (byte)request.getFunctionCode();
+        if (length > 0) {
+            System.arraycopy(message, 0, pdu, 2, length);
+        }
+        return ModbusUtil.toHex(pdu, 0, pdu.length);
+    }
+
+    /**
+     * Returns the port the slave is listening on
+     *
+     * @return Port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of requests answered
+     *
+     * @return Number of requests
+     */
+    public long getAnsweredCount() {
+        return answered.get();
+    }
+
+    /**
+     * Returns the number of requests that had no recorded response
+     *
+     * @return Number of requests
+     */
+    public long getUnknownCount() {
+        return unknown.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.io.ModbusASCIITransport;
+import com.ghgande.j2mod.modbus.util.ModbusChecksum;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * ASCII transport that reads the characters it has been given instead of
+ * reading from the serial port, so that the framing can be tested without a
+ * port.  When the characters run out, the read fails as if it had timed out.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ReplayingASCIITransport extends ModbusASCIITransport {
+
+    private final LinkedList<byte[]> bursts = new LinkedList<byte[]>();
+    private byte[] burst = new byte[0];
+    private int pos;
+
+    /**
+     * Creates a transport that will read each of the bursts in turn
+     *
+     * @param bursts Characters to read
+     */
+    public ReplayingASCIITransport(byte[]... bursts) {
+        this.bursts.addAll(Arrays.asList(bursts));
+    }
+
+    /**
+     * Returns the ASCII frame for the bytes, with the start character, LRC
+     * and end of line added
+     *
+     * @param frame Unit ID, function code and data
+     *
+     * @return Encoded frame
+     */
+    public static byte[] asciiFrame(byte... frame) {
+        StringBuilder ascii = new StringBuilder(":");
+        for (byte b : frame) {
+            ascii.append(String.format("%02X", b & 0xFF));
+        }
+        ascii.append(String.format("%02X\r\n", ModbusChecksum.lrc(frame, 0, frame.length) & 0xFF));
+        return ascii.toString().getBytes();
+    }
+
+    @Override
+    protected int bytesAvailable() throws IOException {
+        return burst.length - pos;
+    }
+
+    @Override
+    protected void readBytes(byte[] buffer, long bytesToRead) throws IOException {
+        for (int i = 0; i < bytesToRead; i++) {
+            while (pos >= burst.length) {
+                if (bursts.isEmpty()) {
+                    throw new IOException("Cannot read from serial port");
+                }
+                burst = bursts.removeFirst();
+                pos = 0;
+            }
+            buffer[i] = burst[pos++];
+        }
+    }
+}
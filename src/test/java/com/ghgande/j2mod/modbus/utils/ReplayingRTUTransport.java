@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import com.ghgande.j2mod.modbus.io.ModbusRTUTransport;
+import com.ghgande.j2mod.modbus.util.ModbusChecksum;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * RTU transport that reads the bytes it has been given instead of reading
+ * from the serial port, so that the framing can be tested without a port.
+ * Each burst of bytes is followed by a silence on the line and when the
+ * bytes run out, the read fails as if it had timed out.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class ReplayingRTUTransport extends ModbusRTUTransport {
+
+    private final LinkedList<byte[]> bursts = new LinkedList<byte[]>();
+    private byte[] burst = new byte[0];
+    private int pos;
+
+    /**
+     * Inter-frame interval of 19200 baud and above
+     */
+    static final long FRAME_SILENCE = 1750000L;
+
+    /**
+     * Creates a transport that will read each of the bursts in turn
+     *
+     * @param bursts Bytes to read
+     */
+    public ReplayingRTUTransport(byte[]... bursts) {
+        this.bursts.addAll(Arrays.asList(bursts));
+    }
+
+    /**
+     * Returns a copy of the frame with the RTU CRC added
+     *
+     * @param frame Unit ID, function code and data
+     *
+     * @return Frame with the CRC
+     */
+    public static byte[] withCRC(byte... frame) {
+        byte[] result = Arrays.copyOf(frame, frame.length + 2);
+        int crc = ModbusChecksum.crc16(frame, 0, frame.length);
+        result[frame.length] = (byte)crc;
+        result[frame.length + 1] = (byte)(crc >>> 8);
+        return result;
+    }
+
+    @Override
+    protected int readByte() throws IOException {
+        while (pos >= burst.length) {
+            if (bursts.isEmpty()) {
+                throw new IOException("Cannot read from serial port");
+            }
+            burst = bursts.removeFirst();
+            pos = 0;
+        }
+        return burst[pos++] & 0xFF;
+    }
+
+    @Override
+    protected int bytesAvailable() throws IOException {
+        return burst.length - pos;
+    }
+
+    @Override
+    protected long getFrameSilence() throws IOException {
+        return FRAME_SILENCE;
+    }
+
+    @Override
+    protected void readBytes(byte[] buffer, long bytesToRead) throws IOException {
+        for (int i = 0; i < bytesToRead; i++) {
+            buffer[i] = (byte)readByte();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2002-2016 jamod & j2mod development teams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ghgande.j2mod.modbus.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A Modbus/TCP slave that answers every read of holding registers with
+ * zeros, but first sends a number of responses carrying the wrong
+ * transaction ID, as a slave catching up on requests that timed out would.
+ *
+ * @author Steve O'Hara (4energy)
+ * @version 2.0 (March 2016)
+ */
+public class StaleResponseSlave implements Runnable, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaleResponseSlave.class);
+
+    private final ServerSocket serverSocket;
+    private final int staleResponses;
+    private volatile boolean running;
+
+    /**
+     * Creates a slave on any free port of the loopback address
+     *
+     * @param staleResponses Number of responses with the wrong transaction ID sent before each answer
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public StaleResponseSlave(int staleResponses) throws IOException {
+        this.staleResponses = staleResponses;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    /**
+     * Starts accepting connections on a daemon thread
+     */
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this, "j2mod-stale-slave");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                }, "j2mod-stale-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (IOException e) {
+                if (running) {
+                    logger.debug("Cannot accept connection - {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests on a connection until it is closed
+     *
+     * @param socket Connection from a master
+     */
+    private void handle(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (running) {
+                int transactionId = in.readUnsignedShort();
+                in.readUnsignedShort();
+                int length = in.readUnsignedShort();
+                byte[] pdu = new byte[length];
+                in.readFully(pdu);
+                int count = pdu.length >= 6 ? ((pdu[4] & 0xFF) << 8) | (pdu[5] & 0xFF) : 1;
+                int stale = transactionId == 1 ? 2 : transactionId - 1;
+                for (int i = 0; i < staleResponses; i++) {
+                    writeResponse(out, stale, pdu[0], pdu[1], count);
+                }
+                writeResponse(out, transactionId, pdu[0], pdu[1], count);
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            logger.debug("Stale slave connection closed - {}", e.getMessage());
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                logger.debug("Cannot close connection - {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes a response holding zero registers values
+     *
+     * @param out           Stream to write to
+     * @param transactionId Transaction ID of the response
+     * @param unitId        Unit ID of the request
+     * @param functionCode  Function code of the request
+     * @param count         Number of registers
+     *
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeResponse(DataOutputStream out, int transactionId, int unitId, int functionCode, int count) throws IOException {
+        out.writeShort(transactionId);
+        out.writeShort(0);
+        out.writeShort(3 + count * 2);
+        out.writeByte(unitId);
+        out.writeByte(functionCode);
+        out.writeByte(count * 2);
+        out.write(new byte[count * 2]);
+    }
+
+    /**
+     * Returns the port the slave is listening on
+     *
+     * @return Port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+}